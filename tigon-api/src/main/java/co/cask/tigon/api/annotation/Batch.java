@@ -20,6 +20,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Annotates a {@link co.cask.tigon.api.flow.flowlet.Flowlet Flowlet's} method to indicate that it will process
@@ -65,6 +66,26 @@ import java.lang.annotation.Target;
  * </p>
  *
  * <p>
+ * Instead of a fixed batch size, the batch size can be adapted at runtime, for each input queue independently:
+ * </p>
+ *
+ * <p>
+ * <pre><code>
+ * {@literal @}Batch(value = 1000, adaptive = true, min = 10, latencyTarget = 200, unit = TimeUnit.MILLISECONDS)
+ * {@literal @}ProcessInput
+ * public void process(Iterator{@literal <}String> words) {
+ *   ...
+ * }
+ * </code></pre>
+ * </p>
+ *
+ * <p>
+ * In this example, the batch size starts at 10 and grows up to 1000 while there is a backlog in the queue and
+ * a batch can be dequeued, processed and committed well within 200 milliseconds. It shrinks when that time
+ * approaches the latency target.
+ * </p>
+ *
+ * <p>
  * If you use batch processing, your transactions can take longer and the probability of a conflict due
  * to a failed process increases (see {@link HashPartition hash partitioning}).
  * </p>
@@ -79,8 +100,46 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Batch {
+
+  // Due to a bug in checkstyle, it would emit false positives here of the form
+  // "Unused Javadoc tag (line:col)" for each of the default clauses.
+  // This comment disables that check up to the corresponding ON comments below
+
+  // CHECKSTYLE OFF: Unused Javadoc tag
+
   /**
    * Declare the maximum number of objects that can be processed in a batch.
    */
   int value();
+
+  /**
+   * Optionally adapts the batch size between {@link #min()} and {@link #value()} based on the queue backlog
+   * and the time it takes to process a batch. Default is {@code false}.
+   *
+   * @return {@code true} to adapt the batch size.
+   */
+  boolean adaptive() default false;
+
+  /**
+   * Minimum number of objects in a batch when the batch size is adaptive. Default is {@code 1}.
+   *
+   * @return The minimum batch size.
+   */
+  int min() default 1;
+
+  /**
+   * Target time to dequeue, process and commit a batch when the batch size is adaptive. Default is {@code 100}.
+   *
+   * @return The latency target.
+   */
+  long latencyTarget() default 100L;
+
+  /**
+   * Time unit for {@link #latencyTarget()}. Default is {@link java.util.concurrent.TimeUnit#MILLISECONDS}.
+   *
+   * @return The time unit.
+   */
+  TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+  // CHECKSTYLE ON
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.tigon.api.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotates a {@link co.cask.tigon.api.flow.flowlet.Flowlet Flowlet} class to indicate that its process methods
+ * can be invoked concurrently.
+ *
+ * <p>
+ * By default, each instance of a Flowlet invokes all of its {@link ProcessInput} and {@link Tick} methods one at a
+ * time from a single thread. For a Flowlet annotated with this annotation, each instance invokes different process
+ * methods concurrently from a pool of threads, each in its own transaction:
+ * </p>
+ *
+ * <p>
+ * <pre><code>
+ * {@literal @}ConcurrentProcess
+ * public class Parser extends AbstractFlowlet {
+ *
+ *   {@literal @}ProcessInput("lines")
+ *   public void processLine(String line) {
+ *     ...
+ *   }
+ *
+ *   {@literal @}ProcessInput("records")
+ *   public void processRecord(Record record) {
+ *     ...
+ *   }
+ * }
+ * </code></pre>
+ * </p>
+ *
+ * <p>
+ * A process method is never invoked concurrently with itself, hence the order of processing of each input queue
+ * is retained. The Flowlet is responsible for guarding any state that is shared among its process methods.
+ * A {@code TransactionAware} would take part in all the concurrent transactions, hence the Flowlet cannot add
+ * any through the {@code FlowletContext}.
+ * The size of the thread pool is controlled by the {@code flowlet.process.threads} configuration.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ConcurrentProcess {
+}
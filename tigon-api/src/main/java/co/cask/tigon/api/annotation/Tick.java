@@ -66,7 +66,8 @@ public @interface Tick {
   long initialDelay() default 0L;
 
   /**
-   * Time to delay between the termination of one tick call and the start of the next one.
+   * Time to delay between the termination of one tick call and the start of the next one. For a
+   * {@link #triggered()} method, this is the minimum time between the calls.
    *
    * @return Time to delay between calls.
    */
@@ -86,5 +87,13 @@ public @interface Tick {
    */
   int maxRetries() default 0;
 
+  /**
+   * Specifies whether the method is only called after the flowlet requested it through
+   * {@link co.cask.tigon.api.flow.flowlet.FlowletContext#triggerTick()}, instead of periodically. A flowlet that
+   * pulls data from a source that it is notified about uses this to process data as soon as it arrives, without
+   * spending a transaction on each call while there is no data. Defaults to {@code false}.
+   */
+  boolean triggered() default false;
+
   // CHECKSTYLE ON
 }
@@ -54,4 +54,11 @@ public interface FlowletContext extends RuntimeContext {
    * @param transactionAwares to add to the context.
    */
   void addTransactionAwares(Iterable<? extends TransactionAware> transactionAwares);
+
+  /**
+   * Requests the {@link co.cask.tigon.api.annotation.Tick} methods of this flowlet that are
+   * {@link co.cask.tigon.api.annotation.Tick#triggered() triggered} to be called. Requests made while such a method
+   * is called cause one more call after it. This method can be called from any thread.
+   */
+  void triggerTick();
 }
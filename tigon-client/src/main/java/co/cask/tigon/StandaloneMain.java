@@ -17,6 +17,7 @@
 package co.cask.tigon;
 
 import co.cask.tephra.TransactionManager;
+import co.cask.tigon.app.guice.MetricsClientRuntimeModule;
 import co.cask.tigon.app.guice.ProgramRunnerRuntimeModule;
 import co.cask.tigon.conf.CConfiguration;
 import co.cask.tigon.conf.Constants;
@@ -28,15 +29,12 @@ import co.cask.tigon.guice.IOModule;
 import co.cask.tigon.guice.LocationRuntimeModule;
 import co.cask.tigon.internal.app.runtime.ProgramController;
 import co.cask.tigon.metrics.MetricsCollectionService;
-import co.cask.tigon.metrics.NoOpMetricsCollectionService;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
-import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
-import com.google.inject.Scopes;
 import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.slf4j.Logger;
@@ -168,14 +166,7 @@ public class StandaloneMain {
       new LocationRuntimeModule().getInMemoryModules(),
       new DiscoveryRuntimeModule().getInMemoryModules(),
       new ProgramRunnerRuntimeModule().getInMemoryModules(),
-      new MetricsClientModule()
+      new MetricsClientRuntimeModule().getInMemoryModules()
     );
   }
-
-  private static final class MetricsClientModule extends AbstractModule {
-    @Override
-    protected void configure() {
-      bind(MetricsCollectionService.class).to(NoOpMetricsCollectionService.class).in(Scopes.SINGLETON);
-    }
-  }
 }
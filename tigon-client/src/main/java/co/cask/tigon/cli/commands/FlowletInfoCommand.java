@@ -18,18 +18,46 @@ package co.cask.tigon.cli.commands;
 
 import co.cask.common.cli.Arguments;
 import co.cask.common.cli.Command;
+import co.cask.tigon.app.metrics.MetricsRecord;
 import co.cask.tigon.cli.FlowOperations;
+import co.cask.tigon.conf.Constants;
+import co.cask.tigon.metrics.MetricsScope;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
+import com.google.common.io.Closeables;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import org.apache.twill.api.TwillRunResources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Command to get the Flowlet Names (and their number of instances) of a Flow.
+ * Command to get the Flowlet Names (and their number of instances) of a Flow, together with the event counts
+ * collected from the metrics endpoints of the Flow.
  */
 public class FlowletInfoCommand implements Command {
+  private static final Logger LOG = LoggerFactory.getLogger(FlowletInfoCommand.class);
+  private static final Gson GSON = new Gson();
+  private static final int TIMEOUT_MILLIS = 5000;
+  private static final String EVENTS_IN = "process.events.in";
+  private static final String EVENTS_OUT = "process.events.out";
+  private static final String ERRORS = "process.errors";
+
   private final FlowOperations operations;
 
   @Inject
@@ -40,13 +68,75 @@ public class FlowletInfoCommand implements Command {
   @Override
   public void execute(Arguments arguments, PrintStream printStream) throws Exception {
     String flowName = arguments.get("flow-name");
-    printStream.println(String.format("%-20s %s", "Flowlet Name", "Instance Count"));
+    Table<String, String, Long> metrics = getMetrics(flowName);
+    printStream.println(String.format("%-20s %-15s %-15s %-15s %s",
+                                      "Flowlet Name", "Instance Count", "Events In", "Events Out", "Errors"));
     Map<String, Collection<TwillRunResources>> flowletInfoMap = operations.getFlowInfo(flowName);
     for (String flowletName : flowletInfoMap.keySet()) {
-      printStream.println(String.format("%-20s %s", flowletName, flowletInfoMap.get(flowletName).size()));
+      printStream.println(String.format("%-20s %-15s %-15s %-15s %s", flowletName,
+                                        flowletInfoMap.get(flowletName).size(),
+                                        getValue(metrics, flowletName, EVENTS_IN),
+                                        getValue(metrics, flowletName, EVENTS_OUT),
+                                        getValue(metrics, flowletName, ERRORS)));
     }
   }
 
+  /**
+   * Queries all metrics endpoints announced in the Flow and sums up the system metrics of each Flowlet.
+   *
+   * @return A {@link Table} from Flowlet name and metric name to the metric total.
+   */
+  private Table<String, String, Long> getMetrics(String flowName) {
+    Table<String, String, Long> metrics = HashBasedTable.create();
+    for (InetSocketAddress address : operations.discover(flowName, Constants.Metrics.SERVICE_NAME)) {
+      List<MetricsRecord> records;
+      try {
+        records = fetchMetrics(address, flowName);
+      } catch (IOException e) {
+        LOG.warn("Failed to fetch metrics from {}", address, e);
+        continue;
+      }
+      for (MetricsRecord record : records) {
+        // Flowlet system metrics context is "flowName.flowletName.instanceId"
+        List<String> contextParts = Lists.newArrayList(Splitter.on('.').split(record.getContext()));
+        if (record.getScope() != MetricsScope.SYSTEM || record.getTag() != null || contextParts.size() != 3
+          || !flowName.equals(contextParts.get(0))) {
+          continue;
+        }
+        String flowletName = contextParts.get(1);
+        Long value = metrics.get(flowletName, record.getMetric());
+        metrics.put(flowletName, record.getMetric(), (value == null ? 0L : value) + record.getTotal());
+      }
+    }
+    return metrics;
+  }
+
+  private List<MetricsRecord> fetchMetrics(InetSocketAddress address, String flowName) throws IOException {
+    URL url = new URL(String.format("http://%s:%d/v1/metrics/%s.", address.getHostName(),
+                                    address.getPort(), flowName));
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    urlConn.setConnectTimeout(TIMEOUT_MILLIS);
+    urlConn.setReadTimeout(TIMEOUT_MILLIS);
+    try {
+      if (urlConn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Unexpected response code " + urlConn.getResponseCode() + " from " + url);
+      }
+      Reader reader = new InputStreamReader(urlConn.getInputStream(), Charsets.UTF_8);
+      try {
+        return GSON.fromJson(reader, new TypeToken<List<MetricsRecord>>() { }.getType());
+      } finally {
+        Closeables.closeQuietly(reader);
+      }
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+
+  private long getValue(Table<String, String, Long> metrics, String flowletName, String metric) {
+    Long value = metrics.get(flowletName, metric);
+    return value == null ? 0L : value;
+  }
+
   @Override
   public String getPattern() {
     return "flowletinfo <flow-name>";
@@ -54,6 +144,6 @@ public class FlowletInfoCommand implements Command {
 
   @Override
   public String getDescription() {
-    return "Prints the Flowlet Names and the corresponding Instance Count";
+    return "Prints the Flowlet Names, the corresponding Instance Count and the event counts of each Flowlet";
   }
 }
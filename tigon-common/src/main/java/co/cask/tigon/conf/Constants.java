@@ -61,6 +61,35 @@ public final class Constants {
     public static final String PROGRAM_JVM_OPTS = "app.program.jvm.opts";
   }
 
+  /**
+   * Metrics Configuration.
+   */
+  public static final class Metrics {
+    public static final String SERVICE_NAME = "metrics";
+    public static final String ADDRESS = "metrics.bind.address";
+    public static final String AGGREGATION_INTERVAL_SECONDS = "metrics.aggregation.interval.seconds";
+    public static final String RETENTION_SECONDS = "metrics.retention.seconds";
+
+    public static final String DEFAULT_ADDRESS = "0.0.0.0";
+    public static final int DEFAULT_AGGREGATION_INTERVAL_SECONDS = 1;
+    public static final int DEFAULT_RETENTION_SECONDS = 3600;
+  }
+
+  /**
+   * Flowlet Configuration.
+   */
+  public static final class Flowlet {
+    // Size of the thread pool for invoking process methods of a flowlet annotated with @ConcurrentProcess.
+    public static final String PROCESS_THREADS = "flowlet.process.threads";
+
+    // 0 means the number of available processors.
+    public static final int DEFAULT_PROCESS_THREADS = 0;
+
+    // Whether to dequeue and process the next batch while the commit of the previous batch is in flight.
+    public static final String PIPELINED_COMMIT = "flowlet.commit.pipelined";
+    public static final boolean DEFAULT_PIPELINED_COMMIT = false;
+  }
+
   /**
    * Datasets.
    */
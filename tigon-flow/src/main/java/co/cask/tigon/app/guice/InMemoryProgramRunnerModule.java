@@ -32,10 +32,12 @@ import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.MapBinder;
+import com.google.inject.name.Names;
 import org.apache.twill.api.ServiceAnnouncer;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.discovery.Discoverable;
 import org.apache.twill.discovery.DiscoveryService;
+import org.apache.twill.discovery.DiscoveryServiceClient;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
@@ -57,6 +59,9 @@ final class InMemoryProgramRunnerModule extends PrivateModule {
 
     // Bind ServiceAnnouncer for procedure.
     bind(ServiceAnnouncer.class).to(DiscoveryServiceAnnouncer.class);
+    // Services announced by the program are registered with the DiscoveryService, hence discovered through its client
+    bind(DiscoveryServiceClient.class).annotatedWith(Names.named("program.discovery.client"))
+      .to(DiscoveryServiceClient.class);
 
     // For Binding queue stuff
     bind(QueueReaderFactory.class).in(Scopes.SINGLETON);
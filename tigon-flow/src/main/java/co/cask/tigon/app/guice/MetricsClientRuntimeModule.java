@@ -16,32 +16,45 @@
 
 package co.cask.tigon.app.guice;
 
+import co.cask.tigon.app.metrics.LocalMetricsCollectionService;
 import co.cask.tigon.metrics.MetricsCollectionService;
 import co.cask.tigon.metrics.NoOpMetricsCollectionService;
 import co.cask.tigon.runtime.RuntimeModule;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
+import com.google.inject.Scopes;
 
 /**
  *
  */
 public final class MetricsClientRuntimeModule extends RuntimeModule {
 
-  //TODO: Add MetricsHandlers!
-
   @Override
   public Module getInMemoryModules() {
-    return getNoopModules();
+    return getLocalModules();
   }
 
   @Override
   public Module getSingleNodeModules() {
-    return getNoopModules();
+    return getLocalModules();
   }
 
   @Override
   public Module getDistributedModules() {
-    return getNoopModules();
+    return getLocalModules();
+  }
+
+  /**
+   * Returns a module that bind MetricsCollectionService to one that aggregates metrics in memory and serves them
+   * through a HTTP endpoint.
+   */
+  public Module getLocalModules() {
+    return new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(MetricsCollectionService.class).to(LocalMetricsCollectionService.class).in(Scopes.SINGLETON);
+      }
+    };
   }
 
   /**
@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import co.cask.http.NettyHttpService;
+import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.conf.Constants;
+import co.cask.tigon.metrics.MetricsCollectionService;
+import co.cask.tigon.metrics.MetricsCollector;
+import co.cask.tigon.metrics.MetricsScope;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Inject;
+import org.apache.twill.api.ServiceAnnouncer;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MetricsCollectionService} that keeps metrics in memory of the current process.
+ * <p>
+ * Values emitted through {@link MetricsCollector#gauge(String, int, String...)} are added to lock-free striped
+ * counters, one per (scope, context, runId, metric, tag). A background thread periodically drains the counters into
+ * time-bucketed rollups with bounded retention. The aggregated metrics are served as JSON through a HTTP endpoint,
+ * which is announced with the name {@link Constants.Metrics#SERVICE_NAME} if a {@link ServiceAnnouncer} is available.
+ * </p>
+ */
+public final class LocalMetricsCollectionService extends AbstractIdleService implements MetricsCollectionService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LocalMetricsCollectionService.class);
+  private static final int MINUTE_RESOLUTION = 60;
+  private static final int SECOND_BUCKETS = 60;
+
+  private final String bindAddress;
+  private final int aggregationInterval;
+  private final int retentionSeconds;
+  private final int stripes;
+  private final ConcurrentMap<String, LocalMetricsCollector> collectors;
+
+  private ServiceAnnouncer serviceAnnouncer;
+  private ScheduledExecutorService executor;
+  private NettyHttpService httpService;
+  private Cancellable announcement;
+
+  @Inject
+  public LocalMetricsCollectionService(CConfiguration cConf) {
+    this.bindAddress = cConf.get(Constants.Metrics.ADDRESS, Constants.Metrics.DEFAULT_ADDRESS);
+    this.aggregationInterval = cConf.getInt(Constants.Metrics.AGGREGATION_INTERVAL_SECONDS,
+                                            Constants.Metrics.DEFAULT_AGGREGATION_INTERVAL_SECONDS);
+    this.retentionSeconds = cConf.getInt(Constants.Metrics.RETENTION_SECONDS,
+                                         Constants.Metrics.DEFAULT_RETENTION_SECONDS);
+    this.stripes = Runtime.getRuntime().availableProcessors();
+    this.collectors = Maps.newConcurrentMap();
+  }
+
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  void setServiceAnnouncer(ServiceAnnouncer serviceAnnouncer) {
+    this.serviceAnnouncer = serviceAnnouncer;
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    httpService = NettyHttpService.builder()
+      .setHost(bindAddress)
+      .addHttpHandlers(ImmutableList.of(new MetricsHandler(this)))
+      .build();
+    httpService.startAndWait();
+    LOG.info("Metrics HTTP endpoint started at {}", httpService.getBindAddress());
+
+    executor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("metrics-aggregator"));
+    executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          aggregate();
+        } catch (Throwable t) {
+          LOG.warn("Failed to aggregate metrics.", t);
+        }
+      }
+    }, aggregationInterval, aggregationInterval, TimeUnit.SECONDS);
+
+    if (serviceAnnouncer != null) {
+      announcement = serviceAnnouncer.announce(Constants.Metrics.SERVICE_NAME, httpService.getBindAddress().getPort());
+    }
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    if (announcement != null) {
+      announcement.cancel();
+    }
+    executor.shutdownNow();
+    httpService.stopAndWait();
+  }
+
+  @Override
+  public MetricsCollector getCollector(MetricsScope scope, String context, String runId) {
+    String key = scope + ":" + context + ":" + runId;
+    LocalMetricsCollector collector = collectors.get(key);
+    if (collector == null) {
+      collector = new LocalMetricsCollector(scope, context, runId);
+      LocalMetricsCollector existing = collectors.putIfAbsent(key, collector);
+      if (existing != null) {
+        collector = existing;
+      }
+    }
+    return collector;
+  }
+
+  /**
+   * Returns the address that the metrics HTTP endpoint is bound to, or {@code null} if the service is not running.
+   */
+  @Nullable
+  public InetSocketAddress getBindAddress() {
+    return httpService == null ? null : httpService.getBindAddress();
+  }
+
+  /**
+   * Returns the aggregated metrics of all contexts that starts with the given prefix.
+   *
+   * @param contextPrefix Prefix of the metrics context, or {@code null} for all contexts.
+   * @return A list of {@link MetricsRecord}.
+   */
+  public List<MetricsRecord> query(@Nullable String contextPrefix) {
+    long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    List<MetricsRecord> records = Lists.newArrayList();
+    for (LocalMetricsCollector collector : collectors.values()) {
+      if (contextPrefix != null && !collector.context.startsWith(contextPrefix)) {
+        continue;
+      }
+      for (Map.Entry<String, MetricsEntry> entry : collector.metrics.entrySet()) {
+        records.add(entry.getValue().toRecord(collector, entry.getKey(), null, now));
+      }
+      for (Map.Entry<String, ConcurrentMap<String, MetricsEntry>> tagged : collector.taggedMetrics.entrySet()) {
+        for (Map.Entry<String, MetricsEntry> entry : tagged.getValue().entrySet()) {
+          records.add(entry.getValue().toRecord(collector, entry.getKey(), tagged.getKey(), now));
+        }
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Drains all counters into the rollups and evicts metrics that have not been updated within the retention period.
+   */
+  void aggregate() {
+    aggregate(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+  }
+
+  /**
+   * Drains all counters into the rollups of the given time and evicts metrics that have not been updated within
+   * the retention period before it.
+   *
+   * @param now Current timestamp in seconds.
+   */
+  void aggregate(long now) {
+    for (LocalMetricsCollector collector : collectors.values()) {
+      aggregate(collector.metrics, now);
+      for (ConcurrentMap<String, MetricsEntry> tagged : collector.taggedMetrics.values()) {
+        aggregate(tagged, now);
+      }
+    }
+  }
+
+  private void aggregate(ConcurrentMap<String, MetricsEntry> entries, long now) {
+    for (Map.Entry<String, MetricsEntry> mapEntry : entries.entrySet()) {
+      MetricsEntry entry = mapEntry.getValue();
+      long value = entry.counter.sumThenReset();
+      if (value != 0) {
+        entry.add(now, value);
+      } else if (now - entry.lastUpdate > retentionSeconds && entries.remove(mapEntry.getKey(), entry)) {
+        // Writers that got the entry before it was removed either see it retired and move their value,
+        // or added their value before it is drained here.
+        entry.retired = true;
+        long late = entry.counter.sumThenReset();
+        if (late != 0) {
+          getEntry(entries, mapEntry.getKey()).counter.add(late);
+        }
+      }
+    }
+  }
+
+  private MetricsEntry getEntry(ConcurrentMap<String, MetricsEntry> entries, String metricName) {
+    MetricsEntry entry = entries.get(metricName);
+    if (entry == null) {
+      entry = createEntry();
+      MetricsEntry existing = entries.putIfAbsent(metricName, entry);
+      if (existing != null) {
+        entry = existing;
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Adds a value to the counter of a metric. If the entry of the metric was retired concurrently, whatever is left
+   * in its counter is moved to the current entry of the metric.
+   */
+  private void add(ConcurrentMap<String, MetricsEntry> entries, String metricName, int value) {
+    MetricsEntry entry = getEntry(entries, metricName);
+    entry.counter.add(value);
+    while (entry.retired) {
+      long late = entry.counter.sumThenReset();
+      if (late == 0) {
+        return;
+      }
+      entry = getEntry(entries, metricName);
+      entry.counter.add(late);
+    }
+  }
+
+  private MetricsEntry createEntry() {
+    long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    return new MetricsEntry(new StripedCounter(stripes),
+                            new TimeBucketSeries(aggregationInterval, SECOND_BUCKETS),
+                            new TimeBucketSeries(MINUTE_RESOLUTION,
+                                                 Math.max(1, retentionSeconds / MINUTE_RESOLUTION)),
+                            now);
+  }
+
+  /**
+   * {@link MetricsCollector} for one (scope, context, runId). Emitting a metric with tags updates the counter of
+   * the metric as well as the counter of each tag.
+   */
+  private final class LocalMetricsCollector implements MetricsCollector {
+
+    private final MetricsScope scope;
+    private final String context;
+    private final String runId;
+    private final ConcurrentMap<String, MetricsEntry> metrics;
+    private final ConcurrentMap<String, ConcurrentMap<String, MetricsEntry>> taggedMetrics;
+
+    LocalMetricsCollector(MetricsScope scope, String context, String runId) {
+      this.scope = scope;
+      this.context = context;
+      this.runId = runId;
+      this.metrics = Maps.newConcurrentMap();
+      this.taggedMetrics = Maps.newConcurrentMap();
+    }
+
+    @Override
+    public void gauge(String metricName, int value, String... tags) {
+      add(metrics, metricName, value);
+      for (String tag : tags) {
+        ConcurrentMap<String, MetricsEntry> tagEntries = taggedMetrics.get(tag);
+        if (tagEntries == null) {
+          tagEntries = Maps.newConcurrentMap();
+          ConcurrentMap<String, MetricsEntry> existing = taggedMetrics.putIfAbsent(tag, tagEntries);
+          if (existing != null) {
+            tagEntries = existing;
+          }
+        }
+        add(tagEntries, metricName, value);
+      }
+    }
+  }
+
+  /**
+   * Holds the counter and the rollups of one metric.
+   */
+  private static final class MetricsEntry {
+
+    private final StripedCounter counter;
+    private final TimeBucketSeries seconds;
+    private final TimeBucketSeries minutes;
+    private volatile long total;
+    private volatile long lastUpdate;
+    // Set once the entry is removed from the map, after which updates must go to a new entry
+    private volatile boolean retired;
+
+    MetricsEntry(StripedCounter counter, TimeBucketSeries seconds, TimeBucketSeries minutes, long now) {
+      this.counter = counter;
+      this.seconds = seconds;
+      this.minutes = minutes;
+      this.lastUpdate = now;
+    }
+
+    /**
+     * Adds the value to the rollups. Only called from the aggregation thread.
+     */
+    void add(long now, long value) {
+      seconds.add(now, value);
+      minutes.add(now, value);
+      total += value;
+      lastUpdate = now;
+    }
+
+    MetricsRecord toRecord(LocalMetricsCollector collector, String metric, @Nullable String tag, long now) {
+      return new MetricsRecord(collector.scope, collector.context, collector.runId, metric,
+                               tag, total, seconds.getValues(now), minutes.getValues(now));
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HttpResponder;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+
+/**
+ * HTTP handler for serving metrics collected by {@link LocalMetricsCollectionService} as JSON.
+ *
+ * 1) /v1/metrics                    returns all metrics
+ * 2) /v1/metrics/{context-prefix}   returns metrics of contexts that starts with the given prefix
+ */
+@Path("/v1")
+public final class MetricsHandler extends AbstractHttpHandler {
+
+  private final LocalMetricsCollectionService metricsCollectionService;
+
+  public MetricsHandler(LocalMetricsCollectionService metricsCollectionService) {
+    this.metricsCollectionService = metricsCollectionService;
+  }
+
+  @GET
+  @Path("/metrics")
+  public void getMetrics(HttpRequest request, HttpResponder responder) {
+    responder.sendJson(HttpResponseStatus.OK, metricsCollectionService.query(null));
+  }
+
+  @GET
+  @Path("/metrics/{context}")
+  public void getContextMetrics(HttpRequest request, HttpResponder responder, @PathParam("context") String context) {
+    responder.sendJson(HttpResponseStatus.OK, metricsCollectionService.query(context));
+  }
+}
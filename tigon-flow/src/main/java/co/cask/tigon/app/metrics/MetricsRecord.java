@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import co.cask.tigon.metrics.MetricsScope;
+import com.google.common.base.Objects;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Aggregated values of one metric, as served by the metrics HTTP endpoint of {@link LocalMetricsCollectionService}.
+ */
+public final class MetricsRecord {
+
+  private final MetricsScope scope;
+  private final String context;
+  private final String runId;
+  private final String metric;
+  private final String tag;
+  private final long total;
+  private final List<TimeValue> seconds;
+  private final List<TimeValue> minutes;
+
+  public MetricsRecord(MetricsScope scope, String context, String runId, String metric, @Nullable String tag,
+                       long total, List<TimeValue> seconds, List<TimeValue> minutes) {
+    this.scope = scope;
+    this.context = context;
+    this.runId = runId;
+    this.metric = metric;
+    this.tag = tag;
+    this.total = total;
+    this.seconds = seconds;
+    this.minutes = minutes;
+  }
+
+  public MetricsScope getScope() {
+    return scope;
+  }
+
+  public String getContext() {
+    return context;
+  }
+
+  public String getRunId() {
+    return runId;
+  }
+
+  public String getMetric() {
+    return metric;
+  }
+
+  /**
+   * @return The tag of the metric or {@code null} if it is the metric aggregated across all tags.
+   */
+  @Nullable
+  public String getTag() {
+    return tag;
+  }
+
+  /**
+   * @return Sum of all values since the metric was created.
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  /**
+   * @return Values rolled up in buckets of the aggregation interval.
+   */
+  public List<TimeValue> getSeconds() {
+    return seconds;
+  }
+
+  /**
+   * @return Values rolled up in buckets of one minute.
+   */
+  public List<TimeValue> getMinutes() {
+    return minutes;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("scope", scope)
+      .add("context", context)
+      .add("runId", runId)
+      .add("metric", metric)
+      .add("tag", tag)
+      .add("total", total)
+      .toString();
+  }
+
+  /**
+   * Value of a time bucket.
+   */
+  public static final class TimeValue {
+    private final long time;
+    private final long value;
+
+    public TimeValue(long time, long value) {
+      this.time = time;
+      this.value = value;
+    }
+
+    /**
+     * @return Start time of the bucket in seconds.
+     */
+    public long getTime() {
+      return time;
+    }
+
+    public long getValue() {
+      return value;
+    }
+  }
+}
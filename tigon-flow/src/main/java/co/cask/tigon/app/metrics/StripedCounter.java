@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free counter that spreads concurrent updates across multiple cells, selected by the updating thread,
+ * to reduce contention. Cells are padded apart so that they don't share a cache line.
+ */
+final class StripedCounter {
+
+  // Number of longs in between two cells, for keeping each cell in its own cache line.
+  private static final int PADDING = 8;
+
+  private final AtomicLongArray cells;
+  private final int mask;
+
+  /**
+   * Creates a counter with at least the given number of stripes.
+   */
+  StripedCounter(int stripes) {
+    int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+    this.cells = new AtomicLongArray(size * PADDING);
+    this.mask = size - 1;
+  }
+
+  /**
+   * Adds the given delta to the counter. This method doesn't allocate.
+   */
+  void add(long delta) {
+    cells.getAndAdd((int) (Thread.currentThread().getId() & mask) * PADDING, delta);
+  }
+
+  /**
+   * Returns the sum of all increments since the last call to this method and resets the counter.
+   */
+  long sumThenReset() {
+    long sum = 0;
+    for (int i = 0; i <= mask; i++) {
+      sum += cells.getAndSet(i * PADDING, 0L);
+    }
+    return sum;
+  }
+}
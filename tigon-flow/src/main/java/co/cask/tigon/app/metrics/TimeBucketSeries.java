@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * A fixed size ring of time buckets. Each bucket holds the sum of values added within the bucket time range.
+ * Buckets that fall out of the ring are overwritten, which bounds the retention to
+ * {@code resolution * size} seconds.
+ */
+final class TimeBucketSeries {
+
+  private final int resolution;
+  private final long[] timestamps;
+  private final long[] values;
+
+  /**
+   * @param resolution Size of each bucket in seconds.
+   * @param size Number of buckets to retain.
+   */
+  TimeBucketSeries(int resolution, int size) {
+    Preconditions.checkArgument(resolution > 0, "Resolution must be > 0.");
+    Preconditions.checkArgument(size > 0, "Size must be > 0.");
+    this.resolution = resolution;
+    this.timestamps = new long[size];
+    this.values = new long[size];
+  }
+
+  /**
+   * Adds a value to the bucket that contains the given timestamp.
+   *
+   * @param timestamp Timestamp in seconds.
+   * @param value The value to add.
+   */
+  synchronized void add(long timestamp, long value) {
+    long bucket = timestamp - timestamp % resolution;
+    int idx = (int) ((bucket / resolution) % timestamps.length);
+    if (timestamps[idx] != bucket) {
+      timestamps[idx] = bucket;
+      values[idx] = 0L;
+    }
+    values[idx] += value;
+  }
+
+  /**
+   * Returns the retained buckets in ascending time order.
+   *
+   * @param now Current timestamp in seconds.
+   */
+  synchronized List<MetricsRecord.TimeValue> getValues(long now) {
+    long current = now - now % resolution;
+    long oldest = current - (long) resolution * (timestamps.length - 1);
+    List<MetricsRecord.TimeValue> result = Lists.newArrayList();
+    for (long bucket = Math.max(0L, oldest); bucket <= current; bucket += resolution) {
+      int idx = (int) ((bucket / resolution) % timestamps.length);
+      if (timestamps[idx] == bucket) {
+        result.add(new MetricsRecord.TimeValue(bucket, values[idx]));
+      }
+    }
+    return result;
+  }
+}
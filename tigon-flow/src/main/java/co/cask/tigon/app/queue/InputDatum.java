@@ -46,4 +46,11 @@ public interface InputDatum<T> extends Iterable<T> {
    * Returns number of entries in this Iterable.
    */
   int size();
+
+  /**
+   * Notifies that the transaction that processed this input is completed.
+   *
+   * @param committed {@code true} if the transaction was committed, {@code false} if it was aborted.
+   */
+  void completed(boolean committed);
 }
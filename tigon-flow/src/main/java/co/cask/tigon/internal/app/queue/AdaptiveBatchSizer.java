@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.queue;
+
+import co.cask.tigon.metrics.MetricsCollector;
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the dequeue batch size of a queue from the feedback of processed batches.
+ * <p>
+ * The batch size doubles when a full batch was dequeued, which indicates a backlog in the queue, and is capped by
+ * the number of events that are expected to be processed within the latency target. The expectation is based on
+ * a moving average of the time it took to dequeue, process and commit an event, hence the batch size shrinks when
+ * the process time approaches the latency target. The current batch size is emitted as a metric.
+ * </p>
+ * <p>
+ * This class is not thread safe. It is only used by the reader of one queue, which is never called concurrently.
+ * </p>
+ */
+public final class AdaptiveBatchSizer {
+
+  // Fraction of the latency target to aim at, which leaves room for variance of the process time.
+  private static final double TARGET_RATIO = 0.8d;
+
+  // Weight of the latest batch in the moving average of the process time per event.
+  private static final double SMOOTHING_FACTOR = 0.3d;
+
+  private final int minSize;
+  private final int maxSize;
+  private final double targetNano;
+  private final MetricsCollector metrics;
+  private final String metricName;
+  private final String metricTag;
+  private int batchSize;
+  private double nanoPerEvent;
+
+  /**
+   * Creates an instance with the batch size starts at the minimum size.
+   *
+   * @param minSize Minimum batch size.
+   * @param maxSize Maximum batch size.
+   * @param latencyTarget Target time to dequeue, process and commit a batch.
+   * @param unit Unit of the latency target.
+   * @param metrics Collector for emitting the current batch size.
+   * @param metricName Name of the batch size metric.
+   * @param metricTag Tag of the batch size metric.
+   */
+  public AdaptiveBatchSizer(int minSize, int maxSize, long latencyTarget, TimeUnit unit,
+                            MetricsCollector metrics, String metricName, String metricTag) {
+    Preconditions.checkArgument(minSize > 0, "Minimum batch size should be > 0.");
+    Preconditions.checkArgument(maxSize >= minSize, "Maximum batch size should be >= minimum batch size.");
+    Preconditions.checkArgument(latencyTarget > 0, "Latency target should be > 0.");
+
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.targetNano = unit.toNanos(latencyTarget) * TARGET_RATIO;
+    this.metrics = metrics;
+    this.metricName = metricName;
+    this.metricTag = metricTag;
+    this.batchSize = minSize;
+
+    // The metric is emitted as changes, hence the aggregated value is the current batch size.
+    metrics.gauge(metricName, batchSize, metricTag);
+  }
+
+  /**
+   * Returns the batch size for the next dequeue.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Updates the batch size with the result of a batch.
+   *
+   * @param requested The batch size used for the dequeue.
+   * @param dequeued Number of events dequeued.
+   * @param elapsedNano Time in nanoseconds from the start of the dequeue to the end of the transaction.
+   */
+  public void update(int requested, int dequeued, long elapsedNano) {
+    if (dequeued <= 0) {
+      return;
+    }
+
+    double sample = (double) elapsedNano / dequeued;
+    nanoPerEvent = (nanoPerEvent <= 0d) ? sample : SMOOTHING_FACTOR * sample + (1d - SMOOTHING_FACTOR) * nanoPerEvent;
+
+    // Only grow if there are more events in the queue than what was asked for.
+    long newSize = (dequeued >= requested) ? (long) batchSize * 2 : batchSize;
+    newSize = Math.min(newSize, (long) (targetNano / Math.max(nanoPerEvent, 1d)));
+    newSize = Math.max(minSize, Math.min(maxSize, newSize));
+
+    if (newSize != batchSize) {
+      metrics.gauge(metricName, (int) newSize - batchSize, metricTag);
+      batchSize = (int) newSize;
+    }
+  }
+}
@@ -22,11 +22,13 @@ import co.cask.tigon.data.queue.DequeueResult;
 import co.cask.tigon.data.queue.QueueName;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * An implementation for {@link InputDatum} for common operations across queue and stream
@@ -40,9 +42,31 @@ final class BasicInputDatum<S, T> implements InputDatum<T> {
   private final InputContext inputContext;
   private final QueueName queueName;
   private final Iterable<T> events;
+  private final AdaptiveBatchSizer batchSizer;
+  private final int requestedSize;
+  private final Ticker ticker;
+  private final long dequeueStartNano;
+  private boolean completed;
+
+  BasicInputDatum(QueueName queueName, DequeueResult<S> result, Function<S, T> decoder) {
+    this(queueName, result, decoder, null, 0, Ticker.systemTicker(), 0L);
+  }
 
-  BasicInputDatum(final QueueName queueName, DequeueResult<S> result, Function<S, T> decoder) {
+  /**
+   * Creates an instance that updates the given {@link AdaptiveBatchSizer} when the first transaction that
+   * processes this input is committed.
+   *
+   * @param requestedSize The batch size used for the dequeue.
+   * @param ticker The {@link Ticker} for measuring the time to process this input.
+   * @param dequeueStartNano The time of the ticker when the dequeue started.
+   */
+  BasicInputDatum(final QueueName queueName, DequeueResult<S> result, Function<S, T> decoder,
+                  @Nullable AdaptiveBatchSizer batchSizer, int requestedSize, Ticker ticker, long dequeueStartNano) {
     this.result = result;
+    this.batchSizer = batchSizer;
+    this.requestedSize = requestedSize;
+    this.ticker = ticker;
+    this.dequeueStartNano = dequeueStartNano;
     this.retry = new AtomicInteger(0);
     this.queueName = queueName;
     // Memorize the transformed Iterable so that decoder would only invoked once for each event no matter
@@ -109,6 +133,18 @@ final class BasicInputDatum<S, T> implements InputDatum<T> {
     return result.size();
   }
 
+  @Override
+  public void completed(boolean committed) {
+    // Only the first attempt reflects the time to process the batch, retries are not counted.
+    if (completed) {
+      return;
+    }
+    completed = true;
+    if (committed && batchSizer != null) {
+      batchSizer.update(requestedSize, result.size(), ticker.read() - dequeueStartNano);
+    }
+  }
+
   @Override
   public String toString() {
     return String.format("%s %d", result, retry.get());
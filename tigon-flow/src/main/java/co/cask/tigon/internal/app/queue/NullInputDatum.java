@@ -70,6 +70,11 @@ public final class NullInputDatum<T> implements InputDatum<T> {
     return inputContext;
   }
 
+  @Override
+  public void completed(boolean committed) {
+    // no-op
+  }
+
   @Override
   public QueueName getQueueName() {
     return null;
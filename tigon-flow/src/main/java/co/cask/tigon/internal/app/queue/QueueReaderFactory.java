@@ -32,4 +32,13 @@ public final class QueueReaderFactory {
                                               int batchSize, Function<ByteBuffer, T> decoder) {
     return new SingleQueue2Reader<T>(consumerSupplier, batchSize, decoder);
   }
+
+  /**
+   * Creates a {@link QueueReader} that dequeues with the batch size determined by the given
+   * {@link AdaptiveBatchSizer}.
+   */
+  public <T> QueueReader<T> createQueueReader(Supplier<QueueConsumer> consumerSupplier,
+                                              AdaptiveBatchSizer batchSizer, Function<ByteBuffer, T> decoder) {
+    return new SingleQueue2Reader<T>(consumerSupplier, batchSizer, decoder);
+  }
 }
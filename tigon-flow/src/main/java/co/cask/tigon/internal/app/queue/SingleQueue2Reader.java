@@ -20,10 +20,12 @@ import co.cask.tigon.app.queue.InputDatum;
 import co.cask.tigon.data.queue.QueueConsumer;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * A {@link co.cask.tigon.app.queue.QueueReader} for reading from {@link QueueConsumer}.
@@ -35,11 +37,34 @@ public final class SingleQueue2Reader<T> extends TimeTrackingQueueReader<T> {
 
   private final Supplier<QueueConsumer> consumerSupplier;
   private final int batchSize;
+  private final AdaptiveBatchSizer batchSizer;
+  private final Ticker ticker;
   private final Function<byte[], T> decoder;
 
-  SingleQueue2Reader(Supplier<QueueConsumer> consumerSupplier, int batchSize, final Function<ByteBuffer, T> decoder) {
+  SingleQueue2Reader(Supplier<QueueConsumer> consumerSupplier, int batchSize, Function<ByteBuffer, T> decoder) {
+    this(consumerSupplier, batchSize, null, Ticker.systemTicker(), decoder);
+  }
+
+  SingleQueue2Reader(Supplier<QueueConsumer> consumerSupplier, AdaptiveBatchSizer batchSizer,
+                     Function<ByteBuffer, T> decoder) {
+    this(consumerSupplier, batchSizer, Ticker.systemTicker(), decoder);
+  }
+
+  /**
+   * Creates an instance that measures the time to process each batch with the given {@link Ticker}.
+   */
+  SingleQueue2Reader(Supplier<QueueConsumer> consumerSupplier, AdaptiveBatchSizer batchSizer,
+                     Ticker ticker, Function<ByteBuffer, T> decoder) {
+    this(consumerSupplier, batchSizer.getBatchSize(), batchSizer, ticker, decoder);
+  }
+
+  private SingleQueue2Reader(Supplier<QueueConsumer> consumerSupplier, int batchSize,
+                             @Nullable AdaptiveBatchSizer batchSizer, Ticker ticker,
+                             final Function<ByteBuffer, T> decoder) {
     this.consumerSupplier = consumerSupplier;
     this.batchSize = batchSize;
+    this.batchSizer = batchSizer;
+    this.ticker = ticker;
     this.decoder = new Function<byte[], T>() {
       @Override
       public T apply(byte[] input) {
@@ -51,6 +76,12 @@ public final class SingleQueue2Reader<T> extends TimeTrackingQueueReader<T> {
   @Override
   public InputDatum<T> tryDequeue(long timeout, TimeUnit timeoutUnit) throws IOException {
     QueueConsumer consumer = consumerSupplier.get();
-    return new BasicInputDatum<byte[], T>(consumer.getQueueName(), consumer.dequeue(batchSize), decoder);
+    if (batchSizer == null) {
+      return new BasicInputDatum<byte[], T>(consumer.getQueueName(), consumer.dequeue(batchSize), decoder);
+    }
+    long startNano = ticker.read();
+    int size = batchSizer.getBatchSize();
+    return new BasicInputDatum<byte[], T>(consumer.getQueueName(), consumer.dequeue(size), decoder,
+                                          batchSizer, size, ticker, startNano);
   }
 }
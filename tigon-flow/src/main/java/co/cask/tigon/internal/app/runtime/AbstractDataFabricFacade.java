@@ -25,6 +25,7 @@ import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.queue.QueueProducer;
 import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
@@ -50,6 +51,16 @@ public abstract class AbstractDataFabricFacade implements DataFabricFacade {
     return new TransactionContext(txSystemClient, Iterables.unmodifiableIterable(txAware));
   }
 
+  @Override
+  public TransactionContext createTransactionManager(Predicate<? super TransactionAware> filter) {
+    return new TransactionContext(txSystemClient, Iterables.filter(txAware, filter));
+  }
+
+  @Override
+  public TransactionPipeline createTransactionPipeline() {
+    return new TransactionPipeline(txSystemClient, Iterables.unmodifiableIterable(txAware));
+  }
+
   @Override
   public QueueProducer createProducer(QueueName queueName) throws IOException {
     return createProducer(queueName, QueueMetrics.NOOP_QUEUE_METRICS);
@@ -60,7 +71,7 @@ public abstract class AbstractDataFabricFacade implements DataFabricFacade {
                                        ConsumerConfig consumerConfig, int numGroups) throws IOException {
     QueueConsumer consumer = queueClientFactory.createConsumer(queueName, consumerConfig, numGroups);
     if (consumer instanceof TransactionAware) {
-      consumer = new CloseableQueueConsumer(this, consumer);
+      consumer = CloseableQueueConsumer.create(this, consumer);
       txAware.add((TransactionAware) consumer);
     }
     return consumer;
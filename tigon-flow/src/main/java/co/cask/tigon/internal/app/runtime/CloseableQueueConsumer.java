@@ -19,6 +19,7 @@ package co.cask.tigon.internal.app.runtime;
 import co.cask.tephra.TransactionAware;
 import co.cask.tigon.data.queue.ForwardingQueueConsumer;
 import co.cask.tigon.data.queue.QueueConsumer;
+import co.cask.tigon.data.transaction.PipelinedTransactionAware;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -27,11 +28,21 @@ import java.io.IOException;
  * A {@link TransactionAware} {@link QueueConsumer} that removes itself from dataset context
  * when closed. All queue operations are forwarded to another {@link QueueConsumer}.
  */
-final class CloseableQueueConsumer extends ForwardingQueueConsumer implements Closeable {
+class CloseableQueueConsumer extends ForwardingQueueConsumer implements Closeable {
 
   private final AbstractDataFabricFacade fabricFacade;
 
-  CloseableQueueConsumer(AbstractDataFabricFacade fabricFacade, QueueConsumer consumer) {
+  /**
+   * Creates an instance that is also a {@link PipelinedTransactionAware} if the given consumer is.
+   */
+  static CloseableQueueConsumer create(AbstractDataFabricFacade fabricFacade, QueueConsumer consumer) {
+    if (consumer instanceof PipelinedTransactionAware) {
+      return new Pipelined(fabricFacade, consumer);
+    }
+    return new CloseableQueueConsumer(fabricFacade, consumer);
+  }
+
+  private CloseableQueueConsumer(AbstractDataFabricFacade fabricFacade, QueueConsumer consumer) {
     super(consumer);
     this.fabricFacade = fabricFacade;
   }
@@ -46,4 +57,32 @@ final class CloseableQueueConsumer extends ForwardingQueueConsumer implements Cl
       fabricFacade.removeTransactionAware(this);
     }
   }
+
+  /**
+   * A {@link CloseableQueueConsumer} that also forwards the operations of {@link PipelinedTransactionAware}.
+   */
+  private static final class Pipelined extends CloseableQueueConsumer implements PipelinedTransactionAware {
+
+    private final PipelinedTransactionAware pipelinedTxAware;
+
+    Pipelined(AbstractDataFabricFacade fabricFacade, QueueConsumer consumer) {
+      super(fabricFacade, consumer);
+      this.pipelinedTxAware = (PipelinedTransactionAware) consumer;
+    }
+
+    @Override
+    public void detachTx() {
+      pipelinedTxAware.detachTx();
+    }
+
+    @Override
+    public void postDetachedTxCommit() {
+      pipelinedTxAware.postDetachedTxCommit();
+    }
+
+    @Override
+    public boolean rollbackDetachedTx() throws Exception {
+      return pipelinedTxAware.rollbackDetachedTx();
+    }
+  }
 }
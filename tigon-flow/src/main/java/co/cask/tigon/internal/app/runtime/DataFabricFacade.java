@@ -16,9 +16,11 @@
 
 package co.cask.tigon.internal.app.runtime;
 
+import co.cask.tephra.TransactionAware;
 import co.cask.tephra.TransactionContext;
 import co.cask.tephra.TransactionExecutor;
 import co.cask.tigon.data.queue.QueueClientFactory;
+import com.google.common.base.Predicate;
 
 /**
  *
@@ -27,4 +29,15 @@ public interface DataFabricFacade extends QueueClientFactory {
 
   TransactionContext createTransactionManager();
 
+  /**
+   * Creates a {@link TransactionContext} with only the {@link TransactionAware}s that are accepted by the filter.
+   */
+  TransactionContext createTransactionManager(Predicate<? super TransactionAware> filter);
+
+  /**
+   * Creates a {@link TransactionPipeline} for committing transactions in the background. Transaction contexts
+   * created by the pipeline contain the same {@link TransactionAware}s as {@link #createTransactionManager()}.
+   */
+  TransactionPipeline createTransactionPipeline();
+
 }
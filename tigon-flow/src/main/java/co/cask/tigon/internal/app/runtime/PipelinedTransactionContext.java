@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.internal.app.runtime;
+
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionAware;
+import co.cask.tephra.TransactionContext;
+import co.cask.tephra.TransactionCouldNotTakeSnapshotException;
+import co.cask.tephra.TransactionFailureException;
+import co.cask.tephra.TransactionNotInProgressException;
+import co.cask.tephra.TransactionSystemClient;
+import co.cask.tigon.data.transaction.PipelinedTransactionAware;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link TransactionContext} that can hand over the commit of its transaction to a {@link TransactionPipeline}.
+ * Transactions that are finished with {@link #finish()} or aborted behave the same as with
+ * {@link TransactionContext}, except that the commit in flight in the pipeline is completed first.
+ * <p>
+ * The transaction is run by {@link TransactionContext} itself. For a transaction that is handed over, the commit
+ * call to the transaction server is submitted to the pipeline instead, and the {@link TransactionAware}s are
+ * detached from the transaction instead of being called with {@link TransactionAware#postTxCommit()}.
+ * </p>
+ */
+public final class PipelinedTransactionContext extends TransactionContext {
+
+  private final PipeliningTransactionClient txClient;
+  private final List<TransactionAware> txAwares;
+  // True while the current transaction is finished by handing over its commit to the pipeline
+  private boolean detaching;
+
+  PipelinedTransactionContext(TransactionSystemClient txClient, Iterable<TransactionAware> txAwares,
+                              TransactionPipeline pipeline) {
+    this(new PipeliningTransactionClient(txClient, pipeline), txAwares);
+  }
+
+  private PipelinedTransactionContext(PipeliningTransactionClient txClient, Iterable<TransactionAware> txAwares) {
+    super(txClient, ImmutableList.<TransactionAware>of());
+    this.txClient = txClient;
+    this.txAwares = Lists.newArrayList();
+    for (TransactionAware txAware : txAwares) {
+      addTransactionAware(txAware);
+    }
+  }
+
+  @Override
+  public void addTransactionAware(TransactionAware txAware) {
+    txAwares.add(txAware);
+    super.addTransactionAware(new DetachableTransactionAware(txAware));
+  }
+
+  @Override
+  public void finish() throws TransactionFailureException {
+    awaitPipeline();
+    super.finish();
+  }
+
+  /**
+   * Persists the changes of the current transaction and submits the commit to the pipeline without waiting for it.
+   * The commit of the previous transaction in the pipeline is completed first. The transaction is committed
+   * synchronously if not all {@link TransactionAware}s are {@link PipelinedTransactionAware}.
+   *
+   * @param callback Called with the commit result. It is called from this method if the transaction is committed
+   *                 synchronously, otherwise from {@link TransactionPipeline#awaitCommit()}.
+   * @return {@code true} if the commit is in flight, {@code false} if the transaction is committed already.
+   * @throws TransactionFailureException if the transaction failed before the commit was submitted. The transaction
+   *                                     is aborted already in that case and the callback is not called.
+   */
+  public boolean finish(FutureCallback<Void> callback) throws TransactionFailureException {
+    List<PipelinedTransactionAware> pipelinedTxAwares = Lists.newArrayListWithCapacity(txAwares.size());
+    for (TransactionAware txAware : txAwares) {
+      if (!(txAware instanceof PipelinedTransactionAware)) {
+        finish();
+        callback.onSuccess(null);
+        return false;
+      }
+      pipelinedTxAwares.add((PipelinedTransactionAware) txAware);
+    }
+
+    awaitPipeline();
+    detaching = true;
+    txClient.setCommitCallback(pipelinedTxAwares, callback);
+    try {
+      super.finish();
+    } finally {
+      detaching = false;
+      txClient.setCommitCallback(null, null);
+    }
+    return true;
+  }
+
+  /**
+   * Completes the commit in flight. The current transaction is aborted if that commit failed, as the current
+   * transaction may have seen its changes.
+   */
+  private void awaitPipeline() throws TransactionFailureException {
+    if (!txClient.pipeline.awaitCommit()) {
+      abort(new TransactionFailureException("Commit of the previous transaction failed, aborting transaction."));
+    }
+  }
+
+  /**
+   * Detaches the {@link PipelinedTransactionAware} from the transaction instead of the post-commit if the
+   * transaction is handed over to the pipeline.
+   */
+  private final class DetachableTransactionAware implements TransactionAware {
+
+    private final TransactionAware delegate;
+
+    DetachableTransactionAware(TransactionAware delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void startTx(Transaction tx) {
+      delegate.startTx(tx);
+    }
+
+    @Override
+    public Collection<byte[]> getTxChanges() {
+      return delegate.getTxChanges();
+    }
+
+    @Override
+    public boolean commitTx() throws Exception {
+      return delegate.commitTx();
+    }
+
+    @Override
+    public void postTxCommit() {
+      if (!detaching) {
+        delegate.postTxCommit();
+      } else {
+        ((PipelinedTransactionAware) delegate).detachTx();
+      }
+    }
+
+    @Override
+    public boolean rollbackTx() throws Exception {
+      return delegate.rollbackTx();
+    }
+
+    @Override
+    public String getTransactionAwareName() {
+      return delegate.getTransactionAwareName();
+    }
+  }
+
+  /**
+   * Forwards to the given {@link TransactionSystemClient}, except that the commit of a transaction that is handed
+   * over is submitted to the pipeline. The commit is reported as successful, as its result is only acted on by
+   * {@link TransactionPipeline#awaitCommit()}.
+   */
+  private static final class PipeliningTransactionClient implements TransactionSystemClient {
+
+    private final TransactionSystemClient delegate;
+    private final TransactionPipeline pipeline;
+    private List<PipelinedTransactionAware> commitTxAwares;
+    private FutureCallback<Void> commitCallback;
+
+    PipeliningTransactionClient(TransactionSystemClient delegate, TransactionPipeline pipeline) {
+      this.delegate = delegate;
+      this.pipeline = pipeline;
+    }
+
+    void setCommitCallback(List<PipelinedTransactionAware> txAwares, FutureCallback<Void> callback) {
+      this.commitTxAwares = txAwares;
+      this.commitCallback = callback;
+    }
+
+    @Override
+    public boolean commit(Transaction tx) throws TransactionNotInProgressException {
+      if (commitCallback == null) {
+        return delegate.commit(tx);
+      }
+      pipeline.submit(tx, commitTxAwares, commitCallback);
+      return true;
+    }
+
+    @Override
+    public Transaction startShort() {
+      return delegate.startShort();
+    }
+
+    @Override
+    public Transaction startShort(int timeout) {
+      return delegate.startShort(timeout);
+    }
+
+    @Override
+    public Transaction startLong() {
+      return delegate.startLong();
+    }
+
+    @Override
+    public boolean canCommit(Transaction tx, Collection<byte[]> changeIds) throws TransactionNotInProgressException {
+      return delegate.canCommit(tx, changeIds);
+    }
+
+    @Override
+    public void abort(Transaction tx) {
+      delegate.abort(tx);
+    }
+
+    @Override
+    public boolean invalidate(long tx) {
+      return delegate.invalidate(tx);
+    }
+
+    @Override
+    public InputStream getSnapshotInputStream() throws TransactionCouldNotTakeSnapshotException {
+      return delegate.getSnapshotInputStream();
+    }
+
+    @Override
+    public String status() {
+      return delegate.status();
+    }
+
+    @Override
+    public void resetState() {
+      delegate.resetState();
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.runtime;
+
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionAware;
+import co.cask.tephra.TransactionConflictException;
+import co.cask.tephra.TransactionSystemClient;
+import co.cask.tigon.data.transaction.PipelinedTransactionAware;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Commits transactions to the transaction server in the background, so that the next transaction can dequeue and
+ * process while the commit of the previous one is in flight. At most one commit is in flight at a time.
+ * <p>
+ * A transaction is handed over by {@link PipelinedTransactionContext#finish(FutureCallback)} after its changes
+ * are persisted. The commit result is only acted on by {@link #awaitCommit()}, which is called before the next
+ * transaction checks for conflicts. If the commit failed, the detached transaction is rolled back, so that its
+ * inputs are dequeued again, and the caller is expected to roll back the current transaction as well.
+ * </p>
+ * <p>
+ * This class is not thread safe. Except for the commit call, all operations have to be called from the thread that
+ * runs the transactions, or with proper synchronization between the threads.
+ * </p>
+ */
+public final class TransactionPipeline implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TransactionPipeline.class);
+
+  private final TransactionSystemClient txClient;
+  private final Iterable<TransactionAware> txAwares;
+  private final ExecutorService commitExecutor;
+  private PendingCommit pendingCommit;
+
+  TransactionPipeline(TransactionSystemClient txClient, Iterable<TransactionAware> txAwares) {
+    this.txClient = txClient;
+    this.txAwares = txAwares;
+    this.commitExecutor = Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("tx-commit"));
+  }
+
+  /**
+   * Creates a new {@link PipelinedTransactionContext} that commits through this pipeline.
+   */
+  public PipelinedTransactionContext createTransactionContext() {
+    return new PipelinedTransactionContext(txClient, txAwares, this);
+  }
+
+  /**
+   * Blocks until the commit in flight, if any, is completed, and completes the detached transaction accordingly.
+   * The callback given for the transaction is called before this method returns.
+   *
+   * @return {@code true} if there was no commit in flight or if it succeeded, {@code false} if it failed.
+   */
+  public boolean awaitCommit() {
+    if (pendingCommit == null) {
+      return true;
+    }
+    PendingCommit commit = pendingCommit;
+    pendingCommit = null;
+
+    Throwable failure;
+    try {
+      if (Uninterruptibles.getUninterruptibly(commit.future)) {
+        for (PipelinedTransactionAware txAware : commit.txAwares) {
+          try {
+            txAware.postDetachedTxCommit();
+          } catch (Throwable t) {
+            // Same as postTxCommit, the transaction is committed already, hence only log it.
+            LOG.warn("Unable to perform post-commit in transaction-aware '{}' for transaction {}.",
+                     txAware.getTransactionAwareName(), commit.tx.getWritePointer(), t);
+          }
+        }
+        commit.callback.onSuccess(null);
+        return true;
+      }
+      failure = new TransactionConflictException(
+        String.format("Conflict detected for transaction %d.", commit.tx.getWritePointer()));
+    } catch (ExecutionException e) {
+      failure = e.getCause();
+    }
+
+    LOG.warn("Commit of transaction {} failed. Rolling back.", commit.tx.getWritePointer(), failure);
+    rollback(commit);
+    commit.callback.onFailure(failure);
+    return false;
+  }
+
+  /**
+   * Returns {@code true} if there is a commit in flight.
+   */
+  public boolean hasPendingCommit() {
+    return pendingCommit != null;
+  }
+
+  @Override
+  public void close() {
+    commitExecutor.shutdown();
+  }
+
+  /**
+   * Submits the commit of a transaction that is detached from the given {@link PipelinedTransactionAware}s.
+   */
+  void submit(final Transaction tx, List<PipelinedTransactionAware> txAwares, FutureCallback<Void> callback) {
+    Preconditions.checkState(pendingCommit == null, "Previous commit is not completed.");
+    Future<Boolean> future = commitExecutor.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return txClient.commit(tx);
+      }
+    });
+    pendingCommit = new PendingCommit(tx, txAwares, future, callback);
+  }
+
+  /**
+   * Rolls back a failed commit. Same as {@link co.cask.tephra.TransactionContext#abort()}, the transaction is
+   * invalidated if any of the rollbacks failed.
+   */
+  private void rollback(PendingCommit commit) {
+    boolean success = true;
+    for (PipelinedTransactionAware txAware : commit.txAwares) {
+      try {
+        if (!txAware.rollbackDetachedTx()) {
+          success = false;
+        }
+      } catch (Throwable t) {
+        LOG.warn("Unable to roll back changes in transaction-aware '{}' for transaction {}.",
+                 txAware.getTransactionAwareName(), commit.tx.getWritePointer(), t);
+        success = false;
+      }
+    }
+    try {
+      if (success) {
+        txClient.abort(commit.tx);
+      } else {
+        txClient.invalidate(commit.tx.getWritePointer());
+      }
+    } catch (Throwable t) {
+      LOG.warn("Unable to abort transaction {}.", commit.tx.getWritePointer(), t);
+    }
+  }
+
+  /**
+   * A transaction with its commit in flight.
+   */
+  private static final class PendingCommit {
+    private final Transaction tx;
+    private final List<PipelinedTransactionAware> txAwares;
+    private final Future<Boolean> future;
+    private final FutureCallback<Void> callback;
+
+    PendingCommit(Transaction tx, List<PipelinedTransactionAware> txAwares,
+                  Future<Boolean> future, FutureCallback<Void> callback) {
+      this.tx = tx;
+      this.txAwares = txAwares;
+      this.future = future;
+      this.callback = callback;
+    }
+  }
+}
@@ -21,7 +21,9 @@ import co.cask.tigon.app.guice.MetricsClientRuntimeModule;
 import co.cask.tigon.app.program.Program;
 import co.cask.tigon.app.program.Programs;
 import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.data.queue.QueueClientFactory;
 import co.cask.tigon.data.runtime.DataFabricModules;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 import co.cask.tigon.guice.ConfigModule;
 import co.cask.tigon.guice.DiscoveryRuntimeModule;
 import co.cask.tigon.guice.IOModule;
@@ -43,6 +45,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -72,6 +75,7 @@ import org.apache.twill.api.TwillRunnable;
 import org.apache.twill.api.TwillRunnableSpecification;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Services;
+import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.apache.twill.filesystem.LocalLocationFactory;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.filesystem.LocationFactory;
@@ -79,6 +83,7 @@ import org.apache.twill.zookeeper.ZKClientService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
@@ -247,6 +252,16 @@ public abstract class AbstractProgramTwillRunnable<T extends ProgramRunner> impl
   @Override
   public void destroy() {
     LOG.info("Releasing resources: {}", name);
+    // The queue client factory holds the resources shared by all queue producers
+    QueueClientFactory queueClientFactory = injector.getInstance(QueueClientFactory.class);
+    if (queueClientFactory instanceof Closeable) {
+      Closeables.closeQuietly((Closeable) queueClientFactory);
+    }
+    // The queue notifier sends the commit notifications of all queue producers
+    QueueNotifier queueNotifier = injector.getInstance(QueueNotifier.class);
+    if (queueNotifier instanceof Closeable) {
+      Closeables.closeQuietly((Closeable) queueNotifier);
+    }
     Futures.getUnchecked(
       Services.chainStop(resourceReporter, metricsCollectionService, zkClientService));
     LOG.info("Runnable stopped: {}", name);
@@ -312,6 +327,8 @@ public abstract class AbstractProgramTwillRunnable<T extends ProgramRunner> impl
               return context.announce(serviceName, port);
             }
           });
+          // Services announced by the program are discovered through the TwillContext
+          bind(DiscoveryServiceClient.class).annotatedWith(Names.named("program.discovery.client")).toInstance(context);
         }
       }
     );
@@ -26,12 +26,17 @@ import co.cask.tigon.app.program.Program;
 import co.cask.tigon.internal.app.runtime.AbstractContext;
 import co.cask.tigon.internal.app.runtime.Arguments;
 import co.cask.tigon.internal.app.runtime.DataFabricFacade;
+import co.cask.tigon.internal.app.runtime.PipelinedTransactionContext;
+import co.cask.tigon.internal.app.runtime.TransactionPipeline;
 import co.cask.tigon.logging.FlowletLoggingContext;
 import co.cask.tigon.logging.LoggingContext;
 import co.cask.tigon.metrics.MetricsCollectionService;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.ServiceAnnouncer;
 import org.apache.twill.common.Cancellable;
@@ -57,13 +62,16 @@ final class BasicFlowletContext extends AbstractContext implements FlowletContex
   private final DataFabricFacade dataFabricFacade;
   private TransactionContext transactionContext;
   private final ServiceAnnouncer serviceAnnouncer;
+  private final TickTrigger tickTrigger;
+  private final boolean concurrentProcess;
+  private final List<ThreadLocalQueueProducer> threadLocalProducers;
 
   BasicFlowletContext(Program program, String flowletId,
                       int instanceId, RunId runId,
                       int instanceCount,
                       Arguments runtimeArguments, FlowletSpecification flowletSpec,
                       MetricsCollectionService metricsCollectionService, DataFabricFacade dataFabricFacade,
-                      ServiceAnnouncer serviceAnnouncer) {
+                      ServiceAnnouncer serviceAnnouncer, boolean concurrentProcess) {
     super(program, runId, getMetricContext(program, flowletId, instanceId), metricsCollectionService);
     this.flowId = program.getName();
     this.flowletId = flowletId;
@@ -76,6 +84,9 @@ final class BasicFlowletContext extends AbstractContext implements FlowletContex
     this.transactionAwares = Lists.newArrayList();
     this.dataFabricFacade = dataFabricFacade;
     this.serviceAnnouncer = serviceAnnouncer;
+    this.tickTrigger = new TickTrigger();
+    this.concurrentProcess = concurrentProcess;
+    this.threadLocalProducers = Lists.newArrayList();
   }
 
   @Override
@@ -101,14 +112,13 @@ final class BasicFlowletContext extends AbstractContext implements FlowletContex
 
   @Override
   public void addTransactionAware(TransactionAware transactionAware) {
-    transactionAwares.add(transactionAware);
-    if (transactionContext != null) {
-      transactionContext.addTransactionAware(transactionAware);
-    }
+    checkTransactionAwareAllowed();
+    doAddTransactionAware(transactionAware);
   }
 
   @Override
   public void addTransactionAwares(Iterable<? extends TransactionAware> transactionAwares) {
+    checkTransactionAwareAllowed();
     Iterables.addAll(this.transactionAwares, transactionAwares);
     if (transactionContext != null) {
       for (TransactionAware transactionAware : transactionAwares) {
@@ -117,6 +127,52 @@ final class BasicFlowletContext extends AbstractContext implements FlowletContex
     }
   }
 
+  /**
+   * Adds a {@link ThreadLocalQueueProducer} to the transactions of this flowlet. It is closed when this context
+   * is closed.
+   */
+  void addThreadLocalProducer(ThreadLocalQueueProducer producer) {
+    threadLocalProducers.add(producer);
+    doAddTransactionAware(producer);
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    for (ThreadLocalQueueProducer producer : threadLocalProducers) {
+      Closeables.closeQuietly(producer);
+    }
+  }
+
+  private void doAddTransactionAware(TransactionAware transactionAware) {
+    transactionAwares.add(transactionAware);
+    if (transactionContext != null) {
+      transactionContext.addTransactionAware(transactionAware);
+    }
+  }
+
+  /**
+   * The process methods of a @ConcurrentProcess flowlet run in concurrent transactions, which would all share the same
+   * {@link TransactionAware} instance.
+   */
+  private void checkTransactionAwareAllowed() {
+    Preconditions.checkState(!concurrentProcess,
+                             "Flowlet %s is annotated with @ConcurrentProcess and can not add TransactionAware, " +
+                             "which would be shared by concurrent transactions.", flowletId);
+  }
+
+  @Override
+  public void triggerTick() {
+    tickTrigger.trigger();
+  }
+
+  /**
+   * @return The {@link TickTrigger} for requests made through {@link #triggerTick()}.
+   */
+  public TickTrigger getTickTrigger() {
+    return tickTrigger;
+  }
+
   /**
    * @return A map of runtime key and value arguments supplied by the user.
    */
@@ -153,6 +209,34 @@ final class BasicFlowletContext extends AbstractContext implements FlowletContex
     return transactionContext;
   }
 
+  /**
+   * Create a new {@link PipelinedTransactionContext} from the given pipeline for this flowlet. Add all
+   * {@link TransactionAware}s to the context.
+   * @return a new PipelinedTransactionContext.
+   */
+  public PipelinedTransactionContext createTransactionContext(TransactionPipeline pipeline) {
+    PipelinedTransactionContext txContext = pipeline.createTransactionContext();
+    transactionContext = txContext;
+    for (TransactionAware transactionAware : transactionAwares) {
+      txContext.addTransactionAware(transactionAware);
+    }
+    return txContext;
+  }
+
+  /**
+   * Create a new {@link TransactionContext} for this flowlet. Only add {@link TransactionAware}s that are accepted
+   * by the given filter to the context. Unlike {@link #createTransactionContext()}, the new context doesn't become
+   * the current one, as multiple of them can be active concurrently.
+   * @return a new TransactionContext.
+   */
+  public TransactionContext createTransactionContext(Predicate<? super TransactionAware> filter) {
+    TransactionContext txContext = dataFabricFacade.createTransactionManager(filter);
+    for (TransactionAware transactionAware : Iterables.filter(transactionAwares, filter)) {
+      txContext.addTransactionAware(transactionAware);
+    }
+    return txContext;
+  }
+
   @Override
   public int getInstanceId() {
     return instanceId;
@@ -24,58 +24,150 @@ import co.cask.tigon.internal.io.Schema;
 import co.cask.tigon.io.BinaryEncoder;
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
- * @param <T>
+ * An {@link OutputEmitter} that encodes data with a {@link DatumWriter} and enqueues it to a {@link QueueProducer}.
+ * Encoding is done into a buffer that is reused across calls. The buffer is prefilled with the schema hash, so
+ * that only the data needs to be encoded and the only copy is the exact-size payload given to the queue.
+ *
+ * @param <T> Type of data to emit.
  */
 public final class DatumOutputEmitter<T> implements OutputEmitter<T> {
 
   public static final Function<Object, Integer> PARTITION_MAP_TRANSFORMER = new PartitionMapTransformer();
 
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
   private final QueueProducer queueProducer;
   private final byte[] schemaHash;
   private final DatumWriter<T> writer;
+  private final ThreadLocal<EncodeBuffer> encodeBuffer;
 
   public DatumOutputEmitter(QueueProducer queueProducer, Schema schema, DatumWriter<T> writer) {
     this.queueProducer = queueProducer;
     this.schemaHash = schema.getSchemaHash().toByteArray();
     this.writer = writer;
+    this.encodeBuffer = new ThreadLocal<EncodeBuffer>() {
+      @Override
+      protected EncodeBuffer initialValue() {
+        return new EncodeBuffer(schemaHash);
+      }
+    };
   }
 
   @Override
   public void emit(T data) {
-    emit(data, ImmutableMap.<String, Object>of());
+    enqueue(new QueueEntry(encode(data)));
   }
 
   @Override
   public void emit(T data, String partitionKey, Object partitionValue) {
-    emit(data, ImmutableMap.of(partitionKey, partitionValue));
+    enqueue(new QueueEntry(partitionKey, partitionHash(partitionValue), encode(data)));
   }
 
   @Override
   public void emit(T data, Map<String, Object> partitions) {
+    if (partitions.isEmpty()) {
+      emit(data);
+    } else if (partitions.size() == 1) {
+      Map.Entry<String, Object> partition = partitions.entrySet().iterator().next();
+      emit(data, partition.getKey(), partition.getValue());
+    } else {
+      enqueue(new QueueEntry(Maps.transformValues(partitions, PARTITION_MAP_TRANSFORMER), encode(data)));
+    }
+  }
+
+  private void enqueue(QueueEntry entry) {
+    try {
+      queueProducer.enqueue(entry);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Encodes the given data, prefixed with the schema hash.
+   *
+   * @return A byte array of the exact size of the encoded data.
+   */
+  private byte[] encode(T data) {
+    EncodeBuffer buffer = encodeBuffer.get();
+    buffer.reset();
     try {
-      ByteArrayOutputStream output = new ByteArrayOutputStream();
-      output.write(schemaHash);
-      writer.encode(data, new BinaryEncoder(output));
-      queueProducer.enqueue(new QueueEntry(Maps.transformValues(partitions, PARTITION_MAP_TRANSFORMER),
-                                           output.toByteArray()));
+      writer.encode(data, buffer.getEncoder());
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
+    return buffer.toByteArray();
+  }
+
+  private static int partitionHash(@Nullable Object partitionValue) {
+    return partitionValue == null ? 0 : partitionValue.hashCode();
   }
 
   private static final class PartitionMapTransformer implements Function<Object, Integer> {
     @Override
     public Integer apply(@Nullable Object input) {
-      return input == null ? 0 : input.hashCode();
+      return partitionHash(input);
+    }
+  }
+
+  /**
+   * An unsynchronized, growable byte buffer that always starts with a fixed prefix.
+   */
+  private static final class EncodeBuffer extends OutputStream {
+
+    private final int prefixLength;
+    private final BinaryEncoder encoder;
+    private byte[] buffer;
+    private int size;
+
+    EncodeBuffer(byte[] prefix) {
+      this.prefixLength = prefix.length;
+      this.buffer = Arrays.copyOf(prefix, Math.max(INITIAL_BUFFER_SIZE, prefix.length));
+      this.size = prefixLength;
+      this.encoder = new BinaryEncoder(this);
+    }
+
+    BinaryEncoder getEncoder() {
+      return encoder;
+    }
+
+    /**
+     * Discards everything written after the prefix.
+     */
+    void reset() {
+      size = prefixLength;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, size);
+    }
+
+    @Override
+    public void write(int b) {
+      ensureCapacity(size + 1);
+      buffer[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      ensureCapacity(size + len);
+      System.arraycopy(b, off, buffer, size, len);
+      size += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, capacity));
+      }
     }
   }
 }
@@ -16,6 +16,7 @@
 
 package co.cask.tigon.internal.app.runtime.flow;
 
+import co.cask.tephra.TransactionAware;
 import co.cask.tephra.TransactionContext;
 import co.cask.tephra.TransactionFailureException;
 import co.cask.tigon.api.flow.flowlet.Callback;
@@ -24,24 +25,36 @@ import co.cask.tigon.api.flow.flowlet.FailureReason;
 import co.cask.tigon.api.flow.flowlet.Flowlet;
 import co.cask.tigon.api.flow.flowlet.InputContext;
 import co.cask.tigon.app.queue.InputDatum;
+import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 import co.cask.tigon.internal.app.queue.SingleItemQueueReader;
 import co.cask.tigon.internal.app.runtime.DataFabricFacade;
+import co.cask.tigon.internal.app.runtime.PipelinedTransactionContext;
+import co.cask.tigon.internal.app.runtime.TransactionPipeline;
 import co.cask.tigon.logging.LoggingContext;
 import co.cask.tigon.logging.LoggingContextAccessor;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Service;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
@@ -55,7 +68,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * This class responsible invoking process methods one by one and commit the post process transaction.
+ * This class responsible invoking process methods and commit the post process transaction. Process methods are
+ * called one by one, unless the driver is created with more than one process thread, in which case different
+ * process methods are called concurrently, each in its own transaction. A single process method is never called
+ * concurrently with itself, hence the dequeue order of each input is preserved.
+ * <p>
+ * With pipelined commit, the commit of a transaction to the transaction server continues in the background while
+ * the next transaction dequeues and processes. The success callback of an input is only called after its commit
+ * completed. If a commit fails, the transaction that overlapped with it is rolled back too and the inputs of both
+ * are dequeued again in order.
+ * </p>
  */
 final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
@@ -70,22 +92,42 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   private final CyclicBarrier suspendBarrier;
   private final AtomicInteger inflight;
   private final DataFabricFacade dataFabricFacade;
+  private final QueueNotifier queueNotifier;
+  private final TickTrigger tickTrigger;
   private final Service serviceHook;
+  private final int processThreads;
+  private final boolean pipelinedCommit;
+  // Queues that had new entries committed since the run loop last looked at it.
+  private final Set<QueueName> notifiedQueues;
+  // Number of process entries being executed concurrently.
+  private final AtomicInteger runningTasks;
+  // Monitor for waking up the run loop on queue notification or completion of a process entry.
+  private final Object wakeupLock;
 
   private Thread runnerThread;
   private ExecutorService processExecutor;
+  // Only used by the process executor thread, or by the run loop thread while no process entry is executing.
+  private TransactionPipeline transactionPipeline;
 
   FlowletProcessDriver(Flowlet flowlet, BasicFlowletContext flowletContext,
                        Collection<ProcessSpecification> processSpecs,
                        Callback txCallback, DataFabricFacade dataFabricFacade,
-                       Service serviceHook) {
+                       QueueNotifier queueNotifier, Service serviceHook, int processThreads,
+                       boolean pipelinedCommit) {
     this.flowlet = flowlet;
     this.flowletContext = flowletContext;
     this.loggingContext = flowletContext.getLoggingContext();
     this.processSpecs = processSpecs;
     this.txCallback = txCallback;
     this.dataFabricFacade = dataFabricFacade;
+    this.queueNotifier = queueNotifier;
+    this.tickTrigger = flowletContext.getTickTrigger();
     this.serviceHook = serviceHook;
+    this.processThreads = Math.max(1, Math.min(processThreads, processSpecs.size()));
+    this.pipelinedCommit = pipelinedCommit;
+    this.notifiedQueues = Sets.newSetFromMap(new ConcurrentHashMap<QueueName, Boolean>());
+    this.runningTasks = new AtomicInteger(0);
+    this.wakeupLock = new Object();
     this.inflight = new AtomicInteger(0);
 
     this.suspension = new AtomicReference<CountDownLatch>();
@@ -96,13 +138,26 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   protected void startUp() throws Exception {
     runnerThread = Thread.currentThread();
     flowletContext.getProgramMetrics().gauge("process.instance", 1);
-    processExecutor = Executors.newSingleThreadExecutor(
-      Threads.createDaemonThreadFactory(getServiceName() + "-executor"));
+    if (processThreads > 1) {
+      LOG.info("Calling process methods with {} threads: {}", processThreads, flowletContext);
+      processExecutor = Executors.newFixedThreadPool(
+        processThreads, Threads.createDaemonThreadFactory(getServiceName() + "-executor-%d"));
+    } else {
+      processExecutor = Executors.newSingleThreadExecutor(
+        Threads.createDaemonThreadFactory(getServiceName() + "-executor"));
+      if (pipelinedCommit) {
+        LOG.info("Committing transactions in pipeline: {}", flowletContext);
+        transactionPipeline = dataFabricFacade.createTransactionPipeline();
+      }
+    }
   }
 
   @Override
   protected void shutDown() throws Exception {
     processExecutor.shutdown();
+    if (transactionPipeline != null) {
+      transactionPipeline.close();
+    }
   }
 
   @Override
@@ -148,6 +203,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     LoggingContextAccessor.setLoggingContext(loggingContext);
 
     serviceHook.startAndWait();
+    List<Cancellable> watches = Lists.newArrayList();
     try {
       initFlowlet();
 
@@ -155,14 +211,19 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       BlockingQueue<FlowletProcessEntry<?>> processQueue =
         new PriorityBlockingQueue<FlowletProcessEntry<?>>(processSpecs.size());
       for (ProcessSpecification<?> spec : processSpecs) {
-        processQueue.offer(FlowletProcessEntry.create(spec));
+        processQueue.offer(FlowletProcessEntry.create(spec, tickTrigger));
       }
       List<FlowletProcessEntry<?>> processList = Lists.newArrayListWithExpectedSize(processSpecs.size() * 2);
+      watchQueues(watches);
+      tickTrigger.setListener(createWakeupListener());
 
       while (isRunning()) {
         CountDownLatch suspendLatch = suspension.get();
         if (suspendLatch != null) {
           try {
+            // Only suspend after all running process entries and commits are completed.
+            awaitRunningTasks();
+            completePendingCommit();
             suspendBarrier.await();
             suspendLatch.await();
           } catch (Exception e) {
@@ -171,9 +232,14 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
           }
         }
 
+        if (!isProcessEntryReady(processQueue)) {
+          // Complete the commit in flight now instead of in the next transaction, which may take a while to come.
+          completePendingCommit();
+        }
+
         try {
-          // If the queue head need to wait, we had to wait.
-          processQueue.peek().await();
+          // If the queue head need to wait, we had to wait, unless new entries are committed to any input queue.
+          awaitProcessEntry(processQueue);
         } catch (InterruptedException e) {
           // Triggered by shutdown, simply continue and let the isRunning() check to deal with that.
           continue;
@@ -181,6 +247,12 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
         processList.clear();
         processQueue.drainTo(processList);
+        wakeUpNotifiedEntries(processList);
+
+        if (processThreads > 1) {
+          submitProcessEntries(processQueue, processList);
+          continue;
+        }
 
         // Execute the process method and block until it finished.
         Future<?> processFuture = processExecutor.submit(createProcessRunner(
@@ -207,14 +279,213 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
       // Clear the interrupted flag and execute Flowlet.destroy()
       Thread.interrupted();
+      if (processThreads > 1) {
+        stopProcessExecutor();
+      }
     } catch (InterruptedException e) {
       // It is ok to do nothing: we are shutting down
     } finally {
+      tickTrigger.setListener(null);
+      for (Cancellable watch : watches) {
+        watch.cancel();
+      }
+      completePendingCommit();
       destroyFlowlet();
       serviceHook.stopAndWait();
     }
   }
 
+  /**
+   * Watches for commits to all input queues through the {@link QueueNotifier}.
+   */
+  private void watchQueues(List<Cancellable> watches) {
+    Set<QueueName> queueNames = Sets.newHashSet();
+    for (ProcessSpecification<?> spec : processSpecs) {
+      queueNames.addAll(spec.getQueueNames());
+    }
+    for (final QueueName queueName : queueNames) {
+      watches.add(queueNotifier.watch(queueName, new Runnable() {
+        @Override
+        public void run() {
+          if (notifiedQueues.add(queueName)) {
+            synchronized (wakeupLock) {
+              wakeupLock.notifyAll();
+            }
+          }
+        }
+      }));
+    }
+  }
+
+  /**
+   * Creates a {@link Runnable} that wakes up the run loop, for requests made through
+   * {@link co.cask.tigon.api.flow.flowlet.FlowletContext#triggerTick()}.
+   */
+  private Runnable createWakeupListener() {
+    return new Runnable() {
+      @Override
+      public void run() {
+        synchronized (wakeupLock) {
+          wakeupLock.notifyAll();
+        }
+      }
+    };
+  }
+
+  /**
+   * Blocks until the head of the process queue is ready to be processed or until there is a queue notification
+   * or a pending tick trigger. If all entries are being processed concurrently, blocks until one of them is put
+   * back to the process queue.
+   */
+  private void awaitProcessEntry(BlockingQueue<FlowletProcessEntry<?>> processQueue) throws InterruptedException {
+    synchronized (wakeupLock) {
+      FlowletProcessEntry<?> head = processQueue.peek();
+      while (head == null) {
+        wakeupLock.wait();
+        head = processQueue.peek();
+      }
+      long waitTime = head.getWaitTime();
+      while (waitTime > 0 && notifiedQueues.isEmpty() && !hasPendingTrigger(processQueue)) {
+        TimeUnit.NANOSECONDS.timedWait(wakeupLock, waitTime);
+        // The head may be changed by a completed process entry.
+        head = processQueue.peek();
+        waitTime = head == null ? Long.MAX_VALUE : head.getWaitTime();
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if the head of the process queue can be processed without waiting.
+   */
+  private boolean isProcessEntryReady(BlockingQueue<FlowletProcessEntry<?>> processQueue) {
+    FlowletProcessEntry<?> head = processQueue.peek();
+    return !notifiedQueues.isEmpty() || (head != null && head.getWaitTime() <= 0) || hasPendingTrigger(processQueue);
+  }
+
+  /**
+   * Returns {@code true} if any triggered tick in the process queue is waiting for a trigger and got triggered.
+   */
+  private boolean hasPendingTrigger(BlockingQueue<FlowletProcessEntry<?>> processQueue) {
+    for (FlowletProcessEntry<?> entry : processQueue) {
+      if (entry.isTriggerPending()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Blocks until the commit in flight in the transaction pipeline, if any, is completed. It is executed by the
+   * process executor, so that the commit callbacks run with the program classloader. Must only be called while
+   * no process entry is executing.
+   */
+  private void completePendingCommit() {
+    if (transactionPipeline == null || !transactionPipeline.hasPendingCommit()) {
+      return;
+    }
+    final ClassLoader classLoader = flowletContext.getProgram().getClassLoader();
+    Future<?> future = processExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        Thread.currentThread().setContextClassLoader(classLoader);
+        transactionPipeline.awaitCommit();
+      }
+    });
+    try {
+      Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      LOG.error("Failed to complete commit: {}", flowletContext, e);
+    }
+  }
+
+  /**
+   * Blocks until all process entries submitted by {@link #submitProcessEntries} are completed.
+   */
+  private void awaitRunningTasks() throws InterruptedException {
+    synchronized (wakeupLock) {
+      while (runningTasks.get() > 0) {
+        wakeupLock.wait();
+      }
+    }
+  }
+
+  /**
+   * Submits each process entry that is ready for processing as a separate task to the process executor.
+   * Entries that are not ready are put back to the process queue.
+   */
+  private void submitProcessEntries(final BlockingQueue<FlowletProcessEntry<?>> processQueue,
+                                    List<FlowletProcessEntry<?>> processList) {
+    final ClassLoader classLoader = flowletContext.getProgram().getClassLoader();
+    for (final FlowletProcessEntry<?> entry : processList) {
+      if (!entry.shouldProcess()) {
+        processQueue.offer(entry);
+        continue;
+      }
+      runningTasks.incrementAndGet();
+      processExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          Thread.currentThread().setContextClassLoader(classLoader);
+          LoggingContextAccessor.setLoggingContext(loggingContext);
+          try {
+            if (!handleProcessEntry(entry, processQueue)) {
+              processQueue.offer(entry);
+            }
+          } catch (Throwable t) {
+            LOG.error("Unexpected exception when processing entry: {}", flowletContext, t);
+            processQueue.offer(entry);
+          } finally {
+            runningTasks.decrementAndGet();
+            synchronized (wakeupLock) {
+              wakeupLock.notifyAll();
+            }
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Stops the process executor, giving the running process entries a chance to complete.
+   */
+  private void stopProcessExecutor() {
+    processExecutor.shutdown();
+    try {
+      if (!processExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+        LOG.info("Flowlet {} takes longer than 30 seconds to quite. Force quitting.", flowletContext.getFlowletId());
+        processExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      processExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Resets the back-off of all entries that read from a queue with new entries, so that they get processed
+   * immediately instead of after the back-off time. Polling with back-off remains the fallback if notifications
+   * are disabled or get lost. Also schedules the triggered ticks that got triggered.
+   */
+  private void wakeUpNotifiedEntries(List<FlowletProcessEntry<?>> processList) {
+    for (FlowletProcessEntry<?> entry : processList) {
+      entry.applyTrigger();
+    }
+    if (notifiedQueues.isEmpty()) {
+      return;
+    }
+    Set<QueueName> queueNames = Sets.newHashSet();
+    Iterator<QueueName> iterator = notifiedQueues.iterator();
+    while (iterator.hasNext()) {
+      queueNames.add(iterator.next());
+      iterator.remove();
+    }
+    for (FlowletProcessEntry<?> entry : processList) {
+      if (!Sets.intersection(entry.getQueueNames(), queueNames).isEmpty()) {
+        entry.resetBackOff();
+      }
+    }
+  }
+
   /**
    * Creates a {@link Runnable} for execution of calling flowlet process methods.
    */
@@ -249,6 +520,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     if (!entry.shouldProcess()) {
       return false;
     }
+    entry.startCall();
 
     ProcessMethod<T> processMethod = entry.getProcessSpec().getProcessMethod();
     if (processMethod.needsInput()) {
@@ -256,7 +528,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     }
 
     // Begin transaction and dequeue
-    final TransactionContext txContext = flowletContext.createTransactionContext();
+    Predicate<TransactionAware> txAwareFilter = createTransactionAwareFilter(entry);
+    final TransactionContext txContext = createTransactionContext(txAwareFilter);
     try {
       txContext.start();
 
@@ -283,7 +556,14 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
           // Call the process method and commit the transaction. The current process entry will put
           // back to queue in the postProcess method (either a retry copy or itself).
           ProcessMethod.ProcessResult<?> result = processMethod.invoke(input);
-          postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result);
+          if (!entry.isRetry() && transactionPipeline != null && !transactionPipeline.awaitCommit()) {
+            // The previous transaction failed to commit and is rolled back. Also roll back this transaction,
+            // so that the inputs of both get dequeued again in the original order.
+            abortForReplay(txContext, input);
+            inflight.decrementAndGet();
+            return false;
+          }
+          postProcess(processMethodCallback(processQueue, entry, input), txContext, txAwareFilter, input, result);
           return true;
         } catch (Throwable t) {
           // If exception thrown from invoke or postProcess, the inflight count would not be touched.
@@ -308,10 +588,51 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     return false;
   }
 
+  private TransactionContext createTransactionContext(Predicate<TransactionAware> txAwareFilter) {
+    if (processThreads > 1) {
+      return flowletContext.createTransactionContext(txAwareFilter);
+    }
+    if (transactionPipeline != null) {
+      return flowletContext.createTransactionContext(transactionPipeline);
+    }
+    return flowletContext.createTransactionContext();
+  }
+
+  private void abortForReplay(TransactionContext txContext, InputDatum<?> input) {
+    try {
+      txContext.abort();
+    } catch (Throwable t) {
+      LOG.error("Fail to abort transaction: {}", input.getInputContext(), t);
+    }
+    input.completed(false);
+  }
+
+  /**
+   * Creates a {@link Predicate} that excludes the queue consumers of all other process entries, so that concurrent
+   * transactions don't interfere with each other through the consumers. Accepts everything when process methods
+   * are called one by one.
+   */
+  private Predicate<TransactionAware> createTransactionAwareFilter(FlowletProcessEntry<?> entry) {
+    if (processThreads <= 1) {
+      return Predicates.alwaysTrue();
+    }
+    final Set<Object> consumers = Sets.newIdentityHashSet();
+    for (ConsumerSupplier<?> consumerSupplier : entry.getConsumerSuppliers()) {
+      consumers.add(consumerSupplier.get());
+    }
+    return new Predicate<TransactionAware>() {
+      @Override
+      public boolean apply(TransactionAware input) {
+        return !(input instanceof QueueConsumer) || consumers.contains(input);
+      }
+    };
+  }
+
   /**
    * Process the process result. This method never throws.
    */
   private void postProcess(ProcessMethodCallback callback, TransactionContext txContext,
+                           Predicate<TransactionAware> txAwareFilter,
                            InputDatum input, ProcessMethod.ProcessResult result) {
     InputContext inputContext = input.getInputContext();
     Throwable failureCause = null;
@@ -321,6 +642,12 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         // If it is a retry input, force the dequeued entries into current transaction.
         if (input.getRetry() > 0) {
           input.reclaim();
+        } else if (txContext instanceof PipelinedTransactionContext) {
+          // Retries are always committed synchronously, so that a failed commit is retried the same way as before.
+          if (((PipelinedTransactionContext) txContext).finish(createCommitCallback(callback, input, result))) {
+            callback.onCommitPending();
+          }
+          return;
         }
         txContext.finish();
       } else {
@@ -343,24 +670,55 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       }
     }
 
+    input.completed(failureCause == null);
+
     try {
       if (failureCause == null) {
         callback.onSuccess(result.getEvent(), inputContext);
       } else {
         callback.onFailure(result.getEvent(), inputContext,
                            new FailureReason(failureType, failureCause.getMessage(), failureCause),
-                           createInputAcknowledger(input));
+                           createInputAcknowledger(input, txAwareFilter));
       }
     } catch (Throwable t) {
       LOG.error("Failed to invoke callback.", t);
     }
   }
 
-  private InputAcknowledger createInputAcknowledger(final InputDatum input) {
+  /**
+   * Creates the callback for a pipelined commit, which completes the input once the commit result is known.
+   * If the commit failed, the input gets dequeued again instead of being retried, hence no failure callback is
+   * called.
+   */
+  private FutureCallback<Void> createCommitCallback(final ProcessMethodCallback callback, final InputDatum input,
+                                                    final ProcessMethod.ProcessResult result) {
+    return new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void nothing) {
+        input.completed(true);
+        try {
+          callback.onSuccess(result.getEvent(), input.getInputContext());
+        } catch (Throwable t) {
+          LOG.error("Failed to invoke callback.", t);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.warn("Commit failure: {}, input will be processed again: {}", flowletContext, input, t);
+        flowletContext.getProgramMetrics().gauge("process.errors", 1);
+        input.completed(false);
+        inflight.decrementAndGet();
+      }
+    };
+  }
+
+  private InputAcknowledger createInputAcknowledger(final InputDatum input,
+                                                    final Predicate<TransactionAware> txAwareFilter) {
     return new InputAcknowledger() {
       @Override
       public void ack() throws TransactionFailureException {
-        TransactionContext txContext = dataFabricFacade.createTransactionManager();
+        TransactionContext txContext = dataFabricFacade.createTransactionManager(txAwareFilter);
         txContext.start();
         input.reclaim();
         txContext.finish();
@@ -417,6 +775,14 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     final int processedCount = processEntry.getProcessSpec().getProcessMethod().needsInput() ? input.size() : 1;
 
     return new ProcessMethodCallback() {
+      private boolean entryEnqueued;
+
+      @Override
+      public void onCommitPending() {
+        // Put the entry back right away, so that the next dequeue can overlap with the commit.
+        enqueueEntry();
+      }
+
       @Override
       public void onSuccess(Object object, InputContext inputContext) {
         try {
@@ -456,10 +822,9 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         if (failurePolicy == FailurePolicy.RETRY) {
           FlowletProcessEntry retryEntry = processEntry.isRetry() ?
             processEntry :
-            FlowletProcessEntry.create(processEntry.getProcessSpec(),
-                                       new ProcessSpecification<T>(new SingleItemQueueReader<T>(input),
-                                                                   processEntry.getProcessSpec().getProcessMethod(),
-                                                                   null));
+            processEntry.createRetry(new ProcessSpecification<T>(new SingleItemQueueReader<T>(input),
+                                                                 processEntry.getProcessSpec().getProcessMethod(),
+                                                                 null));
           processQueue.offer(retryEntry);
 
         } else if (failurePolicy == FailurePolicy.IGNORE) {
@@ -476,7 +841,10 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       }
 
       private void enqueueEntry() {
-        processQueue.offer(processEntry.resetRetry());
+        if (!entryEnqueued) {
+          entryEnqueued = true;
+          processQueue.offer(processEntry.resetRetry());
+        }
       }
 
       private void gaugeEventProcessed(QueueName inputQueueName) {
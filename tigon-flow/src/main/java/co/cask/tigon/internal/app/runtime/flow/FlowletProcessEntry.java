@@ -16,8 +16,11 @@
 
 package co.cask.tigon.internal.app.runtime.flow;
 
+import co.cask.tigon.data.queue.QueueName;
 import com.google.common.primitives.Longs;
 
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,36 +43,59 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
   // Doubling back-off time during exponential increase, up to maximum back-off time.
   private static final int BACKOFF_EXP = 2;
 
+  // Delay in nanoseconds that keeps a triggered tick from being processed until it is triggered.
+  private static final long PARKED_DELAY = Long.MAX_VALUE / 2;
+
   private final ProcessSpecification<T> processSpec;
   private final ProcessSpecification<T> retrySpec;
   private final boolean isTick;
+  // Only set for a triggered tick.
+  private final TickTrigger tickTrigger;
   private long nextDeque;
   private long currentBackOff = BACKOFF_MIN;
+  // Trigger count at the start of the last call of a triggered tick.
+  private long consumedTriggers;
+  // Earliest time for the next call of a triggered tick.
+  private long nextTriggeredDeque;
+  private boolean parked;
 
   static <T> FlowletProcessEntry<T> create(ProcessSpecification<T> processSpec) {
-    return new FlowletProcessEntry<T>(processSpec, null, processSpec.getInitialCallDelay());
+    return new FlowletProcessEntry<T>(processSpec, null, processSpec.getInitialCallDelay(), null, 0L);
   }
 
-  static <T> FlowletProcessEntry<T> create(ProcessSpecification<T> processSpec, ProcessSpecification<T> retrySpec) {
-    return new FlowletProcessEntry<T>(processSpec, retrySpec, 0);
+  /**
+   * Creates an entry that, if the process specification is a triggered tick, is only processed after the given
+   * {@link TickTrigger} was triggered.
+   */
+  static <T> FlowletProcessEntry<T> create(ProcessSpecification<T> processSpec, TickTrigger tickTrigger) {
+    if (!processSpec.isTriggeredTick()) {
+      return create(processSpec);
+    }
+    FlowletProcessEntry<T> entry = new FlowletProcessEntry<T>(processSpec, null, 0L, tickTrigger, 0L);
+    entry.schedule(processSpec.getInitialCallDelay());
+    return entry;
   }
 
-  private FlowletProcessEntry(ProcessSpecification<T> processSpec, ProcessSpecification<T> retrySpec, long nextDeque) {
+  private FlowletProcessEntry(ProcessSpecification<T> processSpec, ProcessSpecification<T> retrySpec, long nextDeque,
+                              TickTrigger tickTrigger, long consumedTriggers) {
     this.processSpec = processSpec;
     this.retrySpec = retrySpec;
     this.nextDeque = nextDeque;
     this.isTick = processSpec.isTick();
+    this.tickTrigger = tickTrigger;
+    this.consumedTriggers = consumedTriggers;
   }
 
   public boolean isRetry() {
     return retrySpec != null;
   }
 
-  public void await() throws InterruptedException {
-    long waitTime = nextDeque - System.nanoTime();
-    if (waitTime > 0) {
-      TimeUnit.NANOSECONDS.sleep(waitTime);
-    }
+  /**
+   * Returns the time in nanoseconds until this entry should be processed, or a non-positive value if it should be
+   * processed now.
+   */
+  public long getWaitTime() {
+    return nextDeque - System.nanoTime();
   }
 
   public boolean shouldProcess() {
@@ -82,8 +108,12 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
   }
 
   public void resetBackOff() {
-    nextDeque = System.nanoTime() + processSpec.getCallDelay();
     currentBackOff = BACKOFF_MIN;
+    if (tickTrigger != null && retrySpec == null) {
+      schedule(processSpec.getCallDelay());
+      return;
+    }
+    nextDeque = System.nanoTime() + processSpec.getCallDelay();
   }
 
   public void backOff() {
@@ -95,15 +125,85 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
     }
   }
 
+  /**
+   * Returns names of the queues that this entry reads from, which excludes the retry input.
+   */
+  public Set<QueueName> getQueueNames() {
+    return processSpec.getQueueNames();
+  }
+
+  /**
+   * Returns the {@link ConsumerSupplier}s of the queues that this entry reads from, which includes the consumers
+   * of the retry input.
+   */
+  public List<ConsumerSupplier<?>> getConsumerSuppliers() {
+    return processSpec.getConsumerSuppliers();
+  }
+
+  /**
+   * Records the start of a call, which consumes all triggers so far if this entry is a triggered tick.
+   */
+  public void startCall() {
+    if (tickTrigger != null) {
+      consumedTriggers = tickTrigger.getCount();
+    }
+  }
+
+  /**
+   * Returns {@code true} if this entry is a triggered tick that waits for a trigger, and was triggered since the
+   * start of its last call.
+   */
+  public boolean isTriggerPending() {
+    return parked && tickTrigger.getCount() != consumedTriggers;
+  }
+
+  /**
+   * Schedules this entry for processing if {@link #isTriggerPending()}. Must not be called while the entry is in a
+   * priority queue, as it changes the ordering.
+   */
+  public void applyTrigger() {
+    if (isTriggerPending()) {
+      nextDeque = nextTriggeredDeque;
+      parked = false;
+    }
+  }
+
   public ProcessSpecification<T> getProcessSpec() {
     return retrySpec == null ? processSpec : retrySpec;
   }
 
+  /**
+   * Creates an entry for retrying an input with the given process specification.
+   */
+  public FlowletProcessEntry<T> createRetry(ProcessSpecification<T> retrySpec) {
+    return new FlowletProcessEntry<T>(processSpec, retrySpec, 0, tickTrigger, consumedTriggers);
+  }
+
   public FlowletProcessEntry<T> resetRetry() {
-    return retrySpec == null ? this : new FlowletProcessEntry<T>(processSpec, null, processSpec.getCallDelay());
+    if (retrySpec == null) {
+      return this;
+    }
+    FlowletProcessEntry<T> entry = new FlowletProcessEntry<T>(processSpec, null, processSpec.getCallDelay(),
+                                                              tickTrigger, consumedTriggers);
+    if (tickTrigger != null) {
+      entry.schedule(processSpec.getCallDelay());
+    }
+    return entry;
   }
 
   public boolean isTick() {
     return isTick;
   }
+
+  /**
+   * Schedules a triggered tick for processing after the given delay if it was triggered since the start of its
+   * last call, otherwise parks it until it is triggered.
+   */
+  private void schedule(long delay) {
+    long now = System.nanoTime();
+    nextTriggeredDeque = now + delay;
+    nextDeque = now + PARKED_DELAY;
+    parked = true;
+    applyTrigger();
+  }
 }
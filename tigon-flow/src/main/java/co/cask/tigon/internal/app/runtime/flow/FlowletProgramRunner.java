@@ -17,6 +17,7 @@
 package co.cask.tigon.internal.app.runtime.flow;
 
 import co.cask.tigon.api.annotation.Batch;
+import co.cask.tigon.api.annotation.ConcurrentProcess;
 import co.cask.tigon.api.annotation.HashPartition;
 import co.cask.tigon.api.annotation.ProcessInput;
 import co.cask.tigon.api.annotation.RoundRobin;
@@ -37,6 +38,7 @@ import co.cask.tigon.app.queue.QueueSpecification;
 import co.cask.tigon.app.queue.QueueSpecificationGenerator.Node;
 import co.cask.tigon.async.ExecutorUtils;
 import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.conf.Constants;
 import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.DequeueStrategy;
 import co.cask.tigon.data.queue.QueueClientFactory;
@@ -44,19 +46,24 @@ import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.queue.QueueProducer;
 import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
+import co.cask.tigon.internal.app.queue.AdaptiveBatchSizer;
 import co.cask.tigon.internal.app.queue.QueueReaderFactory;
 import co.cask.tigon.internal.app.queue.RoundRobinQueueReader;
 import co.cask.tigon.internal.app.queue.SimpleQueueSpecificationGenerator;
 import co.cask.tigon.internal.app.runtime.DataFabricFacade;
 import co.cask.tigon.internal.app.runtime.DataFabricFacadeFactory;
+import co.cask.tigon.internal.app.runtime.DatumReaderFactoryFieldSetter;
+import co.cask.tigon.internal.app.runtime.DiscoveryServiceClientFieldSetter;
 import co.cask.tigon.internal.app.runtime.MetricsFieldSetter;
 import co.cask.tigon.internal.app.runtime.ProgramController;
 import co.cask.tigon.internal.app.runtime.ProgramOptionConstants;
 import co.cask.tigon.internal.app.runtime.ProgramOptions;
 import co.cask.tigon.internal.app.runtime.ProgramRunner;
 import co.cask.tigon.internal.io.ByteBufferInputStream;
+import co.cask.tigon.internal.io.DatumReader;
+import co.cask.tigon.internal.io.DatumReaderFactory;
 import co.cask.tigon.internal.io.DatumWriterFactory;
-import co.cask.tigon.internal.io.ReflectionDatumReader;
 import co.cask.tigon.internal.io.Schema;
 import co.cask.tigon.internal.io.SchemaGenerator;
 import co.cask.tigon.internal.io.UnsupportedTypeException;
@@ -82,6 +89,7 @@ import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.AbstractService;
 import com.google.common.util.concurrent.Service;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.ServiceAnnouncer;
 import org.apache.twill.common.Cancellable;
@@ -115,8 +123,11 @@ public final class FlowletProgramRunner implements ProgramRunner {
 
   private final SchemaGenerator schemaGenerator;
   private final DatumWriterFactory datumWriterFactory;
+  private final DatumReaderFactory datumReaderFactory;
   private final DataFabricFacadeFactory dataFabricFacadeFactory;
   private final QueueReaderFactory queueReaderFactory;
+  private final QueueClientFactory queueClientFactory;
+  private final QueueNotifier queueNotifier;
   private final MetricsCollectionService metricsCollectionService;
   private final DiscoveryServiceClient discoveryServiceClient;
   private final CConfiguration configuration;
@@ -125,15 +136,21 @@ public final class FlowletProgramRunner implements ProgramRunner {
   @Inject
   public FlowletProgramRunner(SchemaGenerator schemaGenerator,
                               DatumWriterFactory datumWriterFactory,
+                              DatumReaderFactory datumReaderFactory,
                               DataFabricFacadeFactory dataFabricFacadeFactory,
                               QueueReaderFactory queueReaderFactory,
+                              QueueClientFactory queueClientFactory,
+                              QueueNotifier queueNotifier,
                               MetricsCollectionService metricsCollectionService,
-                              DiscoveryServiceClient discoveryServiceClient,
+                              @Named("program.discovery.client") DiscoveryServiceClient discoveryServiceClient,
                               CConfiguration configuration, ServiceAnnouncer serviceAnnouncer) {
     this.schemaGenerator = schemaGenerator;
     this.datumWriterFactory = datumWriterFactory;
+    this.datumReaderFactory = datumReaderFactory;
     this.dataFabricFacadeFactory = dataFabricFacadeFactory;
     this.queueReaderFactory = queueReaderFactory;
+    this.queueClientFactory = queueClientFactory;
+    this.queueNotifier = queueNotifier;
     this.metricsCollectionService = metricsCollectionService;
     this.discoveryServiceClient = discoveryServiceClient;
     this.configuration = configuration;
@@ -185,9 +202,11 @@ public final class FlowletProgramRunner implements ProgramRunner {
       DataFabricFacade dataFabricFacade = dataFabricFacadeFactory.create(program);
 
       // Creates flowlet context
+      boolean concurrentProcess = flowletClass.isAnnotationPresent(ConcurrentProcess.class);
       flowletContext = new BasicFlowletContext(program, flowletName, instanceId, runId, instanceCount,
                                                options.getUserArguments(), flowletDef.getFlowletSpec(),
-                                               metricsCollectionService, dataFabricFacade, serviceAnnouncer);
+                                               metricsCollectionService, dataFabricFacade, serviceAnnouncer,
+                                               concurrentProcess);
 
 
 
@@ -197,17 +216,23 @@ public final class FlowletProgramRunner implements ProgramRunner {
 
       Flowlet flowlet = new InstantiatorFactory(false).get(TypeToken.of(flowletClass)).create();
       TypeToken<? extends Flowlet> flowletType = TypeToken.of(flowletClass);
+      int processThreads = getProcessThreads(flowletClass);
+      boolean pipelinedCommit = configuration.getBoolean(Constants.Flowlet.PIPELINED_COMMIT,
+                                                         Constants.Flowlet.DEFAULT_PIPELINED_COMMIT);
 
       // Set the context classloader to the Tigon classloader. It is needed for the DatumWriterFactory be able
       // to load Tigon classes
       Thread.currentThread().setContextClassLoader(FlowletProgramRunner.class.getClassLoader());
 
-      // Inject DataSet, OutputEmitter, Metric fields
+      // Inject DataSet, OutputEmitter, Metric, DatumReaderFactory, DiscoveryServiceClient fields
       Reflections.visit(flowlet, TypeToken.of(flowlet.getClass()),
                         new PropertyFieldSetter(flowletDef.getFlowletSpec().getProperties()),
                         new MetricsFieldSetter(flowletContext.getMetrics()),
+                        new DatumReaderFactoryFieldSetter(datumReaderFactory),
+                        new DiscoveryServiceClientFieldSetter(discoveryServiceClient),
                         new OutputEmitterFieldSetter(outputEmitterFactory(flowletContext, flowletName,
-                                                                          dataFabricFacade, queueSpecs))
+                                                                          dataFabricFacade, queueSpecs,
+                                                                          processThreads > 1))
       );
 
       ImmutableList.Builder<ConsumerSupplier<?>> queueConsumerSupplierBuilder = ImmutableList.builder();
@@ -225,7 +250,8 @@ public final class FlowletProgramRunner implements ProgramRunner {
       Service serviceHook = createServiceHook(flowletName, consumerSuppliers, controllerRef);
       FlowletProcessDriver driver = new FlowletProcessDriver(flowlet, flowletContext, processSpecs,
                                                              createCallback(flowlet, flowletDef.getFlowletSpec()),
-                                                             dataFabricFacade, serviceHook);
+                                                             dataFabricFacade, queueNotifier, serviceHook,
+                                                             processThreads, pipelinedCommit);
 
       FlowletProgramController controller = new FlowletProgramController(program.getName(), flowletName,
                                                                          flowletContext, driver, consumerSuppliers);
@@ -297,6 +323,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
         TypeToken<?> dataType;
         ConsumerConfig consumerConfig;
         int batchSize = 1;
+        Batch batchAnnotation = null;
 
         if (tickAnnotation != null) {
           inputNames = ImmutableSet.of();
@@ -321,6 +348,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
               dataType = flowletType.resolveType(((ParameterizedType) dataType.getType()).getActualTypeArguments()[0]);
             }
             batchSize = processBatchSize;
+            batchAnnotation = method.getAnnotation(Batch.class);
           }
 
           try {
@@ -331,7 +359,8 @@ public final class FlowletProgramRunner implements ProgramRunner {
         }
 
         ProcessSpecification processSpec = processSpecFactory.create(inputNames, schema, dataType, processMethod,
-                                                                     consumerConfig, batchSize, tickAnnotation);
+                                                                     consumerConfig, batchSize, batchAnnotation,
+                                                                     tickAnnotation);
         // Add processSpec
         if (processSpec != null) {
           result.add(processSpec);
@@ -379,6 +408,12 @@ public final class FlowletProgramRunner implements ProgramRunner {
     if (batch != null) {
       int batchSize = batch.value();
       Preconditions.checkArgument(batchSize > 0, "Batch size should be > 0: %s", method.getName());
+      if (batch.adaptive()) {
+        Preconditions.checkArgument(batch.min() > 0 && batch.min() <= batchSize,
+                                    "Minimum batch size should be > 0 and <= batch size: %s", method.getName());
+        Preconditions.checkArgument(batch.latencyTarget() > 0,
+                                    "Batch latency target should be > 0: %s", method.getName());
+      }
       return batchSize;
     }
     return null;
@@ -412,10 +447,23 @@ public final class FlowletProgramRunner implements ProgramRunner {
     };
   }
 
+  /**
+   * Returns the number of threads for calling process methods of the given flowlet class concurrently. Only flowlets
+   * annotated with {@link ConcurrentProcess} would have more than one thread.
+   */
+  private int getProcessThreads(Class<? extends Flowlet> flowletClass) {
+    if (!flowletClass.isAnnotationPresent(ConcurrentProcess.class)) {
+      return 1;
+    }
+    int threads = configuration.getInt(Constants.Flowlet.PROCESS_THREADS, Constants.Flowlet.DEFAULT_PROCESS_THREADS);
+    return threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads;
+  }
+
   private OutputEmitterFactory outputEmitterFactory(final BasicFlowletContext flowletContext,
                                                     final String flowletName,
                                                     final QueueClientFactory queueClientFactory,
-                                                    final Table<Node, String, Set<QueueSpecification>> queueSpecs) {
+                                                    final Table<Node, String, Set<QueueSpecification>> queueSpecs,
+                                                    final boolean threadLocalProducers) {
     return new OutputEmitterFactory() {
       @Override
       public <T> OutputEmitter<T> create(String outputName, TypeToken<T> type) {
@@ -428,7 +476,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
 
               final String queueMetricsName = "process.events.out";
               final String queueMetricsTag = queueSpec.getQueueName().getSimpleName();
-              QueueProducer producer = queueClientFactory.createProducer(queueSpec.getQueueName(), new QueueMetrics() {
+              QueueMetrics queueMetrics = new QueueMetrics() {
                 @Override
                 public void emitEnqueue(int count) {
                   flowletContext.getProgramMetrics().gauge(queueMetricsName, count, queueMetricsTag);
@@ -438,7 +486,18 @@ public final class FlowletProgramRunner implements ProgramRunner {
                 public void emitEnqueueBytes(int bytes) {
                   // no-op
                 }
-              });
+              };
+              QueueProducer producer;
+              if (threadLocalProducers) {
+                // Process methods running concurrently each needs its own producer for its own transaction.
+                // The producers are created directly, since the given factory would add them to all transactions.
+                ThreadLocalQueueProducer threadLocalProducer = new ThreadLocalQueueProducer(
+                  FlowletProgramRunner.this.queueClientFactory, queueSpec.getQueueName(), queueMetrics);
+                flowletContext.addThreadLocalProducer(threadLocalProducer);
+                producer = threadLocalProducer;
+              } else {
+                producer = queueClientFactory.createProducer(queueSpec.getQueueName(), queueMetrics);
+              }
               return new DatumOutputEmitter<T>(producer, schema, datumWriterFactory.create(type, schema));
             }
           }
@@ -473,8 +532,9 @@ public final class FlowletProgramRunner implements ProgramRunner {
       @Override
       public <T> ProcessSpecification create(Set<String> inputNames, Schema schema, TypeToken<T> dataType,
                                              ProcessMethod<T> method, ConsumerConfig consumerConfig, int batchSize,
-                                             Tick tickAnnotation) {
+                                             Batch batchAnnotation, Tick tickAnnotation) {
         List<QueueReader<T>> queueReaders = Lists.newLinkedList();
+        List<ConsumerSupplier<?>> consumerSuppliers = Lists.newArrayList();
 
         for (Map.Entry<Node, Set<QueueSpecification>> entry : queueSpecs.column(flowletName).entrySet()) {
           for (QueueSpecification queueSpec : entry.getValue()) {
@@ -491,7 +551,19 @@ public final class FlowletProgramRunner implements ProgramRunner {
                 ConsumerSupplier<QueueConsumer> consumerSupplier = ConsumerSupplier.create(dataFabricFacade, queueName,
                                                                                             consumerConfig, numGroups);
                 queueConsumerSupplierBuilder.add(consumerSupplier);
-                queueReaders.add(queueReaderFactory.createQueueReader(consumerSupplier, batchSize, decoder));
+                if (batchAnnotation != null && batchAnnotation.adaptive()) {
+                  // Each queue adapts its batch size independently.
+                  AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(batchAnnotation.min(), batchSize,
+                                                                         batchAnnotation.latencyTarget(),
+                                                                         batchAnnotation.unit(),
+                                                                         flowletContext.getProgramMetrics(),
+                                                                         "process.batch.size",
+                                                                         queueName.getSimpleName());
+                  queueReaders.add(queueReaderFactory.createQueueReader(consumerSupplier, batchSizer, decoder));
+                } else {
+                  queueReaders.add(queueReaderFactory.createQueueReader(consumerSupplier, batchSize, decoder));
+                }
+                consumerSuppliers.add(consumerSupplier);
 
             }
           }
@@ -501,14 +573,15 @@ public final class FlowletProgramRunner implements ProgramRunner {
         if (!inputNames.isEmpty() && queueReaders.isEmpty()) {
           return null;
         }
-        return new ProcessSpecification<T>(new RoundRobinQueueReader<T>(queueReaders), method, tickAnnotation);
+        return new ProcessSpecification<T>(new RoundRobinQueueReader<T>(queueReaders), consumerSuppliers,
+                                           method, tickAnnotation);
       }
     };
   }
 
   private <T> Function<ByteBuffer, T> createInputDatumDecoder(final TypeToken<T> dataType, final Schema schema,
                                                               final SchemaCache schemaCache) {
-    final ReflectionDatumReader<T> datumReader = new ReflectionDatumReader<T>(schema, dataType);
+    final DatumReader<T> datumReader = datumReaderFactory.create(dataType, schema);
     final ByteBufferInputStream byteBufferInput = new ByteBufferInputStream(null);
     final BinaryDecoder decoder = new BinaryDecoder(byteBufferInput);
 
@@ -604,7 +677,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
      */
     <T> ProcessSpecification create(Set<String> inputNames, Schema schema, TypeToken<T> dataType,
                                     ProcessMethod<T> method, ConsumerConfig consumerConfig, int batchSize,
-                                    Tick tickAnnotation);
+                                    @Nullable Batch batchAnnotation, Tick tickAnnotation);
   }
 
   /**
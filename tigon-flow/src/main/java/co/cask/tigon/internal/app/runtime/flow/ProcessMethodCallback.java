@@ -23,6 +23,13 @@ import co.cask.tigon.api.flow.flowlet.InputContext;
  * Interface to represent callback object for commit result.
  */
 interface ProcessMethodCallback {
+
+  /**
+   * Called when the transaction is persisted, but its commit is still in flight. Either
+   * {@link #onSuccess(Object, InputContext)} is called once the commit succeeded, or neither method if it failed.
+   */
+  void onCommitPending();
+
   void onSuccess(Object inputObject, InputContext inputContext);
 
   void onFailure(Object inputObject, InputContext inputContext,
@@ -18,8 +18,13 @@ package co.cask.tigon.internal.app.runtime.flow;
 
 import co.cask.tigon.api.annotation.Tick;
 import co.cask.tigon.app.queue.QueueReader;
+import co.cask.tigon.data.queue.QueueName;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -28,12 +33,25 @@ import java.util.concurrent.TimeUnit;
 final class ProcessSpecification<T> {
 
   private final QueueReader<T> queueReader;
+  private final List<ConsumerSupplier<?>> consumerSuppliers;
+  private final Set<QueueName> queueNames;
   private final ProcessMethod<T> processMethod;
   private final Tick tickAnnotation;
   private final boolean isTick;
 
   ProcessSpecification(QueueReader<T> queueReader, ProcessMethod<T> processMethod, Tick tickAnnotation) {
+    this(queueReader, ImmutableList.<ConsumerSupplier<?>>of(), processMethod, tickAnnotation);
+  }
+
+  ProcessSpecification(QueueReader<T> queueReader, List<ConsumerSupplier<?>> consumerSuppliers,
+                       ProcessMethod<T> processMethod, Tick tickAnnotation) {
     this.queueReader = queueReader;
+    this.consumerSuppliers = ImmutableList.copyOf(consumerSuppliers);
+    ImmutableSet.Builder<QueueName> queueNames = ImmutableSet.builder();
+    for (ConsumerSupplier<?> consumerSupplier : consumerSuppliers) {
+      queueNames.add(consumerSupplier.getQueueName());
+    }
+    this.queueNames = queueNames.build();
     this.processMethod = processMethod;
     this.tickAnnotation = tickAnnotation;
     this.isTick = tickAnnotation != null;
@@ -43,6 +61,20 @@ final class ProcessSpecification<T> {
     return queueReader;
   }
 
+  /**
+   * Returns the {@link ConsumerSupplier}s of the queues that the {@link QueueReader} reads from.
+   */
+  List<ConsumerSupplier<?>> getConsumerSuppliers() {
+    return consumerSuppliers;
+  }
+
+  /**
+   * Returns names of the queues that the {@link QueueReader} reads from.
+   */
+  Set<QueueName> getQueueNames() {
+    return queueNames;
+  }
+
   ProcessMethod<T> getProcessMethod() {
     return processMethod;
   }
@@ -63,6 +95,13 @@ final class ProcessSpecification<T> {
     return isTick;
   }
 
+  /**
+   * Returns {@code true} if this is a {@link Tick} method that is only called when triggered.
+   */
+  boolean isTriggeredTick() {
+    return isTick && tickAnnotation.triggered();
+  }
+
   private long convertToNano(long time, TimeUnit unit) {
     return TimeUnit.NANOSECONDS.convert(time, unit);
   }
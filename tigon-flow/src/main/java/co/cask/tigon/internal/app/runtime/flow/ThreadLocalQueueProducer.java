@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.runtime.flow;
+
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionAware;
+import co.cask.tigon.data.queue.QueueClientFactory;
+import co.cask.tigon.data.queue.QueueEntry;
+import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.queue.QueueProducer;
+import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link QueueProducer} that delegates to one producer per thread, so that process methods running concurrently
+ * in different transactions don't share the buffered entries of a transaction. All transaction operations have
+ * to be called from the thread that does the enqueue. Closing it closes the producers of all threads.
+ */
+final class ThreadLocalQueueProducer implements QueueProducer, TransactionAware, Closeable {
+
+  private final QueueName queueName;
+  private final ThreadLocal<QueueProducer> producer;
+  private final Queue<QueueProducer> delegates;
+
+  ThreadLocalQueueProducer(final QueueClientFactory queueClientFactory,
+                           final QueueName queueName, final QueueMetrics queueMetrics) {
+    this.queueName = queueName;
+    this.delegates = new ConcurrentLinkedQueue<QueueProducer>();
+    this.producer = new ThreadLocal<QueueProducer>() {
+      @Override
+      protected QueueProducer initialValue() {
+        try {
+          QueueProducer delegate = queueClientFactory.createProducer(queueName, queueMetrics);
+          delegates.add(delegate);
+          return delegate;
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+      }
+    };
+  }
+
+  @Override
+  public void enqueue(QueueEntry entry) throws IOException {
+    producer.get().enqueue(entry);
+  }
+
+  @Override
+  public void enqueue(Iterable<QueueEntry> entries) throws IOException {
+    producer.get().enqueue(entries);
+  }
+
+  @Override
+  public void startTx(Transaction tx) {
+    QueueProducer delegate = producer.get();
+    if (delegate instanceof TransactionAware) {
+      ((TransactionAware) delegate).startTx(tx);
+    }
+  }
+
+  @Override
+  public Collection<byte[]> getTxChanges() {
+    QueueProducer delegate = producer.get();
+    if (delegate instanceof TransactionAware) {
+      return ((TransactionAware) delegate).getTxChanges();
+    }
+    return Collections.emptyList();
+  }
+
+  @Override
+  public boolean commitTx() throws Exception {
+    QueueProducer delegate = producer.get();
+    return !(delegate instanceof TransactionAware) || ((TransactionAware) delegate).commitTx();
+  }
+
+  @Override
+  public void postTxCommit() {
+    QueueProducer delegate = producer.get();
+    if (delegate instanceof TransactionAware) {
+      ((TransactionAware) delegate).postTxCommit();
+    }
+  }
+
+  @Override
+  public boolean rollbackTx() throws Exception {
+    QueueProducer delegate = producer.get();
+    return !(delegate instanceof TransactionAware) || ((TransactionAware) delegate).rollbackTx();
+  }
+
+  @Override
+  public String getTransactionAwareName() {
+    return getClass().getSimpleName() + "(queue = " + queueName + ")";
+  }
+
+  @Override
+  public void close() throws IOException {
+    QueueProducer delegate = delegates.poll();
+    while (delegate != null) {
+      if (delegate instanceof Closeable) {
+        Closeables.closeQuietly((Closeable) delegate);
+      }
+      delegate = delegates.poll();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.runtime.flow;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests of a flowlet to call its triggered {@link co.cask.tigon.api.annotation.Tick} methods. Each
+ * triggered tick remembers the count at the start of its last call, hence a request is never lost, even if it is
+ * made while the method is being called.
+ */
+final class TickTrigger {
+
+  private final AtomicLong count = new AtomicLong();
+  private volatile Runnable listener;
+
+  /**
+   * Requests a call and notifies the listener, if any.
+   */
+  void trigger() {
+    count.incrementAndGet();
+    Runnable listener = this.listener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Returns the number of requests made so far.
+   */
+  long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Sets the listener that gets notified on each request.
+   */
+  void setListener(Runnable listener) {
+    this.listener = listener;
+  }
+}
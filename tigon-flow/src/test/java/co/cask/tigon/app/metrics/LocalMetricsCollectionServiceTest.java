@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.conf.Constants;
+import co.cask.tigon.metrics.MetricsCollector;
+import co.cask.tigon.metrics.MetricsScope;
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the {@link LocalMetricsCollectionService}.
+ */
+public class LocalMetricsCollectionServiceTest {
+
+  private static final int RETENTION_SECONDS = 120;
+
+  @Test
+  public void testAggregate() {
+    LocalMetricsCollectionService service = createService();
+    MetricsCollector collector = service.getCollector(MetricsScope.SYSTEM, "app.f.flow.flowlet", "run");
+    collector.gauge("process.events.in", 2, "input");
+    collector.gauge("process.events.in", 3);
+    long now = now();
+    service.aggregate(now);
+
+    Assert.assertEquals(5L, getTotal(service.query("app.f"), "process.events.in", null));
+    Assert.assertEquals(2L, getTotal(service.query("app.f"), "process.events.in", "input"));
+    Assert.assertTrue(service.query("other").isEmpty());
+
+    collector.gauge("process.events.in", 1);
+    service.aggregate(now + 1);
+    Assert.assertEquals(6L, getTotal(service.query(null), "process.events.in", null));
+  }
+
+  @Test
+  public void testEviction() {
+    LocalMetricsCollectionService service = createService();
+    MetricsCollector collector = service.getCollector(MetricsScope.USER, "app.f.flow.flowlet", "run");
+    collector.gauge("metric", 1);
+    long now = now();
+    service.aggregate(now);
+    Assert.assertEquals(1, service.query(null).size());
+
+    // Metrics without updates within the retention are evicted
+    service.aggregate(now + RETENTION_SECONDS + 1);
+    Assert.assertTrue(service.query(null).isEmpty());
+
+    // Updates after the eviction start a new metric
+    collector.gauge("metric", 4);
+    service.aggregate(now + RETENTION_SECONDS + 2);
+    Assert.assertEquals(4L, getTotal(service.query(null), "metric", null));
+  }
+
+  @Test
+  public void testConcurrentEviction() throws Exception {
+    final LocalMetricsCollectionService service = createService();
+    final MetricsCollector collector = service.getCollector(MetricsScope.USER, "app.f.flow.flowlet", "run");
+    final int metrics = 1000;
+    final int increments = 100;
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < metrics; i++) {
+          for (int j = 0; j < increments; j++) {
+            collector.gauge("metric" + i, 1);
+          }
+        }
+      }
+    };
+    writer.start();
+
+    // New metrics look idle to the aggregation until their first value is drained, hence they get evicted
+    // while the writer is updating them. Drained metrics are updated at that time and are never evicted.
+    long now = now() + RETENTION_SECONDS + 1;
+    while (writer.isAlive()) {
+      service.aggregate(now);
+    }
+    writer.join();
+    service.aggregate(now);
+
+    List<MetricsRecord> records = service.query(null);
+    Assert.assertEquals(metrics, records.size());
+    for (MetricsRecord record : records) {
+      Assert.assertEquals(increments, record.getTotal());
+    }
+  }
+
+  @Test
+  public void testHttpEndpoint() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.Metrics.ADDRESS, "127.0.0.1");
+    LocalMetricsCollectionService service = new LocalMetricsCollectionService(cConf);
+    service.startAndWait();
+    try {
+      service.getCollector(MetricsScope.SYSTEM, "app.f.flow.flowlet", "run").gauge("process.errors", 7);
+      service.getCollector(MetricsScope.SYSTEM, "other.f.flow.flowlet", "run").gauge("process.errors", 1);
+      service.aggregate();
+
+      JsonArray records = get(service.getBindAddress(), "/v1/metrics/app.f").getAsJsonArray();
+      Assert.assertEquals(1, records.size());
+      JsonObject record = records.get(0).getAsJsonObject();
+      Assert.assertEquals("app.f.flow.flowlet", record.get("context").getAsString());
+      Assert.assertEquals("process.errors", record.get("metric").getAsString());
+      Assert.assertEquals(7L, record.get("total").getAsLong());
+
+      Assert.assertEquals(2, get(service.getBindAddress(), "/v1/metrics").getAsJsonArray().size());
+    } finally {
+      service.stopAndWait();
+    }
+  }
+
+  private LocalMetricsCollectionService createService() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Metrics.RETENTION_SECONDS, RETENTION_SECONDS);
+    return new LocalMetricsCollectionService(cConf);
+  }
+
+  private long now() {
+    return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+  }
+
+  private long getTotal(List<MetricsRecord> records, String metric, String tag) {
+    long total = 0;
+    for (MetricsRecord record : records) {
+      if (record.getMetric().equals(metric) && (tag == null ? record.getTag() == null : tag.equals(record.getTag()))) {
+        total += record.getTotal();
+      }
+    }
+    return total;
+  }
+
+  private JsonElement get(InetSocketAddress address, String path) throws Exception {
+    URL url = new URL("http", address.getHostName(), address.getPort(), path);
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, urlConn.getResponseCode());
+      Reader reader = new InputStreamReader(urlConn.getInputStream(), Charsets.UTF_8);
+      try {
+        return new JsonParser().parse(CharStreams.toString(reader));
+      } finally {
+        reader.close();
+      }
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests the {@link StripedCounter}.
+ */
+public class StripedCounterTest {
+
+  @Test
+  public void testSumThenReset() {
+    StripedCounter counter = new StripedCounter(3);
+    Assert.assertEquals(0L, counter.sumThenReset());
+    counter.add(5);
+    counter.add(-2);
+    Assert.assertEquals(3L, counter.sumThenReset());
+    Assert.assertEquals(0L, counter.sumThenReset());
+  }
+
+  @Test
+  public void testConcurrentAdd() throws Exception {
+    final StripedCounter counter = new StripedCounter(4);
+    final int threads = 8;
+    final int increments = 100000;
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    Thread[] adders = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      adders[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            startLatch.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < increments; j++) {
+            counter.add(1);
+          }
+        }
+      };
+      adders[i].start();
+    }
+
+    // Drain concurrently with the updates, no increment is lost or counted twice
+    startLatch.countDown();
+    long sum = 0;
+    for (Thread adder : adders) {
+      while (adder.isAlive()) {
+        sum += counter.sumThenReset();
+        adder.join(1);
+      }
+    }
+    sum += counter.sumThenReset();
+    Assert.assertEquals((long) threads * increments, sum);
+  }
+}
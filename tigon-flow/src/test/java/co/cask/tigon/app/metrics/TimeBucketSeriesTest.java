@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.app.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests the {@link TimeBucketSeries}.
+ */
+public class TimeBucketSeriesTest {
+
+  @Test
+  public void testBuckets() {
+    TimeBucketSeries series = new TimeBucketSeries(10, 3);
+    series.add(100, 1);
+    series.add(105, 2);
+    series.add(110, 4);
+    series.add(125, 8);
+
+    // Buckets of the same resolution are summed, empty buckets are omitted
+    List<MetricsRecord.TimeValue> values = series.getValues(129);
+    Assert.assertEquals(3, values.size());
+    assertTimeValue(100, 3, values.get(0));
+    assertTimeValue(110, 4, values.get(1));
+    assertTimeValue(120, 8, values.get(2));
+
+    // Buckets older than the retention are not returned
+    values = series.getValues(135);
+    Assert.assertEquals(2, values.size());
+    assertTimeValue(110, 4, values.get(0));
+    assertTimeValue(120, 8, values.get(1));
+  }
+
+  @Test
+  public void testOverwrite() {
+    TimeBucketSeries series = new TimeBucketSeries(10, 3);
+    series.add(100, 1);
+    // Falls into the same slot of the ring as 100, which starts a new bucket
+    series.add(130, 2);
+    List<MetricsRecord.TimeValue> values = series.getValues(130);
+    Assert.assertEquals(1, values.size());
+    assertTimeValue(130, 2, values.get(0));
+  }
+
+  private void assertTimeValue(long time, long value, MetricsRecord.TimeValue timeValue) {
+    Assert.assertEquals(time, timeValue.getTime());
+    Assert.assertEquals(value, timeValue.getValue());
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.queue;
+
+import co.cask.tigon.metrics.MetricsCollector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the {@link AdaptiveBatchSizer}.
+ */
+public class AdaptiveBatchSizerTest {
+
+  @Test
+  public void testGrow() {
+    SumMetricsCollector metrics = new SumMetricsCollector();
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 100, 1, TimeUnit.SECONDS, metrics, "batch", "queue");
+    Assert.assertEquals(1, sizer.getBatchSize());
+
+    // Full batches that are processed fast double the size up to the maximum
+    int[] expected = {2, 4, 8, 16, 32, 64, 100, 100};
+    for (int size : expected) {
+      int requested = sizer.getBatchSize();
+      sizer.update(requested, requested, requested * TimeUnit.MILLISECONDS.toNanos(1));
+      Assert.assertEquals(size, sizer.getBatchSize());
+      Assert.assertEquals(size, metrics.sum);
+    }
+
+    // Partial or empty batches don't grow
+    sizer = new AdaptiveBatchSizer(1, 100, 1, TimeUnit.SECONDS, metrics, "batch", "queue");
+    sizer.update(1, 1, TimeUnit.MILLISECONDS.toNanos(1));
+    Assert.assertEquals(2, sizer.getBatchSize());
+    sizer.update(2, 1, TimeUnit.MILLISECONDS.toNanos(1));
+    Assert.assertEquals(2, sizer.getBatchSize());
+    sizer.update(2, 0, TimeUnit.SECONDS.toNanos(10));
+    Assert.assertEquals(2, sizer.getBatchSize());
+  }
+
+  @Test
+  public void testLatencyCap() {
+    SumMetricsCollector metrics = new SumMetricsCollector();
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 1000, 1, TimeUnit.SECONDS, metrics, "batch", "queue");
+
+    // With 10ms per event, 80 events fit into 80% of the 1 second latency target
+    int[] expected = {2, 4, 8, 16, 32, 64, 80, 80};
+    for (int size : expected) {
+      int requested = sizer.getBatchSize();
+      sizer.update(requested, requested, requested * TimeUnit.MILLISECONDS.toNanos(10));
+      Assert.assertEquals(size, sizer.getBatchSize());
+    }
+    Assert.assertEquals(80, metrics.sum);
+  }
+
+  @Test
+  public void testShrink() {
+    SumMetricsCollector metrics = new SumMetricsCollector();
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(2, 1000, 1, TimeUnit.SECONDS, metrics, "batch", "queue");
+    while (sizer.getBatchSize() < 80) {
+      int requested = sizer.getBatchSize();
+      sizer.update(requested, requested, requested * TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    Assert.assertEquals(80, sizer.getBatchSize());
+
+    // The process time goes up to 100ms per event, the size shrinks gradually towards the 8 events that fit
+    int previous = sizer.getBatchSize();
+    for (int i = 0; i < 20; i++) {
+      int requested = sizer.getBatchSize();
+      sizer.update(requested, requested, requested * TimeUnit.MILLISECONDS.toNanos(100));
+      Assert.assertTrue(sizer.getBatchSize() <= previous);
+      previous = sizer.getBatchSize();
+    }
+    Assert.assertEquals(8, sizer.getBatchSize());
+    Assert.assertEquals(8, metrics.sum);
+
+    // Never below the minimum, even if a single event exceeds the latency target
+    for (int i = 0; i < 20; i++) {
+      int requested = sizer.getBatchSize();
+      sizer.update(requested, requested, requested * TimeUnit.SECONDS.toNanos(10));
+    }
+    Assert.assertEquals(2, sizer.getBatchSize());
+    Assert.assertEquals(2, metrics.sum);
+  }
+
+  /**
+   * A {@link MetricsCollector} that sums up all values, which is the current batch size.
+   */
+  static final class SumMetricsCollector implements MetricsCollector {
+
+    private int sum;
+
+    @Override
+    public void gauge(String metricName, int value, String... tags) {
+      Assert.assertEquals("batch", metricName);
+      Assert.assertArrayEquals(new String[] {"queue"}, tags);
+      sum += value;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.queue;
+
+import co.cask.tigon.api.common.Bytes;
+import co.cask.tigon.app.queue.InputDatum;
+import co.cask.tigon.data.queue.ConsumerConfig;
+import co.cask.tigon.data.queue.DequeueResult;
+import co.cask.tigon.data.queue.QueueConsumer;
+import co.cask.tigon.data.queue.QueueName;
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the adaptive batch size of the {@link SingleQueue2Reader}.
+ */
+public class SingleQueue2ReaderTest {
+
+  private static final Function<ByteBuffer, Integer> DECODER = new Function<ByteBuffer, Integer>() {
+    @Override
+    public Integer apply(ByteBuffer input) {
+      return input.getInt();
+    }
+  };
+
+  @Test
+  public void testAdaptiveBatchSize() throws Exception {
+    ManualTicker ticker = new ManualTicker();
+    CountingQueueConsumer consumer = new CountingQueueConsumer(1000);
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 1000, 1, TimeUnit.SECONDS,
+                                                      new AdaptiveBatchSizerTest.SumMetricsCollector(),
+                                                      "batch", "queue");
+    SingleQueue2Reader<Integer> reader = new SingleQueue2Reader<Integer>(
+      Suppliers.<QueueConsumer>ofInstance(consumer), sizer, ticker, DECODER);
+
+    // Batches that take 10ms per event grow up to the latency target of 80 events
+    int[] expected = {1, 2, 4, 8, 16, 32, 64, 80, 80};
+    for (int size : expected) {
+      InputDatum<Integer> input = reader.dequeue(0, TimeUnit.MILLISECONDS);
+      Assert.assertEquals(size, consumer.lastRequested);
+      Assert.assertEquals(size, input.size());
+      ticker.advance(size * TimeUnit.MILLISECONDS.toNanos(10));
+      input.completed(true);
+    }
+
+    // Failed batches and retries are not counted
+    InputDatum<Integer> input = reader.dequeue(0, TimeUnit.MILLISECONDS);
+    ticker.advance(TimeUnit.SECONDS.toNanos(100));
+    input.completed(false);
+    input.completed(true);
+    Assert.assertEquals(80, sizer.getBatchSize());
+
+    // Slow batches shrink the size
+    input = reader.dequeue(0, TimeUnit.MILLISECONDS);
+    ticker.advance(input.size() * TimeUnit.MILLISECONDS.toNanos(100));
+    input.completed(true);
+    Assert.assertTrue(sizer.getBatchSize() < 80);
+
+    // The time of the dequeue is counted
+    consumer.dequeueNano = TimeUnit.SECONDS.toNanos(100);
+    consumer.ticker = ticker;
+    input = reader.dequeue(0, TimeUnit.MILLISECONDS);
+    input.completed(true);
+    Assert.assertEquals(1, sizer.getBatchSize());
+  }
+
+  @Test
+  public void testFixedBatchSize() throws Exception {
+    CountingQueueConsumer consumer = new CountingQueueConsumer(1000);
+    SingleQueue2Reader<Integer> reader = new SingleQueue2Reader<Integer>(
+      Suppliers.<QueueConsumer>ofInstance(consumer), 10, DECODER);
+    for (int i = 0; i < 3; i++) {
+      InputDatum<Integer> input = reader.dequeue(0, TimeUnit.MILLISECONDS);
+      input.completed(true);
+      Assert.assertEquals(10, consumer.lastRequested);
+      Assert.assertEquals(10, input.size());
+    }
+  }
+
+  /**
+   * A {@link Ticker} that only advances when told to.
+   */
+  private static final class ManualTicker extends Ticker {
+
+    private long nanos;
+
+    void advance(long nanos) {
+      this.nanos += nanos;
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  /**
+   * A {@link QueueConsumer} that has an unlimited number of entries, each the encoded sequence number.
+   */
+  private static final class CountingQueueConsumer implements QueueConsumer {
+
+    private final int maxEntries;
+    private int lastRequested;
+    private int next;
+    private long dequeueNano;
+    private ManualTicker ticker;
+
+    CountingQueueConsumer(int maxEntries) {
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public QueueName getQueueName() {
+      return QueueName.fromFlowlet("app", "flow", "flowlet", "queue");
+    }
+
+    @Override
+    public ConsumerConfig getConfig() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DequeueResult<byte[]> dequeue() throws IOException {
+      return dequeue(1);
+    }
+
+    @Override
+    public DequeueResult<byte[]> dequeue(int maxBatchSize) throws IOException {
+      lastRequested = maxBatchSize;
+      if (ticker != null) {
+        ticker.advance(dequeueNano);
+      }
+      final List<byte[]> entries = Lists.newArrayList();
+      for (int i = 0; i < Math.min(maxBatchSize, maxEntries); i++) {
+        entries.add(Bytes.toBytes(next++));
+      }
+      return new DequeueResult<byte[]>() {
+        @Override
+        public boolean isEmpty() {
+          return entries.isEmpty();
+        }
+
+        @Override
+        public void reclaim() {
+          // no-op
+        }
+
+        @Override
+        public int size() {
+          return entries.size();
+        }
+
+        @Override
+        public Iterator<byte[]> iterator() {
+          return ImmutableList.copyOf(entries).iterator();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.runtime.flow;
+
+import co.cask.tigon.data.queue.QueueEntry;
+import co.cask.tigon.data.queue.QueueProducer;
+import co.cask.tigon.internal.io.ReflectionDatumReader;
+import co.cask.tigon.internal.io.ReflectionDatumWriter;
+import co.cask.tigon.internal.io.ReflectionSchemaGenerator;
+import co.cask.tigon.internal.io.Schema;
+import co.cask.tigon.io.BinaryDecoder;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the encoding of the {@link DatumOutputEmitter}.
+ */
+public class DatumOutputEmitterTest {
+
+  @Test
+  public void testBufferReuse() throws Exception {
+    Schema schema = new ReflectionSchemaGenerator().generate(String.class);
+    RecordingQueueProducer producer = new RecordingQueueProducer();
+    DatumOutputEmitter<String> emitter = new DatumOutputEmitter<String>(producer, schema,
+                                                                        new ReflectionDatumWriter<String>(schema));
+
+    // The second value outgrows the initial buffer, the ones after it are shorter than what is left in the buffer
+    List<String> values = Lists.newArrayList("first", Strings.repeat("long", 200), "", "last");
+    for (String value : values) {
+      emitter.emit(value);
+    }
+
+    Assert.assertEquals(values.size(), producer.entries.size());
+    byte[] schemaHash = schema.getSchemaHash().toByteArray();
+    ReflectionDatumReader<String> reader = new ReflectionDatumReader<String>(schema, TypeToken.of(String.class));
+    for (int i = 0; i < values.size(); i++) {
+      QueueEntry entry = producer.entries.get(i);
+      Assert.assertEquals(values.get(i), decode(entry.getData(), schemaHash, reader, schema));
+      Assert.assertTrue(entry.getHashKeys().isEmpty());
+      // Every entry gets its own exact-size payload
+      for (int j = 0; j < i; j++) {
+        Assert.assertNotSame(producer.entries.get(j).getData(), entry.getData());
+      }
+    }
+  }
+
+  @Test
+  public void testPartitions() throws Exception {
+    Schema schema = new ReflectionSchemaGenerator().generate(String.class);
+    RecordingQueueProducer producer = new RecordingQueueProducer();
+    DatumOutputEmitter<String> emitter = new DatumOutputEmitter<String>(producer, schema,
+                                                                        new ReflectionDatumWriter<String>(schema));
+
+    emitter.emit("a", "key", "value");
+    emitter.emit("b", ImmutableMap.<String, Object>of("key", "value"));
+    emitter.emit("c", ImmutableMap.<String, Object>of("k1", 1, "k2", 2));
+    emitter.emit("d", "key", null);
+
+    Assert.assertEquals(ImmutableMap.of("key", "value".hashCode()), producer.entries.get(0).getHashKeys());
+    Assert.assertEquals(ImmutableMap.of("key", "value".hashCode()), producer.entries.get(1).getHashKeys());
+    Assert.assertEquals(ImmutableMap.of("k1", 1, "k2", 2), producer.entries.get(2).getHashKeys());
+    Assert.assertEquals(ImmutableMap.of("key", 0), producer.entries.get(3).getHashKeys());
+  }
+
+  private String decode(byte[] data, byte[] schemaHash, ReflectionDatumReader<String> reader,
+                        Schema schema) throws IOException {
+    Assert.assertArrayEquals(schemaHash, Arrays.copyOf(data, schemaHash.length));
+    ByteArrayInputStream input = new ByteArrayInputStream(data, schemaHash.length, data.length - schemaHash.length);
+    String value = reader.read(new BinaryDecoder(input), schema);
+    // The payload has no trailing bytes
+    Assert.assertEquals(-1, input.read());
+    return value;
+  }
+
+  /**
+   * A {@link QueueProducer} that keeps all enqueued entries.
+   */
+  private static final class RecordingQueueProducer implements QueueProducer {
+
+    private final List<QueueEntry> entries = Lists.newArrayList();
+
+    @Override
+    public void enqueue(QueueEntry entry) throws IOException {
+      entries.add(entry);
+    }
+
+    @Override
+    public void enqueue(Iterable<QueueEntry> entries) throws IOException {
+      Iterables.addAll(this.entries, entries);
+    }
+  }
+}
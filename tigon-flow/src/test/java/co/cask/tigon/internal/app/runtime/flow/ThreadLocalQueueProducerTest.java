@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.app.runtime.flow;
+
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionAware;
+import co.cask.tigon.data.queue.ConsumerConfig;
+import co.cask.tigon.data.queue.QueueClientFactory;
+import co.cask.tigon.data.queue.QueueConsumer;
+import co.cask.tigon.data.queue.QueueEntry;
+import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.queue.QueueProducer;
+import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tests the {@link ThreadLocalQueueProducer}.
+ */
+public class ThreadLocalQueueProducerTest {
+
+  private static final QueueName QUEUE_NAME = QueueName.fromFlowlet("app", "flow", "flowlet", "out");
+
+  @Test
+  public void testThreadLocalProducers() throws Exception {
+    RecordingQueueClientFactory factory = new RecordingQueueClientFactory();
+    final ThreadLocalQueueProducer producer = new ThreadLocalQueueProducer(factory, QUEUE_NAME,
+                                                                           QueueMetrics.NOOP_QUEUE_METRICS);
+
+    // Each thread enqueues and commits in its own transaction
+    Thread[] threads = new Thread[3];
+    for (int i = 0; i < threads.length; i++) {
+      final byte[] data = new byte[] {(byte) i};
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            producer.startTx(new Transaction(1L, 2L, new long[0], new long[0], Transaction.NO_TX_IN_PROGRESS));
+            producer.enqueue(new QueueEntry(data));
+            producer.enqueue(ImmutableList.of(new QueueEntry(data)));
+            Assert.assertTrue(producer.commitTx());
+            producer.postTxCommit();
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(threads.length, factory.producers.size());
+    for (RecordingQueueProducer delegate : factory.producers) {
+      Assert.assertEquals(1, delegate.committed.size());
+      List<QueueEntry> entries = delegate.committed.get(0);
+      Assert.assertEquals(2, entries.size());
+      Assert.assertArrayEquals(entries.get(0).getData(), entries.get(1).getData());
+    }
+
+    // Closing closes the producers of all threads
+    producer.close();
+    for (RecordingQueueProducer delegate : factory.producers) {
+      Assert.assertTrue(delegate.closed);
+    }
+  }
+
+  /**
+   * A {@link QueueClientFactory} that creates {@link RecordingQueueProducer}s.
+   */
+  private static final class RecordingQueueClientFactory implements QueueClientFactory {
+
+    private final List<RecordingQueueProducer> producers = new CopyOnWriteArrayList<RecordingQueueProducer>();
+
+    @Override
+    public QueueProducer createProducer(QueueName queueName) throws IOException {
+      return createProducer(queueName, QueueMetrics.NOOP_QUEUE_METRICS);
+    }
+
+    @Override
+    public QueueConsumer createConsumer(QueueName queueName,
+                                        ConsumerConfig consumerConfig, int numGroups) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueueProducer createProducer(QueueName queueName, QueueMetrics queueMetrics) throws IOException {
+      RecordingQueueProducer producer = new RecordingQueueProducer();
+      producers.add(producer);
+      return producer;
+    }
+  }
+
+  /**
+   * A {@link QueueProducer} that records the entries of committed transactions. It is not thread safe.
+   */
+  private static final class RecordingQueueProducer implements QueueProducer, TransactionAware, Closeable {
+
+    private final List<List<QueueEntry>> committed = Lists.newArrayList();
+    private List<QueueEntry> entries;
+    private boolean closed;
+
+    @Override
+    public void enqueue(QueueEntry entry) throws IOException {
+      entries.add(entry);
+    }
+
+    @Override
+    public void enqueue(Iterable<QueueEntry> entries) throws IOException {
+      Iterables.addAll(this.entries, entries);
+    }
+
+    @Override
+    public void startTx(Transaction tx) {
+      entries = Lists.newArrayList();
+    }
+
+    @Override
+    public Collection<byte[]> getTxChanges() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean commitTx() throws Exception {
+      committed.add(entries);
+      return true;
+    }
+
+    @Override
+    public void postTxCommit() {
+      entries = null;
+    }
+
+    @Override
+    public boolean rollbackTx() throws Exception {
+      entries = null;
+      return true;
+    }
+
+    @Override
+    public String getTransactionAwareName() {
+      return getClass().getSimpleName();
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+    }
+  }
+}
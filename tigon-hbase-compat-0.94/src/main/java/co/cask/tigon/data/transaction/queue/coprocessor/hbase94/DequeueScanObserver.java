@@ -17,8 +17,15 @@
 package co.cask.tigon.data.transaction.queue.coprocessor.hbase94;
 
 import co.cask.tephra.Transaction;
+import co.cask.tephra.coprocessor.TransactionStateCache;
+import co.cask.tephra.persist.TransactionSnapshot;
 import co.cask.tigon.data.queue.ConsumerConfig;
+import co.cask.tigon.data.transaction.coprocessor.DefaultTransactionStateCacheSupplier;
 import co.cask.tigon.data.transaction.queue.hbase.DequeueScanAttributes;
+import co.cask.tigon.data.transaction.queue.hbase.InvalidListMismatchException;
+import com.google.common.base.Supplier;
+import com.google.common.primitives.Longs;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.BaseRegionObserver;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
@@ -28,19 +35,55 @@ import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
 
 import java.io.IOException;
+import java.util.Arrays;
+import javax.annotation.Nullable;
 
 /**
- *
+ * Adds the {@link DequeueFilter} to dequeue scans. The invalid list of the transaction is taken from the transaction
+ * state cache if the scan doesn't carry it, and the filter is only added if the cached invalid list is the same.
  */
 public class DequeueScanObserver extends BaseRegionObserver {
+
+  private TransactionStateCache cache;
+  private TransactionSnapshot invalidsSnapshot;
+  private long[] invalids;
+
+  @Override
+  public void start(CoprocessorEnvironment e) throws IOException {
+    if (e instanceof RegionCoprocessorEnvironment) {
+      RegionCoprocessorEnvironment env = (RegionCoprocessorEnvironment) e;
+      Supplier<TransactionStateCache> cacheSupplier = getTransactionStateCacheSupplier(env);
+      this.cache = cacheSupplier.get();
+    }
+  }
+
+  protected Supplier<TransactionStateCache> getTransactionStateCacheSupplier(RegionCoprocessorEnvironment env) {
+    String tableName = env.getRegion().getTableDesc().getNameAsString();
+    String[] parts = tableName.split("\\.", 2);
+    String tableNamespace = "";
+    if (parts.length > 0) {
+      tableNamespace = parts[0];
+    }
+    return new DefaultTransactionStateCacheSupplier(tableNamespace, env.getConfiguration());
+  }
+
   @Override
   public RegionScanner preScannerOpen(ObserverContext<RegionCoprocessorEnvironment> e, Scan scan, RegionScanner s)
     throws IOException {
     ConsumerConfig consumerConfig = DequeueScanAttributes.getConsumerConfig(scan);
-    Transaction tx = DequeueScanAttributes.getTx(scan);
+    Transaction tx = DequeueScanAttributes.getTx(scan, getInvalids());
     byte[] queueRowPrefix = DequeueScanAttributes.getQueueRowPrefix(scan);
 
-    if (consumerConfig == null || tx == null || queueRowPrefix == null) {
+    if (consumerConfig == null || queueRowPrefix == null) {
+      return super.preScannerOpen(e, scan, s);
+    }
+    if (tx == null) {
+      if (DequeueScanAttributes.hasTxWithoutInvalids(scan)) {
+        // Without the dequeue filter, every row would go back to the client. Let it retry with the full transaction.
+        throw new InvalidListMismatchException("Invalid list of the transaction state cache of region "
+                                                 + e.getEnvironment().getRegion().getRegionNameAsString()
+                                                 + " does not match the invalid list of the dequeue transaction");
+      }
       return super.preScannerOpen(e, scan, s);
     }
 
@@ -56,4 +99,22 @@ public class DequeueScanObserver extends BaseRegionObserver {
 
     return super.preScannerOpen(e, scan, s);
   }
+
+  /**
+   * @return Sorted invalid transactions of the latest transaction snapshot, {@code null} if there is no snapshot.
+   */
+  @Nullable
+  private synchronized long[] getInvalids() {
+    TransactionSnapshot snapshot = cache == null ? null : cache.getLatestState();
+    if (snapshot == null) {
+      return null;
+    }
+    if (snapshot != invalidsSnapshot) {
+      long[] sortedInvalids = Longs.toArray(snapshot.getInvalid());
+      Arrays.sort(sortedInvalids);
+      invalids = sortedInvalids;
+      invalidsSnapshot = snapshot;
+    }
+    return invalids;
+  }
 }
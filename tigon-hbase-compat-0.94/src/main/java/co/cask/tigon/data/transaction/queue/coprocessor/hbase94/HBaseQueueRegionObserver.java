@@ -18,27 +18,42 @@ package co.cask.tigon.data.transaction.queue.coprocessor.hbase94;
 
 
 import co.cask.tigon.api.common.Bytes;
+import co.cask.tigon.conf.CConfiguration;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.transaction.queue.ConsumerEntryState;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
 import co.cask.tigon.data.transaction.queue.QueueEntryRow;
 import co.cask.tigon.data.transaction.queue.QueueUtils;
 import co.cask.tigon.data.transaction.queue.hbase.HBaseQueueAdmin;
 import co.cask.tigon.data.transaction.queue.hbase.coprocessor.ConsumerConfigCache;
 import co.cask.tigon.data.transaction.queue.hbase.coprocessor.ConsumerInstance;
+import co.cask.tigon.data.transaction.queue.hbase.coprocessor.EvictionCompactionPolicy;
 import co.cask.tigon.data.transaction.queue.hbase.coprocessor.QueueConsumerConfig;
+import co.cask.tigon.data.transaction.queue.hbase.coprocessor.QueueEvictionStats;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hbase.CoprocessorEnvironment;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.BaseRegionObserver;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.regionserver.HRegion;
 import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.regionserver.RegionServerServices;
 import org.apache.hadoop.hbase.regionserver.Store;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 /**
  * RegionObserver for queue table. This class should only have JSE and HBase classes dependencies only.
@@ -47,16 +62,40 @@ import java.util.List;
  *
  * This region observer does queue eviction during flush time and compact time by using queue consumer state
  * information to determine if a queue entry row can be omitted during flush/compact.
+ *
+ * As consumed rows stay in the region until then, the observer also counts the rows that can be evicted in the
+ * background, and requests a major compaction of the region if enough of its rows can be evicted. The eviction
+ * statistics of each region are available through JMX, see {@link QueueEvictionStats}.
  */
 public final class HBaseQueueRegionObserver extends BaseRegionObserver {
 
   private static final Log LOG = LogFactory.getLog(HBaseQueueRegionObserver.class);
 
+  // Delay (in seconds) between checks whether the rows that can be evicted should be counted
+  private static final long EVICTION_CHECK_DELAY = 60L;
+
+  // Counts the rows that can be evicted for all regions of the region server, one region at a time
+  private static final ScheduledExecutorService EVICTION_CHECK_EXECUTOR =
+    Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "queue-eviction-check");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
   private ConsumerConfigCache configCache;
 
   private String appName;
   private String flowName;
 
+  private RegionCoprocessorEnvironment env;
+  private ScheduledFuture<?> evictionCheck;
+  private long lastEvictionCheck;
+  private QueueEvictionStats stats;
+  private final EvictionCompactionPolicy compactionPolicy = new EvictionCompactionPolicy();
+
   @Override
   public void start(CoprocessorEnvironment env) {
     if (env instanceof RegionCoprocessorEnvironment) {
@@ -68,6 +107,39 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
 
       configCache = ConsumerConfigCache.getInstance(env.getConfiguration(),
                                                     Bytes.toBytes(configTableName));
+
+      this.env = (RegionCoprocessorEnvironment) env;
+      stats = new QueueEvictionStats(tableName, this.env.getRegion().getRegionInfo().getEncodedName());
+      try {
+        stats.register();
+      } catch (JMException e) {
+        LOG.warn("Failed to register queue eviction statistics of region " + getRegionName(), e);
+      }
+      lastEvictionCheck = System.currentTimeMillis();
+      evictionCheck = EVICTION_CHECK_EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            checkEviction();
+          } catch (Throwable t) {
+            LOG.warn("Failed to check queue eviction of region " + getRegionName(), t);
+          }
+        }
+      }, EVICTION_CHECK_DELAY, EVICTION_CHECK_DELAY, TimeUnit.SECONDS);
+    }
+  }
+
+  @Override
+  public void stop(CoprocessorEnvironment env) {
+    if (evictionCheck != null) {
+      evictionCheck.cancel(false);
+    }
+    if (stats != null) {
+      try {
+        stats.unregister();
+      } catch (JMException e) {
+        LOG.warn("Failed to unregister queue eviction statistics of region " + getRegionName(), e);
+      }
     }
   }
 
@@ -79,7 +151,7 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
     }
 
     LOG.info("preFlush, creates EvictionInternalScanner");
-    return new EvictionInternalScanner("flush", e.getEnvironment(), scanner);
+    return new EvictionInternalScanner("flush", e.getEnvironment(), scanner, false);
   }
 
   @Override
@@ -90,7 +162,7 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
     }
 
     LOG.info("preCompact, creates EvictionInternalScanner");
-    return new EvictionInternalScanner("compaction", e.getEnvironment(), scanner);
+    return new EvictionInternalScanner("compaction", e.getEnvironment(), scanner, false);
   }
 
   // needed for queue unit-test
@@ -98,6 +170,71 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
     return configCache;
   }
 
+  private String getRegionName() {
+    return env.getRegion().getRegionNameAsString();
+  }
+
+  /**
+   * Counts the rows of the region that can be evicted once the eviction check interval passed, and requests a major
+   * compaction of the region if the number and the ratio of these rows reach the configured thresholds. If the last
+   * requested compaction evicted no rows, the next one is only requested after an increasing number of intervals.
+   */
+  private void checkEviction() throws IOException {
+    CConfiguration conf = configCache.getConfiguration();
+    long interval = QueueConstants.DEFAULT_QUEUE_EVICTION_CHECK_INTERVAL;
+    float deadRowsRatio = QueueConstants.DEFAULT_QUEUE_EVICTION_DEAD_ROWS_RATIO;
+    long minDeadRows = QueueConstants.DEFAULT_QUEUE_EVICTION_MIN_DEAD_ROWS;
+    if (conf != null) {
+      interval = conf.getLong(QueueConstants.QUEUE_EVICTION_CHECK_INTERVAL, interval);
+      deadRowsRatio = conf.getFloat(QueueConstants.QUEUE_EVICTION_DEAD_ROWS_RATIO, deadRowsRatio);
+      minDeadRows = conf.getLong(QueueConstants.QUEUE_EVICTION_MIN_DEAD_ROWS, minDeadRows);
+    }
+    long now = System.currentTimeMillis();
+    if (interval <= 0 || now < lastEvictionCheck + interval * 1000) {
+      return;
+    }
+    HRegion region = env.getRegion();
+    if (!region.isAvailable() || region.isClosing()) {
+      return;
+    }
+    lastEvictionCheck = now;
+
+    // The rows are counted by the scanner that evicts them during compactions, hence by the same rule. The rule
+    // doesn't look at the data column, hence the scan skips the entry payloads and starts at the meta column.
+    Scan scan = new Scan();
+    scan.setCacheBlocks(false);
+    scan.setFilter(new ColumnRangeFilter(QueueEntryRow.META_COLUMN, true, null, false));
+    EvictionInternalScanner scanner = new EvictionInternalScanner("eviction check", env, region.getScanner(scan), true);
+    try {
+      List<KeyValue> row = new ArrayList<KeyValue>();
+      boolean hasMore;
+      do {
+        row.clear();
+        hasMore = scanner.next(row);
+      } while (hasMore);
+    } finally {
+      scanner.close();
+    }
+    long deadRows = scanner.getRowsEvicted();
+    stats.evictionChecked(scanner.getTotalRows(), deadRows, now);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Region " + getRegionName() + " eviction check, dead rows: " + deadRows + " / "
+                  + scanner.getTotalRows() + ", skipped incomplete: " + scanner.getSkippedIncomplete());
+    }
+
+    RegionServerServices services = env.getRegionServerServices();
+    if (services == null
+      || !compactionPolicy.requestCompaction(stats, minDeadRows, deadRowsRatio, interval * 1000, now)) {
+      return;
+    }
+    // The compaction evicts the rows through the EvictionInternalScanner
+    for (Store store : region.getStores().values()) {
+      store.triggerMajorCompaction();
+    }
+    services.getCompactionRequester().requestCompaction(region, "Queue eviction");
+    stats.compactionRequested();
+  }
+
   /**
    * An {@link org.apache.hadoop.hbase.regionserver.InternalScanner} that will skip queue
    * entries that are safe to be evicted.
@@ -105,6 +242,8 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
   private final class EvictionInternalScanner implements InternalScanner {
 
     private final String triggeringAction;
+    // Only counts the rows that can be evicted, for the eviction check
+    private final boolean countOnly;
     private final RegionCoprocessorEnvironment env;
     private final InternalScanner scanner;
     // This is just for object reused to reduce objects creation.
@@ -117,8 +256,10 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
     // couldn't be evicted due to incomplete view of row
     private long skippedIncomplete = 0;
 
-    private EvictionInternalScanner(String action, RegionCoprocessorEnvironment env, InternalScanner scanner) {
+    private EvictionInternalScanner(String action, RegionCoprocessorEnvironment env, InternalScanner scanner,
+                                    boolean countOnly) {
       this.triggeringAction = action;
+      this.countOnly = countOnly;
       this.env = env;
       this.scanner = scanner;
       this.consumerInstance = new ConsumerInstance(0, 0);
@@ -183,11 +324,26 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
 
     @Override
     public void close() throws IOException {
-      LOG.info("Region " + env.getRegion().getRegionNameAsString() + " " + triggeringAction +
-                 ", rows evicted: " + rowsEvicted + " / " + totalRows + ", skipped incomplete: " + skippedIncomplete);
+      if (!countOnly) {
+        LOG.info("Region " + env.getRegion().getRegionNameAsString() + " " + triggeringAction +
+                   ", rows evicted: " + rowsEvicted + " / " + totalRows + ", skipped incomplete: " + skippedIncomplete);
+        stats.rowsEvicted(rowsEvicted);
+      }
       scanner.close();
     }
 
+    long getTotalRows() {
+      return totalRows;
+    }
+
+    long getRowsEvicted() {
+      return rowsEvicted;
+    }
+
+    long getSkippedIncomplete() {
+      return skippedIncomplete;
+    }
+
     /**
      * Determines the given queue entry row can be evicted.
      * @param result All KeyValues of a queue entry row.
@@ -211,17 +367,17 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
       // This logic is not perfect as if flush happens after enqueue and before dequeue, that entry may never get
       // evicted (depends on when the next compaction happens, whether the queue configuration has been change or not).
 
-      // There are two data columns, "d" and "m".
+      // There are two data columns, "d" and "m". The eviction check only reads the "m" column of them.
       // If the size == 2, it should not be evicted as well,
       // as state columns (dequeue) always happen after data columns (enqueue).
-      if (result.size() <= 2) {
+      if (result.size() <= (countOnly ? 1 : 2)) {
         skippedIncomplete++;
         return false;
       }
 
       // "d" and "m" columns always comes before the state columns, prefixed with "s".
       Iterator<KeyValue> iterator = result.iterator();
-      if (!QueueEntryRow.isDataColumn(iterator.next())) {
+      if (!countOnly && !QueueEntryRow.isDataColumn(iterator.next())) {
         skippedIncomplete++;
         return false;
       }
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.coprocessor.hbase94;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.coprocessor.BaseEndpointCoprocessor;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.WrongRegionException;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Endpoint that claims queue entries of a region for a FIFO consumer. Each row is claimed with a region local
+ * check-and-put, hence claiming a batch of entries costs one RPC per region instead of one RPC per entry.
+ */
+public class QueueClaimEndpoint extends BaseEndpointCoprocessor implements QueueClaimProtocol {
+
+  @Override
+  public byte[][] claim(byte[][] rows, byte[] family, byte[] stateColumn,
+                        byte[] claimedStateValue) throws IOException {
+    HRegion region = ((RegionCoprocessorEnvironment) getEnvironment()).getRegion();
+
+    // Check all rows first, so that nothing is claimed if the region has changed since the client located it.
+    HRegionInfo regionInfo = region.getRegionInfo();
+    for (byte[] row : rows) {
+      if (!HRegion.rowIsInRange(regionInfo, row)) {
+        throw new WrongRegionException("Row " + Bytes.toStringBinary(row) + " is not in region "
+                                         + regionInfo.getRegionNameAsString());
+      }
+    }
+
+    // An empty value for the comparator means the column must not exist, same as checkAndPut with a null value.
+    BinaryComparator emptyState = new BinaryComparator(HConstants.EMPTY_BYTE_ARRAY);
+    List<byte[]> claimed = Lists.newArrayListWithCapacity(rows.length);
+    for (byte[] row : rows) {
+      Put put = new Put(row);
+      put.add(family, stateColumn, claimedStateValue);
+      if (region.checkAndMutate(row, family, stateColumn, CompareFilter.CompareOp.EQUAL, emptyState, put, true)) {
+        claimed.add(row);
+      }
+    }
+    return claimed.toArray(new byte[claimed.size()][]);
+  }
+}
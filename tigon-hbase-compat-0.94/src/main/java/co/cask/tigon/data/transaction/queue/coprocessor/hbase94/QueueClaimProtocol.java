@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.coprocessor.hbase94;
+
+import org.apache.hadoop.hbase.ipc.CoprocessorProtocol;
+
+import java.io.IOException;
+
+/**
+ * Protocol of the {@link QueueClaimEndpoint} for claiming queue entries of FIFO consumers in one call per region.
+ */
+public interface QueueClaimProtocol extends CoprocessorProtocol {
+
+  /**
+   * Claims the given rows by writing the claimed state to the state column of every row that has no state yet.
+   * All rows must belong to the region that the call is sent to.
+   *
+   * @param rows Row keys of the entries to claim.
+   * @param family Column family of the state column.
+   * @param stateColumn Name of the state column.
+   * @param claimedStateValue The claimed state to write.
+   * @return The row keys that got claimed.
+   */
+  byte[][] claim(byte[][] rows, byte[] family, byte[] stateColumn, byte[] claimedStateValue) throws IOException;
+}
@@ -21,6 +21,7 @@ import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.transaction.queue.ConsumerEntryState;
 import co.cask.tigon.data.transaction.queue.QueueEntryRow;
+import co.cask.tigon.data.transaction.queue.coprocessor.hbase94.QueueClaimProtocol;
 import com.google.common.primitives.Ints;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Scan;
@@ -31,24 +32,37 @@ import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * HBase 0.94 implementation of {@link co.cask.tigon.data.transaction.queue.hbase.HBaseQueueConsumer}.
  */
 final class HBase94QueueConsumer extends HBaseQueueConsumer {
   private final Filter processedStateFilter;
 
-  HBase94QueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName,
+  HBase94QueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName, int distributionBuckets,
                        HBaseConsumerState consumerState, HBaseConsumerStateStore stateStore) {
-    super(consumerConfig, hTable, queueName, consumerState, stateStore);
+    super(consumerConfig, hTable, queueName, distributionBuckets, consumerState, stateStore);
     processedStateFilter = createStateFilter();
   }
 
+  @Override
+  protected Collection<byte[]> claimRegionEntries(HTable hTable, List<byte[]> rowKeys, byte[] stateColumn,
+                                                  byte[] claimedStateValue) throws IOException {
+    QueueClaimProtocol claimProtocol = hTable.coprocessorProxy(QueueClaimProtocol.class, rowKeys.get(0));
+    return Arrays.asList(claimProtocol.claim(rowKeys.toArray(new byte[rowKeys.size()][]), QueueEntryRow.COLUMN_FAMILY,
+                                             stateColumn, claimedStateValue));
+  }
+
   @Override
   protected Scan createScan(byte[] startRow, byte[] stopRow, int numRows) {
     // Scan the table for queue entries.
     Scan scan = new Scan();
     // we should roughly divide by number of buckets, but don't want another RPC for the case we are not exactly right
-    int caching = (int) (1.1 * numRows / HBaseQueueAdmin.ROW_KEY_DISTRIBUTION_BUCKETS);
+    int caching = (int) (1.1 * numRows / getDistributionBuckets());
     scan.setCaching(caching);
     scan.setStartRow(startRow);
     scan.setStopRow(stopRow);
@@ -27,7 +27,8 @@ import org.apache.hadoop.hbase.client.HTable;
 public class HBase94QueueUtil extends HBaseQueueUtil {
   @Override
   public HBaseQueueConsumer getQueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName,
-                                              HBaseConsumerState consumerState, HBaseConsumerStateStore stateStore) {
-    return new HBase94QueueConsumer(consumerConfig, hTable, queueName, consumerState, stateStore);
+                                              int distributionBuckets, HBaseConsumerState consumerState,
+                                              HBaseConsumerStateStore stateStore) {
+    return new HBase94QueueConsumer(consumerConfig, hTable, queueName, distributionBuckets, consumerState, stateStore);
   }
 }
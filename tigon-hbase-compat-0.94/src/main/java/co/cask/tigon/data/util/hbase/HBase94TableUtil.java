@@ -20,6 +20,7 @@ import co.cask.tigon.data.increment.hbase94.IncrementHandler;
 import co.cask.tigon.data.transaction.coprocessor.hbase94.DefaultTransactionProcessor;
 import co.cask.tigon.data.transaction.queue.coprocessor.hbase94.DequeueScanObserver;
 import co.cask.tigon.data.transaction.queue.coprocessor.hbase94.HBaseQueueRegionObserver;
+import co.cask.tigon.data.transaction.queue.coprocessor.hbase94.QueueClaimEndpoint;
 import com.google.common.collect.Maps;
 import org.apache.hadoop.hbase.ClusterStatus;
 import org.apache.hadoop.hbase.Coprocessor;
@@ -123,6 +124,11 @@ public class HBase94TableUtil extends HBaseTableUtil {
     return DequeueScanObserver.class;
   }
 
+  @Override
+  public Class<? extends Coprocessor> getQueueClaimEndpointClassForVersion() {
+    return QueueClaimEndpoint.class;
+  }
+
   @Override
   public Class<? extends Coprocessor> getIncrementHandlerClassForVersion() {
     return IncrementHandler.class;
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.data.transaction.queue.coprocessor.hbase96;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.RpcCallback;
+import com.google.protobuf.RpcController;
+import com.google.protobuf.Service;
+import org.apache.hadoop.hbase.Coprocessor;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.coprocessor.CoprocessorException;
+import org.apache.hadoop.hbase.coprocessor.CoprocessorService;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.protobuf.ResponseConverter;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.WrongRegionException;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Endpoint that claims queue entries of a region for a FIFO consumer. Each row is claimed with a region local
+ * check-and-put, hence claiming a batch of entries costs one RPC per region instead of one RPC per entry.
+ * <p>
+ * The endpoint serves the {@link QueueClaimProtos#QUEUE_CLAIM_SERVICE} protocol. Use
+ * {@link QueueClaimProtos#createClaimRequest} and {@link QueueClaimProtos#getClaimedRows} on the client.
+ * </p>
+ */
+public class QueueClaimEndpoint implements Service, CoprocessorService, Coprocessor {
+
+  private RegionCoprocessorEnvironment env;
+
+  @Override
+  public Descriptors.ServiceDescriptor getDescriptorForType() {
+    return QueueClaimProtos.QUEUE_CLAIM_SERVICE;
+  }
+
+  @Override
+  public void callMethod(Descriptors.MethodDescriptor method, RpcController controller, Message request,
+                         RpcCallback<Message> done) {
+    checkMethod(method);
+    Message response = null;
+    try {
+      response = QueueClaimProtos.createClaimResponse(claim(request));
+    } catch (IOException e) {
+      ResponseConverter.setControllerException(controller, e);
+    }
+    done.run(response);
+  }
+
+  @Override
+  public Message getRequestPrototype(Descriptors.MethodDescriptor method) {
+    checkMethod(method);
+    return QueueClaimProtos.getClaimRequestPrototype();
+  }
+
+  @Override
+  public Message getResponsePrototype(Descriptors.MethodDescriptor method) {
+    checkMethod(method);
+    return QueueClaimProtos.getClaimResponsePrototype();
+  }
+
+  private void checkMethod(Descriptors.MethodDescriptor method) {
+    if (method.getService() != QueueClaimProtos.QUEUE_CLAIM_SERVICE) {
+      throw new IllegalArgumentException("Service.callMethod() given method descriptor for wrong service type.");
+    }
+  }
+
+  private List<byte[]> claim(Message request) throws IOException {
+    HRegion region = env.getRegion();
+    List<byte[]> rows = QueueClaimProtos.getRequestRows(request);
+
+    // Check all rows first, so that nothing is claimed if the region has changed since the client located it.
+    HRegionInfo regionInfo = region.getRegionInfo();
+    for (byte[] row : rows) {
+      if (!HRegion.rowIsInRange(regionInfo, row)) {
+        throw new WrongRegionException("Row " + Bytes.toStringBinary(row) + " is not in region "
+                                         + regionInfo.getRegionNameAsString());
+      }
+    }
+
+    byte[] family = QueueClaimProtos.getFamily(request);
+    byte[] stateColumn = QueueClaimProtos.getStateColumn(request);
+    byte[] claimedState = QueueClaimProtos.getClaimedState(request);
+
+    // An empty value for the comparator means the column must not exist, same as checkAndPut with a null value.
+    BinaryComparator emptyState = new BinaryComparator(HConstants.EMPTY_BYTE_ARRAY);
+    List<byte[]> claimed = Lists.newArrayListWithCapacity(rows.size());
+    for (byte[] row : rows) {
+      Put put = new Put(row);
+      put.add(family, stateColumn, claimedState);
+      if (region.checkAndMutate(row, family, stateColumn, CompareFilter.CompareOp.EQUAL, emptyState, put, true)) {
+        claimed.add(row);
+      }
+    }
+    return claimed;
+  }
+
+  @Override
+  public Service getService() {
+    return this;
+  }
+
+  @Override
+  public void start(CoprocessorEnvironment env) throws IOException {
+    if (!(env instanceof RegionCoprocessorEnvironment)) {
+      throw new CoprocessorException("Must be loaded on a table region!");
+    }
+    this.env = (RegionCoprocessorEnvironment) env;
+  }
+
+  @Override
+  public void stop(CoprocessorEnvironment env) throws IOException {
+    // nothing to do
+  }
+}
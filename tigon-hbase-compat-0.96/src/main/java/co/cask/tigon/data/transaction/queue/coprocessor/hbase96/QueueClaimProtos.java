@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.coprocessor.hbase96;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+
+import java.util.List;
+
+/**
+ * Protocol of the {@link QueueClaimEndpoint}. The descriptors are built in code, as the build has no protobuf
+ * compiler, and are equivalent to:
+ * <pre>
+ *   package tigon.queue;
+ *
+ *   message ClaimRequest {
+ *     required bytes family = 1;
+ *     required bytes state_column = 2;
+ *     required bytes claimed_state = 3;
+ *     repeated bytes row = 4;
+ *   }
+ *
+ *   message ClaimResponse {
+ *     repeated bytes row = 1;
+ *   }
+ *
+ *   service QueueClaimService {
+ *     rpc Claim(ClaimRequest) returns (ClaimResponse);
+ *   }
+ * </pre>
+ */
+public final class QueueClaimProtos {
+
+  private static final String PACKAGE = "tigon.queue";
+
+  public static final Descriptors.Descriptor CLAIM_REQUEST;
+  public static final Descriptors.Descriptor CLAIM_RESPONSE;
+  public static final Descriptors.ServiceDescriptor QUEUE_CLAIM_SERVICE;
+  public static final Descriptors.MethodDescriptor CLAIM_METHOD;
+
+  private static final Descriptors.FieldDescriptor REQUEST_FAMILY;
+  private static final Descriptors.FieldDescriptor REQUEST_STATE_COLUMN;
+  private static final Descriptors.FieldDescriptor REQUEST_CLAIMED_STATE;
+  private static final Descriptors.FieldDescriptor REQUEST_ROW;
+  private static final Descriptors.FieldDescriptor RESPONSE_ROW;
+
+  static {
+    DescriptorProtos.FileDescriptorProto fileProto = DescriptorProtos.FileDescriptorProto.newBuilder()
+      .setName("QueueClaim.proto")
+      .setPackage(PACKAGE)
+      .addMessageType(DescriptorProtos.DescriptorProto.newBuilder()
+                        .setName("ClaimRequest")
+                        .addField(createField("family", 1, true))
+                        .addField(createField("state_column", 2, true))
+                        .addField(createField("claimed_state", 3, true))
+                        .addField(createField("row", 4, false)))
+      .addMessageType(DescriptorProtos.DescriptorProto.newBuilder()
+                        .setName("ClaimResponse")
+                        .addField(createField("row", 1, false)))
+      .addService(DescriptorProtos.ServiceDescriptorProto.newBuilder()
+                    .setName("QueueClaimService")
+                    .addMethod(DescriptorProtos.MethodDescriptorProto.newBuilder()
+                                 .setName("Claim")
+                                 .setInputType("." + PACKAGE + ".ClaimRequest")
+                                 .setOutputType("." + PACKAGE + ".ClaimResponse")))
+      .build();
+
+    Descriptors.FileDescriptor file;
+    try {
+      file = Descriptors.FileDescriptor.buildFrom(fileProto, new Descriptors.FileDescriptor[0]);
+    } catch (Descriptors.DescriptorValidationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+
+    CLAIM_REQUEST = file.findMessageTypeByName("ClaimRequest");
+    CLAIM_RESPONSE = file.findMessageTypeByName("ClaimResponse");
+    QUEUE_CLAIM_SERVICE = file.findServiceByName("QueueClaimService");
+    CLAIM_METHOD = QUEUE_CLAIM_SERVICE.findMethodByName("Claim");
+
+    REQUEST_FAMILY = CLAIM_REQUEST.findFieldByName("family");
+    REQUEST_STATE_COLUMN = CLAIM_REQUEST.findFieldByName("state_column");
+    REQUEST_CLAIMED_STATE = CLAIM_REQUEST.findFieldByName("claimed_state");
+    REQUEST_ROW = CLAIM_REQUEST.findFieldByName("row");
+    RESPONSE_ROW = CLAIM_RESPONSE.findFieldByName("row");
+  }
+
+  /**
+   * Creates a claim request for the given rows.
+   */
+  public static Message createClaimRequest(List<byte[]> rows, byte[] family, byte[] stateColumn,
+                                           byte[] claimedStateValue) {
+    DynamicMessage.Builder builder = DynamicMessage.newBuilder(CLAIM_REQUEST)
+      .setField(REQUEST_FAMILY, ByteString.copyFrom(family))
+      .setField(REQUEST_STATE_COLUMN, ByteString.copyFrom(stateColumn))
+      .setField(REQUEST_CLAIMED_STATE, ByteString.copyFrom(claimedStateValue));
+    for (byte[] row : rows) {
+      builder.addRepeatedField(REQUEST_ROW, ByteString.copyFrom(row));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Creates a claim response with the given claimed rows.
+   */
+  public static Message createClaimResponse(List<byte[]> rows) {
+    DynamicMessage.Builder builder = DynamicMessage.newBuilder(CLAIM_RESPONSE);
+    for (byte[] row : rows) {
+      builder.addRepeatedField(RESPONSE_ROW, ByteString.copyFrom(row));
+    }
+    return builder.build();
+  }
+
+  public static Message getClaimRequestPrototype() {
+    return DynamicMessage.getDefaultInstance(CLAIM_REQUEST);
+  }
+
+  public static Message getClaimResponsePrototype() {
+    return DynamicMessage.getDefaultInstance(CLAIM_RESPONSE);
+  }
+
+  public static byte[] getFamily(Message request) {
+    return ((ByteString) request.getField(REQUEST_FAMILY)).toByteArray();
+  }
+
+  public static byte[] getStateColumn(Message request) {
+    return ((ByteString) request.getField(REQUEST_STATE_COLUMN)).toByteArray();
+  }
+
+  public static byte[] getClaimedState(Message request) {
+    return ((ByteString) request.getField(REQUEST_CLAIMED_STATE)).toByteArray();
+  }
+
+  /**
+   * Returns the rows of a claim request.
+   */
+  public static List<byte[]> getRequestRows(Message request) {
+    return getRows(request, REQUEST_ROW);
+  }
+
+  /**
+   * Returns the claimed rows of a claim response.
+   */
+  public static List<byte[]> getClaimedRows(Message response) {
+    return getRows(response, RESPONSE_ROW);
+  }
+
+  private static List<byte[]> getRows(Message message, Descriptors.FieldDescriptor field) {
+    int count = message.getRepeatedFieldCount(field);
+    List<byte[]> rows = Lists.newArrayListWithCapacity(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(((ByteString) message.getRepeatedField(field, i)).toByteArray());
+    }
+    return rows;
+  }
+
+  private static DescriptorProtos.FieldDescriptorProto createField(String name, int number, boolean required) {
+    return DescriptorProtos.FieldDescriptorProto.newBuilder()
+      .setName(name)
+      .setNumber(number)
+      .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_BYTES)
+      .setLabel(required ? DescriptorProtos.FieldDescriptorProto.Label.LABEL_REQUIRED
+                         : DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED)
+      .build();
+  }
+
+  private QueueClaimProtos() {
+  }
+}
@@ -21,7 +21,10 @@ import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.transaction.queue.ConsumerEntryState;
 import co.cask.tigon.data.transaction.queue.QueueEntryRow;
+import co.cask.tigon.data.transaction.queue.coprocessor.hbase96.QueueClaimProtos;
 import com.google.common.primitives.Ints;
+import com.google.protobuf.Message;
+import com.google.protobuf.ServiceException;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
@@ -30,6 +33,12 @@ import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.ipc.CoprocessorRpcChannel;
+import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * HBase 0.96 implementation of {@link HBaseQueueConsumer}.
@@ -37,18 +46,32 @@ import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 final class HBase96QueueConsumer extends HBaseQueueConsumer {
   private final Filter processedStateFilter;
 
-  HBase96QueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName,
+  HBase96QueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName, int distributionBuckets,
                        HBaseConsumerState consumerState, HBaseConsumerStateStore stateStore) {
-    super(consumerConfig, hTable, queueName, consumerState, stateStore);
+    super(consumerConfig, hTable, queueName, distributionBuckets, consumerState, stateStore);
     this.processedStateFilter = createStateFilter();
   }
 
+  @Override
+  protected Collection<byte[]> claimRegionEntries(HTable hTable, List<byte[]> rowKeys, byte[] stateColumn,
+                                                  byte[] claimedStateValue) throws IOException {
+    CoprocessorRpcChannel channel = hTable.coprocessorService(rowKeys.get(0));
+    Message request = QueueClaimProtos.createClaimRequest(rowKeys, QueueEntryRow.COLUMN_FAMILY,
+                                                          stateColumn, claimedStateValue);
+    try {
+      return QueueClaimProtos.getClaimedRows(channel.callBlockingMethod(
+        QueueClaimProtos.CLAIM_METHOD, null, request, QueueClaimProtos.getClaimResponsePrototype()));
+    } catch (ServiceException e) {
+      throw ProtobufUtil.getRemoteException(e);
+    }
+  }
+
   @Override
   protected Scan createScan(byte[] startRow, byte[] stopRow, int numRows) {
     // Scan the table for queue entries.
     Scan scan = new Scan();
     // we should roughly divide by number of buckets, but don't want another RPC for the case we are not exactly right
-    int caching = (int) (1.1 * numRows / HBaseQueueAdmin.ROW_KEY_DISTRIBUTION_BUCKETS);
+    int caching = (int) (1.1 * numRows / getDistributionBuckets());
     scan.setCaching(caching);
     scan.setStartRow(startRow);
     scan.setStopRow(stopRow);
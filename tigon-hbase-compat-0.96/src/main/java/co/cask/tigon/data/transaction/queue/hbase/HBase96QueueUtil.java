@@ -26,7 +26,8 @@ import org.apache.hadoop.hbase.client.HTable;
 public class HBase96QueueUtil extends HBaseQueueUtil {
   @Override
   public HBaseQueueConsumer getQueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName,
-                                              HBaseConsumerState consumerState, HBaseConsumerStateStore stateStore) {
-    return new HBase96QueueConsumer(consumerConfig, hTable, queueName, consumerState, stateStore);
+                                              int distributionBuckets, HBaseConsumerState consumerState,
+                                              HBaseConsumerStateStore stateStore) {
+    return new HBase96QueueConsumer(consumerConfig, hTable, queueName, distributionBuckets, consumerState, stateStore);
   }
 }
@@ -21,6 +21,7 @@ import co.cask.tigon.data.increment.hbase96.IncrementHandler;
 import co.cask.tigon.data.transaction.coprocessor.hbase96.DefaultTransactionProcessor;
 import co.cask.tigon.data.transaction.queue.coprocessor.hbase96.DequeueScanObserver;
 import co.cask.tigon.data.transaction.queue.coprocessor.hbase96.HBaseQueueRegionObserver;
+import co.cask.tigon.data.transaction.queue.coprocessor.hbase96.QueueClaimEndpoint;
 import com.google.common.collect.Maps;
 import org.apache.hadoop.hbase.ClusterStatus;
 import org.apache.hadoop.hbase.Coprocessor;
@@ -122,6 +123,11 @@ public class HBase96TableUtil extends HBaseTableUtil {
     return DequeueScanObserver.class;
   }
 
+  @Override
+  public Class<? extends Coprocessor> getQueueClaimEndpointClassForVersion() {
+    return QueueClaimEndpoint.class;
+  }
+
   @Override
   public Class<? extends Coprocessor> getIncrementHandlerClassForVersion() {
     return IncrementHandler.class;
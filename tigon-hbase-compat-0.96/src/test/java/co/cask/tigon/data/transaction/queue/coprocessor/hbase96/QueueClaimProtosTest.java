@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.data.transaction.queue.coprocessor.hbase96;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Message;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests the messages of the {@link QueueClaimProtos}.
+ */
+public class QueueClaimProtosTest {
+
+  @Test
+  public void testRequestResponse() throws Exception {
+    List<byte[]> rows = ImmutableList.of(Bytes.toBytes("row1"), Bytes.toBytes("row2"));
+    Message request = QueueClaimProtos.createClaimRequest(rows, Bytes.toBytes("q"), Bytes.toBytes("s"),
+                                                          Bytes.toBytes("claimed"));
+
+    // Parse the request the same way the region server does
+    Message parsed = QueueClaimProtos.getClaimRequestPrototype().newBuilderForType()
+      .mergeFrom(request.toByteString()).build();
+    Assert.assertArrayEquals(Bytes.toBytes("q"), QueueClaimProtos.getFamily(parsed));
+    Assert.assertArrayEquals(Bytes.toBytes("s"), QueueClaimProtos.getStateColumn(parsed));
+    Assert.assertArrayEquals(Bytes.toBytes("claimed"), QueueClaimProtos.getClaimedState(parsed));
+    List<byte[]> requestRows = QueueClaimProtos.getRequestRows(parsed);
+    Assert.assertEquals(2, requestRows.size());
+    Assert.assertArrayEquals(rows.get(0), requestRows.get(0));
+    Assert.assertArrayEquals(rows.get(1), requestRows.get(1));
+
+    Message response = QueueClaimProtos.createClaimResponse(rows.subList(1, 2));
+    Message parsedResponse = QueueClaimProtos.getClaimResponsePrototype().newBuilderForType()
+      .mergeFrom(response.toByteArray()).build();
+    List<byte[]> claimed = QueueClaimProtos.getClaimedRows(parsedResponse);
+    Assert.assertEquals(1, claimed.size());
+    Assert.assertArrayEquals(rows.get(1), claimed.get(0));
+  }
+
+  @Test
+  public void testServiceDescriptor() {
+    QueueClaimEndpoint endpoint = new QueueClaimEndpoint();
+    Assert.assertEquals("tigon.queue.QueueClaimService", endpoint.getDescriptorForType().getFullName());
+    Assert.assertSame(QueueClaimProtos.CLAIM_REQUEST,
+                      endpoint.getRequestPrototype(QueueClaimProtos.CLAIM_METHOD).getDescriptorForType());
+    Assert.assertSame(QueueClaimProtos.CLAIM_RESPONSE,
+                      endpoint.getResponsePrototype(QueueClaimProtos.CLAIM_METHOD).getDescriptorForType());
+  }
+}
@@ -34,21 +34,31 @@ import java.util.Map;
  * Defines QueueEntry.
  */
 public class QueueEntry {
-  private final Map<String, Integer> hashKeys;
+  // For the common case of having at most one hash key, the key and value are kept in fields and the map
+  // is only created when asked for.
+  private final String hashKey;
+  private final int hashValue;
   private final byte[] data;
+  private Map<String, Integer> hashKeys;
 
   public QueueEntry(byte[] data) {
     this(ImmutableMap.<String, Integer>of(), data);
   }
 
   public QueueEntry(String hashKey, int hashValue, byte[] data) {
-    this(ImmutableMap.of(hashKey, hashValue), data);
+    Preconditions.checkNotNull(data);
+    Preconditions.checkNotNull(hashKey);
+    this.data = data;
+    this.hashKey = hashKey;
+    this.hashValue = hashValue;
   }
 
   public QueueEntry(Map<String, Integer> hashKeys, byte[] data) {
     Preconditions.checkNotNull(data);
     Preconditions.checkNotNull(hashKeys);
     this.data = data;
+    this.hashKey = null;
+    this.hashValue = 0;
     this.hashKeys = ImmutableMap.copyOf(hashKeys);
   }
 
@@ -57,17 +67,26 @@ public class QueueEntry {
   }
 
   public Map<String, Integer> getHashKeys() {
-    return hashKeys;
+    Map<String, Integer> result = hashKeys;
+    if (result == null) {
+      // No need to synchronize: the worst case is creating the same immutable map more than once.
+      result = ImmutableMap.of(hashKey, hashValue);
+      hashKeys = result;
+    }
+    return result;
   }
 
   public Integer getHashKey(String key) {
+    if (hashKey != null) {
+      return hashKey.equals(key) ? hashValue : null;
+    }
     return this.hashKeys.get(key);
   }
 
   public String toString() {
     return Objects.toStringHelper(this)
       .add("data", Bytes.toStringBinary(this.data))
-      .add("hashKeys", this.hashKeys)
+      .add("hashKeys", getHashKeys())
       .toString();
   }
 
@@ -100,6 +119,22 @@ public class QueueEntry {
     return bos.toByteArray();
   }
 
+  /**
+   * Serializes the hash keys of the given entry. An entry with a single hash key is written straight from its
+   * fields, without creating the hash keys map.
+   */
+  public static byte[] serializeHashKeys(QueueEntry entry) throws IOException {
+    if (entry.hashKey == null) {
+      return serializeHashKeys(entry.hashKeys);
+    }
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    Encoder encoder = new BinaryEncoder(bos);
+    encoder.writeInt(1);
+    encoder.writeString(entry.hashKey).writeInt(entry.hashValue);
+    encoder.writeInt(0); // per Avro spec, end with a (block of length) zero
+    return bos.toByteArray();
+  }
+
   public static Map<String, Integer> deserializeHashKeys(byte[] bytes) throws IOException {
     return deserializeHashKeys(bytes, 0, bytes.length);
   }
@@ -26,8 +26,10 @@ import co.cask.tigon.conf.CConfiguration;
 import co.cask.tigon.data.queue.QueueClientFactory;
 import co.cask.tigon.data.transaction.metrics.TransactionManagerMetricsCollector;
 import co.cask.tigon.data.transaction.queue.QueueAdmin;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 import co.cask.tigon.data.transaction.queue.hbase.HBaseQueueAdmin;
 import co.cask.tigon.data.transaction.queue.hbase.HBaseQueueClientFactory;
+import co.cask.tigon.data.transaction.queue.hbase.ZKQueueNotifier;
 import co.cask.tigon.data.util.hbase.HBaseTableUtil;
 import co.cask.tigon.data.util.hbase.HBaseTableUtilFactory;
 import com.google.inject.AbstractModule;
@@ -56,6 +58,7 @@ public class DataFabricDistributedModule extends AbstractModule {
     bind(ThriftClientProvider.class).toProvider(ThriftClientProviderSupplier.class);
     bind(QueueClientFactory.class).to(HBaseQueueClientFactory.class).in(Singleton.class);
     bind(QueueAdmin.class).to(HBaseQueueAdmin.class).in(Singleton.class);
+    bind(QueueNotifier.class).to(ZKQueueNotifier.class).in(Singleton.class);
     bind(HBaseTableUtil.class).toProvider(HBaseTableUtilFactory.class);
 
     // bind transactions
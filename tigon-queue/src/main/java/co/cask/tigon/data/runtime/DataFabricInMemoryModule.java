@@ -21,8 +21,10 @@ import co.cask.tephra.runtime.TransactionModules;
 import co.cask.tigon.data.queue.QueueClientFactory;
 import co.cask.tigon.data.transaction.metrics.TransactionManagerMetricsCollector;
 import co.cask.tigon.data.transaction.queue.QueueAdmin;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 import co.cask.tigon.data.transaction.queue.inmemory.InMemoryQueueAdmin;
 import co.cask.tigon.data.transaction.queue.inmemory.InMemoryQueueClientFactory;
+import co.cask.tigon.data.transaction.queue.inmemory.InMemoryQueueNotifier;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
@@ -38,6 +40,7 @@ public class DataFabricInMemoryModule extends AbstractModule {
 
     bind(QueueClientFactory.class).to(InMemoryQueueClientFactory.class).in(Singleton.class);
     bind(QueueAdmin.class).to(InMemoryQueueAdmin.class).in(Singleton.class);
+    bind(QueueNotifier.class).to(InMemoryQueueNotifier.class).in(Singleton.class);
 
     // bind transactions
     bind(TxMetricsCollector.class).to(TransactionManagerMetricsCollector.class).in(Scopes.SINGLETON);
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction;
+
+import co.cask.tephra.TransactionAware;
+
+/**
+ * A {@link TransactionAware} that can take part in a new transaction while the commit of its previous transaction
+ * is still in progress on the transaction server.
+ * <p>
+ * After {@link #commitTx()} succeeded, the caller may call {@link #detachTx()} instead of {@link #postTxCommit()}.
+ * The detached transaction is then completed by exactly one call to either {@link #postDetachedTxCommit()} or
+ * {@link #rollbackDetachedTx()}, possibly after the next transaction was started with {@link #startTx}. At most one
+ * transaction can be detached at a time.
+ * </p>
+ */
+public interface PipelinedTransactionAware extends TransactionAware {
+
+  /**
+   * Moves the state of the current transaction aside, so that a new transaction can be started before the commit
+   * of the current one is confirmed. Changes of the detached transaction must not be consumed again by the next
+   * transaction.
+   */
+  void detachTx();
+
+  /**
+   * Called after the commit of the detached transaction is confirmed by the transaction server. Same as
+   * {@link #postTxCommit()} for the detached transaction.
+   */
+  void postDetachedTxCommit();
+
+  /**
+   * Rolls back the changes persisted by the detached transaction after its commit failed. Same as
+   * {@link #rollbackTx()} for the detached transaction.
+   *
+   * @return true if the rollback succeeded, false otherwise.
+   */
+  boolean rollbackDetachedTx() throws Exception;
+}
@@ -17,12 +17,12 @@
 package co.cask.tigon.data.transaction.queue;
 
 import co.cask.tephra.Transaction;
-import co.cask.tephra.TransactionAware;
 import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.DequeueResult;
 import co.cask.tigon.data.queue.DequeueStrategy;
 import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.transaction.PipelinedTransactionAware;
 import co.cask.tigon.utils.ImmutablePair;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
@@ -30,6 +30,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -44,11 +45,13 @@ import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.SortedSet;
+import javax.annotation.Nullable;
 
 /**
  * Common queue consumer for persisting engines such as HBase and LevelDB.
  */
-public abstract class AbstractQueueConsumer implements QueueConsumer, TransactionAware, Closeable {
+public abstract class AbstractQueueConsumer implements QueueConsumer, PipelinedTransactionAware, Closeable {
 
   private static final DequeueResult<byte[]> EMPTY_RESULT = DequeueResult.Empty.result();
 
@@ -58,6 +61,8 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   // Multiple of batches to fetch per scan.
   // Number of rows to scan = max(MIN_FETCH_ROWS, dequeueBatchSize * groupSize * PREFETCH_BATCHES)
   private static final int PREFETCH_BATCHES = 10;
+  // Number of tailing scans after which the scan restarts from the scan start row, which advances the start row.
+  private static final int TAILING_SCANS_PER_RESTART = 100;
 
   private static final Function<SimpleQueueEntry, byte[]> ENTRY_TO_BYTE_ARRAY =
     new Function<SimpleQueueEntry, byte[]>() {
@@ -71,14 +76,30 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   private final QueueName queueName;
   private final SortedMap<byte[], SimpleQueueEntry> entryCache;
   private final NavigableMap<byte[], SimpleQueueEntry> consumingEntries;
+  // Entries consumed by the detached transaction. They are excluded from dequeue until a transaction that started
+  // after the detached one committed, as the state written by the detached transaction is not visible before.
+  private final NavigableMap<byte[], SimpleQueueEntry> detachedEntries;
   protected final byte[] stateColumnName;
   private final byte[] queueRowPrefix;
   protected byte[] startRow;
   private byte[] scanStartRow;
   protected Transaction transaction;
   private boolean committed;
+  private Transaction detachedTransaction;
+  private byte[] detachedScanStartRow;
+  private boolean detachedCommitted;
   protected int commitCount;
 
+  // Tailing scans only examine the rows after the rows examined by the previous scan, instead of all rows after the
+  // scan start row, which sits behind the oldest in progress transaction.
+  private final boolean tailingScan;
+  // Row after the last examined row, the start row of the next tailing scan.
+  private byte[] tailRow;
+  private int tailingScans;
+  // Write pointers of the transactions that were in progress when the tail passed them. Their rows are examined
+  // once they are not in progress anymore, as these rows can be written or become visible behind the tail.
+  private final SortedSet<Long> revisitWritePointers;
+
   protected abstract boolean claimEntry(byte[] rowKey, byte[] stateContent) throws IOException;
   protected abstract void updateState(Set<byte[]> rowKeys, byte[] stateColumnName, byte[] stateContent)
     throws IOException;
@@ -86,15 +107,44 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     throws IOException, InterruptedException;
   protected abstract QueueScanner getScanner(byte[] startRow, byte[] stopRow, int numRows) throws IOException;
 
+  /**
+   * Claims a set of entries for this consumer. The default implementation calls {@link #claimEntry} for each entry.
+   *
+   * @param rowKeys Row keys of the entries to claim.
+   * @param stateContent The claimed state to write.
+   * @return The row keys of the entries that got claimed.
+   */
+  protected Set<byte[]> claimEntries(Set<byte[]> rowKeys, byte[] stateContent) throws IOException {
+    Set<byte[]> claimed = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+    for (byte[] rowKey : rowKeys) {
+      if (claimEntry(rowKey, stateContent)) {
+        claimed.add(rowKey);
+      }
+    }
+    return claimed;
+  }
+
   protected AbstractQueueConsumer(ConsumerConfig consumerConfig, QueueName queueName) {
+    this(consumerConfig, queueName, false);
+  }
+
+  /**
+   * @param consumerConfig Configuration of the consumer.
+   * @param queueName Name of the queue.
+   * @param tailingScan true to only scan rows that were not examined by earlier scans of this consumer.
+   */
+  protected AbstractQueueConsumer(ConsumerConfig consumerConfig, QueueName queueName, boolean tailingScan) {
     this.consumerConfig = consumerConfig;
     this.queueName = queueName;
     this.entryCache = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     this.consumingEntries = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    this.detachedEntries = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     this.queueRowPrefix = QueueEntryRow.getQueueRowPrefix(queueName);
     this.startRow = getRowKey(0L, 0);
     this.stateColumnName = Bytes.add(QueueEntryRow.STATE_COLUMN_PREFIX,
                                      Bytes.toBytes(consumerConfig.getGroupId()));
+    this.tailingScan = tailingScan;
+    this.revisitWritePointers = Sets.newTreeSet();
   }
 
   @Override
@@ -119,7 +169,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     // pre-compute the "claimed" state content in case of FIFO.
     byte[] claimedStateValue = null;
     if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
-      claimedStateValue = encodeStateColumn(ConsumerEntryState.CLAIMED);
+      claimedStateValue = encodeStateColumn(ConsumerEntryState.CLAIMED, transaction);
     }
     while (consumingEntries.size() < maxBatchSize && getEntries(consumingEntries, maxBatchSize)) {
 
@@ -131,18 +181,18 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
       // For FIFO, need to try claiming the entry if group size > 1
       if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
-        Iterator<Map.Entry<byte[], SimpleQueueEntry>> iterator = consumingEntries.entrySet().iterator();
-        while (iterator.hasNext()) {
-          SimpleQueueEntry entry = iterator.next().getValue();
-
+        Set<byte[]> claimRows = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+        for (SimpleQueueEntry entry : consumingEntries.values()) {
           if (entry.getState() == null ||
             QueueEntryRow.getStateInstanceId(entry.getState()) >= consumerConfig.getGroupSize()) {
-            // If not able to claim it, remove it, and move to next one.
-            if (!claimEntry(entry.getRowKey(), claimedStateValue)) {
-              iterator.remove();
-            }
+            claimRows.add(entry.getRowKey());
           }
         }
+        if (!claimRows.isEmpty()) {
+          // Remove the entries that could not be claimed.
+          claimRows.removeAll(claimEntries(claimRows, claimedStateValue));
+          consumingEntries.keySet().removeAll(claimRows);
+        }
       }
     }
 
@@ -157,6 +207,9 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   @Override
   public void startTx(Transaction tx) {
     consumingEntries.clear();
+    if (detachedTransaction == null) {
+      detachedEntries.clear();
+    }
     this.transaction = tx;
     this.committed = false;
   }
@@ -173,7 +226,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
       return true;
     }
 
-    byte[] stateContent = encodeStateColumn(ConsumerEntryState.PROCESSED);
+    byte[] stateContent = encodeStateColumn(ConsumerEntryState.PROCESSED, transaction);
     updateState(consumingEntries.keySet(), stateColumnName, stateContent);
     commitCount += consumingEntries.size();
     committed = true;
@@ -182,43 +235,83 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
   @Override
   public void postTxCommit() {
-    if (scanStartRow != null) {
-      if (!consumingEntries.isEmpty()) {
-        // Start row can be updated to the largest rowKey in the consumingEntries (now is consumed)
+    updateStartRow(consumingEntries, scanStartRow);
+  }
+
+  @Override
+  public boolean rollbackTx() throws Exception {
+    return rollback(consumingEntries, committed, transaction);
+  }
+
+  @Override
+  public void detachTx() {
+    Preconditions.checkState(detachedTransaction == null, "Previous detached transaction is not completed.");
+    detachedEntries.clear();
+    detachedEntries.putAll(consumingEntries);
+    detachedTransaction = transaction;
+    detachedScanStartRow = (scanStartRow == null) ? null : Arrays.copyOf(scanStartRow, scanStartRow.length);
+    detachedCommitted = committed;
+    consumingEntries.clear();
+    committed = false;
+  }
+
+  @Override
+  public void postDetachedTxCommit() {
+    Preconditions.checkState(detachedTransaction != null, "No detached transaction.");
+    updateStartRow(detachedEntries, detachedScanStartRow);
+    // Entries stay excluded until the next startTx, as the current transaction cannot see the committed state.
+    detachedTransaction = null;
+  }
+
+  @Override
+  public boolean rollbackDetachedTx() throws Exception {
+    Preconditions.checkState(detachedTransaction != null, "No detached transaction.");
+    try {
+      return rollback(detachedEntries, detachedCommitted, detachedTransaction);
+    } finally {
+      detachedEntries.clear();
+      detachedTransaction = null;
+    }
+  }
+
+  private void updateStartRow(NavigableMap<byte[], SimpleQueueEntry> consumedEntries, byte[] lastScanStartRow) {
+    if (lastScanStartRow != null) {
+      if (!consumedEntries.isEmpty()) {
+        // Start row can be updated to the largest rowKey in the consumedEntries (now is consumed)
         // that is smaller than or equal to scanStartRow
-        byte[] floorKey = consumingEntries.floorKey(scanStartRow);
+        byte[] floorKey = consumedEntries.floorKey(lastScanStartRow);
         if (floorKey != null) {
           startRow = floorKey;
         }
       } else {
         // If the dequeue has empty result, startRow can advance to scanStartRow
-        startRow = Arrays.copyOf(scanStartRow, scanStartRow.length);
+        startRow = Arrays.copyOf(lastScanStartRow, lastScanStartRow.length);
       }
     }
   }
 
-  @Override
-  public boolean rollbackTx() throws Exception {
-    if (consumingEntries.isEmpty()) {
+  private boolean rollback(SortedMap<byte[], SimpleQueueEntry> entries,
+                           boolean persisted, Transaction tx) throws Exception {
+    if (entries.isEmpty()) {
       return true;
     }
 
     // Put the consuming entries back to cache
-    entryCache.putAll(consumingEntries);
+    entryCache.putAll(entries);
 
     // If not committed, no need to update HBase.
-    if (!committed) {
+    if (!persisted) {
       return true;
     }
-    commitCount -= consumingEntries.size();
+    commitCount -= entries.size();
 
     // Revert changes in HBase rows
     // If it is FIFO, restore to the CLAIMED state. This instance will retry it on the next dequeue.
     if (consumerConfig.getDequeueStrategy() == DequeueStrategy.FIFO && consumerConfig.getGroupSize() > 1) {
-      byte[] stateContent = encodeStateColumn(ConsumerEntryState.CLAIMED);
-      updateState(consumingEntries.keySet(), stateColumnName, stateContent);
+      byte[] stateContent = encodeStateColumn(ConsumerEntryState.CLAIMED, tx);
+      updateState(entries.keySet(), stateColumnName, stateContent);
     } else {
-      undoState(consumingEntries.keySet(), stateColumnName);
+      undoState(entries.keySet(), stateColumnName);
     }
     return true;
   }
@@ -262,22 +355,100 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   }
 
   private void populateRowCache(Set<byte[]> excludeRows, int maxBatchSize) throws IOException {
-
-    long readPointer = transaction.getReadPointer();
-
     // Scan the table for queue entries.
     int numRows = Math.max(MIN_FETCH_ROWS, maxBatchSize * PREFETCH_BATCHES);
     if (scanStartRow == null) {
       scanStartRow = Arrays.copyOf(startRow, startRow.length);
     }
-    QueueScanner scanner = getScanner(scanStartRow,
-                                      QueueEntryRow.getStopRowForTransaction(queueRowPrefix, transaction),
-                                      numRows);
+    byte[] stopRow = QueueEntryRow.getStopRowForTransaction(queueRowPrefix, transaction);
+
+    if (!tailingScan) {
+      scanRows(scanStartRow, stopRow, numRows, numRows, excludeRows, true);
+      return;
+    }
+
+    if (tailRow == null || tailingScans >= TAILING_SCANS_PER_RESTART) {
+      // (Re)start the tail at the scan start row. Rows of in progress transactions are behind it.
+      tailingScans = 0;
+      tailRow = null;
+      revisitWritePointers.clear();
+      updateTailRow(scanRows(scanStartRow, stopRow, numRows, numRows, excludeRows, true), scanStartRow);
+    } else {
+      tailingScans++;
+      revisitRows(excludeRows, numRows);
+      updateTailRow(scanRows(tailRow, stopRow, numRows, numRows, excludeRows, false), tailRow);
+    }
+  }
+
+  /**
+   * Examines the rows of the transactions that were in progress when the tail passed them, once they are committed.
+   */
+  private void revisitRows(Set<byte[]> excludeRows, int numRows) throws IOException {
+    Iterator<Long> iterator = revisitWritePointers.iterator();
+    while (iterator.hasNext()) {
+      long writePointer = iterator.next();
+      if (transaction.isInProgress(writePointer)) {
+        continue;
+      }
+      iterator.remove();
+      // Rows of invalid transactions never become visible.
+      if (transaction.isExcluded(writePointer)) {
+        continue;
+      }
+      byte[] rowsStart = getRowKey(writePointer, 0);
+      byte[] rowsStop = getRowKey(writePointer + 1, 0);
+      if (Bytes.compareTo(rowsStop, tailRow) > 0) {
+        rowsStop = tailRow;
+      }
+      // Examine all rows of the transaction, even beyond the size of the cache.
+      if (Bytes.compareTo(rowsStart, rowsStop) < 0) {
+        scanRows(rowsStart, rowsStop, numRows, Integer.MAX_VALUE, excludeRows, false);
+      }
+    }
+  }
+
+  /**
+   * Moves the tail after the last examined row, and tracks the transactions in progress behind it.
+   */
+  private void updateTailRow(@Nullable byte[] lastRow, byte[] scanStart) {
+    if (lastRow != null) {
+      long writePointer = Bytes.toLong(lastRow, queueRowPrefix.length, Longs.BYTES);
+      int counter = Bytes.toInt(lastRow, lastRow.length - 4, Ints.BYTES);
+      tailRow = getNextRow(Arrays.copyOf(lastRow, lastRow.length), writePointer, counter);
+    } else if (tailRow == null) {
+      tailRow = Arrays.copyOf(scanStart, scanStart.length);
+    }
+    long tailWritePointer = Bytes.toLong(tailRow, queueRowPrefix.length, Longs.BYTES);
+    for (long inProgress : transaction.getInProgress()) {
+      if (inProgress <= tailWritePointer) {
+        revisitWritePointers.add(inProgress);
+      }
+    }
+  }
+
+  /**
+   * Scans the given rows and adds the entries that can be consumed to the entry cache.
+   * @param startRow Start row of the scan.
+   * @param stopRow Stop row of the scan.
+   * @param numRows Number of rows to fetch per scan.
+   * @param cacheSize Size of the entry cache after which the scan stops.
+   * @param excludeRows Rows to ignore.
+   * @param fromScanStartRow true if the scan starts at the scan start row, which allows to advance it.
+   * @return The last row that was examined, or {@code null} if no row was examined.
+   */
+  @Nullable
+  private byte[] scanRows(byte[] startRow, byte[] stopRow, int numRows, int cacheSize,
+                          Set<byte[]> excludeRows, boolean fromScanStartRow) throws IOException {
+
+    long readPointer = transaction.getReadPointer();
+    byte[] lastRow = null;
+
+    QueueScanner scanner = getScanner(startRow, stopRow, numRows);
     try {
       // Try fill up the cache
-      boolean firstScannedRow = true;
+      boolean firstScannedRow = fromScanStartRow;
 
-      while (entryCache.size() < numRows) {
+      while (entryCache.size() < cacheSize) {
         ImmutablePair<byte[], Map<byte[], byte[]>> entry = scanner.next();
         if (entry == null) {
           // No more result, breaking out.
@@ -285,7 +456,8 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
         }
 
         byte[] rowKey = entry.getFirst();
-        if (excludeRows.contains(rowKey)) {
+        if (excludeRows.contains(rowKey) || detachedEntries.containsKey(rowKey)) {
+          lastRow = rowKey;
           continue;
         }
 
@@ -304,6 +476,8 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
         if (writePointer > readPointer) {
           break;
         }
+        lastRow = rowKey;
+
         // If the write is in the excluded list, ignore it.
         if (transaction.isExcluded(writePointer)) {
           continue;
@@ -329,12 +503,13 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     } finally {
       scanner.close();
     }
+    return lastRow;
   }
 
-  private byte[] encodeStateColumn(ConsumerEntryState state) {
+  private byte[] encodeStateColumn(ConsumerEntryState state, Transaction tx) {
     // State column content is encoded as (writePointer) + (instanceId) + (state)
     byte[] stateContent = new byte[Longs.BYTES + Ints.BYTES + 1];
-    Bytes.putLong(stateContent, 0, transaction.getWritePointer());
+    Bytes.putLong(stateContent, 0, tx.getWritePointer());
     Bytes.putInt(stateContent, Longs.BYTES, consumerConfig.getInstanceId());
     Bytes.putByte(stateContent, Longs.BYTES + Ints.BYTES, state.getState());
     return stateContent;
@@ -17,10 +17,10 @@
 package co.cask.tigon.data.transaction.queue;
 
 import co.cask.tephra.Transaction;
-import co.cask.tephra.TransactionAware;
 import co.cask.tigon.data.queue.QueueEntry;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.queue.QueueProducer;
+import co.cask.tigon.data.transaction.PipelinedTransactionAware;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -33,19 +33,28 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
- * Abstract base class for {@link QueueProducer} that emits enqueue metrics post commit.
+ * Abstract base class for {@link QueueProducer} that emits enqueue metrics and notifies consumers post commit.
  */
-public abstract class AbstractQueueProducer implements QueueProducer, TransactionAware {
+public abstract class AbstractQueueProducer implements QueueProducer, PipelinedTransactionAware {
 
   private final QueueMetrics queueMetrics;
+  private final QueueNotifier queueNotifier;
   private final BlockingQueue<QueueEntry> queue;
   private final QueueName queueName;
   private Transaction transaction;
   private int lastEnqueueCount;
   private int lastEnqueueBytes;
+  private boolean detached;
+  private int detachedEnqueueCount;
+  private int detachedEnqueueBytes;
 
   protected AbstractQueueProducer(QueueMetrics queueMetrics, QueueName queueName) {
+    this(queueMetrics, QueueNotifier.NOOP_QUEUE_NOTIFIER, queueName);
+  }
+
+  protected AbstractQueueProducer(QueueMetrics queueMetrics, QueueNotifier queueNotifier, QueueName queueName) {
     this.queueMetrics = queueMetrics;
+    this.queueNotifier = queueNotifier;
     this.queue = new LinkedBlockingQueue<QueueEntry>();
     this.queueName = queueName;
   }
@@ -95,10 +104,7 @@ public abstract class AbstractQueueProducer implements QueueProducer, Transactio
 
   @Override
   public void postTxCommit() {
-    if (lastEnqueueCount > 0) {
-      queueMetrics.emitEnqueue(lastEnqueueCount);
-      queueMetrics.emitEnqueueBytes(lastEnqueueBytes);
-    }
+    emitEnqueued(lastEnqueueCount, lastEnqueueBytes);
   }
 
   @Override
@@ -109,6 +115,40 @@ public abstract class AbstractQueueProducer implements QueueProducer, Transactio
     return true;
   }
 
+  @Override
+  public void detachTx() {
+    Preconditions.checkState(!detached, "Previous detached transaction is not completed.");
+    detached = true;
+    detachedEnqueueCount = lastEnqueueCount;
+    detachedEnqueueBytes = lastEnqueueBytes;
+    lastEnqueueCount = 0;
+    lastEnqueueBytes = 0;
+    detachRollback();
+  }
+
+  @Override
+  public void postDetachedTxCommit() {
+    Preconditions.checkState(detached, "No detached transaction.");
+    detached = false;
+    emitEnqueued(detachedEnqueueCount, detachedEnqueueBytes);
+  }
+
+  @Override
+  public boolean rollbackDetachedTx() throws Exception {
+    Preconditions.checkState(detached, "No detached transaction.");
+    detached = false;
+    doDetachedRollback();
+    return true;
+  }
+
+  private void emitEnqueued(int enqueueCount, int enqueueBytes) {
+    if (enqueueCount > 0) {
+      queueMetrics.emitEnqueue(enqueueCount);
+      queueMetrics.emitEnqueueBytes(enqueueBytes);
+      queueNotifier.notifyEnqueue(queueName);
+    }
+  }
+
   /**
    * Persists queue entries.
    * @param entries queue entries to persist.
@@ -119,4 +159,12 @@ public abstract class AbstractQueueProducer implements QueueProducer, Transactio
   protected abstract int persist(Iterable<QueueEntry> entries, Transaction transaction) throws Exception;
 
   protected abstract void doRollback() throws Exception;
+
+  /**
+   * Moves the state needed for rolling back the current transaction aside, so that the persisted entries can still
+   * be removed by {@link #doDetachedRollback()} after the next transaction started.
+   */
+  protected abstract void detachRollback();
+
+  protected abstract void doDetachedRollback() throws Exception;
 }
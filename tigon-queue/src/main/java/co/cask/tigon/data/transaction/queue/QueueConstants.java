@@ -26,7 +26,15 @@ public final class QueueConstants {
    */
   public static final class ConfigKeys {
     public static final String QUEUE_TABLE_COPROCESSOR_DIR = "data.queue.table.coprocessor.dir";
+    public static final String QUEUE_TABLE_BUCKETS = "data.queue.table.buckets";
+    // No longer used: queue tables are pre-split by the salt buckets of each queue, see QUEUE_TABLE_BUCKETS.
+    @Deprecated
     public static final String QUEUE_TABLE_PRESPLITS = "data.queue.table.presplits";
+    public static final String IN_MEMORY_QUEUE_ENGINE = "data.queue.inmemory.engine";
+    public static final String QUEUE_NOTIFICATION_ENABLED = "data.queue.notification.enabled";
+    public static final String QUEUE_NOTIFICATION_MIN_INTERVAL_MS = "data.queue.notification.min.interval.ms";
+    public static final String QUEUE_WRITE_BATCH_WINDOW_MS = "data.queue.write.batch.window.ms";
+    public static final String QUEUE_WRITE_BATCH_MAX_SIZE = "data.queue.write.batch.max.size";
   }
 
   public static final String QUEUE_TABLE_PREFIX = "queue";
@@ -34,7 +42,25 @@ public final class QueueConstants {
   public static final String QUEUE_CONFIG_TABLE_NAME = QUEUE_TABLE_PREFIX + ".config";
 
   public static final String DEFAULT_QUEUE_TABLE_COPROCESSOR_DIR = "/queue";
-  public static final int DEFAULT_QUEUE_TABLE_PRESPLITS = 16;
+
+  // Number of salt buckets that the entries of a queue are distributed over, unless configured for the queue with
+  // "<QUEUE_TABLE_BUCKETS>.<app>.<flow>.<flowlet>.<output>". The number is stored with the queue config on creation.
+  public static final int DEFAULT_QUEUE_TABLE_BUCKETS = 8;
+  public static final int MAX_QUEUE_TABLE_BUCKETS = 256;
+
+  // Engines for in-memory queues
+  public static final String IN_MEMORY_QUEUE_ENGINE_RING_BUFFER = "ringbuffer";
+  public static final String IN_MEMORY_QUEUE_ENGINE_SKIP_LIST = "skiplist";
+  public static final String DEFAULT_IN_MEMORY_QUEUE_ENGINE = IN_MEMORY_QUEUE_ENGINE_RING_BUFFER;
+
+  // Notification of consumers on enqueue commits, with a minimum interval between notifications sent through ZK
+  public static final boolean DEFAULT_QUEUE_NOTIFICATION_ENABLED = true;
+  public static final long DEFAULT_QUEUE_NOTIFICATION_MIN_INTERVAL_MS = 100L;
+  public static final String QUEUE_NOTIFICATION_ZK_PATH = "/queue.notifications";
+
+  // Group commit of enqueue writes from all producers in a process
+  public static final long DEFAULT_QUEUE_WRITE_BATCH_WINDOW_MS = 0L;
+  public static final int DEFAULT_QUEUE_WRITE_BATCH_MAX_SIZE = 10000;
 
   public static final long MAX_CREATE_TABLE_WAIT = 5000L;    // Maximum wait of 5 seconds for table creation.
 
@@ -42,6 +68,17 @@ public final class QueueConstants {
   public static final String QUEUE_CONFIG_UPDATE_FREQUENCY = "data.queue.config.update.interval";
   public static final Long DEFAULT_QUEUE_CONFIG_UPDATE_FREQUENCY = 5L; // default to 5 seconds
 
+  // How frequently (in seconds) the HBaseQueueRegionObserver counts the rows of a region that can be evicted,
+  // 0 to disable. A major compaction of the region is requested if enough rows can be evicted.
+  public static final String QUEUE_EVICTION_CHECK_INTERVAL = "data.queue.eviction.check.interval";
+  public static final Long DEFAULT_QUEUE_EVICTION_CHECK_INTERVAL = 300L; // default to 5 minutes
+  // Ratio of the rows of a region that can be evicted, at which a major compaction is requested
+  public static final String QUEUE_EVICTION_DEAD_ROWS_RATIO = "data.queue.eviction.dead.rows.ratio";
+  public static final float DEFAULT_QUEUE_EVICTION_DEAD_ROWS_RATIO = 0.5f;
+  // Minimum number of rows of a region that can be evicted, for a major compaction to be requested
+  public static final String QUEUE_EVICTION_MIN_DEAD_ROWS = "data.queue.eviction.min.dead.rows";
+  public static final long DEFAULT_QUEUE_EVICTION_MIN_DEAD_ROWS = 10000L;
+
   /**
    * whether a queue is a queue or a stream.
    */
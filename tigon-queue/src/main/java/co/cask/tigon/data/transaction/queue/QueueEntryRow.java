@@ -42,6 +42,12 @@ public class QueueEntryRow {
   public static final byte[] DATA_COLUMN = new byte[] {'d'};
   public static final byte[] META_COLUMN = new byte[] {'m'};
   public static final byte[] STATE_COLUMN_PREFIX = new byte[] {'s'};
+  // Column of the queue config row that holds the number of salt buckets, next to the consumer state columns
+  public static final byte[] BUCKETS_COLUMN = new byte[] {'b'};
+  // Row of the queue config table that holds a generation counter, and a column per queue named by the queue, whose
+  // version is the generation of the last change of the consumer groups of the queue
+  public static final byte[] CONFIG_CHANGES_ROW = new byte[] {0};
+  public static final byte[] CONFIG_GENERATION_COLUMN = new byte[] {'g'};
 
   /**
    * Returns a byte array representing prefix of a queue. The prefix is formed by first two bytes of
@@ -71,6 +77,14 @@ public class QueueEntryRow {
     return bytes;
   }
 
+  /**
+   * Determine whether a column of the queue config row holds the number of salt buckets, rather than the start row
+   * of a consumer.
+   */
+  public static boolean isBucketsColumn(byte[] columnName) {
+    return Bytes.equals(columnName, BUCKETS_COLUMN);
+  }
+
   /**
    * Determine whether a column represent the state of a consumer.
    */
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.tigon.data.transaction.queue;
+
+import co.cask.tigon.data.queue.QueueName;
+import org.apache.twill.common.Cancellable;
+
+/**
+ * Notifies consumers when new entries are committed to a queue, so that they don't have to rely on polling alone.
+ * Notifications are best effort, consumers should still poll periodically.
+ */
+public interface QueueNotifier {
+
+  /**
+   * Signals that a transaction that enqueued to the given queue has been committed.
+   */
+  void notifyEnqueue(QueueName queueName);
+
+  /**
+   * Watches for commits to the given queue.
+   *
+   * @param queueName Name of the queue to watch.
+   * @param listener Invoked after commits to the queue. It must return quickly and must not block.
+   * @return A {@link Cancellable} for stopping the watch.
+   */
+  Cancellable watch(QueueName queueName, Runnable listener);
+
+  static final QueueNotifier NOOP_QUEUE_NOTIFIER = new QueueNotifier() {
+    @Override
+    public void notifyEnqueue(QueueName queueName) {
+      // no-op
+    }
+
+    @Override
+    public Cancellable watch(QueueName queueName, Runnable listener) {
+      return new Cancellable() {
+        @Override
+        public void cancel() {
+          // no-op
+        }
+      };
+    }
+  };
+}
@@ -21,6 +21,8 @@ import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.DequeueStrategy;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.transaction.queue.QueueEntryRow;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
@@ -30,6 +32,7 @@ import org.apache.hadoop.io.WritableUtils;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 import javax.annotation.Nullable;
 
 /**
@@ -38,6 +41,7 @@ import javax.annotation.Nullable;
 public class DequeueScanAttributes {
   private static final String ATTR_CONSUMER_CONFIG = "tigon.queue.dequeue.consumerConfig";
   private static final String ATTR_TX = "tigon.queue.dequeue.transaction";
+  private static final String ATTR_TX_WITHOUT_INVALIDS = "tigon.queue.dequeue.transactionWithoutInvalids";
   private static final String ATTR_QUEUE_ROW_PREFIX = "tigon.queue.dequeue.queueRowPrefix";
 
   public static void setQueueRowPrefix(Scan scan, QueueName queueName) {
@@ -62,6 +66,19 @@ public class DequeueScanAttributes {
     }
   }
 
+  /**
+   * Sets the transaction without its invalid list, which can be long. Region servers take the invalid list from their
+   * transaction state cache instead, hence only the size and a hash of the invalid list are set to verify it.
+   */
+  public static void setWithoutInvalids(Scan scan, Transaction transaction) {
+    try {
+      scan.setAttribute(ATTR_TX_WITHOUT_INVALIDS, toBytesWithoutInvalids(transaction));
+    } catch (IOException e) {
+      // SHOULD NEVER happen
+      throw new RuntimeException(e);
+    }
+  }
+
   @Nullable
   public static ConsumerConfig getConsumerConfig(Scan scan) {
     byte[] consumerConfigAttr = scan.getAttribute(ATTR_CONSUMER_CONFIG);
@@ -84,6 +101,38 @@ public class DequeueScanAttributes {
     }
   }
 
+  /**
+   * Returns the transaction of a scan. If the transaction was set without its invalid list, the invalid list is
+   * taken from the given invalid transactions. Transactions that became invalid after the transaction started are
+   * either in progress for it or newer than its read pointer, hence they are ignored.
+   * @param invalids Sorted invalid transactions of the transaction state cache, {@code null} if not available.
+   * @return The transaction, or {@code null} if the scan has no transaction, or if its invalid list is not the same
+   *         as the given one.
+   */
+  @Nullable
+  public static Transaction getTx(Scan scan, @Nullable long[] invalids) {
+    byte[] txAttr = scan.getAttribute(ATTR_TX_WITHOUT_INVALIDS);
+    if (txAttr == null) {
+      return getTx(scan);
+    }
+    if (invalids == null) {
+      return null;
+    }
+    try {
+      return bytesToTx(txAttr, invalids);
+    } catch (IOException e) {
+      // SHOULD NEVER happen
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return {@code true} if the transaction of the scan was set without its invalid list.
+   */
+  public static boolean hasTxWithoutInvalids(Scan scan) {
+    return scan.getAttribute(ATTR_TX_WITHOUT_INVALIDS) != null;
+  }
+
   @Nullable
   public static byte[] getQueueRowPrefix(Scan scan) {
     return scan.getAttribute(ATTR_QUEUE_ROW_PREFIX);
@@ -146,6 +195,57 @@ public class DequeueScanAttributes {
     return new Transaction(readPointer, writePointer, invalids, inProgress, firstShortInProgress);
   }
 
+  private static byte[] toBytesWithoutInvalids(Transaction tx) throws IOException {
+    ByteArrayDataOutput dataOutput = ByteStreams.newDataOutput();
+    dataOutput.writeLong(tx.getReadPointer());
+    dataOutput.writeLong(tx.getWritePointer());
+    dataOutput.writeLong(tx.getFirstShortInProgress());
+    write(dataOutput, tx.getInProgress());
+
+    // Only invalid transactions up to the read pointer matter for the scan
+    long[] invalids = tx.getInvalids();
+    int index = Arrays.binarySearch(invalids, tx.getReadPointer());
+    int length = index >= 0 ? index + 1 : -index - 1;
+    dataOutput.writeInt(length);
+    dataOutput.writeLong(hash(invalids, length));
+    return dataOutput.toByteArray();
+  }
+
+  @Nullable
+  private static Transaction bytesToTx(byte[] bytes, long[] invalids) throws IOException {
+    ByteArrayDataInput dataInput = ByteStreams.newDataInput(bytes);
+    long readPointer = dataInput.readLong();
+    long writePointer = dataInput.readLong();
+    long firstShortInProgress = dataInput.readLong();
+    long[] inProgress = readLongArray(dataInput);
+    int invalidsLength = dataInput.readInt();
+    long invalidsHash = dataInput.readLong();
+
+    long[] txInvalids = new long[invalids.length];
+    int length = 0;
+    for (long invalid : invalids) {
+      if (invalid > readPointer) {
+        break;
+      }
+      if (Arrays.binarySearch(inProgress, invalid) < 0) {
+        txInvalids[length++] = invalid;
+      }
+    }
+    if (length != invalidsLength || hash(txInvalids, length) != invalidsHash) {
+      return null;
+    }
+    return new Transaction(readPointer, writePointer, Arrays.copyOf(txInvalids, length),
+                           inProgress, firstShortInProgress);
+  }
+
+  private static long hash(long[] array, int length) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (int i = 0; i < length; i++) {
+      hasher.putLong(array[i]);
+    }
+    return hasher.hash().asLong();
+  }
+
   private static void write(DataOutput dataOutput, long[] array) throws IOException {
     dataOutput.writeInt(array.length);
     for (long val : array) {
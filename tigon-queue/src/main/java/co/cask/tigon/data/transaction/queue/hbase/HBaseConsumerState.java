@@ -58,6 +58,9 @@ public final class HBaseConsumerState {
   public static List<HBaseConsumerState> create(SortedMap<byte[], byte[]> stateMap) {
     List<HBaseConsumerState> states = new ArrayList<HBaseConsumerState>(stateMap.size());
     for (Map.Entry<byte[], byte[]> entry : stateMap.entrySet()) {
+      if (QueueEntryRow.isBucketsColumn(entry.getKey())) {
+        continue;
+      }
       // Intentionally using HBase Bytes.
       long groupId = Bytes.toLong(entry.getKey());
       int instanceId = Bytes.toInt(entry.getKey(), LONG_BYTES);
@@ -66,8 +66,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Properties;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * admin for queues in hbase.
@@ -78,10 +80,8 @@ public class HBaseQueueAdmin implements QueueAdmin {
   private static final Logger LOG = LoggerFactory.getLogger(HBaseQueueAdmin.class);
 
   public static final int SALT_BYTES = 1;
+  // Number of salt buckets of queues that were created before the number was stored with the queue config.
   public static final int ROW_KEY_DISTRIBUTION_BUCKETS = 8;
-  public static final AbstractRowKeyDistributor ROW_KEY_DISTRIBUTOR =
-    new RowKeyDistributorByHashPrefix(
-      new RowKeyDistributorByHashPrefix.OneByteSimpleHash(ROW_KEY_DISTRIBUTION_BUCKETS));
 
   protected final HBaseTableUtil tableUtil;
   private final CConfiguration cConf;
@@ -119,6 +119,13 @@ public class HBaseQueueAdmin implements QueueAdmin {
     this.configTableName =
       HBaseTableUtil.getHBaseTableName(namespace.namespace(QueueConstants.QUEUE_CONFIG_TABLE_NAME));
     this.locationFactory = locationFactory;
+
+    if (cConf.get(QueueConstants.ConfigKeys.QUEUE_TABLE_PRESPLITS) != null) {
+      LOG.warn("Setting {} is ignored. Queue tables are pre-split by the salt buckets of each queue, " +
+                 "set {} or {}.<app>.<flow>.<flowlet>.<output> to change the number of buckets of queues.",
+               QueueConstants.ConfigKeys.QUEUE_TABLE_PRESPLITS, QueueConstants.ConfigKeys.QUEUE_TABLE_BUCKETS,
+               QueueConstants.ConfigKeys.QUEUE_TABLE_BUCKETS);
+    }
   }
 
   protected final synchronized HBaseAdmin getHBaseAdmin() throws IOException {
@@ -146,6 +153,47 @@ public class HBaseQueueAdmin implements QueueAdmin {
     return tableNamePrefix + "." + app + "." + flow;
   }
 
+  /**
+   * Returns the distributor of the row keys of a queue, which prefixes the row keys with a one byte salt.
+   * @param buckets Number of salt buckets of the queue.
+   */
+  public static AbstractRowKeyDistributor getRowKeyDistributor(int buckets) {
+    return new RowKeyDistributorByHashPrefix(new RowKeyDistributorByHashPrefix.OneByteSimpleHash(buckets));
+  }
+
+  /**
+   * Returns the number of salt buckets of a queue, as stored with its consumer config when it was created.
+   * @param queueName Name of the queue.
+   */
+  public int getDistributionBuckets(QueueName queueName) throws IOException {
+    HTable hTable = new HTable(getHBaseAdmin().getConfiguration(), configTableName);
+    try {
+      Integer buckets = getDistributionBuckets(hTable, queueName);
+      return buckets == null ? ROW_KEY_DISTRIBUTION_BUCKETS : buckets;
+    } finally {
+      hTable.close();
+    }
+  }
+
+  @Nullable
+  private Integer getDistributionBuckets(HTable hTable, QueueName queueName) throws IOException {
+    Get get = new Get(queueName.toBytes());
+    get.addColumn(QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.BUCKETS_COLUMN);
+    byte[] value = hTable.get(get).getValue(QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.BUCKETS_COLUMN);
+    return value == null ? null : Bytes.toInt(value);
+  }
+
+  /**
+   * Returns the configured number of salt buckets for a new queue, which is the
+   * {@link QueueConstants.ConfigKeys#QUEUE_TABLE_BUCKETS} setting for the queue, or for all queues if not set.
+   */
+  private int getConfiguredBuckets(QueueName queueName) {
+    String key = QueueConstants.ConfigKeys.QUEUE_TABLE_BUCKETS;
+    int buckets = cConf.getInt(key, QueueConstants.DEFAULT_QUEUE_TABLE_BUCKETS);
+    return cConf.getInt(key + "." + queueName.getFirstComponent() + "." + queueName.getSecondComponent() + "."
+                          + queueName.getThirdComponent() + "." + queueName.getSimpleName(), buckets);
+  }
+
   /**
    * This determines whether dropping a queue is supported (by dropping the queue's table).
    */
@@ -205,12 +253,27 @@ public class HBaseQueueAdmin implements QueueAdmin {
 
   boolean exists(QueueName queueName) throws IOException {
     HBaseAdmin admin = getHBaseAdmin();
-    return admin.tableExists(getActualTableName(queueName)) && admin.tableExists(configTableName);
+    if (!admin.tableExists(getActualTableName(queueName)) || !admin.tableExists(configTableName)) {
+      return false;
+    }
+    // All queues of a flow share the table, a queue exists once its number of salt buckets is stored.
+    HTable hTable = new HTable(admin.getConfiguration(), configTableName);
+    try {
+      return getDistributionBuckets(hTable, queueName) != null;
+    } finally {
+      hTable.close();
+    }
   }
 
+  /**
+   * Creates a queue. The number of salt buckets of the queue can be given by the
+   * {@link QueueConstants.ConfigKeys#QUEUE_TABLE_BUCKETS} property.
+   */
   @Override
-  public void create(String name, @SuppressWarnings("unused") Properties props) throws Exception {
-    create(name);
+  public void create(String name, Properties props) throws Exception {
+    QueueName queueName = QueueName.from(URI.create(name));
+    String buckets = props.getProperty(QueueConstants.ConfigKeys.QUEUE_TABLE_BUCKETS);
+    create(queueName, buckets == null ? getConfiguredBuckets(queueName) : Integer.parseInt(buckets));
   }
 
   @Override
@@ -222,14 +285,15 @@ public class HBaseQueueAdmin implements QueueAdmin {
   public void truncate(String name) throws Exception {
     QueueName queueName = QueueName.from(URI.create(name));
     // all queues for one flow are stored in same table, and we would clear all of them. this makes it optional.
-    if (doTruncateTable(queueName)) {
+    boolean truncated = doTruncateTable(queueName);
+    if (truncated) {
       byte[] tableNameBytes = Bytes.toBytes(getActualTableName(queueName));
       truncate(tableNameBytes);
     } else {
       LOG.warn("truncate({}) on HBase queue table has no effect.", name);
     }
     // we can delete the config for this queue in any case.
-    deleteConsumerConfigurations(queueName);
+    deleteConsumerConfigurations(queueName, truncated);
   }
 
   private void truncate(byte[] tableNameBytes) throws IOException {
@@ -264,21 +328,22 @@ public class HBaseQueueAdmin implements QueueAdmin {
   public void drop(String name) throws Exception {
     QueueName queueName = QueueName.from(URI.create(name));
     // all queues for one flow are stored in same table, and we would drop all of them. this makes it optional.
-    if (doDropTable(queueName)) {
+    boolean dropped = doDropTable(queueName);
+    if (dropped) {
       byte[] tableNameBytes = Bytes.toBytes(getActualTableName(queueName));
       drop(tableNameBytes);
     } else {
       LOG.warn("drop({}) on HBase queue table has no effect.", name);
     }
     // we can delete the config for this queue in any case.
-    deleteConsumerConfigurations(queueName);
+    deleteConsumerConfigurations(queueName, dropped);
   }
 
   @Override
   public void upgrade(String name, Properties properties) throws Exception {
     QueueName queueName = QueueName.from(URI.create(name));
     String hBaseTableName = getActualTableName(queueName);
-    AbstractHBaseDataSetAdmin dsAdmin = new DatasetAdmin(hBaseTableName, hConf, tableUtil);
+    AbstractHBaseDataSetAdmin dsAdmin = new DatasetAdmin(hBaseTableName, hConf, tableUtil, null);
     try {
       dsAdmin.upgrade();
     } finally {
@@ -294,12 +359,35 @@ public class HBaseQueueAdmin implements QueueAdmin {
     }
   }
 
-  private void deleteConsumerConfigurations(QueueName queueName) throws IOException {
+  /**
+   * Deletes the consumer configuration of a queue. The number of salt buckets of the queue is only deleted with
+   * the entries of the queue, as remaining entries can only be read with the buckets they were written with.
+   *
+   * @param queueName Name of the queue.
+   * @param dataRemoved Whether the entries of the queue were removed.
+   */
+  private void deleteConsumerConfigurations(QueueName queueName, boolean dataRemoved) throws IOException {
     // we need to delete the row for this queue name from the config table
     HTable hTable = new HTable(getHBaseAdmin().getConfiguration(), configTableName);
     try {
       byte[] rowKey = queueName.toBytes();
-      hTable.delete(new Delete(rowKey));
+      Delete delete = new Delete(rowKey);
+      if (!dataRemoved) {
+        Result result = hTable.get(new Get(rowKey).addFamily(QueueEntryRow.COLUMN_FAMILY));
+        if (result.isEmpty()) {
+          return;
+        }
+        for (byte[] column : result.getFamilyMap(QueueEntryRow.COLUMN_FAMILY).keySet()) {
+          if (!QueueEntryRow.isBucketsColumn(column)) {
+            delete.deleteColumns(QueueEntryRow.COLUMN_FAMILY, column);
+          }
+        }
+        if (delete.isEmpty()) {
+          return;
+        }
+      }
+      hTable.delete(delete);
+      notifyConfigChanges(hTable, ImmutableList.of(rowKey));
     } finally {
       hTable.close();
     }
@@ -324,17 +412,20 @@ public class HBaseQueueAdmin implements QueueAdmin {
         ResultScanner resultScanner = hTable.getScanner(scan);
 
         List<Delete> deletes = Lists.newArrayList();
+        List<byte[]> rows = Lists.newArrayList();
         Result result;
         try {
           while ((result = resultScanner.next()) != null) {
             byte[] row = result.getRow();
             deletes.add(new Delete(row));
+            rows.add(row);
           }
         } finally {
           resultScanner.close();
         }
 
         hTable.delete(deletes);
+        notifyConfigChanges(hTable, rows);
 
       } finally {
         hTable.close();
@@ -343,19 +434,96 @@ public class HBaseQueueAdmin implements QueueAdmin {
   }
 
   public void create(QueueName queueName) throws IOException {
+    create(queueName, getConfiguredBuckets(queueName));
+  }
+
+  /**
+   * Creates a queue with the given number of salt buckets, unless the queue already has a number of salt buckets.
+   * The queue table is pre-split at the start of each salt bucket of the queue. If the table already exists, because
+   * it holds another queue of the same flow, the regions that contain these row keys are split.
+   * @param queueName Name of the queue.
+   * @param buckets Number of salt buckets for the entries of the queue, in [1..256].
+   */
+  public void create(QueueName queueName, int buckets) throws IOException {
+    Preconditions.checkArgument(buckets >= 1 && buckets <= QueueConstants.MAX_QUEUE_TABLE_BUCKETS,
+                                "Number of salt buckets should be in [1..%s] range",
+                                QueueConstants.MAX_QUEUE_TABLE_BUCKETS);
+
     // Queue Config needs to be on separate table, otherwise disabling the queue table would makes queue config
     // not accessible by the queue region coprocessor for doing eviction.
 
     // Create the config table first so that in case the queue table coprocessor runs, it can access the config table.
     createConfigTable();
+    buckets = storeDistributionBuckets(queueName, buckets);
 
+    // Split keys are the start row of each salt bucket of the queue, <salt><queue row prefix>
+    byte[] queueRowPrefix = QueueEntryRow.getQueueRowPrefix(queueName);
+    byte[][] splitKeys = getRowKeyDistributor(buckets).getAllDistributedKeys(queueRowPrefix);
     String hBaseTableName = getActualTableName(queueName);
-    AbstractHBaseDataSetAdmin dsAdmin = new DatasetAdmin(hBaseTableName, hConf, tableUtil);
+    AbstractHBaseDataSetAdmin dsAdmin = new DatasetAdmin(hBaseTableName, hConf, tableUtil, splitKeys);
     try {
       dsAdmin.create();
     } finally {
       dsAdmin.close();
     }
+    splitRegions(Bytes.toBytes(hBaseTableName), splitKeys);
+  }
+
+  /**
+   * Stores the number of salt buckets of a queue, if none is stored yet.
+   * @return the number of salt buckets of the queue.
+   */
+  private int storeDistributionBuckets(QueueName queueName, int buckets) throws IOException {
+    HTable hTable = new HTable(getHBaseAdmin().getConfiguration(), configTableName);
+    try {
+      byte[] rowKey = queueName.toBytes();
+      Result result = hTable.get(new Get(rowKey));
+      byte[] value = result.getValue(QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.BUCKETS_COLUMN);
+      if (value != null) {
+        return Bytes.toInt(value);
+      }
+      // Consumers without a number of salt buckets are of a queue that was created with the former fixed number
+      if (!result.isEmpty()) {
+        buckets = ROW_KEY_DISTRIBUTION_BUCKETS;
+      }
+      Put put = new Put(rowKey);
+      put.add(QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.BUCKETS_COLUMN, Bytes.toBytes(buckets));
+      if (hTable.checkAndPut(rowKey, QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.BUCKETS_COLUMN, null, put)) {
+        return buckets;
+      }
+      // Stored concurrently by someone else
+      Integer stored = getDistributionBuckets(hTable, queueName);
+      return stored == null ? buckets : stored;
+    } finally {
+      hTable.close();
+    }
+  }
+
+  /**
+   * Requests splits of the regions of a table at the given keys, for keys that are not a region start key already.
+   * Splitting is asynchronous and best effort, failures are logged only.
+   */
+  private void splitRegions(byte[] tableName, byte[][] splitKeys) throws IOException {
+    HTable hTable = new HTable(getHBaseAdmin().getConfiguration(), tableName);
+    Set<byte[]> startKeys = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+    try {
+      startKeys.addAll(Arrays.asList(hTable.getStartKeys()));
+    } finally {
+      hTable.close();
+    }
+    for (byte[] splitKey : splitKeys) {
+      if (startKeys.contains(splitKey)) {
+        continue;
+      }
+      try {
+        getHBaseAdmin().split(tableName, splitKey);
+      } catch (IOException e) {
+        LOG.warn("Failed to split table {} at {}", Bytes.toString(tableName), Bytes.toStringBinary(splitKey), e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
   }
 
   private void createConfigTable() throws IOException {
@@ -375,7 +543,8 @@ public class HBaseQueueAdmin implements QueueAdmin {
    */
   protected List<? extends Class<? extends Coprocessor>> getCoprocessors() {
     return ImmutableList.of(tableUtil.getQueueRegionObserverClassForVersion(),
-                            tableUtil.getDequeueScanObserverClassForVersion());
+                            tableUtil.getDequeueScanObserverClassForVersion(),
+                            tableUtil.getQueueClaimEndpointClassForVersion());
   }
 
   @Override
@@ -419,6 +588,7 @@ public class HBaseQueueAdmin implements QueueAdmin {
       }
       // Compute and applies changes
       hTable.batch(getConfigMutations(groupId, instances, rowKey, consumerStates, new ArrayList<Mutation>()));
+      notifyConfigChanges(hTable, ImmutableList.of(rowKey));
 
     } finally {
       hTable.close();
@@ -490,6 +660,7 @@ public class HBaseQueueAdmin implements QueueAdmin {
       // Compute and applies changes
       if (!mutations.isEmpty()) {
         hTable.batch(mutations);
+        notifyConfigChanges(hTable, ImmutableList.of(rowKey));
       }
 
     } finally {
@@ -497,6 +668,25 @@ public class HBaseQueueAdmin implements QueueAdmin {
     }
   }
 
+  /**
+   * Records changes of the consumer groups of queues in the config changes row, with a new generation as version, so
+   * that the {@link co.cask.tigon.data.transaction.queue.hbase.coprocessor.ConsumerConfigCache} of the region servers
+   * reloads the rows of these queues only.
+   * @param rowKeys Config rows of the queues that changed.
+   */
+  private void notifyConfigChanges(HTable hTable, List<byte[]> rowKeys) throws IOException {
+    if (rowKeys.isEmpty()) {
+      return;
+    }
+    long generation = hTable.incrementColumnValue(QueueEntryRow.CONFIG_CHANGES_ROW, QueueEntryRow.COLUMN_FAMILY,
+                                                  QueueEntryRow.CONFIG_GENERATION_COLUMN, 1L);
+    Put put = new Put(QueueEntryRow.CONFIG_CHANGES_ROW);
+    for (byte[] rowKey : rowKeys) {
+      put.add(QueueEntryRow.COLUMN_FAMILY, rowKey, generation, Bytes.toBytes(generation));
+    }
+    hTable.put(put);
+  }
+
   @Override
   public void upgrade() throws Exception {
     // For each table managed by this admin, performs an upgrade
@@ -517,6 +707,9 @@ public class HBaseQueueAdmin implements QueueAdmin {
     byte[] smallest = null;
 
     for (Map.Entry<byte[], byte[]> entry : columns.entrySet()) {
+      if (QueueEntryRow.isBucketsColumn(entry.getKey())) {
+        continue;
+      }
       // Consumer state column is named as "<groupId><instanceId>"
       long groupId = Bytes.toLong(entry.getKey());
 
@@ -584,8 +777,11 @@ public class HBaseQueueAdmin implements QueueAdmin {
 
   // only used for create & upgrade of data table
   private final class DatasetAdmin extends AbstractHBaseDataSetAdmin {
-    private DatasetAdmin(String name, Configuration hConf, HBaseTableUtil tableUtil) {
+    private final byte[][] splitKeys;
+
+    private DatasetAdmin(String name, Configuration hConf, HBaseTableUtil tableUtil, @Nullable byte[][] splitKeys) {
       super(name, hConf, tableUtil);
+      this.splitKeys = splitKeys;
     }
 
     @Override
@@ -628,10 +824,6 @@ public class HBaseQueueAdmin implements QueueAdmin {
       }
 
       // Create queue table with splits.
-      int splits = cConf.getInt(QueueConstants.ConfigKeys.QUEUE_TABLE_PRESPLITS,
-                                QueueConstants.DEFAULT_QUEUE_TABLE_PRESPLITS);
-      byte[][] splitKeys = HBaseTableUtil.getSplitKeys(splits);
-
       tableUtil.createTableIfNotExists(getHBaseAdmin(), tableName, htd, splitKeys);
     }
   }
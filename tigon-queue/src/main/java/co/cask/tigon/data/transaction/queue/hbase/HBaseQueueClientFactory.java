@@ -16,23 +16,28 @@
 
 package co.cask.tigon.data.transaction.queue.hbase;
 
+import co.cask.tigon.conf.CConfiguration;
 import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.QueueClientFactory;
 import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.queue.QueueProducer;
 import co.cask.tigon.data.transaction.queue.QueueAdmin;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
 import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 import com.google.inject.Inject;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.HTable;
 
+import java.io.Closeable;
 import java.io.IOException;
 
 /**
- *
+ * Factory for HBase queue producers and consumers. All producers write through one {@link HBaseQueueWriter},
+ * which is owned by this factory and stopped when it is closed.
  */
-public final class HBaseQueueClientFactory implements QueueClientFactory {
+public final class HBaseQueueClientFactory implements QueueClientFactory, Closeable {
 
   // 4M write buffer for HTable
   private static final int DEFAULT_WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
@@ -40,12 +45,22 @@ public final class HBaseQueueClientFactory implements QueueClientFactory {
   private final Configuration hConf;
   private final HBaseQueueAdmin queueAdmin;
   private final HBaseQueueUtil queueUtil;
+  private final QueueNotifier queueNotifier;
+  private final HBaseQueueWriter queueWriter;
 
   @Inject
-  public HBaseQueueClientFactory(Configuration hConf, QueueAdmin queueAdmin) {
+  public HBaseQueueClientFactory(CConfiguration cConf, Configuration hConf,
+                                 QueueAdmin queueAdmin, QueueNotifier queueNotifier) {
     this.hConf = hConf;
     this.queueAdmin = (HBaseQueueAdmin) queueAdmin;
+    this.queueNotifier = queueNotifier;
     this.queueUtil = new HBaseQueueUtilFactory().get();
+    this.queueWriter = new HBaseQueueWriter(
+      hConf,
+      cConf.getLong(QueueConstants.ConfigKeys.QUEUE_WRITE_BATCH_WINDOW_MS,
+                    QueueConstants.DEFAULT_QUEUE_WRITE_BATCH_WINDOW_MS),
+      cConf.getInt(QueueConstants.ConfigKeys.QUEUE_WRITE_BATCH_MAX_SIZE,
+                   QueueConstants.DEFAULT_QUEUE_WRITE_BATCH_MAX_SIZE));
   }
 
   // for testing only
@@ -65,7 +80,8 @@ public final class HBaseQueueClientFactory implements QueueClientFactory {
     HBaseConsumerStateStore stateStore = new HBaseConsumerStateStore(queueName, consumerConfig,
                                                                      createHTable(admin.getConfigTableName()));
     return queueUtil.getQueueConsumer(consumerConfig, createHTable(admin.getActualTableName(queueName)),
-                                      queueName, stateStore.getState(), stateStore);
+                                      queueName, admin.getDistributionBuckets(queueName),
+                                      stateStore.getState(), stateStore);
   }
 
   @Override
@@ -76,7 +92,17 @@ public final class HBaseQueueClientFactory implements QueueClientFactory {
   @Override
   public QueueProducer createProducer(QueueName queueName, QueueMetrics queueMetrics) throws IOException {
     HBaseQueueAdmin admin = ensureTableExists(queueName);
-    return new HBaseQueueProducer(createHTable(admin.getActualTableName(queueName)), queueName, queueMetrics);
+    return new HBaseQueueProducer(queueWriter, admin.getActualTableName(queueName), queueName,
+                                  HBaseQueueAdmin.getRowKeyDistributor(admin.getDistributionBuckets(queueName)),
+                                  queueMetrics, queueNotifier);
+  }
+
+  /**
+   * Stops the shared queue writer. Producers created by this factory can no longer enqueue.
+   */
+  @Override
+  public void close() throws IOException {
+    queueWriter.close();
   }
 
   /**
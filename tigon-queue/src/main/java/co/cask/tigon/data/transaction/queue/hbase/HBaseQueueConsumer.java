@@ -17,6 +17,8 @@
 package co.cask.tigon.data.transaction.queue.hbase;
 
 
+import co.cask.tigon.api.common.Bytes;
+import co.cask.tigon.data.co.cask.tigon.data.hbase.wd.AbstractRowKeyDistributor;
 import co.cask.tigon.data.co.cask.tigon.data.hbase.wd.DistributedScanner;
 import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.QueueName;
@@ -25,7 +27,10 @@ import co.cask.tigon.data.transaction.queue.QueueEntryRow;
 import co.cask.tigon.data.transaction.queue.QueueScanner;
 import co.cask.tigon.utils.ImmutablePair;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
@@ -37,11 +42,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -61,25 +69,37 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
   private static final int PERSIST_START_ROW_LIMIT = 1000;
 
   private final HTable hTable;
+  private final int distributionBuckets;
+  private final AbstractRowKeyDistributor rowKeyDistributor;
   private final HBaseConsumerStateStore stateStore;
   private boolean closed;
 
   // Executes distributed scans
   private final ExecutorService scansExecutor;
 
+  // Size and hash of the invalid list of the last transaction that a region server rejected without its invalid list.
+  // Scans set the full transaction as long as transactions have that invalid list, instead of being rejected again.
+  private int mismatchedInvalidsSize = -1;
+  private int mismatchedInvalidsHash;
+  private int invalidListMismatches;
+
   /**
    * Creates a HBaseQueue2Consumer.
    * @param consumerConfig Configuration of the consumer.
    * @param hTable The HTable instance to use for communicating with HBase. This consumer is responsible for closing it.
    * @param queueName Name of the queue.
+   * @param distributionBuckets Number of salt buckets that the entries of the queue are distributed over.
    * @param consumerState The persisted state of this consumer.
    * @param stateStore The store for persisting state for this consumer.
    */
-  HBaseQueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName,
+  HBaseQueueConsumer(ConsumerConfig consumerConfig, HTable hTable, QueueName queueName, int distributionBuckets,
                      HBaseConsumerState consumerState, HBaseConsumerStateStore stateStore) {
     // For HBase, eviction is done at table flush time, hence no QueueEvictor is needed.
-    super(consumerConfig, queueName);
+    // Scans only examine new rows, as each scan is a round trip to all salt buckets of the queue.
+    super(consumerConfig, queueName, true);
     this.hTable = hTable;
+    this.distributionBuckets = distributionBuckets;
+    this.rowKeyDistributor = HBaseQueueAdmin.getRowKeyDistributor(distributionBuckets);
 
     // Using the "direct handoff" approach, new threads will only be created
     // if it is necessary and will grow unbounded. This could be bad but in DistributedScanner
@@ -101,13 +121,73 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
 
   @Override
   protected boolean claimEntry(byte[] rowKey, byte[] claimedStateValue) throws IOException {
-    rowKey = HBaseQueueAdmin.ROW_KEY_DISTRIBUTOR.getDistributedKey(rowKey);
+    rowKey = rowKeyDistributor.getDistributedKey(rowKey);
     Put put = new Put(rowKey);
     put.add(QueueEntryRow.COLUMN_FAMILY, stateColumnName, claimedStateValue);
     return hTable.checkAndPut(rowKey, QueueEntryRow.COLUMN_FAMILY,
                               stateColumnName, null, put);
   }
 
+  /**
+   * Claims the entries with one call per region, through the claim endpoint of the queue table. Falls back to claiming
+   * the entries of a region one by one if the call fails, e.g. if the table is not upgraded with the endpoint yet.
+   */
+  @Override
+  protected Set<byte[]> claimEntries(Set<byte[]> rowKeys, byte[] claimedStateValue) throws IOException {
+    // Group the row keys by region, keyed by the distributed row key that is sent to the region.
+    Map<String, SortedMap<byte[], byte[]>> regionRows = Maps.newHashMap();
+    for (byte[] rowKey : rowKeys) {
+      byte[] distributedKey = rowKeyDistributor.getDistributedKey(rowKey);
+      String regionName = hTable.getRegionLocation(distributedKey).getRegionInfo().getEncodedName();
+      SortedMap<byte[], byte[]> rows = regionRows.get(regionName);
+      if (rows == null) {
+        rows = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        regionRows.put(regionName, rows);
+      }
+      rows.put(distributedKey, rowKey);
+    }
+
+    Set<byte[]> claimed = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+    for (SortedMap<byte[], byte[]> rows : regionRows.values()) {
+      try {
+        for (byte[] distributedKey : claimRegionEntries(hTable, Lists.newArrayList(rows.keySet()),
+                                                        stateColumnName, claimedStateValue)) {
+          claimed.add(rows.get(distributedKey));
+        }
+      } catch (IOException e) {
+        LOG.debug("Failed to claim {} entries in one call, claiming one by one.", rows.size(), e);
+        // The failed call may have claimed some of the rows already, which then carry the claimed state value.
+        for (Map.Entry<byte[], byte[]> row : rows.entrySet()) {
+          if (claimEntry(row.getValue(), claimedStateValue) || hasState(row.getKey(), claimedStateValue)) {
+            claimed.add(row.getValue());
+          }
+        }
+      }
+    }
+    return claimed;
+  }
+
+  private boolean hasState(byte[] distributedKey, byte[] stateValue) throws IOException {
+    Get get = new Get(distributedKey);
+    get.addColumn(QueueEntryRow.COLUMN_FAMILY, stateColumnName);
+    byte[] state = hTable.get(get).getValue(QueueEntryRow.COLUMN_FAMILY, stateColumnName);
+    return state != null && Bytes.equals(stateValue, state);
+  }
+
+  /**
+   * Claims the given rows, which all belong to the same region, with a single call to the region server. A row is
+   * claimed if it doesn't have a value in the state column yet.
+   *
+   * @param hTable The queue table.
+   * @param rowKeys Distributed row keys of the entries to claim, in sorted order.
+   * @param stateColumn Name of the state column.
+   * @param claimedStateValue The claimed state to write.
+   * @return The row keys that got claimed.
+   * @throws IOException If the call failed. Some of the rows may be claimed already in that case.
+   */
+  protected abstract Collection<byte[]> claimRegionEntries(HTable hTable, List<byte[]> rowKeys, byte[] stateColumn,
+                                                           byte[] claimedStateValue) throws IOException;
+
   @Override
   protected void updateState(Set<byte[]> rowKeys, byte[] stateColumnName, byte[] stateContent) throws IOException {
     if (rowKeys.isEmpty()) {
@@ -115,7 +195,7 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
     }
     List<Put> puts = Lists.newArrayListWithCapacity(rowKeys.size());
     for (byte[] rowKey : rowKeys) {
-      rowKey = HBaseQueueAdmin.ROW_KEY_DISTRIBUTOR.getDistributedKey(rowKey);
+      rowKey = rowKeyDistributor.getDistributedKey(rowKey);
       Put put = new Put(rowKey);
       put.add(QueueEntryRow.COLUMN_FAMILY, stateColumnName, stateContent);
       puts.add(put);
@@ -131,7 +211,7 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
     }
     List<Row> ops = Lists.newArrayListWithCapacity(rowKeys.size());
     for (byte[] rowKey : rowKeys) {
-      rowKey = HBaseQueueAdmin.ROW_KEY_DISTRIBUTOR.getDistributedKey(rowKey);
+      rowKey = rowKeyDistributor.getDistributedKey(rowKey);
       Delete delete = new Delete(rowKey);
       delete.deleteColumn(QueueEntryRow.COLUMN_FAMILY, stateColumnName);
       ops.add(delete);
@@ -142,15 +222,51 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
 
   @Override
   protected QueueScanner getScanner(byte[] startRow, byte[] stopRow, int numRows) throws IOException {
-    // Scan the table for queue entries.
+    return new HBaseQueueScanner(startRow, stopRow, numRows);
+  }
+
+  /**
+   * Opens a scanner for queue entries.
+   * @param fullTx {@code true} to set the transaction with its invalid list, which is needed if the invalid list of
+   *               a region server doesn't match the one of the transaction.
+   */
+  private ResultScanner openScanner(byte[] startRow, byte[] stopRow, int numRows, boolean fullTx) throws IOException {
     Scan scan = createScan(startRow, stopRow, numRows);
 
     DequeueScanAttributes.setQueueRowPrefix(scan, getQueueName());
     DequeueScanAttributes.set(scan, getConfig());
-    DequeueScanAttributes.set(scan, transaction);
+    if (fullTx) {
+      DequeueScanAttributes.set(scan, transaction);
+    } else {
+      // The invalid list goes to every region, hence region servers take it from their transaction state cache
+      DequeueScanAttributes.setWithoutInvalids(scan, transaction);
+    }
+
+    return DistributedScanner.create(hTable, scan, rowKeyDistributor, scansExecutor);
+  }
+
+  /**
+   * Returns whether a region server rejected the invalid list of the current transaction before.
+   */
+  private boolean isInvalidListMismatched() {
+    long[] invalids = transaction.getInvalids();
+    return invalids.length == mismatchedInvalidsSize && Arrays.hashCode(invalids) == mismatchedInvalidsHash;
+  }
 
-    ResultScanner scanner = DistributedScanner.create(hTable, scan, HBaseQueueAdmin.ROW_KEY_DISTRIBUTOR, scansExecutor);
-    return new HBaseQueueScanner(scanner, numRows);
+  private void setInvalidListMismatched() {
+    long[] invalids = transaction.getInvalids();
+    mismatchedInvalidsSize = invalids.length;
+    mismatchedInvalidsHash = Arrays.hashCode(invalids);
+    invalidListMismatches++;
+    LOG.debug("Invalid list of transaction {} rejected by a region server, scanning with the full transaction.",
+              transaction.getWritePointer());
+  }
+
+  /**
+   * Returns the number of scans that were rejected because of the invalid list of their transaction.
+   */
+  int getInvalidListMismatches() {
+    return invalidListMismatches;
   }
 
   @Override
@@ -170,6 +286,16 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
   @Override
   public void postTxCommit() {
     super.postTxCommit();
+    persistStartRow();
+  }
+
+  @Override
+  public void postDetachedTxCommit() {
+    super.postDetachedTxCommit();
+    persistStartRow();
+  }
+
+  private void persistStartRow() {
     if (commitCount >= PERSIST_START_ROW_LIMIT) {
       try {
         stateStore.saveState(new HBaseConsumerState(startRow, getConfig().getGroupId(), getConfig().getInstanceId()));
@@ -180,16 +306,45 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
     }
   }
 
+  /**
+   * Returns the number of salt buckets of the queue, which is the number of scans of a dequeue.
+   */
+  protected int getDistributionBuckets() {
+    return distributionBuckets;
+  }
+
   protected abstract Scan createScan(byte[] startRow, byte[] stopRow, int numRows);
 
+  /**
+   * Scanner of queue entries, which sets the transaction without its invalid list. If a region server rejects the
+   * scan because its invalid list doesn't match, the scan continues after the rows fetched so far with the full
+   * transaction. Scans of transactions with the same invalid list set the full transaction right away.
+   */
   private class HBaseQueueScanner implements QueueScanner {
-    private final ResultScanner scanner;
-    private final LinkedList<Result> cached = Lists.newLinkedList();
+    private final byte[] startRow;
+    private final byte[] stopRow;
     private final int numRows;
+    private final LinkedList<Result> cached = Lists.newLinkedList();
+    private ResultScanner scanner;
+    private boolean fullTx;
+    // Original key of the last row fetched from the scanner
+    private byte[] lastRow;
 
-    public HBaseQueueScanner(ResultScanner scanner, int numRows) {
-      this.scanner = scanner;
+    public HBaseQueueScanner(byte[] startRow, byte[] stopRow, int numRows) throws IOException {
+      this.startRow = startRow;
+      this.stopRow = stopRow;
       this.numRows = numRows;
+      this.fullTx = isInvalidListMismatched();
+      try {
+        this.scanner = openScanner(startRow, stopRow, numRows, fullTx);
+      } catch (IOException e) {
+        if (fullTx || !InvalidListMismatchException.isCause(e)) {
+          throw e;
+        }
+        setInvalidListMismatched();
+        this.fullTx = true;
+        this.scanner = openScanner(startRow, stopRow, numRows, true);
+      }
     }
 
     @Override
@@ -198,16 +353,40 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
         if (cached.size() > 0) {
           Result result = cached.removeFirst();
           Map<byte[], byte[]> row = result.getFamilyMap(QueueEntryRow.COLUMN_FAMILY);
-          return ImmutablePair.of(HBaseQueueAdmin.ROW_KEY_DISTRIBUTOR.getOriginalKey(result.getRow()), row);
+          return ImmutablePair.of(rowKeyDistributor.getOriginalKey(result.getRow()), row);
         }
-        Result[] results = scanner.next(numRows);
+        Result[] results = fetch();
         if (results.length == 0) {
           return null;
         }
+        lastRow = rowKeyDistributor.getOriginalKey(results[results.length - 1].getRow());
         Collections.addAll(cached, results);
       }
     }
 
+    private Result[] fetch() throws IOException {
+      try {
+        return scanner.next(numRows);
+      } catch (IOException e) {
+        if (fullTx || !InvalidListMismatchException.isCause(e)) {
+          throw e;
+        }
+      } catch (RuntimeException e) {
+        // The distributed scanner doesn't unwrap the failures of its bucket scans
+        if (fullTx || !InvalidListMismatchException.isCause(e)) {
+          throw e;
+        }
+      }
+
+      // A region of the scan has a different invalid list, hence continue with the full transaction
+      scanner.close();
+      setInvalidListMismatched();
+      fullTx = true;
+      byte[] resumeRow = lastRow == null ? startRow : Bytes.add(lastRow, new byte[1]);
+      scanner = openScanner(resumeRow, stopRow, numRows, true);
+      return scanner.next(numRows);
+    }
+
     @Override
     public void close() throws IOException {
       scanner.close();
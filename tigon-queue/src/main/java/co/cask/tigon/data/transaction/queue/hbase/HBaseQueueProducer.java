@@ -18,14 +18,15 @@ package co.cask.tigon.data.transaction.queue.hbase;
 
 import co.cask.tephra.Transaction;
 import co.cask.tigon.api.common.Bytes;
+import co.cask.tigon.data.co.cask.tigon.data.hbase.wd.AbstractRowKeyDistributor;
 import co.cask.tigon.data.queue.QueueEntry;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.transaction.queue.AbstractQueueProducer;
 import co.cask.tigon.data.transaction.queue.QueueEntryRow;
 import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 import com.google.common.collect.Lists;
 import org.apache.hadoop.hbase.client.Delete;
-import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
 
 import java.io.Closeable;
@@ -38,14 +39,22 @@ import java.util.List;
 public final class HBaseQueueProducer extends AbstractQueueProducer implements Closeable {
 
   private final byte[] queueRowPrefix;
-  private final HTable hTable;
+  private final AbstractRowKeyDistributor rowKeyDistributor;
+  private final HBaseQueueWriter queueWriter;
+  private final String tableName;
   private final List<byte[]> rollbackKeys;
+  private final List<byte[]> detachedRollbackKeys;
 
-  public HBaseQueueProducer(HTable hTable, QueueName queueName, QueueMetrics queueMetrics) {
-    super(queueMetrics, queueName);
+  HBaseQueueProducer(HBaseQueueWriter queueWriter, String tableName, QueueName queueName,
+                     AbstractRowKeyDistributor rowKeyDistributor, QueueMetrics queueMetrics,
+                     QueueNotifier queueNotifier) {
+    super(queueMetrics, queueNotifier, queueName);
     this.queueRowPrefix = QueueEntryRow.getQueueRowPrefix(queueName);
+    this.rowKeyDistributor = rowKeyDistributor;
     this.rollbackKeys = Lists.newArrayList();
-    this.hTable = hTable;
+    this.detachedRollbackKeys = Lists.newArrayList();
+    this.queueWriter = queueWriter;
+    this.tableName = tableName;
   }
 
   @Override
@@ -56,11 +65,12 @@ public final class HBaseQueueProducer extends AbstractQueueProducer implements C
 
   @Override
   public void close() throws IOException {
-    hTable.close();
+    // Nothing to close, the shared queue writer is owned by the HBaseQueueClientFactory.
   }
 
   /**
-   * Persist queue entries into HBase.
+   * Persist queue entries into HBase. The entries are written together with the entries of other producers
+   * through the shared {@link HBaseQueueWriter}; this method returns once they are written.
    */
   protected int persist(Iterable<QueueEntry> entries, Transaction transaction) throws IOException {
     long writePointer = transaction.getWritePointer();
@@ -72,7 +82,7 @@ public final class HBaseQueueProducer extends AbstractQueueProducer implements C
     for (QueueEntry entry : entries) {
       // Row key = queue_name + writePointer + counter
       byte[] rowKey = Bytes.add(rowKeyPrefix, Bytes.toBytes(count++));
-      rowKey = HBaseQueueAdmin.ROW_KEY_DISTRIBUTOR.getDistributedKey(rowKey);
+      rowKey = rowKeyDistributor.getDistributedKey(rowKey);
 
       rollbackKeys.add(rowKey);
       // No need to write ts=writePointer, as the row key already contains the writePointer
@@ -82,32 +92,50 @@ public final class HBaseQueueProducer extends AbstractQueueProducer implements C
               entry.getData());
       put.add(QueueEntryRow.COLUMN_FAMILY,
               QueueEntryRow.META_COLUMN,
-              QueueEntry.serializeHashKeys(entry.getHashKeys()));
+              QueueEntry.serializeHashKeys(entry));
 
       puts.add(put);
 
       bytes += entry.getData().length;
     }
-    hTable.put(puts);
-    hTable.flushCommits();
+    queueWriter.write(tableName, puts);
 
     return bytes;
   }
 
   @Override
   protected void doRollback() throws Exception {
+    deleteRows(rollbackKeys);
+  }
+
+  @Override
+  protected void detachRollback() {
+    detachedRollbackKeys.clear();
+    detachedRollbackKeys.addAll(rollbackKeys);
+    rollbackKeys.clear();
+  }
+
+  @Override
+  protected void doDetachedRollback() throws Exception {
+    try {
+      deleteRows(detachedRollbackKeys);
+    } finally {
+      detachedRollbackKeys.clear();
+    }
+  }
+
+  private void deleteRows(List<byte[]> rowKeys) throws IOException {
     // If nothing to rollback, simply return
-    if (rollbackKeys.isEmpty()) {
+    if (rowKeys.isEmpty()) {
       return;
     }
 
     // Delete the persisted entries
     List<Delete> deletes = Lists.newArrayList();
-    for (byte[] rowKey : rollbackKeys) {
+    for (byte[] rowKey : rowKeys) {
       Delete delete = new Delete(rowKey);
       deletes.add(delete);
     }
-    hTable.delete(deletes);
-    hTable.flushCommits();
+    queueWriter.write(tableName, deletes);
   }
 }
@@ -25,5 +25,6 @@ import org.apache.hadoop.hbase.client.HTable;
  */
 public abstract class HBaseQueueUtil {
   public abstract HBaseQueueConsumer getQueueConsumer(ConsumerConfig consumerConfig, HTable hTable,
-      QueueName queueName, HBaseConsumerState consumerState, HBaseConsumerStateStore stateStore);
+      QueueName queueName, int distributionBuckets, HBaseConsumerState consumerState,
+      HBaseConsumerStateStore stateStore);
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.hbase;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes queue entries of all producers through one background thread, so that the writes of concurrent commits
+ * are sent to HBase together. Requests that are queued up while a batch is being written, or that arrive within
+ * the batch window, go into the next batch, up to the maximum batch size. The operations of a batch are sorted by
+ * row key, which groups them by the bucket prefix of the row key distributor.
+ * <p>
+ * The writer thread is started by the first write and is restarted by the next write if it was interrupted.
+ * Closing the writer stops the thread, fails all pending and future writes and closes the tables.
+ * </p>
+ */
+class HBaseQueueWriter implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HBaseQueueWriter.class);
+
+  private final Configuration hConf;
+  private final long windowNanos;
+  private final int maxBatchSize;
+  private final BlockingQueue<WriteRequest> requests;
+  // Only accessed by the writer thread.
+  private final Map<String, HTableInterface> tables;
+  // Guarded by this, which also guards adding to requests, so that no request is added after the writer thread
+  // drained the requests for exiting.
+  private Thread writerThread;
+  private volatile boolean closed;
+
+  /**
+   * Creates an instance.
+   *
+   * @param hConf HBase configuration for creating tables.
+   * @param windowMs Time in milliseconds to wait for more requests before writing a batch. With 0, only the
+   *                 requests queued up while the previous batch was written go into a batch.
+   * @param maxBatchSize Maximum number of operations in a batch. A single request is never split.
+   */
+  HBaseQueueWriter(Configuration hConf, long windowMs, int maxBatchSize) {
+    this.hConf = hConf;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    this.maxBatchSize = maxBatchSize;
+    this.requests = new LinkedBlockingQueue<WriteRequest>();
+    this.tables = Maps.newHashMap();
+  }
+
+  /**
+   * Writes the given operations to a table. This method blocks until the operations are persisted.
+   *
+   * @param tableName Name of the table.
+   * @param ops Operations to write.
+   * @throws IOException If failed to write. Operations of the request may be partially written.
+   */
+  void write(String tableName, List<? extends Row> ops) throws IOException {
+    if (ops.isEmpty()) {
+      return;
+    }
+    WriteRequest request = new WriteRequest(tableName, ops);
+    submit(request);
+    try {
+      Uninterruptibles.getUninterruptibly(request.future);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Stops the writer thread and closes all tables. Pending writes and writes after this call fail.
+   */
+  @Override
+  public void close() throws IOException {
+    Thread thread;
+    synchronized (this) {
+      closed = true;
+      thread = writerThread;
+    }
+    if (thread != null) {
+      thread.interrupt();
+      Uninterruptibles.joinUninterruptibly(thread);
+    }
+  }
+
+  private synchronized void submit(WriteRequest request) throws IOException {
+    if (closed) {
+      throw new IOException("Queue writer is closed.");
+    }
+    if (writerThread == null) {
+      writerThread = Threads.createDaemonThreadFactory("queue-writer").newThread(new Runnable() {
+        @Override
+        public void run() {
+          runWriter();
+        }
+      });
+      writerThread.start();
+    }
+    requests.add(request);
+  }
+
+  private void runWriter() {
+    List<WriteRequest> batch = Lists.newArrayList();
+    try {
+      while (!closed) {
+        try {
+          collectBatch(batch);
+        } catch (InterruptedException e) {
+          break;
+        }
+        writeBatch(batch);
+        batch.clear();
+      }
+    } finally {
+      // Requests submitted from now on start a new writer thread, unless the writer is closed.
+      synchronized (this) {
+        requests.drainTo(batch);
+        writerThread = null;
+      }
+      if (!batch.isEmpty()) {
+        LOG.info("Queue writer {}. Failing {} pending requests.", closed ? "closed" : "interrupted", batch.size());
+        fail(batch, new IOException(closed ? "Queue writer closed." : "Queue writer interrupted."));
+      }
+      for (HTableInterface table : tables.values()) {
+        Closeables.closeQuietly(table);
+      }
+      tables.clear();
+    }
+  }
+
+  /**
+   * Blocks until there is at least one request and collects more requests into the batch.
+   */
+  private void collectBatch(List<WriteRequest> batch) throws InterruptedException {
+    WriteRequest request = requests.take();
+    long deadline = System.nanoTime() + windowNanos;
+    int size = 0;
+    while (request != null) {
+      batch.add(request);
+      size += request.ops.size();
+      if (size >= maxBatchSize) {
+        break;
+      }
+      request = requests.poll();
+      if (request == null && windowNanos > 0) {
+        long waitNanos = deadline - System.nanoTime();
+        if (waitNanos > 0) {
+          request = requests.poll(waitNanos, TimeUnit.NANOSECONDS);
+        }
+      }
+    }
+  }
+
+  private void writeBatch(List<WriteRequest> batch) {
+    // Group the requests by table
+    Map<String, List<WriteRequest>> tableRequests = Maps.newHashMap();
+    for (WriteRequest request : batch) {
+      List<WriteRequest> list = tableRequests.get(request.tableName);
+      if (list == null) {
+        list = Lists.newArrayList();
+        tableRequests.put(request.tableName, list);
+      }
+      list.add(request);
+    }
+
+    for (Map.Entry<String, List<WriteRequest>> entry : tableRequests.entrySet()) {
+      List<Row> ops = Lists.newArrayList();
+      for (WriteRequest request : entry.getValue()) {
+        ops.addAll(request.ops);
+      }
+      Collections.sort(ops);
+
+      try {
+        getTable(entry.getKey()).batch(ops);
+      } catch (Throwable t) {
+        LOG.warn("Failed to write {} operations to table {}.", ops.size(), entry.getKey(), t);
+        fail(entry.getValue(), t);
+        continue;
+      }
+      for (WriteRequest request : entry.getValue()) {
+        request.future.set(null);
+      }
+    }
+  }
+
+  private void fail(List<WriteRequest> failed, Throwable cause) {
+    for (WriteRequest request : failed) {
+      request.future.setException(cause);
+    }
+  }
+
+  private HTableInterface getTable(String tableName) throws IOException {
+    HTableInterface table = tables.get(tableName);
+    if (table == null) {
+      table = createTable(tableName);
+      tables.put(tableName, table);
+    }
+    return table;
+  }
+
+  // for testing only
+  HTableInterface createTable(String tableName) throws IOException {
+    return new HTable(hConf, tableName);
+  }
+
+  /**
+   * Operations to write to a table, with the future to complete once they are written.
+   */
+  private static final class WriteRequest {
+    private final String tableName;
+    private final List<? extends Row> ops;
+    private final SettableFuture<Void> future;
+
+    WriteRequest(String tableName, List<? extends Row> ops) {
+      this.tableName = tableName;
+      this.ops = ops;
+      this.future = SettableFuture.create();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.data.transaction.queue.hbase;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.ipc.RemoteException;
+
+/**
+ * Thrown by region servers when a dequeue scan carries its transaction without the invalid list, and the invalid list
+ * of the region server's transaction state cache is not the one of the transaction. The scan has to be retried with
+ * the full transaction, see {@link DequeueScanAttributes#set(org.apache.hadoop.hbase.client.Scan,
+ * co.cask.tephra.Transaction)}.
+ */
+public class InvalidListMismatchException extends DoNotRetryIOException {
+
+  public InvalidListMismatchException(String message) {
+    super(message);
+  }
+
+  /**
+   * Returns whether the given exception is caused by an {@link InvalidListMismatchException}, which might have been
+   * wrapped by the HBase client, or not have been unwrapped from the {@link RemoteException} of the region server.
+   */
+  public static boolean isCause(Throwable t) {
+    while (t != null) {
+      if (t instanceof InvalidListMismatchException) {
+        return true;
+      }
+      if (t instanceof RemoteException
+        && InvalidListMismatchException.class.getName().equals(((RemoteException) t).getClassName())) {
+        return true;
+      }
+      t = t.getCause();
+    }
+    return false;
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.tigon.data.transaction.queue.hbase;
+
+import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKOperations;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link QueueNotifier} for HBase queues. A commit to a queue updates a ZooKeeper node of the queue, which triggers
+ * the data watches of the consumers of that queue. Updates of the same queue are coalesced so that at most one
+ * update is sent per minimum interval. If no {@link ZKClient} is available, no notification is sent.
+ * Updates are sent from a thread that is started with the first commit, and stopped by {@link #close()}.
+ */
+@Singleton
+public final class ZKQueueNotifier implements QueueNotifier, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ZKQueueNotifier.class);
+  private static final byte[] EMPTY_DATA = new byte[0];
+
+  private final boolean enabled;
+  private final long minIntervalMs;
+  private final ConcurrentMap<QueueName, NotificationState> states;
+  private ZKClient zkClient;
+  private ScheduledExecutorService executor;
+  private boolean closed;
+
+  @Inject
+  public ZKQueueNotifier(CConfiguration cConf) {
+    this.enabled = cConf.getBoolean(QueueConstants.ConfigKeys.QUEUE_NOTIFICATION_ENABLED,
+                                    QueueConstants.DEFAULT_QUEUE_NOTIFICATION_ENABLED);
+    this.minIntervalMs = cConf.getLong(QueueConstants.ConfigKeys.QUEUE_NOTIFICATION_MIN_INTERVAL_MS,
+                                       QueueConstants.DEFAULT_QUEUE_NOTIFICATION_MIN_INTERVAL_MS);
+    this.states = Maps.newConcurrentMap();
+  }
+
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  void setZKClient(ZKClient zkClient) {
+    this.zkClient = zkClient;
+  }
+
+  @Override
+  public void notifyEnqueue(QueueName queueName) {
+    if (!enabled || zkClient == null) {
+      return;
+    }
+    NotificationState state = states.get(queueName);
+    if (state == null) {
+      state = new NotificationState(getPath(queueName));
+      NotificationState existing = states.putIfAbsent(queueName, state);
+      if (existing != null) {
+        state = existing;
+      }
+    }
+    // Only schedule if there is no pending update, otherwise the pending one covers this commit as well.
+    if (state.pending.compareAndSet(false, true)) {
+      long delay = Math.max(0L, state.lastUpdate + minIntervalMs - System.currentTimeMillis());
+      schedule(state, delay);
+    }
+  }
+
+  @Override
+  public Cancellable watch(QueueName queueName, final Runnable listener) {
+    if (!enabled || zkClient == null) {
+      return NOOP_QUEUE_NOTIFIER.watch(queueName, listener);
+    }
+    return ZKOperations.watchData(zkClient, getPath(queueName), new ZKOperations.DataCallback() {
+      @Override
+      public void updated(NodeData nodeData) {
+        listener.run();
+      }
+    });
+  }
+
+  /**
+   * Stops sending updates. Pending updates are dropped, as consumers also poll their queues.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private synchronized void schedule(NotificationState state, long delay) {
+    if (closed) {
+      return;
+    }
+    if (executor == null) {
+      executor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("queue-notifier"));
+    }
+    executor.schedule(state, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private String getPath(QueueName queueName) {
+    try {
+      return QueueConstants.QUEUE_NOTIFICATION_ZK_PATH + "/" + URLEncoder.encode(queueName.toString(),
+                                                                                 Charsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      // Shouldn't happen
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Sends the update of the ZooKeeper node of one queue.
+   */
+  private final class NotificationState implements Runnable {
+
+    private final String path;
+    private final AtomicBoolean pending;
+    private volatile long lastUpdate;
+
+    NotificationState(String path) {
+      this.path = path;
+      this.pending = new AtomicBoolean();
+    }
+
+    @Override
+    public void run() {
+      // Reset before updating, so that commits after this point trigger another update.
+      pending.set(false);
+      lastUpdate = System.currentTimeMillis();
+      Futures.addCallback(zkClient.setData(path, EMPTY_DATA), new FutureCallback<Stat>() {
+        @Override
+        public void onSuccess(Stat result) {
+          // no-op
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (t instanceof KeeperException.NoNodeException) {
+            // First notification of the queue, the node creation triggers the watches.
+            ZKOperations.ignoreError(zkClient.create(path, EMPTY_DATA, CreateMode.PERSISTENT, true),
+                                     KeeperException.NodeExistsException.class, null);
+          } else {
+            LOG.debug("Failed to send queue notification to {}", path, t);
+          }
+        }
+      });
+    }
+  }
+}
@@ -22,6 +22,7 @@ import co.cask.tigon.data.transaction.queue.QueueEntryRow;
 import co.cask.tigon.data.util.hbase.ConfigurationTable;
 import com.google.common.collect.Maps;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -40,7 +41,8 @@ import javax.annotation.Nullable;
 
 /**
  * Provides a RegionServer shared cache for all instances of HBaseQueueRegionObserver of the recent
- * queue consumer configuration.
+ * queue consumer configuration. The whole config table is reloaded periodically, and in between, the rows of
+ * the queues whose consumer groups changed are reloaded as soon as the change is recorded in the config changes row.
  */
 public class ConsumerConfigCache {
   private static final Logger LOG = LoggerFactory.getLogger(ConsumerConfigCache.class);
@@ -57,11 +59,13 @@ public class ConsumerConfigCache {
 
   private Thread refreshThread;
   private long lastUpdated;
+  // generation of the config changes up to which the cache is updated
+  private long lastGeneration;
   private volatile Map<byte[], QueueConsumerConfig> configCache = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
   private long configCacheUpdateFrequency = QueueConstants.DEFAULT_QUEUE_CONFIG_UPDATE_FREQUENCY;
   private ConfigurationTable configTable;
   private String tableNamespace;
-  private CConfiguration conf;
+  private volatile CConfiguration conf;
   // timestamp of the last update from the configuration table
   private long lastConfigUpdate;
 
@@ -83,6 +87,14 @@ public class ConsumerConfigCache {
     return configCache.get(queueName);
   }
 
+  /**
+   * @return the CConfiguration read from the configuration table, {@code null} if it was not read yet.
+   */
+  @Nullable
+  public CConfiguration getConfiguration() {
+    return conf;
+  }
+
   private void updateConfig() {
     long now = System.currentTimeMillis();
     if (this.conf == null || now > (lastConfigUpdate + CONFIG_UPDATE_FREQUENCY)) {
@@ -115,53 +127,134 @@ public class ConsumerConfigCache {
     HTable table = null;
     try {
       table = new HTable(hConf, configTableName);
+      // Changes after reading the generation are reloaded by the next update of changes
+      long generation = getGeneration(table);
       Scan scan = new Scan();
       scan.addFamily(QueueEntryRow.COLUMN_FAMILY);
       ResultScanner scanner = table.getScanner(scan);
       int configCnt = 0;
       for (Result result : scanner) {
-        if (!result.isEmpty()) {
+        if (!result.isEmpty() && !Bytes.equals(result.getRow(), QueueEntryRow.CONFIG_CHANGES_ROW)) {
           NavigableMap<byte[], byte[]> familyMap = result.getFamilyMap(QueueEntryRow.COLUMN_FAMILY);
           if (familyMap != null) {
             configCnt++;
-            Map<ConsumerInstance, byte[]> consumerInstances = new HashMap<ConsumerInstance, byte[]>();
-            // Gather the startRow of all instances across all consumer groups.
-            int numGroups = 0;
-            Long groupId = null;
-            for (Map.Entry<byte[], byte[]> entry : familyMap.entrySet()) {
-              long gid = Bytes.toLong(entry.getKey());
-              int instanceId = Bytes.toInt(entry.getKey(), LONG_BYTES);
-              consumerInstances.put(new ConsumerInstance(gid, instanceId), entry.getValue());
-
-              // Columns are sorted by groupId, hence if it change, then numGroups would get +1
-              if (groupId == null || groupId != gid) {
-                numGroups++;
-                groupId = gid;
-              }
+            QueueConsumerConfig consumerConfig = createConsumerConfig(familyMap);
+            // A queue that only has its number of salt buckets has no consumers configured yet
+            if (consumerConfig != null) {
+              newCache.put(result.getRow(), consumerConfig);
             }
-            byte[] queueName = result.getRow();
-            newCache.put(queueName, new QueueConsumerConfig(consumerInstances, numGroups));
           }
         }
       }
       long elapsed = System.currentTimeMillis() - now;
       this.configCache = newCache;
       this.lastUpdated = now;
+      this.lastGeneration = generation;
       if (LOG.isDebugEnabled()) {
         LOG.debug("Updated consumer config cache with {} entries, took {} msec", configCnt, elapsed);
       }
     } catch (IOException ioe) {
       LOG.warn("Error updating queue consumer config cache: {}", ioe.getMessage());
     } finally {
-      if (table != null) {
-        try {
-          table.close();
-        } catch (IOException ioe) {
-          LOG.error("Error closing table {}", Bytes.toString(configTableName), ioe);
+      closeTable(table);
+    }
+  }
+
+  /**
+   * Reloads the configuration of the queues whose consumer groups changed since the last update, as recorded by the
+   * queue admin in the config changes row. It should only be called from the refresh thread or from tests.
+   */
+  public synchronized void updateChanges() {
+    if (lastUpdated == 0) {
+      // The cache was never loaded
+      return;
+    }
+    HTable table = null;
+    try {
+      table = new HTable(hConf, configTableName);
+      // Change columns have the generation of the change as version
+      Get get = new Get(QueueEntryRow.CONFIG_CHANGES_ROW);
+      get.addFamily(QueueEntryRow.COLUMN_FAMILY);
+      get.setTimeRange(lastGeneration + 1, Long.MAX_VALUE);
+      NavigableMap<byte[], byte[]> changes = table.get(get).getFamilyMap(QueueEntryRow.COLUMN_FAMILY);
+      if (changes == null) {
+        return;
+      }
+      changes.remove(QueueEntryRow.CONFIG_GENERATION_COLUMN);
+      if (changes.isEmpty()) {
+        return;
+      }
+
+      Map<byte[], QueueConsumerConfig> newCache = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      newCache.putAll(configCache);
+      long generation = lastGeneration;
+      for (Map.Entry<byte[], byte[]> change : changes.entrySet()) {
+        byte[] queueName = change.getKey();
+        Get queueGet = new Get(queueName);
+        queueGet.addFamily(QueueEntryRow.COLUMN_FAMILY);
+        NavigableMap<byte[], byte[]> familyMap = table.get(queueGet).getFamilyMap(QueueEntryRow.COLUMN_FAMILY);
+        QueueConsumerConfig consumerConfig = familyMap == null ? null : createConsumerConfig(familyMap);
+        if (consumerConfig == null) {
+          newCache.remove(queueName);
+        } else {
+          newCache.put(queueName, consumerConfig);
         }
+        generation = Math.max(generation, Bytes.toLong(change.getValue()));
+      }
+      this.configCache = newCache;
+      this.lastGeneration = generation;
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Updated consumer config cache with {} changed entries", changes.size());
       }
+    } catch (IOException ioe) {
+      LOG.warn("Error updating changes of queue consumer config cache: {}", ioe.getMessage());
+    } finally {
+      closeTable(table);
     }
+  }
+
+  private long getGeneration(HTable table) throws IOException {
+    Get get = new Get(QueueEntryRow.CONFIG_CHANGES_ROW);
+    get.addColumn(QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.CONFIG_GENERATION_COLUMN);
+    byte[] value = table.get(get).getValue(QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.CONFIG_GENERATION_COLUMN);
+    return value == null ? 0L : Bytes.toLong(value);
+  }
 
+  /**
+   * Creates the consumer configuration of a queue from its config row.
+   * @return the configuration, or {@code null} if the queue has no consumers.
+   */
+  @Nullable
+  private QueueConsumerConfig createConsumerConfig(NavigableMap<byte[], byte[]> familyMap) {
+    Map<ConsumerInstance, byte[]> consumerInstances = new HashMap<ConsumerInstance, byte[]>();
+    // Gather the startRow of all instances across all consumer groups.
+    int numGroups = 0;
+    Long groupId = null;
+    for (Map.Entry<byte[], byte[]> entry : familyMap.entrySet()) {
+      if (QueueEntryRow.isBucketsColumn(entry.getKey())) {
+        continue;
+      }
+      long gid = Bytes.toLong(entry.getKey());
+      int instanceId = Bytes.toInt(entry.getKey(), LONG_BYTES);
+      consumerInstances.put(new ConsumerInstance(gid, instanceId), entry.getValue());
+
+      // Columns are sorted by groupId, hence if it change, then numGroups would get +1
+      if (groupId == null || groupId != gid) {
+        numGroups++;
+        groupId = gid;
+      }
+    }
+    return consumerInstances.isEmpty() ? null : new QueueConsumerConfig(consumerInstances, numGroups);
+  }
+
+  private void closeTable(@Nullable HTable table) {
+    if (table != null) {
+      try {
+        table.close();
+      } catch (IOException ioe) {
+        LOG.error("Error closing table {}", Bytes.toString(configTableName), ioe);
+      }
+    }
   }
 
   private void startRefreshThread() {
@@ -173,6 +266,8 @@ public class ConsumerConfigCache {
           long now = System.currentTimeMillis();
           if (now > (lastUpdated + configCacheUpdateFrequency)) {
             updateCache();
+          } else {
+            updateChanges();
           }
           try {
             Thread.sleep(1000);
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.data.transaction.queue.hbase.coprocessor;
+
+/**
+ * Decides after each eviction check of a queue region whether a major compaction should be requested to evict its
+ * dead rows. If the last requested compaction didn't evict any rows by the time of the next request, the request
+ * is only made after an increasing number of eviction check intervals.
+ */
+public final class EvictionCompactionPolicy {
+
+  // Maximum number of eviction check intervals to wait for a requested compaction that evicted no rows
+  static final int MAX_BACKOFF = 64;
+
+  private long lastRequest;
+  // Rows evicted from the region when the last compaction was requested, -1 if no compaction was requested
+  private long rowsEvictedAtRequest = -1L;
+  private int backoff = 1;
+
+  /**
+   * Returns whether a compaction should be requested for the result of the last eviction check. The compaction is
+   * considered as requested if {@code true} is returned.
+   * @param stats Statistics of the region, updated with the last eviction check.
+   * @param minDeadRows Minimum number of dead rows for a compaction.
+   * @param minDeadRowsRatio Minimum ratio of dead rows to all rows of the region for a compaction.
+   * @param interval Interval between eviction checks in milliseconds.
+   * @param now Current time in milliseconds.
+   */
+  public boolean requestCompaction(QueueEvictionStats stats, long minDeadRows, float minDeadRowsRatio,
+                                   long interval, long now) {
+    if (stats.getDeadRows() < minDeadRows || stats.getDeadRowsRatio() < minDeadRowsRatio) {
+      return false;
+    }
+    long rowsEvicted = stats.getRowsEvicted();
+    if (rowsEvictedAtRequest >= 0 && rowsEvicted == rowsEvictedAtRequest) {
+      // The last requested compaction didn't evict any rows (yet), hence back off before requesting another one
+      if (now < lastRequest + backoff * interval) {
+        return false;
+      }
+      backoff = Math.min(backoff * 2, MAX_BACKOFF);
+    } else {
+      backoff = 1;
+    }
+    lastRequest = now;
+    rowsEvictedAtRequest = rowsEvicted;
+    return true;
+  }
+}
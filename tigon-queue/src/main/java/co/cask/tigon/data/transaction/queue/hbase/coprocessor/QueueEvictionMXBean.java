@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.data.transaction.queue.hbase.coprocessor;
+
+/**
+ * JMX view of the queue eviction of a region of a queue table.
+ */
+public interface QueueEvictionMXBean {
+
+  /**
+   * @return the number of rows of the region at the last eviction check.
+   */
+  long getTotalRows();
+
+  /**
+   * @return the number of rows of the region that a major compaction would have evicted at the last eviction check.
+   */
+  long getDeadRows();
+
+  /**
+   * @return the ratio of dead rows among all rows of the region at the last eviction check, 0 if there were no rows.
+   */
+  float getDeadRowsRatio();
+
+  /**
+   * @return the number of rows evicted by flushes and compactions of the region.
+   */
+  long getRowsEvicted();
+
+  /**
+   * @return the number of major compactions requested for the region to evict its dead rows.
+   */
+  long getCompactionsRequested();
+
+  /**
+   * @return the time in milliseconds of the last eviction check, 0 if the region was not checked yet.
+   */
+  long getLastEvictionCheck();
+}
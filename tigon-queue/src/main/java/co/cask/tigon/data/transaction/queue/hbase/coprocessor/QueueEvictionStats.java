@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.data.transaction.queue.hbase.coprocessor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Queue eviction statistics of a region, which are registered with the platform MBean server under
+ * {@code co.cask.tigon:type=QueueEviction,table=<table>,region=<encoded region name>}.
+ */
+public final class QueueEvictionStats implements QueueEvictionMXBean {
+
+  private final ObjectName objectName;
+  private final AtomicLong rowsEvicted = new AtomicLong();
+  private final AtomicLong compactionsRequested = new AtomicLong();
+  private volatile long totalRows;
+  private volatile long deadRows;
+  private volatile long lastEvictionCheck;
+
+  public QueueEvictionStats(String tableName, String encodedRegionName) {
+    try {
+      this.objectName = new ObjectName("co.cask.tigon:type=QueueEviction,table=" + ObjectName.quote(tableName)
+                                         + ",region=" + ObjectName.quote(encodedRegionName));
+    } catch (MalformedObjectNameException e) {
+      // SHOULD NEVER happen, as the names are quoted
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  public ObjectName getObjectName() {
+    return objectName;
+  }
+
+  /**
+   * Registers the statistics with the platform MBean server. Statistics registered earlier for the same region, which
+   * was reopened before it was closed, are replaced.
+   */
+  public void register() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+    server.registerMBean(this, objectName);
+  }
+
+  public void unregister() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+  }
+
+  /**
+   * Records the result of an eviction check.
+   */
+  public void evictionChecked(long totalRows, long deadRows, long time) {
+    this.totalRows = totalRows;
+    this.deadRows = deadRows;
+    this.lastEvictionCheck = time;
+  }
+
+  public void rowsEvicted(long rows) {
+    rowsEvicted.addAndGet(rows);
+  }
+
+  public void compactionRequested() {
+    compactionsRequested.incrementAndGet();
+  }
+
+  @Override
+  public long getTotalRows() {
+    return totalRows;
+  }
+
+  @Override
+  public long getDeadRows() {
+    return deadRows;
+  }
+
+  @Override
+  public float getDeadRowsRatio() {
+    long total = totalRows;
+    return total == 0 ? 0f : (float) deadRows / total;
+  }
+
+  @Override
+  public long getRowsEvicted() {
+    return rowsEvicted.get();
+  }
+
+  @Override
+  public long getCompactionsRequested() {
+    return compactionsRequested.get();
+  }
+
+  @Override
+  public long getLastEvictionCheck() {
+    return lastEvictionCheck;
+  }
+}
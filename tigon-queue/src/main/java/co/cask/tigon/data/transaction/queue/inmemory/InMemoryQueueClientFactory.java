@@ -22,6 +22,7 @@ import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.queue.QueueProducer;
 import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 import com.google.inject.Inject;
 
 import java.io.IOException;
@@ -32,10 +33,12 @@ import java.io.IOException;
 public class InMemoryQueueClientFactory implements QueueClientFactory {
 
   private final InMemoryQueueService queueService;
+  private final QueueNotifier queueNotifier;
 
   @Inject
-  public InMemoryQueueClientFactory(InMemoryQueueService queueService) {
+  public InMemoryQueueClientFactory(InMemoryQueueService queueService, QueueNotifier queueNotifier) {
     this.queueService = queueService;
+    this.queueNotifier = queueNotifier;
   }
 
   @Override
@@ -51,6 +54,6 @@ public class InMemoryQueueClientFactory implements QueueClientFactory {
 
   @Override
   public QueueProducer createProducer(QueueName queueName, QueueMetrics queueMetrics) throws IOException {
-    return new InMemoryQueueProducer(queueName, queueService, queueMetrics);
+    return new InMemoryQueueProducer(queueName, queueService, queueMetrics, queueNotifier);
   }
 }
@@ -17,13 +17,14 @@
 package co.cask.tigon.data.transaction.queue.inmemory;
 
 import co.cask.tephra.Transaction;
-import co.cask.tephra.TransactionAware;
 import co.cask.tigon.data.queue.ConsumerConfig;
 import co.cask.tigon.data.queue.DequeueResult;
 import co.cask.tigon.data.queue.DequeueStrategy;
 import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.transaction.PipelinedTransactionAware;
 import co.cask.tigon.utils.ImmutablePair;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
 import java.io.IOException;
@@ -34,7 +35,7 @@ import java.util.List;
 /**
  * Consumer for an in-memory queue.
  */
-public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
+public class InMemoryQueueConsumer implements QueueConsumer, PipelinedTransactionAware {
 
   private static final DequeueResult<byte[]> EMPTY_RESULT = DequeueResult.Empty.result();
 
@@ -46,6 +47,12 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
   private List<InMemoryQueue.Key> dequeuedKeys;
   private final InMemoryQueue.ConsumerState state = new InMemoryQueue.ConsumerState();
   private final InMemoryQueueService queueService;
+  // Consumer state at the start of the current transaction.
+  private InMemoryQueue.ConsumerState txStartState;
+  private boolean detached;
+  private List<InMemoryQueue.Key> detachedKeys;
+  private boolean detachedCommitted;
+  private InMemoryQueue.ConsumerState detachedStartState;
 
   public InMemoryQueueConsumer(QueueName queueName, ConsumerConfig config,
                                int numGroups, InMemoryQueueService queueService) {
@@ -96,6 +103,7 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
     currentTx = tx;
     dequeuedKeys = null;
     committed = false;
+    txStartState = state.copy();
   }
 
   @Override
@@ -126,6 +134,47 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
     return true;
   }
 
+  @Override
+  public void detachTx() {
+    Preconditions.checkState(!detached, "Previous detached transaction is not completed.");
+    detached = true;
+    detachedKeys = dequeuedKeys;
+    detachedCommitted = committed;
+    detachedStartState = txStartState;
+    dequeuedKeys = null;
+    committed = false;
+  }
+
+  @Override
+  public void postDetachedTxCommit() {
+    Preconditions.checkState(detached, "No detached transaction.");
+    getQueue().evict(detachedKeys, numGroups);
+    clearDetached();
+  }
+
+  @Override
+  public boolean rollbackDetachedTx() throws Exception {
+    Preconditions.checkState(detached, "No detached transaction.");
+    try {
+      if (detachedKeys != null) {
+        if (detachedCommitted || DequeueStrategy.FIFO.equals(config.getDequeueStrategy())) {
+          getQueue().undoDequeue(detachedKeys, config);
+        }
+        // The next transaction may have scanned past the detached entries, as they were acked already.
+        state.rewind(detachedStartState);
+      }
+      return true;
+    } finally {
+      clearDetached();
+    }
+  }
+
+  private void clearDetached() {
+    detached = false;
+    detachedKeys = null;
+    detachedStartState = null;
+  }
+
   private final class InMemoryDequeueResult implements DequeueResult<byte[]> {
 
     private final List<InMemoryQueue.Key> keys;
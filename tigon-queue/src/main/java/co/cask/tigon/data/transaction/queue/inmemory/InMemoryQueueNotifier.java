@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.tigon.data.transaction.queue.inmemory;
+
+import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.twill.common.Cancellable;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link QueueNotifier} for in-memory queues, which invokes the listeners of a queue directly from the committing
+ * thread.
+ */
+@Singleton
+public final class InMemoryQueueNotifier implements QueueNotifier {
+
+  private final boolean enabled;
+  private final ConcurrentMap<QueueName, List<Runnable>> listeners;
+
+  @Inject
+  public InMemoryQueueNotifier(CConfiguration cConf) {
+    this.enabled = cConf.getBoolean(QueueConstants.ConfigKeys.QUEUE_NOTIFICATION_ENABLED,
+                                    QueueConstants.DEFAULT_QUEUE_NOTIFICATION_ENABLED);
+    this.listeners = Maps.newConcurrentMap();
+  }
+
+  @Override
+  public void notifyEnqueue(QueueName queueName) {
+    List<Runnable> queueListeners = listeners.get(queueName);
+    if (queueListeners == null) {
+      return;
+    }
+    for (Runnable listener : queueListeners) {
+      listener.run();
+    }
+  }
+
+  @Override
+  public Cancellable watch(QueueName queueName, final Runnable listener) {
+    if (!enabled) {
+      return NOOP_QUEUE_NOTIFIER.watch(queueName, listener);
+    }
+    List<Runnable> queueListeners = listeners.get(queueName);
+    if (queueListeners == null) {
+      queueListeners = new CopyOnWriteArrayList<Runnable>();
+      List<Runnable> existing = listeners.putIfAbsent(queueName, queueListeners);
+      if (existing != null) {
+        queueListeners = existing;
+      }
+    }
+    queueListeners.add(listener);
+
+    final List<Runnable> finalListeners = queueListeners;
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        finalListeners.remove(listener);
+      }
+    };
+  }
+}
@@ -21,6 +21,7 @@ import co.cask.tigon.data.queue.QueueEntry;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.transaction.queue.AbstractQueueProducer;
 import co.cask.tigon.data.transaction.queue.QueueMetrics;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
 
 /**
  * Producer for an in-memory queue.
@@ -31,9 +32,16 @@ public class InMemoryQueueProducer extends AbstractQueueProducer {
   private final InMemoryQueueService queueService;
   private int lastEnqueueCount;
   private Transaction commitTransaction;
+  private int detachedEnqueueCount;
+  private Transaction detachedTransaction;
 
   public InMemoryQueueProducer(QueueName queueName, InMemoryQueueService queueService, QueueMetrics queueMetrics) {
-    super(queueMetrics, queueName);
+    this(queueName, queueService, queueMetrics, QueueNotifier.NOOP_QUEUE_NOTIFIER);
+  }
+
+  public InMemoryQueueProducer(QueueName queueName, InMemoryQueueService queueService,
+                               QueueMetrics queueMetrics, QueueNotifier queueNotifier) {
+    super(queueMetrics, queueNotifier, queueName);
     this.queueName = queueName;
     this.queueService = queueService;
   }
@@ -65,10 +73,27 @@ public class InMemoryQueueProducer extends AbstractQueueProducer {
 
   @Override
   protected void doRollback() {
-    if (commitTransaction != null) {
+    undoEnqueue(commitTransaction, lastEnqueueCount);
+  }
+
+  @Override
+  protected void detachRollback() {
+    detachedTransaction = commitTransaction;
+    detachedEnqueueCount = lastEnqueueCount;
+    commitTransaction = null;
+  }
+
+  @Override
+  protected void doDetachedRollback() {
+    undoEnqueue(detachedTransaction, detachedEnqueueCount);
+    detachedTransaction = null;
+  }
+
+  private void undoEnqueue(Transaction transaction, int enqueueCount) {
+    if (transaction != null) {
       InMemoryQueue queue = getQueue();
-      for (int seqId = 0; seqId < lastEnqueueCount; seqId++) {
-        queue.undoEnqueue(commitTransaction.getWritePointer(), seqId);
+      for (int seqId = 0; seqId < enqueueCount; seqId++) {
+        queue.undoEnqueue(transaction.getWritePointer(), seqId);
       }
     }
   }
@@ -16,7 +16,10 @@
 
 package co.cask.tigon.data.transaction.queue.inmemory;
 
+import co.cask.tigon.conf.CConfiguration;
 import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
@@ -35,20 +38,27 @@ import javax.annotation.Nullable;
 public final class InMemoryQueueService {
 
   private final ConcurrentMap<String, InMemoryQueue> queues;
+  private final boolean useSkipList;
 
   /**
    * Package visible constructor so that instance of this class can only be created through Guice.
    */
   @Inject
-  private InMemoryQueueService() {
+  private InMemoryQueueService(CConfiguration cConf) {
     queues = Maps.newConcurrentMap();
+    String engine = cConf.get(QueueConstants.ConfigKeys.IN_MEMORY_QUEUE_ENGINE,
+                              QueueConstants.DEFAULT_IN_MEMORY_QUEUE_ENGINE);
+    Preconditions.checkArgument(QueueConstants.IN_MEMORY_QUEUE_ENGINE_RING_BUFFER.equals(engine)
+                                  || QueueConstants.IN_MEMORY_QUEUE_ENGINE_SKIP_LIST.equals(engine),
+                                "Unsupported in-memory queue engine %s", engine);
+    useSkipList = QueueConstants.IN_MEMORY_QUEUE_ENGINE_SKIP_LIST.equals(engine);
   }
 
   InMemoryQueue getQueue(QueueName queueName) {
     String name = queueName.toString();
     InMemoryQueue queue = queues.get(name);
     if (queue == null) {
-      queue = new InMemoryQueue();
+      queue = useSkipList ? new SkipListInMemoryQueue() : new RingBufferInMemoryQueue();
       InMemoryQueue existing = queues.putIfAbsent(name, queue);
       if (existing != null) {
         queue = existing;
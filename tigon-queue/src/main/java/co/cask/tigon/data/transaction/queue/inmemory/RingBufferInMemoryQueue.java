@@ -0,0 +1,398 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.inmemory;
+
+import co.cask.tephra.Transaction;
+import co.cask.tigon.data.queue.ConsumerConfig;
+import co.cask.tigon.data.queue.DequeueStrategy;
+import co.cask.tigon.data.queue.QueueEntry;
+import co.cask.tigon.utils.ImmutablePair;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Implementation of an in-memory queue that appends entries to a ring of fixed size array segments.
+ * <p>
+ * Every entry is addressed by its position in append order. Consumer state is kept per segment and consumer group,
+ * as a bitset of processed entries plus the instance that claimed each entry for FIFO. Each consumer keeps a cursor
+ * in its {@link ConsumerState}, which only advances over entries that never have to be revisited by that consumer.
+ * Because entries are only ever appended, a committed entry can never appear behind a cursor.
+ * </p>
+ * <p>
+ * An entry is released once all consumer groups have evicted it. A segment with only released entries is dropped
+ * by moving the low-water mark of the ring.
+ * </p>
+ */
+public final class RingBufferInMemoryQueue extends InMemoryQueue {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RingBufferInMemoryQueue.class);
+
+  private static final int SEGMENT_SHIFT = 10;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+  private static final int INITIAL_SEGMENTS = 16;
+
+  // Guards appends and changes to the ring structure. Dequeue doesn't acquire it.
+  private final Object lock = new Object();
+
+  // Ring of live segments, a segment with number n is at index (n % ring.length). Length is always a power of 2.
+  private volatile Segment[] ring;
+  // Number of the oldest live segment, which is the low-water mark of the queue.
+  private volatile long head;
+  // Position of the next entry to append. Written after the entry and its segment are in place.
+  private volatile long tail;
+
+  public RingBufferInMemoryQueue() {
+    this.ring = new Segment[INITIAL_SEGMENTS];
+  }
+
+  @Override
+  public void clear() {
+    synchronized (lock) {
+      // Skip to the next segment boundary so that positions already handed out are never reused.
+      long next = (tail + SEGMENT_MASK) >>> SEGMENT_SHIFT;
+      ring = new Segment[INITIAL_SEGMENTS];
+      head = next;
+      tail = next << SEGMENT_SHIFT;
+    }
+  }
+
+  @Override
+  public int getSize() {
+    synchronized (lock) {
+      long size = 0;
+      long tail = this.tail;
+      for (Segment segment : ring) {
+        if (segment != null) {
+          size += Math.min(SEGMENT_SIZE, tail - (segment.number << SEGMENT_SHIFT)) - segment.released.get();
+        }
+      }
+      return (int) size;
+    }
+  }
+
+  @Override
+  public void enqueue(long txId, int seqId, QueueEntry entry) {
+    synchronized (lock) {
+      long position = tail;
+      int idx = (int) (position & SEGMENT_MASK);
+      Segment segment = idx == 0 ? addSegment(position >>> SEGMENT_SHIFT) : getSegment(ring, position);
+      segment.txIds[idx] = txId;
+      segment.seqIds[idx] = seqId;
+      segment.entries.lazySet(idx, entry);
+      // Publish the entry to consumers
+      tail = position + 1;
+    }
+  }
+
+  @Override
+  public void undoEnqueue(long txId, int seqId) {
+    synchronized (lock) {
+      // Entries to undo were enqueued recently, hence search backward from the tail.
+      long low = head << SEGMENT_SHIFT;
+      for (long position = tail - 1; position >= low; position--) {
+        Segment segment = getSegment(ring, position);
+        int idx = (int) (position & SEGMENT_MASK);
+        if (segment.txIds[idx] == txId && segment.seqIds[idx] == seqId) {
+          if (segment.entries.getAndSet(idx, null) != null) {
+            segment.released.incrementAndGet();
+          }
+          return;
+        }
+      }
+    }
+  }
+
+  @Override
+  public ImmutablePair<List<Key>, List<byte[]>> dequeue(Transaction tx, ConsumerConfig config,
+                                                        ConsumerState consumerState, int maxBatchSize) {
+    List<Key> keys = Lists.newArrayListWithCapacity(maxBatchSize);
+    List<byte[]> datas = Lists.newArrayListWithCapacity(maxBatchSize);
+
+    // Read tail before ring, so that the ring contains all segments up to tail
+    long tail = this.tail;
+    Segment[] ring = this.ring;
+    long position = Math.max(consumerState.position, head << SEGMENT_SHIFT);
+
+    boolean fifo = config.getDequeueStrategy() == DequeueStrategy.FIFO;
+    int groupSize = config.getGroupSize();
+    int instanceId = config.getInstanceId();
+    boolean updatePosition = true;
+    Segment segment = null;
+    GroupState groupState = null;
+
+    while (position < tail && keys.size() < maxBatchSize) {
+      long segmentNumber = position >>> SEGMENT_SHIFT;
+      if (segment == null || segment.number != segmentNumber) {
+        segment = getSegment(ring, position);
+        if (segment == null || segment.number != segmentNumber) {
+          // segment was dropped after we started scanning, all its entries are released. Continue from the head.
+          long low = head << SEGMENT_SHIFT;
+          if (low <= position) {
+            break;
+          }
+          position = low;
+          if (updatePosition) {
+            consumerState.position = position;
+          }
+          segment = null;
+          continue;
+        }
+        groupState = segment.getGroupState(config.getGroupId());
+      }
+
+      int idx = (int) (position & SEGMENT_MASK);
+      QueueEntry entry = segment.entries.get(idx);
+      long txId = segment.txIds[idx];
+
+      // entry == null means the entry was undone or evicted, no need to revisit it
+      if (entry != null && !groupState.isProcessed(idx)) {
+        if (tx.getReadPointer() < txId || tx.isInProgress(txId)) {
+          // the entry is not visible to the current transaction, but it will be later. Need to revisit it.
+          updatePosition = false;
+        } else if (fifo) {
+          // for FIFO, attempt to claim the entry and return it
+          if (groupState.claim(idx, instanceId, groupSize)) {
+            keys.add(new Key(txId, segment.seqIds[idx], position));
+            datas.add(entry.getData());
+          }
+          // else: someone else claimed it, we may have to revisit this if that consumer rolls back.
+          updatePosition = false;
+        } else if (groupSize == 1 || Math.abs(getHash(config, entry, txId, segment.seqIds[idx])) % groupSize
+          == instanceId) {
+          // for hash/round robin, take the entry if group size is 1 or if the entry belongs to this instance
+          keys.add(new Key(txId, segment.seqIds[idx], position));
+          datas.add(entry.getData());
+          updatePosition = false;
+        }
+      }
+
+      position++;
+      if (updatePosition) {
+        consumerState.position = position;
+      }
+    }
+    return keys.isEmpty() ? null : ImmutablePair.of(keys, datas);
+  }
+
+  @Override
+  public void ack(List<Key> dequeuedKeys, ConsumerConfig config) {
+    if (dequeuedKeys == null) {
+      return;
+    }
+    Segment[] ring = this.ring;
+    for (Key key : dequeuedKeys) {
+      Segment segment = getLiveSegment(ring, key);
+      if (segment == null) {
+        LOG.warn("Attempting to ack non-existing entry " + key);
+        continue;
+      }
+      segment.getGroupState(config.getGroupId()).setProcessed((int) (key.position & SEGMENT_MASK), true);
+    }
+  }
+
+  @Override
+  public void undoDequeue(List<Key> dequeuedKeys, ConsumerConfig config) {
+    if (dequeuedKeys == null) {
+      return;
+    }
+    boolean fifo = config.getDequeueStrategy() == DequeueStrategy.FIFO;
+    Segment[] ring = this.ring;
+    for (Key key : dequeuedKeys) {
+      Segment segment = getLiveSegment(ring, key);
+      if (segment == null) {
+        LOG.warn("Attempting to undo dequeue for non-existing entry " + key);
+        continue;
+      }
+      int idx = (int) (key.position & SEGMENT_MASK);
+      GroupState groupState = segment.getGroupState(config.getGroupId());
+      if (fifo) {
+        // revert to claimed by this consumer
+        groupState.claims.set(idx, config.getInstanceId() + 1);
+      }
+      groupState.setProcessed(idx, false);
+    }
+  }
+
+  @Override
+  public void evict(List<Key> dequeuedKeys, int numGroups) {
+    if (numGroups < 1) {
+      return; // this means no eviction because number of groups is not known
+    }
+    if (dequeuedKeys == null) {
+      return;
+    }
+    Segment[] ring = this.ring;
+    boolean segmentReleased = false;
+    for (Key key : dequeuedKeys) {
+      Segment segment = getLiveSegment(ring, key);
+      if (segment == null) {
+        LOG.warn("Attempting to evict non-existing entry " + key);
+        continue;
+      }
+      int idx = (int) (key.position & SEGMENT_MASK);
+      // all consumer groups have processed _and_ reached the post-commit hook: safe to release
+      if (segment.evictions.incrementAndGet(idx) >= numGroups && segment.entries.getAndSet(idx, null) != null) {
+        segmentReleased |= segment.released.incrementAndGet() == SEGMENT_SIZE;
+      }
+    }
+    if (segmentReleased) {
+      advanceHead();
+    }
+  }
+
+  /**
+   * Drops all fully released segments from the head of the ring.
+   */
+  private void advanceHead() {
+    synchronized (lock) {
+      Segment[] ring = this.ring;
+      long head = this.head;
+      // Only segments before the tail segment are completely filled
+      long tailSegment = tail >>> SEGMENT_SHIFT;
+      while (head < tailSegment) {
+        int idx = (int) (head & (ring.length - 1));
+        Segment segment = ring[idx];
+        if (segment != null && segment.released.get() < SEGMENT_SIZE) {
+          break;
+        }
+        ring[idx] = null;
+        head++;
+      }
+      this.head = head;
+    }
+  }
+
+  /**
+   * Adds a new segment to the ring, growing the ring if it is full. Must be called while holding the lock.
+   */
+  private Segment addSegment(long number) {
+    Segment[] ring = this.ring;
+    if (number - head >= ring.length) {
+      Segment[] newRing = new Segment[ring.length * 2];
+      for (long i = head; i < number; i++) {
+        newRing[(int) (i & (newRing.length - 1))] = ring[(int) (i & (ring.length - 1))];
+      }
+      ring = newRing;
+    }
+    Segment segment = new Segment(number);
+    ring[(int) (number & (ring.length - 1))] = segment;
+    this.ring = ring;
+    return segment;
+  }
+
+  private Segment getSegment(Segment[] ring, long position) {
+    return ring[(int) ((position >>> SEGMENT_SHIFT) & (ring.length - 1))];
+  }
+
+  /**
+   * Returns the segment that contains the entry of the given key, or {@code null} if the segment was dropped.
+   */
+  private Segment getLiveSegment(Segment[] ring, Key key) {
+    Segment segment = key.position < 0 ? null : getSegment(ring, key.position);
+    return segment == null || segment.number != (key.position >>> SEGMENT_SHIFT) ? null : segment;
+  }
+
+  private int getHash(ConsumerConfig config, QueueEntry entry, long txId, int seqId) {
+    if (config.getDequeueStrategy() == DequeueStrategy.ROUND_ROBIN) {
+      return Key.hash(txId, seqId);
+    }
+    Integer hashFoundInEntry = entry.getHashKey(config.getHashKey());
+    return hashFoundInEntry == null ? 0 : hashFoundInEntry;
+  }
+
+  /**
+   * A fixed size array of entries.
+   */
+  private static final class Segment {
+    final long number;
+    final long[] txIds = new long[SEGMENT_SIZE];
+    final int[] seqIds = new int[SEGMENT_SIZE];
+    // An entry is set to null when it is undone or evicted by all groups.
+    final AtomicReferenceArray<QueueEntry> entries = new AtomicReferenceArray<QueueEntry>(SEGMENT_SIZE);
+    final AtomicIntegerArray evictions = new AtomicIntegerArray(SEGMENT_SIZE);
+    // Number of entries that are undone or evicted.
+    final AtomicInteger released = new AtomicInteger();
+    final ConcurrentMap<Long, GroupState> groupStates = Maps.newConcurrentMap();
+
+    Segment(long number) {
+      this.number = number;
+    }
+
+    GroupState getGroupState(long groupId) {
+      GroupState state = groupStates.get(groupId);
+      if (state == null) {
+        state = new GroupState();
+        GroupState existing = groupStates.putIfAbsent(groupId, state);
+        if (existing != null) {
+          state = existing;
+        }
+      }
+      return state;
+    }
+  }
+
+  /**
+   * State of the entries in a segment for one consumer group.
+   */
+  private static final class GroupState {
+    // Bitset of processed entries
+    final AtomicLongArray processed = new AtomicLongArray(SEGMENT_SIZE >> 6);
+    // Instance id + 1 of the FIFO consumer that claimed the entry, 0 if unclaimed.
+    final AtomicIntegerArray claims = new AtomicIntegerArray(SEGMENT_SIZE);
+
+    boolean isProcessed(int idx) {
+      return (processed.get(idx >> 6) & (1L << idx)) != 0;
+    }
+
+    void setProcessed(int idx, boolean value) {
+      long mask = 1L << idx;
+      while (true) {
+        long bits = processed.get(idx >> 6);
+        long newBits = value ? bits | mask : bits & ~mask;
+        if (bits == newBits || processed.compareAndSet(idx >> 6, bits, newBits)) {
+          return;
+        }
+      }
+    }
+
+    boolean claim(int idx, int instanceId, int groupSize) {
+      while (true) {
+        int claimedBy = claims.get(idx);
+        if (claimedBy == instanceId + 1) {
+          return true;
+        }
+        // If the entry is unclaimed or if the old claimed consumer is gone, then it can be claimed.
+        if (claimedBy != 0 && claimedBy - 1 < groupSize) {
+          return false;
+        }
+        if (claims.compareAndSet(idx, claimedBy, instanceId + 1)) {
+          return true;
+        }
+      }
+    }
+  }
+}
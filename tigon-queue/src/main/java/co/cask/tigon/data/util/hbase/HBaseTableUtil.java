@@ -18,7 +18,6 @@ package co.cask.tigon.data.util.hbase;
 
 import co.cask.tigon.api.common.Bytes;
 import co.cask.tigon.data.co.cask.tigon.data.hbase.wd.AbstractRowKeyDistributor;
-import co.cask.tigon.data.transaction.queue.hbase.HBaseQueueAdmin;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
@@ -192,10 +191,6 @@ public abstract class HBaseTableUtil {
   // For simplicity we allow max 255 splits per bucket for now
   private static final int MAX_SPLIT_COUNT_PER_BUCKET = 0xff;
 
-  public static byte[][] getSplitKeys(int splits) {
-    return getSplitKeys(splits, HBaseQueueAdmin.ROW_KEY_DISTRIBUTION_BUCKETS, HBaseQueueAdmin.ROW_KEY_DISTRIBUTOR);
-  }
-
   public static byte[][] getSplitKeys(int splits, int buckets, AbstractRowKeyDistributor keyDistributor) {
     // "1" can be used for queue tables that we know are not "hot", so we do not pre-split in this case
     if (splits == 1) {
@@ -397,6 +392,7 @@ public abstract class HBaseTableUtil {
   public abstract Class<? extends Coprocessor> getTransactionDataJanitorClassForVersion();
   public abstract Class<? extends Coprocessor> getQueueRegionObserverClassForVersion();
   public abstract Class<? extends Coprocessor> getDequeueScanObserverClassForVersion();
+  public abstract Class<? extends Coprocessor> getQueueClaimEndpointClassForVersion();
   public abstract Class<? extends Coprocessor> getIncrementHandlerClassForVersion();
 
   /**
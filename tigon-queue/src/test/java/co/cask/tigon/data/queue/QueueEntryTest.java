@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.queue;
+
+import co.cask.tigon.api.common.Bytes;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the hash keys of the {@link QueueEntry}.
+ */
+public class QueueEntryTest {
+
+  @Test
+  public void testSingleHashKey() throws Exception {
+    byte[] data = Bytes.toBytes("data");
+    QueueEntry entry = new QueueEntry("key", 42, data);
+
+    Assert.assertSame(data, entry.getData());
+    Assert.assertEquals(Integer.valueOf(42), entry.getHashKey("key"));
+    Assert.assertNull(entry.getHashKey("other"));
+    Assert.assertEquals(ImmutableMap.of("key", 42), entry.getHashKeys());
+
+    // Serialized the same as the map of the one hash key
+    byte[] serialized = QueueEntry.serializeHashKeys(entry);
+    Assert.assertArrayEquals(QueueEntry.serializeHashKeys(ImmutableMap.of("key", 42)), serialized);
+    Assert.assertEquals(ImmutableMap.of("key", 42), QueueEntry.deserializeHashKeys(serialized));
+  }
+
+  @Test
+  public void testHashKeysMap() throws Exception {
+    QueueEntry entry = new QueueEntry(ImmutableMap.of("k1", 1, "k2", -2), Bytes.toBytes("data"));
+    Assert.assertEquals(Integer.valueOf(-2), entry.getHashKey("k2"));
+    Assert.assertNull(entry.getHashKey("other"));
+    Assert.assertEquals(ImmutableMap.of("k1", 1, "k2", -2),
+                        QueueEntry.deserializeHashKeys(QueueEntry.serializeHashKeys(entry)));
+
+    entry = new QueueEntry(Bytes.toBytes("data"));
+    Assert.assertNull(entry.getHashKey("k1"));
+    Assert.assertTrue(QueueEntry.deserializeHashKeys(QueueEntry.serializeHashKeys(entry)).isEmpty());
+  }
+}
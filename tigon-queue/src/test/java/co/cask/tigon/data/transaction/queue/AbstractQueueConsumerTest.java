@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue;
+
+import co.cask.tephra.Transaction;
+import co.cask.tigon.api.common.Bytes;
+import co.cask.tigon.data.queue.ConsumerConfig;
+import co.cask.tigon.data.queue.DequeueResult;
+import co.cask.tigon.data.queue.DequeueStrategy;
+import co.cask.tigon.data.queue.QueueEntry;
+import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.utils.ImmutablePair;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+
+/**
+ * Tests the scans of the {@link AbstractQueueConsumer}.
+ */
+public class AbstractQueueConsumerTest {
+
+  private static final QueueName QUEUE_NAME = QueueName.fromFlowlet("app", "flow", "flowlet", "out");
+  private static final long[] NO_TX = new long[0];
+
+  @Test
+  public void testTailingScan() throws Exception {
+    int fullScanRows = testDequeue(false);
+    int tailingScanRows = testDequeue(true);
+    // The tailing scan only examines the rows of the transaction that was in progress, and the new row
+    Assert.assertEquals(3, tailingScanRows);
+    Assert.assertTrue(fullScanRows > tailingScanRows);
+  }
+
+  /**
+   * Dequeues entries that are written while the transaction that writes other entries is in progress.
+   * @return the number of rows scanned by the dequeue after the transaction committed.
+   */
+  private int testDequeue(boolean tailingScan) throws Exception {
+    TableQueueConsumer consumer = new TableQueueConsumer(tailingScan);
+    consumer.enqueue(1, "a", "b");
+    consumer.enqueue(3, "d", "e");
+
+    // Transaction 2 is in progress and didn't write its entries yet
+    Transaction tx = new Transaction(3, 4, NO_TX, new long[] {2}, 2);
+    Assert.assertEquals(ImmutableSet.of("a", "b", "d", "e"), dequeue(consumer, tx));
+
+    consumer.enqueue(2, "c1", "c2");
+    consumer.enqueue(5, "f");
+    consumer.scannedRows = 0;
+    tx = new Transaction(5, 6, NO_TX, NO_TX, Transaction.NO_TX_IN_PROGRESS);
+    Assert.assertEquals(ImmutableSet.of("c1", "c2", "f"), dequeue(consumer, tx));
+    int scannedRows = consumer.scannedRows;
+
+    // Entries of an invalid transaction are never dequeued
+    tx = new Transaction(6, 8, NO_TX, new long[] {7}, 7);
+    Assert.assertTrue(dequeue(consumer, tx).isEmpty());
+    consumer.enqueue(7, "g");
+    tx = new Transaction(8, 9, new long[] {7}, NO_TX, Transaction.NO_TX_IN_PROGRESS);
+    Assert.assertTrue(dequeue(consumer, tx).isEmpty());
+
+    return scannedRows;
+  }
+
+  private Set<String> dequeue(TableQueueConsumer consumer, Transaction tx) throws Exception {
+    consumer.startTx(tx);
+    DequeueResult<byte[]> result = consumer.dequeue(10);
+    Set<String> entries = Sets.newHashSet();
+    for (byte[] entry : result) {
+      entries.add(Bytes.toString(entry));
+    }
+    Assert.assertTrue(consumer.commitTx());
+    consumer.postTxCommit();
+    return entries;
+  }
+
+  /**
+   * Queue consumer on a sorted map of rows, which counts the scanned rows.
+   */
+  private static final class TableQueueConsumer extends AbstractQueueConsumer {
+
+    private final NavigableMap<byte[], Map<byte[], byte[]>> rows = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    private int scannedRows;
+
+    TableQueueConsumer(boolean tailingScan) {
+      super(new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null), QUEUE_NAME, tailingScan);
+    }
+
+    void enqueue(long writePointer, String...entries) throws IOException {
+      byte[] rowPrefix = Bytes.add(QueueEntryRow.getQueueRowPrefix(QUEUE_NAME), Bytes.toBytes(writePointer));
+      for (int i = 0; i < entries.length; i++) {
+        Map<byte[], byte[]> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        columns.put(QueueEntryRow.DATA_COLUMN, Bytes.toBytes(entries[i]));
+        columns.put(QueueEntryRow.META_COLUMN, QueueEntry.serializeHashKeys(ImmutableMap.<String, Integer>of()));
+        rows.put(Bytes.add(rowPrefix, Bytes.toBytes(i)), columns);
+      }
+    }
+
+    @Override
+    protected boolean claimEntry(byte[] rowKey, byte[] stateContent) throws IOException {
+      Map<byte[], byte[]> columns = rows.get(rowKey);
+      if (columns.containsKey(stateColumnName)) {
+        return false;
+      }
+      columns.put(stateColumnName, stateContent);
+      return true;
+    }
+
+    @Override
+    protected void updateState(Set<byte[]> rowKeys, byte[] stateColumnName, byte[] stateContent) throws IOException {
+      for (byte[] rowKey : rowKeys) {
+        rows.get(rowKey).put(stateColumnName, stateContent);
+      }
+    }
+
+    @Override
+    protected void undoState(Set<byte[]> rowKeys, byte[] stateColumnName) throws IOException {
+      for (byte[] rowKey : rowKeys) {
+        rows.get(rowKey).remove(stateColumnName);
+      }
+    }
+
+    @Override
+    protected QueueScanner getScanner(byte[] startRow, byte[] stopRow, int numRows) throws IOException {
+      final Iterator<Map.Entry<byte[], Map<byte[], byte[]>>> iterator =
+        Maps.newTreeMap(rows.subMap(startRow, stopRow)).entrySet().iterator();
+      return new QueueScanner() {
+        @Override
+        public ImmutablePair<byte[], Map<byte[], byte[]>> next() throws IOException {
+          if (!iterator.hasNext()) {
+            return null;
+          }
+          scannedRows++;
+          Map.Entry<byte[], Map<byte[], byte[]>> row = iterator.next();
+          return ImmutablePair.of(row.getKey(), row.getValue());
+        }
+
+        @Override
+        public void close() throws IOException {
+          // No-op
+        }
+      };
+    }
+
+    @Override
+    public void close() throws IOException {
+      // No-op
+    }
+  }
+}
@@ -33,6 +33,7 @@ import co.cask.tigon.data.queue.QueueConsumer;
 import co.cask.tigon.data.queue.QueueEntry;
 import co.cask.tigon.data.queue.QueueName;
 import co.cask.tigon.data.queue.QueueProducer;
+import co.cask.tigon.data.transaction.PipelinedTransactionAware;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
@@ -390,6 +391,88 @@ public abstract class QueueTest {
     txContext.finish();
   }
 
+  @Test(timeout = TIMEOUT_MS)
+  public void testDetachedTx() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "queuedetach");
+    QueueProducer producer = queueClientFactory.createProducer(queueName);
+    QueueConsumer consumer = queueClientFactory.createConsumer(
+      queueName, new ConsumerConfig(0, 0, 1, DequeueStrategy.FIFO, null), 1);
+    PipelinedTransactionAware producerTx = (PipelinedTransactionAware) producer;
+    PipelinedTransactionAware consumerTx = (PipelinedTransactionAware) consumer;
+
+    TransactionContext txContext = createTxContext(producer);
+    txContext.start();
+    for (int i = 1; i <= 4; i++) {
+      producer.enqueue(new QueueEntry(Bytes.toBytes(i)));
+    }
+    txContext.finish();
+
+    // Dequeue and persist the first batch, but leave its commit pending.
+    Transaction tx1 = txSystemClient.startShort();
+    consumerTx.startTx(tx1);
+    Assert.assertEquals(ImmutableList.of(1, 2), toIntegers(consumer.dequeue(2)));
+    Assert.assertTrue(txSystemClient.canCommit(tx1, consumerTx.getTxChanges()));
+    Assert.assertTrue(consumerTx.commitTx());
+    consumerTx.detachTx();
+
+    // The next transaction should not see the entries of the pending one, although their state is not visible.
+    Transaction tx2 = txSystemClient.startShort();
+    consumerTx.startTx(tx2);
+    Assert.assertEquals(ImmutableList.of(3, 4), toIntegers(consumer.dequeue(2)));
+
+    // Fail the pending commit, which rolls back both transactions.
+    Assert.assertTrue(consumerTx.rollbackDetachedTx());
+    txSystemClient.abort(tx1);
+    Assert.assertTrue(consumerTx.rollbackTx());
+    txSystemClient.abort(tx2);
+
+    // All entries should be dequeued again in order.
+    Transaction tx3 = txSystemClient.startShort();
+    consumerTx.startTx(tx3);
+    producerTx.startTx(tx3);
+    Assert.assertEquals(ImmutableList.of(1, 2, 3, 4), toIntegers(consumer.dequeue(4)));
+    producer.enqueue(new QueueEntry(Bytes.toBytes(5)));
+    Assert.assertTrue(consumerTx.commitTx());
+    Assert.assertTrue(producerTx.commitTx());
+    consumerTx.detachTx();
+    producerTx.detachTx();
+
+    // Dequeue with the commit pending sees neither the consumed nor the enqueued entries.
+    Transaction tx4 = txSystemClient.startShort();
+    consumerTx.startTx(tx4);
+    Assert.assertTrue(consumer.dequeue(4).isEmpty());
+    Assert.assertTrue(consumerTx.commitTx());
+    consumerTx.postTxCommit();
+    Assert.assertTrue(txSystemClient.commit(tx4));
+
+    // Fail the pending commit, which removes the enqueued entry and puts back the consumed ones.
+    Assert.assertTrue(consumerTx.rollbackDetachedTx());
+    Assert.assertTrue(producerTx.rollbackDetachedTx());
+    txSystemClient.abort(tx3);
+
+    // This time, the pending commit succeeds.
+    Transaction tx5 = txSystemClient.startShort();
+    consumerTx.startTx(tx5);
+    Assert.assertEquals(ImmutableList.of(1, 2, 3, 4), toIntegers(consumer.dequeue(4)));
+    Assert.assertTrue(consumerTx.commitTx());
+    consumerTx.detachTx();
+    Assert.assertTrue(txSystemClient.commit(tx5));
+    consumerTx.postDetachedTxCommit();
+
+    txContext = createTxContext(consumer);
+    txContext.start();
+    Assert.assertTrue(consumer.dequeue(4).isEmpty());
+    txContext.finish();
+  }
+
+  private List<Integer> toIntegers(DequeueResult<byte[]> result) {
+    List<Integer> values = Lists.newArrayList();
+    for (byte[] data : result) {
+      values.add(Bytes.toInt(data));
+    }
+    return values;
+  }
+
   @Test
   public void testOneFIFOEnqueueDequeue() throws Exception {
     testOneEnqueueDequeue(DequeueStrategy.FIFO);
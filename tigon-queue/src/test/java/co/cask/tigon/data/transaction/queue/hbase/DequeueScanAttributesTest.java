@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.hbase;
+
+import co.cask.tephra.Transaction;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.ipc.RemoteException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Tests the transaction encoding of the {@link DequeueScanAttributes}, and the detection of its mismatches.
+ */
+public class DequeueScanAttributesTest {
+
+  @Test
+  public void testTxWithoutInvalids() {
+    Transaction tx = new Transaction(10, 12, new long[] {2, 5, 11}, new long[] {7, 9}, 7);
+
+    Scan scan = new Scan();
+    Assert.assertFalse(DequeueScanAttributes.hasTxWithoutInvalids(scan));
+    DequeueScanAttributes.setWithoutInvalids(scan, tx);
+    Assert.assertTrue(DequeueScanAttributes.hasTxWithoutInvalids(scan));
+
+    // No invalid list available
+    Assert.assertNull(DequeueScanAttributes.getTx(scan, null));
+    // Invalid list that misses an invalid transaction
+    Assert.assertNull(DequeueScanAttributes.getTx(scan, new long[] {2, 11}));
+    // Invalid list that has an additional invalid transaction, which was committed for the transaction
+    Assert.assertNull(DequeueScanAttributes.getTx(scan, new long[] {2, 3, 5, 11}));
+
+    // Transactions that became invalid later are in progress for the transaction or newer than the read pointer
+    Transaction result = DequeueScanAttributes.getTx(scan, new long[] {2, 5, 9, 13});
+    Assert.assertNotNull(result);
+    Assert.assertEquals(tx.getReadPointer(), result.getReadPointer());
+    Assert.assertEquals(tx.getWritePointer(), result.getWritePointer());
+    Assert.assertEquals(tx.getFirstShortInProgress(), result.getFirstShortInProgress());
+    Assert.assertArrayEquals(tx.getInProgress(), result.getInProgress());
+    Assert.assertArrayEquals(new long[] {2, 5}, result.getInvalids());
+    for (long writePointer = 1; writePointer <= tx.getReadPointer(); writePointer++) {
+      Assert.assertEquals(tx.isExcluded(writePointer), result.isExcluded(writePointer));
+      Assert.assertEquals(tx.isVisible(writePointer), result.isVisible(writePointer));
+    }
+  }
+
+  @Test
+  public void testTx() {
+    Transaction tx = new Transaction(10, 12, new long[] {2, 5, 11}, new long[] {7, 9}, 7);
+
+    // The full transaction doesn't need the invalid list
+    Scan scan = new Scan();
+    DequeueScanAttributes.set(scan, tx);
+    Transaction result = DequeueScanAttributes.getTx(scan, null);
+    Assert.assertNotNull(result);
+    Assert.assertArrayEquals(tx.getInvalids(), result.getInvalids());
+    Assert.assertArrayEquals(tx.getInProgress(), result.getInProgress());
+
+    Assert.assertNull(DequeueScanAttributes.getTx(new Scan(), new long[0]));
+  }
+
+  @Test
+  public void testInvalidListMismatchCause() {
+    InvalidListMismatchException mismatch = new InvalidListMismatchException("mismatch");
+    Assert.assertTrue(InvalidListMismatchException.isCause(mismatch));
+    // Failures of the bucket scans of a distributed scanner are wrapped
+    Assert.assertTrue(InvalidListMismatchException.isCause(new RuntimeException(new IOException(mismatch))));
+    // Region server exceptions that were not unwrapped by the client
+    Assert.assertTrue(InvalidListMismatchException.isCause(
+      new IOException(new RemoteException(InvalidListMismatchException.class.getName(), "mismatch"))));
+
+    Assert.assertFalse(InvalidListMismatchException.isCause(new IOException("other")));
+    Assert.assertFalse(InvalidListMismatchException.isCause(
+      new RemoteException(IOException.class.getName(), "other")));
+  }
+}
@@ -16,6 +16,9 @@
 
 package co.cask.tigon.data.transaction.queue.hbase;
 
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionAware;
+import co.cask.tephra.TransactionExecutor;
 import co.cask.tephra.TransactionExecutorFactory;
 import co.cask.tephra.TransactionSystemClient;
 import co.cask.tephra.TxConstants;
@@ -25,10 +28,17 @@ import co.cask.tephra.persist.TransactionStateStorage;
 import co.cask.tigon.api.common.Bytes;
 import co.cask.tigon.conf.CConfiguration;
 import co.cask.tigon.conf.Constants;
+import co.cask.tigon.data.co.cask.tigon.data.hbase.wd.AbstractRowKeyDistributor;
 import co.cask.tigon.data.hbase.HBaseTestBase;
 import co.cask.tigon.data.hbase.HBaseTestFactory;
+import co.cask.tigon.data.queue.ConsumerConfig;
+import co.cask.tigon.data.queue.DequeueResult;
+import co.cask.tigon.data.queue.DequeueStrategy;
 import co.cask.tigon.data.queue.QueueClientFactory;
+import co.cask.tigon.data.queue.QueueConsumer;
+import co.cask.tigon.data.queue.QueueEntry;
 import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.queue.QueueProducer;
 import co.cask.tigon.data.runtime.DataFabricDistributedModule;
 import co.cask.tigon.data.runtime.TransactionMetricsModule;
 import co.cask.tigon.data.transaction.queue.QueueAdmin;
@@ -36,6 +46,7 @@ import co.cask.tigon.data.transaction.queue.QueueConstants;
 import co.cask.tigon.data.transaction.queue.QueueEntryRow;
 import co.cask.tigon.data.transaction.queue.QueueTest;
 import co.cask.tigon.data.transaction.queue.hbase.coprocessor.ConsumerConfigCache;
+import co.cask.tigon.data.transaction.queue.hbase.coprocessor.ConsumerInstance;
 import co.cask.tigon.data.util.hbase.ConfigurationTable;
 import co.cask.tigon.data.util.hbase.HBaseTableUtil;
 import co.cask.tigon.data.util.hbase.HBaseTableUtilFactory;
@@ -45,6 +56,8 @@ import co.cask.tigon.guice.ZKClientModule;
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -56,6 +69,8 @@ import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.regionserver.HRegion;
 import org.apache.twill.filesystem.LocalLocationFactory;
 import org.apache.twill.filesystem.LocationFactory;
@@ -70,10 +85,16 @@ import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * HBase queue tests.
@@ -181,10 +202,72 @@ public abstract class HBaseQueueTest extends QueueTest {
     if (!admin.exists(queueName.toString())) {
       admin.create(queueName.toString());
     }
+    Assert.assertEquals(QueueConstants.DEFAULT_QUEUE_TABLE_BUCKETS, admin.getDistributionBuckets(queueName));
+
+    // Every salt bucket of the queue starts a region
     HTable hTable = testHBase.getHTable(Bytes.toBytes(tableName));
-    Assert.assertEquals("Failed for " + admin.getClass().getName(),
-                        QueueConstants.DEFAULT_QUEUE_TABLE_PRESPLITS,
-                        hTable.getRegionsInRange(new byte[]{0}, new byte[]{(byte) 0xff}).size());
+    try {
+      Set<byte[]> startKeys = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+      startKeys.addAll(Arrays.asList(hTable.getStartKeys()));
+      byte[] queueRowPrefix = QueueEntryRow.getQueueRowPrefix(queueName);
+      for (int i = 0; i < QueueConstants.DEFAULT_QUEUE_TABLE_BUCKETS; i++) {
+        Assert.assertTrue("Failed for " + admin.getClass().getName(),
+                          startKeys.contains(Bytes.add(new byte[] {(byte) i}, queueRowPrefix)));
+      }
+    } finally {
+      hTable.close();
+    }
+  }
+
+  @Test
+  public void testDistributionBuckets() throws Exception {
+    HBaseQueueAdmin admin = (HBaseQueueAdmin) queueAdmin;
+    final QueueName queueName = QueueName.fromFlowlet("app", "bucketflow", "flowlet", "cold");
+    Properties properties = new Properties();
+    properties.setProperty(QueueConstants.ConfigKeys.QUEUE_TABLE_BUCKETS, "1");
+    admin.create(queueName.toString(), properties);
+    Assert.assertTrue(admin.exists(queueName.toString()));
+    Assert.assertEquals(1, admin.getDistributionBuckets(queueName));
+
+    // The number of salt buckets of an existing queue doesn't change
+    admin.create(queueName, 4);
+    Assert.assertEquals(1, admin.getDistributionBuckets(queueName));
+
+    // Another queue of the same flow is not created with the table
+    QueueName hotQueueName = QueueName.fromFlowlet("app", "bucketflow", "flowlet", "hot");
+    Assert.assertFalse(admin.exists(hotQueueName.toString()));
+    admin.create(hotQueueName, 16);
+    Assert.assertEquals(16, admin.getDistributionBuckets(hotQueueName));
+
+    try {
+      configureGroups(queueName, ImmutableMap.of(0L, 1));
+      final QueueProducer producer = queueClientFactory.createProducer(queueName);
+      executorFactory.createExecutor(Lists.newArrayList((TransactionAware) producer))
+        .execute(new TransactionExecutor.Subroutine() {
+          @Override
+          public void apply() throws Exception {
+            producer.enqueue(new QueueEntry(Bytes.toBytes("data")));
+          }
+        });
+
+      final QueueConsumer consumer = queueClientFactory.createConsumer(
+        queueName, new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null), 1);
+      try {
+        executorFactory.createExecutor(Lists.newArrayList((TransactionAware) consumer))
+          .execute(new TransactionExecutor.Subroutine() {
+            @Override
+            public void apply() throws Exception {
+              DequeueResult<byte[]> result = consumer.dequeue();
+              Assert.assertEquals(1, result.size());
+              Assert.assertArrayEquals(Bytes.toBytes("data"), result.iterator().next());
+            }
+          });
+      } finally {
+        ((Closeable) consumer).close();
+      }
+    } finally {
+      queueAdmin.dropAllForFlow("app", "bucketflow");
+    }
   }
 
   @Test
@@ -202,7 +285,8 @@ public abstract class HBaseQueueTest extends QueueTest {
 
       NavigableMap<byte[], byte[]> familyMap = result.getFamilyMap(QueueEntryRow.COLUMN_FAMILY);
 
-      Assert.assertEquals(1 + 2 + 3, familyMap.size());
+      // Consumer state columns and the number of salt buckets
+      Assert.assertEquals(1 + 2 + 3 + 1, familyMap.size());
 
       // Update the startRow of group 2.
       Put put = new Put(rowKey);
@@ -238,7 +322,7 @@ public abstract class HBaseQueueTest extends QueueTest {
       result = hTable.get(new Get(rowKey));
       familyMap = result.getFamilyMap(QueueEntryRow.COLUMN_FAMILY);
 
-      Assert.assertEquals(2, familyMap.size());
+      Assert.assertEquals(2 + 1, familyMap.size());
 
       startRow = Bytes.toInt(result.getColumnLatest(QueueEntryRow.COLUMN_FAMILY,
                                                     HBaseQueueAdmin.getConsumerStateColumn(4L, 0)).getValue());
@@ -250,6 +334,272 @@ public abstract class HBaseQueueTest extends QueueTest {
     }
   }
 
+  @Test
+  public void testConfigChanges() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet("app", "changeflow", "flowlet", "out");
+    configCache.updateCache();
+    Assert.assertNull(configCache.getConsumerConfig(queueName.toBytes()));
+
+    try {
+      // Changes of consumer groups are reloaded without reloading the whole cache
+      queueAdmin.configureGroups(queueName, ImmutableMap.of(1L, 1, 2L, 2));
+      configCache.updateChanges();
+      Assert.assertEquals(2, configCache.getConsumerConfig(queueName.toBytes()).getNumGroups());
+
+      queueAdmin.configureGroups(queueName, ImmutableMap.of(1L, 1));
+      configCache.updateChanges();
+      Assert.assertEquals(1, configCache.getConsumerConfig(queueName.toBytes()).getNumGroups());
+
+      queueAdmin.configureInstances(queueName, 1L, 2);
+      configCache.updateChanges();
+      Assert.assertNotNull(configCache.getConsumerConfig(queueName.toBytes())
+                             .getStartRow(new ConsumerInstance(1L, 1)));
+    } finally {
+      queueAdmin.dropAllForFlow("app", "changeflow");
+    }
+    configCache.updateChanges();
+    Assert.assertNull(configCache.getConsumerConfig(queueName.toBytes()));
+  }
+
+  @Test
+  public void testDeleteConsumerConfigKeepsBuckets() throws Exception {
+    HBaseQueueAdmin admin = (HBaseQueueAdmin) queueAdmin;
+    QueueName queueName = QueueName.fromFlowlet("app", "keepbucketsflow", "flowlet", "out");
+    admin.create(queueName, 4);
+    try {
+      configureGroups(queueName, ImmutableMap.of(0L, 1));
+      verifyConsumerConfigExists(queueName);
+
+      // Drop doesn't remove the entries of the queue, hence only the consumer config is deleted
+      admin.drop(queueName.toString());
+      verifyConsumerConfigIsDeleted(queueName);
+      Assert.assertEquals(4, admin.getDistributionBuckets(queueName));
+
+      // Truncate removes the entries, and with them the number of buckets
+      configureGroups(queueName, ImmutableMap.of(0L, 1));
+      admin.truncate(queueName.toString());
+      verifyConsumerConfigIsDeleted(queueName);
+      Assert.assertEquals(HBaseQueueAdmin.ROW_KEY_DISTRIBUTION_BUCKETS, admin.getDistributionBuckets(queueName));
+    } finally {
+      queueAdmin.dropAllForFlow("app", "keepbucketsflow");
+    }
+  }
+
+  @Test
+  public void testClaimEntries() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet("app", "claimflow", "flowlet", "out");
+    configureGroups(queueName, ImmutableMap.of(0L, 2));
+    HBaseQueueConsumer consumer1 = createFifoConsumer(queueName, 0);
+    HBaseQueueConsumer consumer2 = createFifoConsumer(queueName, 1);
+    HTable hTable = testHBase.getHTable(Bytes.toBytes(getQueueTableName(queueName)));
+    try {
+      List<byte[]> rowKeys = enqueueEntries(queueName, 20);
+
+      // The entries are spread over the regions of the salt buckets, and are claimed with one batch
+      Assert.assertTrue(countRegions(hTable, queueName, rowKeys) > 1);
+      byte[] claimedState1 = Bytes.toBytes("claimed1");
+      Set<byte[]> claimed = consumer1.claimEntries(toSet(rowKeys.subList(0, 10)), claimedState1);
+      Assert.assertEquals(toSet(rowKeys.subList(0, 10)), claimed);
+
+      // Rows claimed by another instance are not claimed again
+      byte[] claimedState2 = Bytes.toBytes("claimed2");
+      claimed = consumer2.claimEntries(toSet(rowKeys), claimedState2);
+      Assert.assertEquals(toSet(rowKeys.subList(10, 20)), claimed);
+
+      for (int i = 0; i < rowKeys.size(); i++) {
+        Assert.assertArrayEquals(i < 10 ? claimedState1 : claimedState2,
+                                 getState(hTable, queueName, consumer1, rowKeys.get(i)));
+      }
+    } finally {
+      consumer1.close();
+      consumer2.close();
+      hTable.close();
+      queueAdmin.dropAllForFlow("app", "claimflow");
+    }
+  }
+
+  @Test
+  public void testClaimEntriesPartialFailure() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet("app", "claimfailflow", "flowlet", "out");
+    configureGroups(queueName, ImmutableMap.of(0L, 2));
+    HBaseQueueConsumer consumer = createFifoConsumer(queueName, 0);
+    HBaseQueueConsumer otherConsumer = createFifoConsumer(queueName, 1);
+    HTable hTable = testHBase.getHTable(Bytes.toBytes(getQueueTableName(queueName)));
+    HBaseQueueConsumer failingConsumer = new FailingClaimConsumer(consumer, queueName, hTable);
+    try {
+      List<byte[]> rowKeys = enqueueEntries(queueName, 20);
+      Set<byte[]> otherClaimed = otherConsumer.claimEntries(toSet(rowKeys.subList(0, 5)), Bytes.toBytes("other"));
+      Assert.assertEquals(5, otherClaimed.size());
+
+      // The call to one region claims its first row and then fails. The rows of that region are claimed one by one,
+      // which must also report the row that the failed call claimed.
+      byte[] claimedState = Bytes.toBytes("claimed");
+      Set<byte[]> claimed = failingConsumer.claimEntries(toSet(rowKeys), claimedState);
+      Assert.assertEquals(toSet(rowKeys.subList(5, 20)), claimed);
+      for (byte[] rowKey : rowKeys.subList(5, 20)) {
+        Assert.assertArrayEquals(claimedState, getState(hTable, queueName, consumer, rowKey));
+      }
+    } finally {
+      consumer.close();
+      otherConsumer.close();
+      hTable.close();
+      queueAdmin.dropAllForFlow("app", "claimfailflow");
+    }
+  }
+
+  @Test
+  public void testInvalidListMismatch() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet("app", "mismatchflow", "flowlet", "out");
+    configureGroups(queueName, ImmutableMap.of(0L, 1));
+    enqueueEntries(queueName, 10);
+    HBaseQueueConsumer consumer = (HBaseQueueConsumer) queueClientFactory.createConsumer(
+      queueName, new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null), 1);
+    try {
+      // Region servers don't know the extra invalid transaction, hence reject the scan without the invalid list
+      Transaction tx = txSystemClient.startShort();
+      consumer.startTx(withExtraInvalids(tx, Long.MAX_VALUE));
+      Assert.assertEquals(10, consumer.dequeue(10).size());
+      Assert.assertEquals(1, consumer.getInvalidListMismatches());
+      Assert.assertTrue(consumer.commitTx());
+      Assert.assertTrue(txSystemClient.commit(tx));
+      consumer.postTxCommit();
+
+      // The next dequeue with the same invalid list scans with the full transaction right away
+      tx = txSystemClient.startShort();
+      consumer.startTx(withExtraInvalids(tx, Long.MAX_VALUE));
+      Assert.assertTrue(consumer.dequeue(10).isEmpty());
+      Assert.assertEquals(1, consumer.getInvalidListMismatches());
+      txSystemClient.abort(tx);
+
+      // A transaction with another invalid list tries without the invalid list again
+      tx = txSystemClient.startShort();
+      consumer.startTx(withExtraInvalids(tx, Long.MAX_VALUE - 1, Long.MAX_VALUE));
+      Assert.assertTrue(consumer.dequeue(10).isEmpty());
+      Assert.assertEquals(2, consumer.getInvalidListMismatches());
+      txSystemClient.abort(tx);
+    } finally {
+      consumer.close();
+      queueAdmin.dropAllForFlow("app", "mismatchflow");
+    }
+  }
+
+  private static Transaction withExtraInvalids(Transaction tx, long... invalids) {
+    long[] txInvalids = Arrays.copyOf(tx.getInvalids(), tx.getInvalids().length + invalids.length);
+    System.arraycopy(invalids, 0, txInvalids, tx.getInvalids().length, invalids.length);
+    return new Transaction(tx.getReadPointer(), tx.getWritePointer(), txInvalids, tx.getInProgress(),
+                           tx.getFirstShortInProgress());
+  }
+
+  private String getQueueTableName(QueueName queueName) {
+    return ((HBaseQueueClientFactory) queueClientFactory).getTableName(queueName);
+  }
+
+  private HBaseQueueConsumer createFifoConsumer(QueueName queueName, int instanceId) throws IOException {
+    return (HBaseQueueConsumer) queueClientFactory.createConsumer(
+      queueName, new ConsumerConfig(0L, instanceId, 2, DequeueStrategy.FIFO, null), 1);
+  }
+
+  /**
+   * Enqueues entries in one transaction.
+   * @return the (not distributed) row keys of the entries, in row key order.
+   */
+  private List<byte[]> enqueueEntries(QueueName queueName, final int count) throws Exception {
+    final QueueProducer producer = queueClientFactory.createProducer(queueName);
+    executorFactory.createExecutor(Lists.newArrayList((TransactionAware) producer))
+      .execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          for (int i = 0; i < count; i++) {
+            producer.enqueue(new QueueEntry(Bytes.toBytes(i)));
+          }
+        }
+      });
+    if (producer instanceof Closeable) {
+      ((Closeable) producer).close();
+    }
+
+    AbstractRowKeyDistributor distributor =
+      HBaseQueueAdmin.getRowKeyDistributor(((HBaseQueueAdmin) queueAdmin).getDistributionBuckets(queueName));
+    byte[] queueRowPrefix = QueueEntryRow.getQueueRowPrefix(queueName);
+    Set<byte[]> rowKeys = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+    HTable hTable = testHBase.getHTable(Bytes.toBytes(getQueueTableName(queueName)));
+    try {
+      ResultScanner scanner = hTable.getScanner(QueueEntryRow.COLUMN_FAMILY);
+      try {
+        for (Result result : scanner) {
+          byte[] rowKey = distributor.getOriginalKey(result.getRow());
+          if (Bytes.startsWith(rowKey, queueRowPrefix)) {
+            rowKeys.add(rowKey);
+          }
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      hTable.close();
+    }
+    Assert.assertEquals(count, rowKeys.size());
+    return Lists.newArrayList(rowKeys);
+  }
+
+  private int countRegions(HTable hTable, QueueName queueName, List<byte[]> rowKeys) throws Exception {
+    AbstractRowKeyDistributor distributor =
+      HBaseQueueAdmin.getRowKeyDistributor(((HBaseQueueAdmin) queueAdmin).getDistributionBuckets(queueName));
+    Set<String> regions = Sets.newHashSet();
+    for (byte[] rowKey : rowKeys) {
+      regions.add(hTable.getRegionLocation(distributor.getDistributedKey(rowKey)).getRegionInfo().getEncodedName());
+    }
+    return regions.size();
+  }
+
+  private byte[] getState(HTable hTable, QueueName queueName,
+                          HBaseQueueConsumer consumer, byte[] rowKey) throws Exception {
+    AbstractRowKeyDistributor distributor =
+      HBaseQueueAdmin.getRowKeyDistributor(((HBaseQueueAdmin) queueAdmin).getDistributionBuckets(queueName));
+    byte[] stateColumn = Bytes.add(QueueEntryRow.STATE_COLUMN_PREFIX, Bytes.toBytes(consumer.getConfig().getGroupId()));
+    Result result = hTable.get(new Get(distributor.getDistributedKey(rowKey)));
+    return result.getValue(QueueEntryRow.COLUMN_FAMILY, stateColumn);
+  }
+
+  private Set<byte[]> toSet(List<byte[]> rowKeys) {
+    Set<byte[]> set = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
+    set.addAll(rowKeys);
+    return set;
+  }
+
+  /**
+   * Consumer that claims entries through another consumer, and fails the first claim call to a region after
+   * claiming the first row of the call.
+   */
+  private static final class FailingClaimConsumer extends HBaseQueueConsumer {
+    private final HBaseQueueConsumer delegate;
+    private boolean failed;
+
+    FailingClaimConsumer(HBaseQueueConsumer delegate, QueueName queueName, HTable hTable) throws IOException {
+      super(delegate.getConfig(), hTable, queueName, delegate.getDistributionBuckets(),
+            new HBaseConsumerState(new byte[0], delegate.getConfig().getGroupId(),
+                                   delegate.getConfig().getInstanceId()),
+            null);
+      this.delegate = delegate;
+    }
+
+    @Override
+    protected Collection<byte[]> claimRegionEntries(HTable hTable, List<byte[]> rowKeys, byte[] stateColumn,
+                                                    byte[] claimedStateValue) throws IOException {
+      if (!failed) {
+        failed = true;
+        delegate.claimRegionEntries(hTable, rowKeys.subList(0, 1), stateColumn, claimedStateValue);
+        throw new IOException("Claim call failed");
+      }
+      return delegate.claimRegionEntries(hTable, rowKeys, stateColumn, claimedStateValue);
+    }
+
+    @Override
+    protected Scan createScan(byte[] startRow, byte[] stopRow, int numRows) {
+      return delegate.createScan(startRow, stopRow, numRows);
+    }
+  }
+
   @Override
   protected void verifyConsumerConfigExists(QueueName... queueNames) throws InterruptedException {
     configCache.updateCache();
@@ -0,0 +1,297 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.hbase;
+
+import co.cask.tigon.api.common.Bytes;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the batching and the lifecycle of the {@link HBaseQueueWriter}, against in-memory tables.
+ */
+public class HBaseQueueWriterTest {
+
+  @Test
+  public void testBatching() throws Exception {
+    TestQueueWriter writer = new TestQueueWriter(0L, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      // Block the first batch, so that the following requests queue up and are written as one batch
+      writer.blockBatches();
+      Future<?> first = submit(executor, writer, "t1", put("c"));
+      writer.awaitBatchStarted();
+      List<Future<?>> futures = Lists.newArrayList();
+      futures.add(submit(executor, writer, "t1", put("b")));
+      futures.add(submit(executor, writer, "t1", put("a")));
+      futures.add(submit(executor, writer, "t2", put("d")));
+      writer.awaitRequests(4);
+      writer.unblockBatches();
+
+      first.get(10, TimeUnit.SECONDS);
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+
+      // One batch for the first request, then one batch per table, with the operations sorted by row key
+      Assert.assertEquals(ImmutableList.of(ImmutableList.of("c")), writer.getBatches("t1").subList(0, 1));
+      Assert.assertEquals(ImmutableList.of(ImmutableList.of("a", "b")), writer.getBatches("t1").subList(1, 2));
+      Assert.assertEquals(ImmutableList.of(ImmutableList.of("d")), writer.getBatches("t2"));
+    } finally {
+      executor.shutdownNow();
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testMaxBatchSize() throws Exception {
+    TestQueueWriter writer = new TestQueueWriter(0L, 2);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      writer.blockBatches();
+      Future<?> first = submit(executor, writer, "t", put("a"));
+      writer.awaitBatchStarted();
+      List<Future<?>> futures = Lists.newArrayList();
+      for (String row : new String[] {"b", "c", "d"}) {
+        futures.add(submit(executor, writer, "t", put(row)));
+        writer.awaitRequests(futures.size() + 1);
+      }
+      writer.unblockBatches();
+      first.get(10, TimeUnit.SECONDS);
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+
+      // No batch has more than the maximum number of operations
+      List<List<String>> batches = writer.getBatches("t");
+      Assert.assertEquals(3, batches.size());
+      for (List<String> batch : batches) {
+        Assert.assertTrue(batch.size() <= 2);
+      }
+    } finally {
+      executor.shutdownNow();
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    TestQueueWriter writer = new TestQueueWriter(0L, 100);
+    try {
+      writer.failTable("bad");
+      try {
+        writer.write("bad", ImmutableList.of(put("a")));
+        Assert.fail("Expected IOException");
+      } catch (IOException e) {
+        // expected
+      }
+      // A failed table doesn't affect other tables or later writes
+      writer.write("good", ImmutableList.of(put("b")));
+      Assert.assertEquals(ImmutableList.of(ImmutableList.of("b")), writer.getBatches("good"));
+      writer.write("good", Collections.<Row>emptyList());
+      Assert.assertEquals(1, writer.getBatches("good").size());
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testInterrupt() throws Exception {
+    TestQueueWriter writer = new TestQueueWriter(0L, 100);
+    try {
+      writer.write("t", ImmutableList.of(put("a")));
+      writer.interruptWriter();
+
+      // A write after the writer thread exited starts a new writer thread
+      writer.write("t", ImmutableList.of(put("b")));
+      Assert.assertEquals(2, writer.getBatches("t").size());
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    TestQueueWriter writer = new TestQueueWriter(0L, 100);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      writer.write("t", ImmutableList.of(put("a")));
+
+      // Pending writes fail on close
+      writer.blockBatches();
+      Future<?> blocked = submit(executor, writer, "t", put("b"));
+      writer.awaitBatchStarted();
+      writer.close();
+      try {
+        blocked.get(10, TimeUnit.SECONDS);
+        Assert.fail("Expected failure");
+      } catch (Exception e) {
+        // expected
+      }
+      Assert.assertEquals(0, writer.openTables.get());
+
+      // Writes after close fail
+      try {
+        writer.write("t", ImmutableList.of(put("c")));
+        Assert.fail("Expected IOException");
+      } catch (IOException e) {
+        // expected
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Put put(String row) {
+    return new Put(Bytes.toBytes(row));
+  }
+
+  private static Future<?> submit(ExecutorService executor, final HBaseQueueWriter writer,
+                                  final String tableName, final Row op) {
+    return executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        writer.write(tableName, ImmutableList.of(op));
+        return null;
+      }
+    });
+  }
+
+  /**
+   * A {@link HBaseQueueWriter} that writes to in-memory tables, which record the row keys of each batch.
+   */
+  private static final class TestQueueWriter extends HBaseQueueWriter {
+
+    private final List<String> tableNames = Collections.synchronizedList(Lists.<String>newArrayList());
+    private final List<List<String>> batches = Collections.synchronizedList(Lists.<List<String>>newArrayList());
+    private final AtomicInteger openTables = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Semaphore batchStarted = new Semaphore(0);
+    private volatile String failTable;
+    private volatile CountDownLatch unblock = new CountDownLatch(0);
+    private volatile Thread writerThread;
+
+    TestQueueWriter(long windowMs, int maxBatchSize) {
+      super(new Configuration(), windowMs, maxBatchSize);
+    }
+
+    @Override
+    void write(String tableName, List<? extends Row> ops) throws IOException {
+      requests.incrementAndGet();
+      super.write(tableName, ops);
+    }
+
+    void blockBatches() {
+      unblock = new CountDownLatch(1);
+    }
+
+    void unblockBatches() {
+      unblock.countDown();
+    }
+
+    void awaitBatchStarted() throws InterruptedException {
+      Assert.assertTrue(batchStarted.tryAcquire(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Waits until the given total number of requests are submitted.
+     */
+    void awaitRequests(int count) throws InterruptedException {
+      while (requests.get() < count) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      // Give the requests the time to get queued after they were counted
+      TimeUnit.MILLISECONDS.sleep(200);
+    }
+
+    void failTable(String tableName) {
+      failTable = tableName;
+    }
+
+    void interruptWriter() throws InterruptedException {
+      Thread thread = writerThread;
+      thread.interrupt();
+      thread.join(10000);
+      Assert.assertFalse(thread.isAlive());
+    }
+
+    List<List<String>> getBatches(String tableName) {
+      List<List<String>> result = Lists.newArrayList();
+      synchronized (batches) {
+        for (int i = 0; i < batches.size(); i++) {
+          if (tableNames.get(i).equals(tableName)) {
+            result.add(batches.get(i));
+          }
+        }
+      }
+      return result;
+    }
+
+    @Override
+    HTableInterface createTable(final String tableName) throws IOException {
+      openTables.incrementAndGet();
+      return (HTableInterface) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {HTableInterface.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if ("close".equals(method.getName())) {
+            openTables.decrementAndGet();
+            return null;
+          }
+          if (!"batch".equals(method.getName()) || args.length != 1) {
+            throw new UnsupportedOperationException(method.getName());
+          }
+          writerThread = Thread.currentThread();
+          batchStarted.release();
+          unblock.await();
+          if (tableName.equals(failTable)) {
+            throw new IOException("Failed to write to " + tableName);
+          }
+          List<String> rows = Lists.newArrayList();
+          for (Object op : (List<?>) args[0]) {
+            rows.add(Bytes.toString(((Row) op).getRow()));
+          }
+          synchronized (batches) {
+            tableNames.add(tableName);
+            batches.add(rows);
+          }
+          return new Object[rows.size()];
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.hbase;
+
+import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the {@link ZKQueueNotifier}.
+ */
+public class ZKQueueNotifierTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+  private static ZKClientService zkClient;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+    zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkClient.stopAndWait();
+    zkServer.stopAndWait();
+  }
+
+  @Test
+  public void testWakeUpConsumer() throws Exception {
+    ZKQueueNotifier notifier = createNotifier(100L);
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "wakeup");
+    final Semaphore semaphore = new Semaphore(0);
+    Cancellable cancellable = notifier.watch(queueName, new Runnable() {
+      @Override
+      public void run() {
+        semaphore.release();
+      }
+    });
+
+    // A consumer that waits far longer than the test timeout, unless it gets notified
+    final CountDownLatch wokenUp = new CountDownLatch(2);
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (wokenUp.getCount() > 0 && semaphore.tryAcquire(1, TimeUnit.HOURS)) {
+            wokenUp.countDown();
+          }
+        } catch (InterruptedException e) {
+          // Test failed
+        }
+      }
+    };
+    consumer.start();
+
+    // The first commit creates the queue node, the second one updates it
+    notifier.notifyEnqueue(queueName);
+    TimeUnit.MILLISECONDS.sleep(500);
+    notifier.notifyEnqueue(queueName);
+
+    Assert.assertTrue(wokenUp.await(10, TimeUnit.SECONDS));
+    consumer.join();
+    cancellable.cancel();
+    notifier.close();
+  }
+
+  @Test
+  public void testCoalesce() throws Exception {
+    long minIntervalMs = 2000L;
+    ZKQueueNotifier notifier = createNotifier(minIntervalMs);
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "coalesce");
+    final AtomicInteger notifications = new AtomicInteger();
+    final Semaphore semaphore = new Semaphore(0);
+    Cancellable cancellable = notifier.watch(queueName, new Runnable() {
+      @Override
+      public void run() {
+        notifications.incrementAndGet();
+        semaphore.release();
+      }
+    });
+
+    // The first commit after an idle period is sent right away
+    notifier.notifyEnqueue(queueName);
+    Assert.assertTrue(semaphore.tryAcquire(10, TimeUnit.SECONDS));
+
+    // The commits within the minimum interval are sent as one update after the interval
+    for (int i = 0; i < 10; i++) {
+      notifier.notifyEnqueue(queueName);
+    }
+    Assert.assertFalse(semaphore.tryAcquire(minIntervalMs / 2, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(1, notifications.get());
+    Assert.assertTrue(semaphore.tryAcquire(minIntervalMs + 10000L, TimeUnit.MILLISECONDS));
+    Assert.assertFalse(semaphore.tryAcquire(minIntervalMs + 500L, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(2, notifications.get());
+    cancellable.cancel();
+    notifier.close();
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setBoolean(QueueConstants.ConfigKeys.QUEUE_NOTIFICATION_ENABLED, false);
+    ZKQueueNotifier notifier = new ZKQueueNotifier(cConf);
+    notifier.setZKClient(zkClient);
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "disabled");
+
+    // The watch of an enabled notifier sees no update from the disabled one
+    final Semaphore semaphore = new Semaphore(0);
+    Cancellable cancellable = createNotifier(100L).watch(queueName, new Runnable() {
+      @Override
+      public void run() {
+        semaphore.release();
+      }
+    });
+    notifier.notifyEnqueue(queueName);
+    Assert.assertFalse(semaphore.tryAcquire(1, TimeUnit.SECONDS));
+    cancellable.cancel();
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    ZKQueueNotifier notifier = createNotifier(100L);
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "close");
+    final Semaphore semaphore = new Semaphore(0);
+    Cancellable cancellable = notifier.watch(queueName, new Runnable() {
+      @Override
+      public void run() {
+        semaphore.release();
+      }
+    });
+    notifier.notifyEnqueue(queueName);
+    Assert.assertTrue(semaphore.tryAcquire(10, TimeUnit.SECONDS));
+
+    // A closed notifier sends no more updates
+    notifier.close();
+    notifier.notifyEnqueue(queueName);
+    Assert.assertFalse(semaphore.tryAcquire(1, TimeUnit.SECONDS));
+    cancellable.cancel();
+  }
+
+  private ZKQueueNotifier createNotifier(long minIntervalMs) {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setLong(QueueConstants.ConfigKeys.QUEUE_NOTIFICATION_MIN_INTERVAL_MS, minIntervalMs);
+    ZKQueueNotifier notifier = new ZKQueueNotifier(cConf);
+    notifier.setZKClient(zkClient);
+    return notifier;
+  }
+}
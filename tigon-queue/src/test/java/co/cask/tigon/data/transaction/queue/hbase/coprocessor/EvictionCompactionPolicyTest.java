@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.hbase.coprocessor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the dead rows thresholds and the backoff of the {@link EvictionCompactionPolicy}.
+ */
+public class EvictionCompactionPolicyTest {
+
+  private static final long INTERVAL = 1000L;
+
+  @Test
+  public void testDeadRowsThresholds() {
+    EvictionCompactionPolicy policy = new EvictionCompactionPolicy();
+    QueueEvictionStats stats = new QueueEvictionStats("tigon.queue.table", "region:1");
+
+    // Not enough dead rows
+    stats.evictionChecked(100, 9, 0L);
+    Assert.assertFalse(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, 0L));
+
+    // Enough dead rows, but a too small ratio
+    stats.evictionChecked(1000, 10, INTERVAL);
+    Assert.assertFalse(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, INTERVAL));
+
+    // Both thresholds reached
+    stats.evictionChecked(100, 10, 2 * INTERVAL);
+    Assert.assertTrue(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, 2 * INTERVAL));
+  }
+
+  @Test
+  public void testBackoff() {
+    EvictionCompactionPolicy policy = new EvictionCompactionPolicy();
+    QueueEvictionStats stats = new QueueEvictionStats("tigon.queue.table", "region:1");
+
+    long now = 0L;
+    stats.evictionChecked(100, 50, now);
+    Assert.assertTrue(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, now));
+
+    // No rows were evicted by the requested compactions, hence the waits double up to the maximum backoff
+    for (int backoff = 1; backoff <= EvictionCompactionPolicy.MAX_BACKOFF * 2; backoff *= 2) {
+      int expected = Math.min(backoff, EvictionCompactionPolicy.MAX_BACKOFF);
+      for (int i = 1; i < expected; i++) {
+        Assert.assertFalse(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, now + i * INTERVAL));
+      }
+      now += expected * INTERVAL;
+      Assert.assertTrue(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, now));
+    }
+
+    // A compaction evicted rows, hence the next compaction is requested right away
+    stats.rowsEvicted(20);
+    stats.evictionChecked(100, 30, now + INTERVAL);
+    Assert.assertTrue(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, now + INTERVAL));
+    Assert.assertFalse(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, now + INTERVAL + INTERVAL / 2));
+    Assert.assertTrue(policy.requestCompaction(stats, 10, 0.05f, INTERVAL, now + 2 * INTERVAL));
+  }
+}
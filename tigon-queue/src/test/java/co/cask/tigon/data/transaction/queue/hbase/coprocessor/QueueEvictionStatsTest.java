@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.data.transaction.queue.hbase.coprocessor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+
+/**
+ * Tests the JMX registration of the {@link QueueEvictionStats}.
+ */
+public class QueueEvictionStatsTest {
+
+  @Test
+  public void testRegistration() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    QueueEvictionStats stats = new QueueEvictionStats("tigon.queue.table", "region:1");
+    stats.register();
+    try {
+      Assert.assertEquals(0f, ((Float) server.getAttribute(stats.getObjectName(), "DeadRowsRatio")).floatValue(), 0f);
+
+      stats.evictionChecked(8, 2, 1000L);
+      stats.rowsEvicted(3);
+      stats.rowsEvicted(4);
+      stats.compactionRequested();
+      Assert.assertEquals(8L, server.getAttribute(stats.getObjectName(), "TotalRows"));
+      Assert.assertEquals(2L, server.getAttribute(stats.getObjectName(), "DeadRows"));
+      Assert.assertEquals(0.25f, ((Float) server.getAttribute(stats.getObjectName(), "DeadRowsRatio")).floatValue(),
+                          0.0001f);
+      Assert.assertEquals(7L, server.getAttribute(stats.getObjectName(), "RowsEvicted"));
+      Assert.assertEquals(1L, server.getAttribute(stats.getObjectName(), "CompactionsRequested"));
+      Assert.assertEquals(1000L, server.getAttribute(stats.getObjectName(), "LastEvictionCheck"));
+
+      // A reopened region replaces the statistics of the region
+      QueueEvictionStats reopened = new QueueEvictionStats("tigon.queue.table", "region:1");
+      reopened.register();
+      Assert.assertEquals(0L, server.getAttribute(stats.getObjectName(), "RowsEvicted"));
+    } finally {
+      stats.unregister();
+    }
+    Assert.assertFalse(server.isRegistered(stats.getObjectName()));
+  }
+}
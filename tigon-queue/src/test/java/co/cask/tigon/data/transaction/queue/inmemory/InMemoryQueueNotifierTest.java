@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.inmemory;
+
+import co.cask.tephra.TransactionAware;
+import co.cask.tephra.TransactionExecutor;
+import co.cask.tephra.TransactionExecutorFactory;
+import co.cask.tephra.TransactionFailureException;
+import co.cask.tephra.TransactionManager;
+import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.data.queue.QueueClientFactory;
+import co.cask.tigon.data.queue.QueueEntry;
+import co.cask.tigon.data.queue.QueueName;
+import co.cask.tigon.data.queue.QueueProducer;
+import co.cask.tigon.data.runtime.DataFabricInMemoryModule;
+import co.cask.tigon.data.runtime.TransactionMetricsModule;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
+import co.cask.tigon.data.transaction.queue.QueueNotifier;
+import co.cask.tigon.guice.ConfigModule;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.twill.common.Cancellable;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the {@link InMemoryQueueNotifier}.
+ */
+public class InMemoryQueueNotifierTest {
+
+  private static TransactionManager transactionManager;
+  private static QueueClientFactory queueClientFactory;
+  private static TransactionExecutorFactory executorFactory;
+  private static QueueNotifier queueNotifier;
+
+  @BeforeClass
+  public static void init() {
+    Injector injector = Guice.createInjector(new ConfigModule(CConfiguration.create()),
+                                             new DataFabricInMemoryModule(),
+                                             new TransactionMetricsModule());
+    transactionManager = injector.getInstance(TransactionManager.class);
+    transactionManager.startAndWait();
+    queueClientFactory = injector.getInstance(QueueClientFactory.class);
+    executorFactory = injector.getInstance(TransactionExecutorFactory.class);
+    queueNotifier = injector.getInstance(QueueNotifier.class);
+  }
+
+  @AfterClass
+  public static void finish() {
+    transactionManager.stopAndWait();
+  }
+
+  @Test
+  public void testNotifyOnCommit() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "commit");
+    final AtomicInteger notifications = new AtomicInteger();
+    Cancellable cancellable = queueNotifier.watch(queueName, new Runnable() {
+      @Override
+      public void run() {
+        notifications.incrementAndGet();
+      }
+    });
+
+    final QueueProducer producer = queueClientFactory.createProducer(queueName);
+    TransactionExecutor executor = executorFactory.createExecutor(ImmutableList.of((TransactionAware) producer));
+    executor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        producer.enqueue(new QueueEntry(new byte[] {1}));
+        producer.enqueue(new QueueEntry(new byte[] {2}));
+        // Nothing is notified before the commit
+        Assert.assertEquals(0, notifications.get());
+      }
+    });
+    // One notification per committed transaction
+    Assert.assertEquals(1, notifications.get());
+
+    // Transactions that don't enqueue or get rolled back don't notify
+    executor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // no-op
+      }
+    });
+    try {
+      executor.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          producer.enqueue(new QueueEntry(new byte[] {3}));
+          throw new Exception("Rollback");
+        }
+      });
+      Assert.fail("Expected transaction failure");
+    } catch (TransactionFailureException e) {
+      // expected
+    }
+    Assert.assertEquals(1, notifications.get());
+
+    // Commits to other queues or after the watch is cancelled don't notify
+    queueNotifier.notifyEnqueue(QueueName.fromFlowlet("app", "flow", "flowlet", "other"));
+    cancellable.cancel();
+    queueNotifier.notifyEnqueue(queueName);
+    Assert.assertEquals(1, notifications.get());
+  }
+
+  @Test
+  public void testWakeUpConsumer() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "wakeup");
+    final Semaphore semaphore = new Semaphore(0);
+    Cancellable cancellable = queueNotifier.watch(queueName, new Runnable() {
+      @Override
+      public void run() {
+        semaphore.release();
+      }
+    });
+
+    // A consumer that waits far longer than the test timeout, unless it gets notified
+    final CountDownLatch wokenUp = new CountDownLatch(1);
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          if (semaphore.tryAcquire(1, TimeUnit.HOURS)) {
+            wokenUp.countDown();
+          }
+        } catch (InterruptedException e) {
+          // Test failed
+        }
+      }
+    };
+    consumer.start();
+
+    final QueueProducer producer = queueClientFactory.createProducer(queueName);
+    executorFactory.createExecutor(ImmutableList.of((TransactionAware) producer))
+      .execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          producer.enqueue(new QueueEntry(new byte[] {1}));
+        }
+      });
+
+    Assert.assertTrue(wokenUp.await(10, TimeUnit.SECONDS));
+    consumer.join();
+    cancellable.cancel();
+  }
+
+  @Test
+  public void testDisabled() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setBoolean(QueueConstants.ConfigKeys.QUEUE_NOTIFICATION_ENABLED, false);
+    QueueNotifier notifier = new InMemoryQueueNotifier(cConf);
+    QueueName queueName = QueueName.fromFlowlet("app", "flow", "flowlet", "disabled");
+    final AtomicInteger notifications = new AtomicInteger();
+    notifier.watch(queueName, new Runnable() {
+      @Override
+      public void run() {
+        notifications.incrementAndGet();
+      }
+    });
+    notifier.notifyEnqueue(queueName);
+    Assert.assertEquals(0, notifications.get());
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.data.transaction.queue.inmemory;
+
+import co.cask.tephra.TransactionExecutorFactory;
+import co.cask.tephra.TransactionManager;
+import co.cask.tephra.TransactionSystemClient;
+import co.cask.tigon.conf.CConfiguration;
+import co.cask.tigon.data.queue.QueueClientFactory;
+import co.cask.tigon.data.runtime.DataFabricInMemoryModule;
+import co.cask.tigon.data.runtime.TransactionMetricsModule;
+import co.cask.tigon.data.transaction.queue.QueueAdmin;
+import co.cask.tigon.data.transaction.queue.QueueConstants;
+import co.cask.tigon.data.transaction.queue.QueueTest;
+import co.cask.tigon.guice.ConfigModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * In-memory queue tests, running against the queue engine selected by the subclass.
+ */
+public abstract class InMemoryQueueTest extends QueueTest {
+
+  protected static void init(String queueEngine) throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(QueueConstants.ConfigKeys.IN_MEMORY_QUEUE_ENGINE, queueEngine);
+    Injector injector = Guice.createInjector(new ConfigModule(cConf),
+                                             new DataFabricInMemoryModule(),
+                                             new TransactionMetricsModule());
+    transactionManager = injector.getInstance(TransactionManager.class);
+    transactionManager.startAndWait();
+    txSystemClient = injector.getInstance(TransactionSystemClient.class);
+    queueClientFactory = injector.getInstance(QueueClientFactory.class);
+    queueAdmin = injector.getInstance(QueueAdmin.class);
+    executorFactory = injector.getInstance(TransactionExecutorFactory.class);
+  }
+}
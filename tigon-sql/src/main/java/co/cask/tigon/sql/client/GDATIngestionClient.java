@@ -0,0 +1,356 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.client;
+
+import co.cask.tigon.sql.conf.Constants;
+import co.cask.tigon.sql.flowlet.StreamSchema;
+import co.cask.tigon.sql.io.GDATRecordEncoder;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.common.Threads;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client that writes GDAT records to the TCP ingestion end-point of a GDAT input stream of an
+ * {@link co.cask.tigon.sql.flowlet.AbstractInputFlowlet}.
+ *
+ * The end-point is discovered through the ports that the flowlet announces, named
+ * {@link Constants#TCP_INGESTION_PORT_PREFIX} followed by the input name. Records are encoded with a
+ * {@link GDATRecordEncoder} into batches, and each batch is sent in one write. The client writes over multiple
+ * connections: once a batch is sent the next one is filled for the next connection, hence batches are pipelined
+ * over all connections. Batch buffers are reused once they are written. A partial batch is sent at the latest after
+ * {@link Constants#INGESTION_CLIENT_LINGER} milliseconds, or by {@link #flush()}.
+ *
+ * Records are written either with {@link #write(GDATRecordEncoder)}, which blocks while the connection is
+ * saturated, or with {@link #writeAsync(GDATRecordEncoder)}, which never blocks and returns a future of the write of
+ * the batch. Connections are not re-established once they are closed.
+ */
+public class GDATIngestionClient extends AbstractIdleService {
+  private static final Logger LOG = LoggerFactory.getLogger(GDATIngestionClient.class);
+  //Number of written batch buffers that each connection keeps for reuse.
+  private static final int MAX_FREE_BUFFERS = 2;
+
+  private final Iterable<Discoverable> endpoints;
+  private final StreamSchema schema;
+  private final int connectionCount;
+  private final int batchBytes;
+  private final AtomicInteger nextConnection = new AtomicInteger();
+  private ClientBootstrap clientBootstrap;
+  private ScheduledExecutorService flushExecutor;
+  private List<Connection> connections;
+
+  /**
+   * Creates a client for a GDAT input stream, using the default number of connections and batch size.
+   * @param discoveryServiceClient {@link DiscoveryServiceClient} of the Flow
+   * @param inputName Name of the input stream
+   * @param schema {@link StreamSchema} of the input stream
+   */
+  public GDATIngestionClient(DiscoveryServiceClient discoveryServiceClient, String inputName, StreamSchema schema) {
+    this(discoveryServiceClient.discover(Constants.TCP_INGESTION_PORT_PREFIX + inputName), schema,
+         Constants.DEFAULT_INGESTION_CLIENT_CONNECTIONS, Constants.DEFAULT_INGESTION_CLIENT_BATCH_BYTES);
+  }
+
+  /**
+   * Creates a client for a GDAT input stream.
+   * @param endpoints Discovered TCP ingestion end-points of the input stream. Connections are distributed over all
+   *                  end-points that are discovered when the client starts
+   * @param schema {@link StreamSchema} of the input stream
+   * @param connectionCount Number of connections
+   * @param batchBytes Number of bytes of records that are sent in one write
+   */
+  public GDATIngestionClient(Iterable<Discoverable> endpoints, StreamSchema schema,
+                             int connectionCount, int batchBytes) {
+    Preconditions.checkArgument(connectionCount > 0, "Number of connections must be positive.");
+    Preconditions.checkArgument(batchBytes > 0, "Batch size must be positive.");
+    this.endpoints = endpoints;
+    this.schema = schema;
+    this.connectionCount = connectionCount;
+    this.batchBytes = batchBytes;
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    List<InetSocketAddress> addresses = discover();
+    clientBootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
+                                                                            Executors.newCachedThreadPool()));
+    clientBootstrap.setOption("tcpNoDelay", true);
+    clientBootstrap.setOption("keepAlive", true);
+    clientBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+      @Override
+      public ChannelPipeline getPipeline() throws Exception {
+        return Channels.pipeline(new ExceptionHandler());
+      }
+    });
+
+    List<Connection> connectionList = Lists.newArrayList();
+    for (int i = 0; i < connectionCount; i++) {
+      InetSocketAddress address = addresses.get(i % addresses.size());
+      ChannelFuture future = clientBootstrap.connect(address).awaitUninterruptibly();
+      if (!future.isSuccess()) {
+        for (Connection connection : connectionList) {
+          connection.channel.close().awaitUninterruptibly();
+        }
+        clientBootstrap.releaseExternalResources();
+        throw new IOException("Failed to connect to ingestion end-point " + address, future.getCause());
+      }
+      connectionList.add(new Connection(future.getChannel()));
+    }
+    connections = connectionList;
+
+    flushExecutor = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("gdat-ingestion-client-flush"));
+    flushExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        for (Connection connection : connections) {
+          connection.send();
+        }
+      }
+    }, Constants.INGESTION_CLIENT_LINGER, Constants.INGESTION_CLIENT_LINGER, TimeUnit.MILLISECONDS);
+    LOG.info("Connected to ingestion end-points {}", addresses);
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    flushExecutor.shutdownNow();
+    try {
+      flush();
+    } finally {
+      for (Connection connection : connections) {
+        connection.channel.close().awaitUninterruptibly();
+      }
+      clientBootstrap.releaseExternalResources();
+    }
+  }
+
+  /**
+   * Creates an encoder for the records of the input stream. An encoder is not thread safe, but can be reused for
+   * any number of records.
+   */
+  public GDATRecordEncoder createEncoder() {
+    return new GDATRecordEncoder(schema);
+  }
+
+  /**
+   * Writes a record. The record is encoded before this method returns, hence the encoder can be reused right away.
+   * Blocks while the connection is saturated, until enough of its pending writes complete.
+   * @param record {@link GDATRecordEncoder} holding the values of the record
+   * @throws IOException if a write failed, or all connections are closed
+   */
+  public void write(GDATRecordEncoder record) throws IOException, InterruptedException {
+    Connection connection = getConnection();
+    connection.append(record);
+    connection.awaitWritable();
+  }
+
+  /**
+   * Writes a record without blocking. The record is encoded before this method returns, hence the encoder can be
+   * reused right away. The caller should limit the number of incomplete futures, since records are buffered
+   * regardless of how fast they are sent.
+   * @param record {@link GDATRecordEncoder} holding the values of the record
+   * @return Future that completes when the batch containing the record is written to the socket
+   */
+  public ListenableFuture<Void> writeAsync(GDATRecordEncoder record) {
+    try {
+      return getConnection().append(record);
+    } catch (IOException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /**
+   * Sends all partial batches and waits until they are written.
+   * @throws IOException if a write failed
+   */
+  public void flush() throws IOException, InterruptedException {
+    List<ListenableFuture<Void>> futures = Lists.newArrayList();
+    for (Connection connection : connections) {
+      futures.add(connection.send());
+    }
+    try {
+      Futures.allAsList(futures).get();
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to write records", e.getCause());
+    }
+  }
+
+  private List<InetSocketAddress> discover() throws InterruptedException, TimeoutException {
+    long timeout = TimeUnit.SECONDS.toMillis(Constants.INGESTION_CLIENT_DISCOVERY_TIMEOUT);
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+      List<InetSocketAddress> addresses = Lists.newArrayList();
+      for (Discoverable discoverable : endpoints) {
+        addresses.add(discoverable.getSocketAddress());
+      }
+      if (!addresses.isEmpty()) {
+        return addresses;
+      }
+      if (System.currentTimeMillis() > deadline) {
+        throw new TimeoutException("No ingestion end-point discovered");
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+  }
+
+  //Returns the connection that the current batch is filled for, skipping closed connections.
+  private Connection getConnection() throws IOException {
+    for (int i = 0; i < connections.size(); i++) {
+      int index = nextConnection.get();
+      Connection connection = connections.get((index & Integer.MAX_VALUE) % connections.size());
+      if (connection.channel.isConnected()) {
+        return connection;
+      }
+      nextConnection.compareAndSet(index, index + 1);
+    }
+    throw new IOException("All connections to the ingestion end-points are closed");
+  }
+
+  /**
+   * A connection and the batch of records that is filled for it.
+   */
+  private final class Connection {
+    private final Channel channel;
+    private final Queue<ChannelBuffer> freeBuffers = new ConcurrentLinkedQueue<ChannelBuffer>();
+    private final AtomicInteger freeBufferCount = new AtomicInteger();
+    private final Object writableLock = new Object();
+    private ChannelBuffer batch;
+    private SettableFuture<Void> batchFuture;
+    private volatile Throwable failure;
+
+    private Connection(Channel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Appends a record to the batch, and sends the batch if it is full.
+     * @return Future that completes when the batch is written
+     */
+    synchronized ListenableFuture<Void> append(GDATRecordEncoder record) throws IOException {
+      if (failure != null) {
+        throw new IOException("Failed to write records", failure);
+      }
+      if (batch == null) {
+        batch = freeBuffers.poll();
+        if (batch == null) {
+          batch = ChannelBuffers.dynamicBuffer(batchBytes);
+        } else {
+          freeBufferCount.decrementAndGet();
+        }
+        batchFuture = SettableFuture.create();
+      }
+      record.writeTo(batch);
+      ListenableFuture<Void> future = batchFuture;
+      if (batch.readableBytes() >= batchBytes) {
+        send();
+      }
+      return future;
+    }
+
+    /**
+     * Sends the batch, if there is one, and makes the next connection receive the next batch.
+     * @return Future that completes when the batch is written
+     */
+    synchronized ListenableFuture<Void> send() {
+      if (batch == null) {
+        return Futures.immediateFuture(null);
+      }
+      final ChannelBuffer buffer = batch;
+      final SettableFuture<Void> future = batchFuture;
+      batch = null;
+      nextConnection.incrementAndGet();
+      channel.write(buffer).addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture channelFuture) throws Exception {
+          if (channelFuture.isSuccess()) {
+            if (freeBufferCount.incrementAndGet() <= MAX_FREE_BUFFERS) {
+              buffer.clear();
+              freeBuffers.offer(buffer);
+            } else {
+              freeBufferCount.decrementAndGet();
+            }
+            future.set(null);
+          } else {
+            failure = channelFuture.getCause();
+            future.setException(failure);
+          }
+          synchronized (writableLock) {
+            writableLock.notifyAll();
+          }
+        }
+      });
+      return future;
+    }
+
+    /**
+     * Waits until the channel is writable, which it is again once enough of the pending writes complete.
+     */
+    void awaitWritable() throws IOException, InterruptedException {
+      synchronized (writableLock) {
+        while (!channel.isWritable()) {
+          if (failure != null || !channel.isConnected()) {
+            throw new IOException("Connection to ingestion end-point " + channel.getRemoteAddress() + " failed",
+                                  failure);
+          }
+          writableLock.wait(TimeUnit.SECONDS.toMillis(1));
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes a connection on errors, which fails all its pending writes.
+   */
+  private static final class ExceptionHandler extends SimpleChannelHandler {
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+      LOG.error("Closing connection to ingestion end-point {}", e.getChannel().getRemoteAddress(), e.getCause());
+      e.getChannel().close();
+    }
+  }
+}
@@ -66,4 +66,87 @@ public final class Constants {
    */
   public static final String HTTP_PORT = "httpPort";
   public static final String TCP_INGESTION_PORT_PREFIX = "tcpPort_";
+
+  /**
+   * Key prefix of the ports on which the instances of a partitioned InputFlowlet receive the records of their
+   * partition of an input from the other instances. The ports are announced as prefix, input name, '.' and instance id.
+   * The ports given in the runtime arguments are offset by the instance id for partitioned InputFlowlets.
+   */
+  public static final String PARTITION_PORT_PREFIX = "partitionPort_";
+
+  /**
+   * Runtime argument for the time in seconds that an instance of a partitioned InputFlowlet waits on initialize for
+   * the partition ports of the other instances to be discovered. It fails to initialize if they are not discovered.
+   */
+  public static final String PARTITION_DISCOVERY_TIMEOUT = "partition.discoveryTimeout";
+  public static final long DEFAULT_PARTITION_DISCOVERY_TIMEOUT = 120L;
+
+  /**
+   * Compiled Stream Engine binaries are cached in a directory of that name in the temporary directory, and in the
+   * location given by the runtime argument (an URI, for example a directory on HDFS shared by all containers).
+   */
+  public static final String BINARY_CACHE_LOCAL_DIR = "tigon-sql-binaries";
+  public static final String BINARY_CACHE_LOCATION = "binaryCache.location";
+
+  /**
+   * Runtime arguments for the limits of the GDAT record queue of the InputFlowlet. No limit if not set or 0.
+   * When a limit is reached, the output streams of the Stream Engine are not read until the queue drained to half.
+   */
+  public static final String RECORD_QUEUE_MAX_RECORDS = "recordQueue.maxRecords";
+  public static final String RECORD_QUEUE_MAX_BYTES = "recordQueue.maxBytes";
+
+  /**
+   * Runtime argument for the maximum number of GDAT records that the InputFlowlet processes in one transaction
+   */
+  public static final String RECORD_QUEUE_BATCH_SIZE = "recordQueue.batchSize";
+  public static final int DEFAULT_RECORD_QUEUE_BATCH_SIZE = 1000;
+
+  /**
+   * Metric names of the current and peak number of uncommitted records in the GDAT record queue
+   */
+  public static final String RECORD_QUEUE_DEPTH_METRIC = "recordQueue.depth";
+  public static final String RECORD_QUEUE_PEAK_DEPTH_METRIC = "recordQueue.peakDepth";
+
+  /**
+   * Metric name of the tuples that a Stream Engine process received but did not accept
+   */
+  public static final String DROPPED_TUPLE_METRIC = "dropped_tuple_cnt";
+
+  /**
+   * Number of samples kept for each statistic of the Stream Engine processes, which report their metrics about once a
+   * second, and the name under which the statistics of the InputFlowlet itself are kept
+   */
+  public static final int STATS_SERIES_SIZE = 60;
+  public static final String INPUT_FLOWLET_STATS = "inputFlowlet";
+
+  /**
+   * Interval in seconds for reporting the GDAT record queue metrics
+   */
+  public static final long RECORD_QUEUE_METRICS_INTERVAL = 1L;
+
+  /**
+   * Flow control of the HTTP DataIngestionRouter. Data of a stream is only forwarded while less than the maximum
+   * number of bytes is in flight to its ingestion server. Requests wait up to the write timeout (in milliseconds)
+   * for that, otherwise they are answered with 503 Service Unavailable and a Retry-After (in seconds) header.
+   */
+  public static final long DEFAULT_ROUTER_MAX_INFLIGHT_BYTES = 16L * 1024 * 1024;
+  public static final long DEFAULT_ROUTER_WRITE_TIMEOUT = 5000L;
+  public static final int ROUTER_RETRY_AFTER = 1;
+
+  /**
+   * Number of threads of the DataIngestionRouter handlers, and number of bytes of a chunked upload that are buffered
+   * before the router stops reading from its connection.
+   */
+  public static final int ROUTER_EXEC_THREADS = 60;
+  public static final long ROUTER_MAX_BUFFERED_UPLOAD_BYTES = 1024L * 1024;
+
+  /**
+   * GDATIngestionClient defaults: number of connections, size in bytes of the batches of records that are sent in one
+   * write, time in milliseconds after which a partial batch is sent, and time in seconds to wait for the TCP
+   * ingestion end-point of the stream to be discovered.
+   */
+  public static final int DEFAULT_INGESTION_CLIENT_CONNECTIONS = 2;
+  public static final int DEFAULT_INGESTION_CLIENT_BATCH_BYTES = 64 * 1024;
+  public static final long INGESTION_CLIENT_LINGER = 10L;
+  public static final long INGESTION_CLIENT_DISCOVERY_TIMEOUT = 30L;
 }
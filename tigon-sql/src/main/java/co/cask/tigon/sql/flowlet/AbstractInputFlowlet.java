@@ -25,6 +25,8 @@ import co.cask.tigon.api.flow.flowlet.FlowletContext;
 import co.cask.tigon.api.flow.flowlet.FlowletSpecification;
 import co.cask.tigon.api.flow.flowlet.InputContext;
 import co.cask.tigon.api.metrics.Metrics;
+import co.cask.tigon.internal.io.DatumReaderFactory;
+import co.cask.tigon.internal.io.ReflectionDatumReaderFactory;
 import co.cask.tigon.sql.conf.Constants;
 import co.cask.tigon.sql.internal.DefaultInputFlowletConfigurer;
 import co.cask.tigon.sql.internal.HealthInspector;
@@ -32,26 +34,36 @@ import co.cask.tigon.sql.internal.InputFlowletService;
 import co.cask.tigon.sql.internal.LocalInputFlowletConfiguration;
 import co.cask.tigon.sql.internal.MetricsRecorder;
 import co.cask.tigon.sql.internal.ProcessMonitor;
+import co.cask.tigon.sql.internal.StreamBinaryCache;
 import co.cask.tigon.sql.io.GDATDecoder;
 import co.cask.tigon.sql.io.MethodsDriver;
+import co.cask.tigon.sql.ioserver.InputServerSocket;
 import co.cask.tigon.sql.util.MetaInformationParser;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Services;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.apache.twill.filesystem.HDFSLocationFactory;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
 
 /**
@@ -61,6 +73,10 @@ public abstract class AbstractInputFlowlet extends AbstractFlowlet implements Pr
   private static final Logger LOG = LoggerFactory.getLogger(AbstractInputFlowlet.class);
   private File tmpFolder;
   private Metrics metrics;
+  // Set by the program runner to decode output records with generated readers
+  private DatumReaderFactory datumReaderFactory;
+  // Set by the program runner to discover the partition ports of the other instances
+  private DiscoveryServiceClient discoveryClient;
   private InputFlowletConfigurer configurer;
   private InputFlowletService inputFlowletService;
   private HealthInspector healthInspector;
@@ -68,9 +84,16 @@ public abstract class AbstractInputFlowlet extends AbstractFlowlet implements Pr
   private MethodsDriver methodsDriver;
   private GDATRecordQueue recordQueue;
   private Stopwatch stopwatch;
+  private long lastQueueMetricsTime;
+  private int batchSize;
+  private int instanceCount;
   private int retryCounter;
   private Map<String, Integer> dataIngestionPortsMap;
   private List<Cancellable> portsAnnouncementList;
+  // Ingestion ports are announced once the Stream Engine is ready and the partition ports of all instances are known
+  private boolean streamEngineReady;
+  private boolean partitionsDiscovered;
+  private boolean ingestionPortsAnnounced;
 
   // Default values for runnable configurables.
   private FailurePolicy failurePolicy = FailurePolicy.RETRY;
@@ -89,10 +112,14 @@ public abstract class AbstractInputFlowlet extends AbstractFlowlet implements Pr
 
   @Override
   public final FlowletSpecification configure() {
+    DefaultInputFlowletConfigurer configurer = new DefaultInputFlowletConfigurer(this);
+    create(configurer);
+    // Only partitioned inputs can be split among multiple instances
+    boolean partitioned = !configurer.createInputFlowletSpec().getPartitionKeys().isEmpty();
     return FlowletSpecification.Builder.with()
       .setName(getName())
       .setDescription(getDescription())
-      .setMaxInstances(1)
+      .setMaxInstances(partitioned ? Integer.MAX_VALUE : 1)
       .setFailurePolicy(getFailurePolicy())
       .withArguments(getArguments())
       .withResources(getResourceSpecification())
@@ -142,6 +169,24 @@ public abstract class AbstractInputFlowlet extends AbstractFlowlet implements Pr
     configurer.addQuery(sqlOutName, sql);
   }
 
+  /**
+   * Partition an Input source by one of its fields, which allows running multiple instances of the InputFlowlet.
+   * Each instance runs its own Stream Engine, which only receives the records of its partition of each Input source,
+   * whether they are ingested through the HTTP or the TCP end-points of any instance. Hence queries that group by the
+   * partition key produce the same results as with a single instance, and each instance emits the results of its
+   * partition. Either all or none of the Input sources must be partitioned.
+   * The partitions are assigned when the instances start, hence the number of instances cannot be changed while the
+   * flow runs: instances stop processing records once their instance count changed. An instance only announces its
+   * ingestion end-points after it discovered all other instances, and fails to start if they are not discovered
+   * within the time given by the {@code partition.discoveryTimeout} runtime argument (120 seconds by default).
+   * The ports given in the runtime arguments are offset by the instance id.
+   * @param name Name of the Input Source.
+   * @param fieldName Name of the partition key field of the Input Source.
+   */
+  protected void setPartitionKey(String name, String fieldName) {
+    configurer.setPartitionKey(name, fieldName);
+  }
+
   /**
    * Set the arguments for the InputFlowlet.
    * @param arguments for the flowlet.
@@ -189,16 +234,23 @@ public abstract class AbstractInputFlowlet extends AbstractFlowlet implements Pr
     create(configurer);
     InputFlowletSpecification spec = configurer.createInputFlowletSpec();
 
+    // Instances of a partitioned InputFlowlet may share a host, hence offset the ports given by the instance id
+    boolean partitioned = !spec.getPartitionKeys().isEmpty();
+    instanceCount = ctx.getInstanceCount();
+    Preconditions.checkState(instanceCount == 1 || discoveryClient != null,
+                             "Instances of InputFlowlet %s cannot discover each other.", ctx.getName());
+    int portOffset = partitioned ? ctx.getInstanceId() : 0;
     dataIngestionPortsMap = Maps.newHashMap();
     int httpPort = 0;
     if (ctx.getRuntimeArguments().get(Constants.HTTP_PORT) != null) {
-      httpPort = Integer.parseInt(ctx.getRuntimeArguments().get(Constants.HTTP_PORT));
+      httpPort = Integer.parseInt(ctx.getRuntimeArguments().get(Constants.HTTP_PORT)) + portOffset;
     }
     dataIngestionPortsMap.put(Constants.HTTP_PORT, httpPort);
     for (String inputName : spec.getInputSchemas().keySet()) {
       int tcpPort = 0;
       if (ctx.getRuntimeArguments().get(Constants.TCP_INGESTION_PORT_PREFIX + inputName) != null) {
-        tcpPort = Integer.parseInt(ctx.getRuntimeArguments().get(Constants.TCP_INGESTION_PORT_PREFIX + inputName));
+        tcpPort = Integer.parseInt(ctx.getRuntimeArguments().get(Constants.TCP_INGESTION_PORT_PREFIX + inputName))
+          + portOffset;
       }
       dataIngestionPortsMap.put(Constants.TCP_INGESTION_PORT_PREFIX + inputName, tcpPort);
     }
@@ -208,50 +260,123 @@ public abstract class AbstractInputFlowlet extends AbstractFlowlet implements Pr
     File baseDir = new File(tmpFolder, "baseDir");
     baseDir.mkdirs();
 
-    InputFlowletConfiguration inputFlowletConfiguration = new LocalInputFlowletConfiguration(baseDir, spec);
+    InputFlowletConfiguration inputFlowletConfiguration = new LocalInputFlowletConfiguration(baseDir, spec,
+                                                                                             createBinaryCache(ctx));
     File binDir = inputFlowletConfiguration.createStreamEngineProcesses();
 
     healthInspector = new HealthInspector(this);
     metricsRecorder = new MetricsRecorder(metrics);
 
     //Initiating AbstractInputFlowlet Components
-    recordQueue = new GDATRecordQueue();
+    int maxQueueRecords = 0;
+    if (ctx.getRuntimeArguments().get(Constants.RECORD_QUEUE_MAX_RECORDS) != null) {
+      maxQueueRecords = Integer.parseInt(ctx.getRuntimeArguments().get(Constants.RECORD_QUEUE_MAX_RECORDS));
+    }
+    long maxQueueBytes = 0;
+    if (ctx.getRuntimeArguments().get(Constants.RECORD_QUEUE_MAX_BYTES) != null) {
+      maxQueueBytes = Long.parseLong(ctx.getRuntimeArguments().get(Constants.RECORD_QUEUE_MAX_BYTES));
+    }
+    recordQueue = new GDATRecordQueue(maxQueueRecords, maxQueueBytes);
+    batchSize = Constants.DEFAULT_RECORD_QUEUE_BATCH_SIZE;
+    if (ctx.getRuntimeArguments().get(Constants.RECORD_QUEUE_BATCH_SIZE) != null) {
+      batchSize = Integer.parseInt(ctx.getRuntimeArguments().get(Constants.RECORD_QUEUE_BATCH_SIZE));
+    }
+    // Process the records as soon as they arrive
+    recordQueue.notifyOnRecords(new Runnable() {
+      @Override
+      public void run() {
+        getContext().triggerTick();
+      }
+    });
 
     //Initiating Netty TCP I/O ports
+    //Records of the partitions of the other instances are forwarded to the instances discovered through the program
     inputFlowletService = new InputFlowletService(binDir, spec, healthInspector, metricsRecorder, recordQueue,
-                                                  dataIngestionPortsMap, this);
+                                                  dataIngestionPortsMap, this, ctx.getInstanceId(),
+                                                  instanceCount, discoveryClient);
     inputFlowletService.startAndWait();
+    if (partitioned && instanceCount > 1) {
+      awaitPartitions(ctx, spec);
+    }
+    synchronized (this) {
+      partitionsDiscovered = true;
+      announceIngestionPorts();
+    }
 
     //Starting health monitor service
     healthInspector.startAndWait();
 
     //Initializing methodsDriver
     Map<String, StreamSchema> schemaMap = MetaInformationParser.getSchemaMap(new File(binDir.toURI()));
-    methodsDriver = new MethodsDriver(this, schemaMap);
+    DatumReaderFactory readerFactory = datumReaderFactory == null ? new ReflectionDatumReaderFactory()
+                                                                  : datumReaderFactory;
+    methodsDriver = new MethodsDriver(this, schemaMap, readerFactory);
 
     //Initialize stopwatch and retry counter
     stopwatch = new Stopwatch();
     retryCounter = 0;
   }
 
+  /**
+   * Binaries are cached on local disk, followed by the location given in the runtime arguments, if any.
+   */
+  private StreamBinaryCache createBinaryCache(FlowletContext ctx) {
+    List<Location> locations = Lists.newArrayList();
+    File localDir = new File(System.getProperty("java.io.tmpdir"), Constants.BINARY_CACHE_LOCAL_DIR);
+    locations.add(new LocalLocationFactory().create(localDir.toURI()));
+    String sharedLocation = ctx.getRuntimeArguments().get(Constants.BINARY_CACHE_LOCATION);
+    if (sharedLocation != null) {
+      URI uri = URI.create(sharedLocation);
+      if (uri.getScheme() == null || "file".equals(uri.getScheme())) {
+        locations.add(new LocalLocationFactory().create(uri.getPath()));
+      } else {
+        locations.add(new HDFSLocationFactory(new Configuration()).create(uri));
+      }
+    }
+    return new StreamBinaryCache(locations);
+  }
+
   /**
    * This process method consumes the records queued in dataManager and invokes the associated "process" methods for
-   * each output query
+   * each output query. It is triggered when records arrive in the queue and processes a bounded batch of them in
+   * each transaction.
    */
-  @Tick(delay = 200L, unit = TimeUnit.MILLISECONDS)
+  @Tick(delay = 0L, unit = TimeUnit.MILLISECONDS, triggered = true)
   protected void processGDATRecords() throws InvocationTargetException, IllegalAccessException {
+    // Records are routed to the partitions of the instances that were started, which can't follow a change
+    Preconditions.checkState(getContext().getInstanceCount() == instanceCount,
+                             "Instance count of InputFlowlet %s changed from %s to %s. Restart the flow instead.",
+                             getContext().getName(), instanceCount, getContext().getInstanceCount());
     stopwatch.reset();
     stopwatch.start();
-    while (!recordQueue.isEmpty()) {
-      // Time since start of processing in Seconds
-      long elapsedTime = stopwatch.elapsedTime(TimeUnit.SECONDS);
-      if (elapsedTime >= Constants.TICKER_TIMEOUT) {
-        break;
+    int processed = 0;
+    try {
+      while (processed < batchSize && !recordQueue.isEmpty()) {
+        // Time since start of processing in Seconds
+        long elapsedTime = stopwatch.elapsedTime(TimeUnit.SECONDS);
+        if (elapsedTime >= Constants.TICKER_TIMEOUT) {
+          break;
+        }
+        Map.Entry<String, GDATDecoder> record = recordQueue.getNext();
+        methodsDriver.invokeMethods(record.getKey(), record.getValue());
+        processed++;
       }
-      Map.Entry<String, GDATDecoder> record = recordQueue.getNext();
-      methodsDriver.invokeMethods(record.getKey(), record.getValue());
+      methodsDriver.invokeBatchMethods();
+    } finally {
+      methodsDriver.clearBatches();
     }
     stopwatch.stop();
+
+    // The queue only triggers when a record arrives while it is empty, hence continue with the remaining records
+    if (!recordQueue.isEmpty()) {
+      getContext().triggerTick();
+    }
+
+    long now = System.currentTimeMillis();
+    if (now - lastQueueMetricsTime >= TimeUnit.SECONDS.toMillis(Constants.RECORD_QUEUE_METRICS_INTERVAL)) {
+      metricsRecorder.recordQueueMetrics(recordQueue);
+      lastQueueMetricsTime = now;
+    }
   }
 
   @Override
@@ -314,15 +439,50 @@ public abstract class AbstractInputFlowlet extends AbstractFlowlet implements Pr
   }
 
   @Override
-  public void announceReady() {
-    FlowletContext ctx = getContext();
-    if (portsAnnouncementList.size() > 0) {
-      // Ingestion end-points have already been announced
+  public synchronized void announceReady() {
+    streamEngineReady = true;
+    announceIngestionPorts();
+  }
+
+  /**
+   * Announces the partition ports of this instance and waits until the partition ports of all other instances are
+   * discovered. Records ingested through this instance would be dropped if they belong to a partition of an instance
+   * that is not discovered, hence the ingestion ports are only announced afterwards.
+   */
+  private void awaitPartitions(FlowletContext ctx, InputFlowletSpecification spec) throws Exception {
+    for (String inputName : spec.getInputSchemas().keySet()) {
+      String key = InputServerSocket.getPartitionPortName(inputName, ctx.getInstanceId());
+      portsAnnouncementList.add(ctx.announce(key, inputFlowletService.getDataPort(key)));
+      LOG.info("Announced Partition Port {} - {}", key, inputFlowletService.getDataPort(key));
+    }
+    long timeout = Constants.DEFAULT_PARTITION_DISCOVERY_TIMEOUT;
+    if (ctx.getRuntimeArguments().get(Constants.PARTITION_DISCOVERY_TIMEOUT) != null) {
+      timeout = Long.parseLong(ctx.getRuntimeArguments().get(Constants.PARTITION_DISCOVERY_TIMEOUT));
+    }
+    if (!inputFlowletService.awaitPartitionServers(timeout, TimeUnit.SECONDS)) {
+      for (Cancellable portAnnouncement : portsAnnouncementList) {
+        portAnnouncement.cancel();
+      }
+      inputFlowletService.stopAndWait();
+      throw new TimeoutException(String.format("Partition ports of the %d instances of InputFlowlet %s not " +
+                                                 "discovered within %d seconds.", instanceCount, ctx.getName(),
+                                               timeout));
+    }
+  }
+
+  private synchronized void announceIngestionPorts() {
+    if (ingestionPortsAnnounced || !streamEngineReady || !partitionsDiscovered) {
       return;
     }
+    FlowletContext ctx = getContext();
     for (String key : dataIngestionPortsMap.keySet()) {
+      if (key.startsWith(Constants.PARTITION_PORT_PREFIX)) {
+        // Partition ports are announced on initialize
+        continue;
+      }
       portsAnnouncementList.add(ctx.announce(key, inputFlowletService.getDataPort(key)));
       LOG.info("Announced Data Port {} - {}", key, inputFlowletService.getDataPort(key));
     }
+    ingestionPortsAnnounced = true;
   }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.flowlet;
+
+/**
+ * A batch of GDAT records of one query output, read by column.
+ * A {@link co.cask.tigon.sql.flowlet.annotation.QueryOutput} method that takes a GDATRecordBatch receives all the
+ * records of the query that are processed in one transaction, instead of one object per record. Values are read
+ * straight from the received records and strings are only decoded when they are read. A batch is only valid during
+ * the method call.
+ */
+public interface GDATRecordBatch {
+
+  /**
+   * Get the number of records in the batch.
+   * @return Number of records.
+   */
+  int size();
+
+  /**
+   * Get the index of a field, to be used with the column accessors.
+   * @param name Field Name.
+   * @return Field Index.
+   * @throws IllegalArgumentException if there is no field with the given name.
+   */
+  int getFieldIndex(String name);
+
+  /**
+   * Get the type of a field.
+   * @param field Field Index.
+   * @return Field Type.
+   */
+  GDATFieldType getFieldType(int field);
+
+  /**
+   * Read the value of an {@link GDATFieldType#INT} field.
+   * @param record Record Index.
+   * @param field Field Index.
+   * @return Field Value.
+   */
+  int getInt(int record, int field);
+
+  /**
+   * Read the value of a {@link GDATFieldType#LONG} field.
+   * @param record Record Index.
+   * @param field Field Index.
+   * @return Field Value.
+   */
+  long getLong(int record, int field);
+
+  /**
+   * Read the value of a {@link GDATFieldType#DOUBLE} field.
+   * @param record Record Index.
+   * @param field Field Index.
+   * @return Field Value.
+   */
+  double getDouble(int record, int field);
+
+  /**
+   * Read the value of a {@link GDATFieldType#BOOL} field.
+   * @param record Record Index.
+   * @param field Field Index.
+   * @return Field Value.
+   */
+  boolean getBool(int record, int field);
+
+  /**
+   * Read the value of a {@link GDATFieldType#STRING} field. The string is decoded on each call.
+   * @param record Record Index.
+   * @param field Field Index.
+   * @return Field Value.
+   */
+  String getString(int record, int field);
+}
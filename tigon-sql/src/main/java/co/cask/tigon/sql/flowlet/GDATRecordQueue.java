@@ -17,27 +17,65 @@
 package co.cask.tigon.sql.flowlet;
 
 import co.cask.tigon.sql.io.GDATDecoder;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * GDATRecordQueue
  * Queue of the incoming GDAT Records that is used by the AbstractInputFlowlet
+ * A bounded queue limits the number of records and the number of bytes of the records that are added but not yet
+ * committed. The queue doesn't reject records when it is full. Instead, producers check {@link #isFull()} and stop
+ * adding records until the queue drained to half of its limits, which is signalled through
+ * {@link #notifyOnCapacity(Runnable)}. The consumer gets told about records to take through
+ * {@link #notifyOnRecords(Runnable)}.
  */
 public class GDATRecordQueue {
   private final Queue<Map.Entry<String, GDATDecoder>> dataQueue;
   private final Collection<Map.Entry<String, GDATDecoder>> pendingRecords;
+  private final int maxRecords;
+  private final long maxBytes;
+  //Number of records and bytes added and not yet committed.
+  private final AtomicInteger size;
+  private final AtomicLong bytes;
+  private final AtomicInteger peakSize;
+  private final List<Runnable> capacityCallbacks;
+  //Number of records in the data queue, which is only 0 when the consumer took all of them.
+  private final AtomicInteger available;
+  private volatile Runnable recordsListener;
 
   /**
-   * Constructor
+   * Constructor for an unbounded queue
    */
   public GDATRecordQueue() {
+    this(0, 0L);
+  }
+
+  /**
+   * Constructor for a bounded queue
+   * @param maxRecords Maximum number of uncommitted records, or 0 for no limit.
+   * @param maxBytes Maximum number of bytes of uncommitted records, or 0 for no limit.
+   */
+  public GDATRecordQueue(int maxRecords, long maxBytes) {
+    Preconditions.checkArgument(maxRecords >= 0, "Maximum number of records must be >= 0.");
+    Preconditions.checkArgument(maxBytes >= 0, "Maximum number of bytes must be >= 0.");
+    this.maxRecords = maxRecords;
+    this.maxBytes = maxBytes;
     dataQueue = Queues.newConcurrentLinkedQueue();
     pendingRecords = Lists.newArrayList();
+    size = new AtomicInteger();
+    bytes = new AtomicLong();
+    peakSize = new AtomicInteger();
+    capacityCallbacks = Lists.newArrayList();
+    available = new AtomicInteger();
   }
 
   /**
@@ -47,7 +85,10 @@ public class GDATRecordQueue {
    */
   public Map.Entry<String, GDATDecoder> getNext() {
     Map.Entry<String, GDATDecoder> element = dataQueue.poll();
-    pendingRecords.add(element);
+    if (element != null) {
+      available.decrementAndGet();
+      pendingRecords.add(element);
+    }
     return element;
   }
 
@@ -58,14 +99,32 @@ public class GDATRecordQueue {
    */
   public void add(Map.Entry<String, GDATDecoder> record) {
     dataQueue.add(record);
+    bytes.addAndGet(getBytes(record));
+    int newSize = size.incrementAndGet();
+    int peak = peakSize.get();
+    while (newSize > peak && !peakSize.compareAndSet(peak, newSize)) {
+      peak = peakSize.get();
+    }
+    if (available.incrementAndGet() == 1) {
+      notifyRecordsListener();
+    }
   }
 
   /**
    * Removes the elements that have already been returned by getNext()
    * This method is called when the transaction has been completed successfully
+   * Records may share the network buffer they were received in. The buffer is freed once all of its records are
+   * committed.
    */
   public void commit() {
+    long committedBytes = 0;
+    for (Map.Entry<String, GDATDecoder> record : pendingRecords) {
+      committedBytes += getBytes(record);
+    }
+    bytes.addAndGet(-committedBytes);
+    size.addAndGet(-pendingRecords.size());
     pendingRecords.clear();
+    runCapacityCallbacks();
   }
 
   /**
@@ -73,7 +132,54 @@ public class GDATRecordQueue {
    * @return Boolean true or false depending on the number of elements in the queue
    */
   public boolean isEmpty() {
-    return dataQueue.isEmpty();
+    return available.get() == 0;
+  }
+
+  /**
+   * Checks if a bounded queue reached one of its limits.
+   * @return Boolean true if no more records should be added until there is capacity again.
+   */
+  public boolean isFull() {
+    return (maxRecords > 0 && size.get() >= maxRecords) || (maxBytes > 0 && bytes.get() >= maxBytes);
+  }
+
+  /**
+   * Calls the given callback once the queue drained to half of its limits. The callback is called immediately if
+   * that is the case already, otherwise from {@link #commit()}.
+   * @param callback The callback to call.
+   */
+  public void notifyOnCapacity(Runnable callback) {
+    synchronized (capacityCallbacks) {
+      if (!hasCapacity()) {
+        capacityCallbacks.add(callback);
+        return;
+      }
+    }
+    callback.run();
+  }
+
+  /**
+   * Sets the listener that is called when a record is added while the data queue is empty, which happens from the
+   * thread that adds the record. A consumer that stops taking records while the queue is not empty is not notified
+   * about the records that follow, hence it has to continue by itself.
+   * @param listener The listener to call.
+   */
+  public void notifyOnRecords(Runnable listener) {
+    recordsListener = listener;
+  }
+
+  /**
+   * Returns the number of records that are added and not yet committed.
+   */
+  public int getSize() {
+    return size.get();
+  }
+
+  /**
+   * Returns the largest number of records that were added and not yet committed at the same time.
+   */
+  public int getPeakSize() {
+    return peakSize.get();
   }
 
   /**
@@ -82,6 +188,39 @@ public class GDATRecordQueue {
    */
   public void rollback() {
     dataQueue.addAll(pendingRecords);
+    int rolledBack = pendingRecords.size();
     pendingRecords.clear();
+    if (available.getAndAdd(rolledBack) == 0 && rolledBack > 0) {
+      notifyRecordsListener();
+    }
+  }
+
+  private boolean hasCapacity() {
+    return (maxRecords == 0 || size.get() <= maxRecords / 2) && (maxBytes == 0 || bytes.get() <= maxBytes / 2);
+  }
+
+  private void runCapacityCallbacks() {
+    List<Runnable> callbacks;
+    synchronized (capacityCallbacks) {
+      if (capacityCallbacks.isEmpty() || !hasCapacity()) {
+        return;
+      }
+      callbacks = ImmutableList.copyOf(capacityCallbacks);
+      capacityCallbacks.clear();
+    }
+    for (Runnable callback : callbacks) {
+      callback.run();
+    }
+  }
+
+  private void notifyRecordsListener() {
+    Runnable listener = recordsListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  private long getBytes(Map.Entry<String, GDATDecoder> record) {
+    return record.getValue() == null ? 0 : record.getValue().getRecordLength();
   }
 }
@@ -53,4 +53,14 @@ public interface InputFlowletConfigurer {
    * @param sql Query query.
    */
   void addQuery(String outputName, String sql);
+
+  /**
+   * Partitions an Input by the value of one of its fields. If the Inputs are partitioned, every instance of the
+   * InputFlowlet runs its own Stream Engine and only receives the records of its partition of each Input, hence
+   * queries that group by the partition key compute the same results as a single instance would. Either all or
+   * none of the Inputs must be partitioned.
+   * @param inputName Name of the Input.
+   * @param fieldName Name of the field of the Input's schema that is the partition key.
+   */
+  void setPartitionKey(String inputName, String fieldName);
 }
@@ -46,4 +46,10 @@ public interface InputFlowletSpecification {
    * @return Map of Name of Query Outputs and the corresponding Query queries.
    */
   Map<String, String> getQuery();
+
+  /**
+   * Get the partition keys of the Inputs.
+   * @return Map of Input Name and the name of its partition key field, empty if the Inputs are not partitioned.
+   */
+  Map<String, String> getPartitionKeys();
 }
@@ -23,6 +23,10 @@ import java.lang.annotation.Target;
 
 /**
  * QueryOutput
+ * Annotates a method of an {@link co.cask.tigon.sql.flowlet.AbstractInputFlowlet} to receive the records of the
+ * output stream of a query. The method is called for each record with an object of its parameter type, or, if the
+ * parameter type is {@link co.cask.tigon.sql.flowlet.GDATRecordBatch}, once for all the records of the query that
+ * are processed in one transaction.
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
@@ -17,6 +17,7 @@
 package co.cask.tigon.sql.internal;
 
 import co.cask.tigon.sql.flowlet.AbstractInputFlowlet;
+import co.cask.tigon.sql.flowlet.GDATField;
 import co.cask.tigon.sql.flowlet.InputFlowletConfigurer;
 import co.cask.tigon.sql.flowlet.InputFlowletSpecification;
 import co.cask.tigon.sql.flowlet.InputStreamFormat;
@@ -33,6 +34,7 @@ import java.util.Map;
 public class DefaultInputFlowletConfigurer implements InputFlowletConfigurer {
   private final Map<String, Map.Entry<InputStreamFormat, StreamSchema>> inputStreamSchemas = Maps.newHashMap();
   private final Map<String, String> sqlMap = Maps.newHashMap();
+  private final Map<String, String> partitionKeys = Maps.newHashMap();
   private String name;
   private String description;
 
@@ -73,8 +75,27 @@ public class DefaultInputFlowletConfigurer implements InputFlowletConfigurer {
     this.sqlMap.put(outputName, sql);
   }
 
+  @Override
+  public void setPartitionKey(String inputName, String fieldName) {
+    Preconditions.checkArgument(inputName != null, "Input Name cannot be null.");
+    Preconditions.checkArgument(fieldName != null, "Field Name cannot be null.");
+    this.partitionKeys.put(inputName, fieldName);
+  }
+
   public InputFlowletSpecification createInputFlowletSpec() {
-    return new DefaultInputFlowletSpecification(name, description, inputStreamSchemas, sqlMap);
+    if (!partitionKeys.isEmpty()) {
+      Preconditions.checkState(partitionKeys.keySet().equals(inputStreamSchemas.keySet()),
+                               "Either all or none of the Inputs must be partitioned.");
+      for (Map.Entry<String, String> partitionKey : partitionKeys.entrySet()) {
+        boolean fieldExists = false;
+        for (GDATField field : inputStreamSchemas.get(partitionKey.getKey()).getValue().getFields()) {
+          fieldExists |= field.getName().equals(partitionKey.getValue());
+        }
+        Preconditions.checkState(fieldExists, "Input %s has no field %s.", partitionKey.getKey(),
+                                 partitionKey.getValue());
+      }
+    }
+    return new DefaultInputFlowletSpecification(name, description, inputStreamSchemas, sqlMap, partitionKeys);
   }
 
   private void checkInputName(String name) {
@@ -31,14 +31,16 @@ public class DefaultInputFlowletSpecification implements InputFlowletSpecificati
   private final String description;
   private final Map<String, Map.Entry<InputStreamFormat, StreamSchema>> inputSchemas;
   private final Map<String, String> sql;
+  private final Map<String, String> partitionKeys;
 
   public DefaultInputFlowletSpecification(String name, String description,
                                           Map<String, Map.Entry<InputStreamFormat, StreamSchema>> inputSchemas,
-                                          Map<String, String> sql) {
+                                          Map<String, String> sql, Map<String, String> partitionKeys) {
     this.name = name;
     this.description = description;
     this.inputSchemas = ImmutableMap.copyOf(inputSchemas);
     this.sql = ImmutableMap.copyOf(sql);
+    this.partitionKeys = ImmutableMap.copyOf(partitionKeys);
   }
 
   @Override
@@ -60,4 +62,9 @@ public class DefaultInputFlowletSpecification implements InputFlowletSpecificati
   public Map<String, String> getQuery() {
     return sql;
   }
+
+  @Override
+  public Map<String, String> getPartitionKeys() {
+    return partitionKeys;
+  }
 }
@@ -28,6 +28,7 @@ import co.cask.tigon.sql.manager.ProcessInitiator;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AbstractIdleService;
 import org.apache.twill.common.Services;
+import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +36,8 @@ import java.io.File;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Starts/Shutdowns Netty TCP Servers for I/O with StreamEngine Processes, DiscoveryServer HTTP Service and
@@ -56,9 +59,20 @@ public final class InputFlowletService extends AbstractIdleService {
   public InputFlowletService(File dir, InputFlowletSpecification spec, HealthInspector healthInspector,
                              MetricsRecorder metricsRecorder, GDATRecordQueue recordQueue,
                              Map<String, Integer> portMap, ProcessMonitor processMonitor) {
+    this(dir, spec, healthInspector, metricsRecorder, recordQueue, portMap, processMonitor, 0, 1, null);
+  }
+
+  /**
+   * Constructor for one of the instances of a partitioned InputFlowlet, see
+   * {@link co.cask.tigon.sql.flowlet.InputFlowletConfigurer#setPartitionKey(String, String)}.
+   */
+  public InputFlowletService(File dir, InputFlowletSpecification spec, HealthInspector healthInspector,
+                             MetricsRecorder metricsRecorder, GDATRecordQueue recordQueue,
+                             Map<String, Integer> portMap, ProcessMonitor processMonitor,
+                             int instanceId, int instanceCount, @Nullable DiscoveryServiceClient discoveryClient) {
     this.dir = dir;
     this.portMap = portMap;
-    this.ioService = new StreamEngineIO(spec, recordQueue, portMap);
+    this.ioService = new StreamEngineIO(spec, recordQueue, portMap, instanceId, instanceCount, discoveryClient);
     this.healthInspector = healthInspector;
     this.metricsRecorder = metricsRecorder;
     this.processMonitor = processMonitor;
@@ -117,6 +131,14 @@ public final class InputFlowletService extends AbstractIdleService {
     startService(healthInspector);
   }
 
+  /**
+   * Waits until the PartitionServers of the other instances are discovered, see
+   * {@link StreamEngineIO#awaitPartitionServers(long, TimeUnit)}.
+   */
+  public boolean awaitPartitionServers(long timeout, TimeUnit unit) throws InterruptedException {
+    return ioService.awaitPartitionServers(timeout, unit);
+  }
+
   public int getDataPort(String key) {
     return ioService.getDataPort(key);
   }
@@ -20,6 +20,7 @@ import co.cask.tigon.sql.flowlet.InputFlowletConfiguration;
 import co.cask.tigon.sql.flowlet.InputFlowletSpecification;
 
 import java.io.File;
+import javax.annotation.Nullable;
 
 /**
  * Sets up LocalInputFlowlet {@link co.cask.tigon.sql.flowlet.InputFlowletSpecification}
@@ -28,15 +29,25 @@ import java.io.File;
 public class LocalInputFlowletConfiguration implements InputFlowletConfiguration {
   private File dir;
   private InputFlowletSpecification spec;
+  private StreamBinaryCache cache;
 
   public LocalInputFlowletConfiguration(File dir, InputFlowletSpecification spec) {
+    this(dir, spec, null);
+  }
+
+  /**
+   * Constructor for LocalInputFlowletConfiguration
+   * @param cache {@link StreamBinaryCache} of compiled binaries, null if binaries are not cached.
+   */
+  public LocalInputFlowletConfiguration(File dir, InputFlowletSpecification spec, @Nullable StreamBinaryCache cache) {
     this.dir = dir;
     this.spec = spec;
+    this.cache = cache;
   }
 
   @Override
   public File createStreamEngineProcesses() {
-    StreamBinaryGenerator binaryGenerator = new StreamBinaryGenerator(dir, spec);
+    StreamBinaryGenerator binaryGenerator = new StreamBinaryGenerator(dir, spec, cache);
     return binaryGenerator.createStreamProcesses();
   }
 }
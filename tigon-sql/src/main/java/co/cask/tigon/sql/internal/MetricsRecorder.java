@@ -17,6 +17,8 @@
 package co.cask.tigon.sql.internal;
 
 import co.cask.tigon.api.metrics.Metrics;
+import co.cask.tigon.sql.conf.Constants;
+import co.cask.tigon.sql.flowlet.GDATRecordQueue;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -25,10 +27,19 @@ import java.util.Map;
 /**
  * This class is a wrapper on the {@link Metrics} object to be used by
  * {@link co.cask.tigon.sql.flowlet.AbstractInputFlowlet}. It parses the incoming metrics and adds that data to the
- * underlying {@link Metrics} object.
+ * underlying {@link Metrics} object, as counters named by the process (which is named by the query it runs) and the
+ * metric. The metrics are also kept as time series in {@link StreamEngineStats}.
  */
 public class MetricsRecorder {
+  //Metrics sent by the Stream Engine processes that need special treatment
+  private static final String IN_TUPLE_COUNT = "in_tuple_cnt";
+  private static final String ACCEPTED_TUPLE_COUNT = "accepted_tuple_cnt";
+  private static final String SAMPLING_RATE = "sampling_rate";
   private final Metrics metrics;
+  private final StreamEngineStats stats;
+  //Last reported values of the record queue gauges, as counters only take increments
+  private int lastReportedDepth;
+  private int lastReportedPeakDepth;
 
   /**
    * Constructor
@@ -37,6 +48,14 @@ public class MetricsRecorder {
    */
   public MetricsRecorder(Metrics metrics) {
     this.metrics = metrics;
+    this.stats = new StreamEngineStats(Constants.STATS_SERIES_SIZE);
+  }
+
+  /**
+   * @return The {@link StreamEngineStats} of the recorded metrics.
+   */
+  public StreamEngineStats getStats() {
+    return stats;
   }
 
   /**
@@ -47,9 +66,55 @@ public class MetricsRecorder {
    * @param metricsData The metrics sent by the process in a JSON format
    */
   public void recordMetrics(String processName, JsonObject metricsData) {
+    long now = System.currentTimeMillis();
     for (Map.Entry<String, JsonElement> entry : metricsData.entrySet()) {
-      metrics.count(processName + "." + entry.getKey(),
-                    Math.round(entry.getValue().getAsFloat()));
+      if (SAMPLING_RATE.equals(entry.getKey())) {
+        stats.add(processName, entry.getKey(), StreamEngineStats.Kind.GAUGE, now, entry.getValue().getAsDouble());
+        continue;
+      }
+      //Counts are sent as the increments since the previous metrics, cycle counts may exceed an int.
+      long value = entry.getValue().getAsLong();
+      stats.add(processName, entry.getKey(), StreamEngineStats.Kind.COUNTER, now, value);
+      count(processName + "." + entry.getKey(), value);
+    }
+    if (metricsData.has(IN_TUPLE_COUNT) && metricsData.has(ACCEPTED_TUPLE_COUNT)) {
+      long dropped = metricsData.get(IN_TUPLE_COUNT).getAsLong() - metricsData.get(ACCEPTED_TUPLE_COUNT).getAsLong();
+      stats.add(processName, Constants.DROPPED_TUPLE_METRIC, StreamEngineStats.Kind.COUNTER, now, dropped);
+      count(processName + "." + Constants.DROPPED_TUPLE_METRIC, dropped);
+    }
+  }
+
+  /**
+   * This method logs the current and the peak number of uncommitted records of the {@link GDATRecordQueue} into the
+   * underlying {@link Metrics} object. The counters are incremented by the change since the previous call, so that
+   * their totals are the current and the peak number of records.
+   *
+   * @param recordQueue The record queue of the InputFlowlet
+   */
+  public void recordQueueMetrics(GDATRecordQueue recordQueue) {
+    int depth = recordQueue.getSize();
+    int peakDepth = recordQueue.getPeakSize();
+    if (depth != lastReportedDepth) {
+      metrics.count(Constants.RECORD_QUEUE_DEPTH_METRIC, depth - lastReportedDepth);
+      lastReportedDepth = depth;
+    }
+    if (peakDepth != lastReportedPeakDepth) {
+      metrics.count(Constants.RECORD_QUEUE_PEAK_DEPTH_METRIC, peakDepth - lastReportedPeakDepth);
+      lastReportedPeakDepth = peakDepth;
+    }
+    long now = System.currentTimeMillis();
+    stats.add(Constants.INPUT_FLOWLET_STATS, Constants.RECORD_QUEUE_DEPTH_METRIC, StreamEngineStats.Kind.GAUGE, now,
+              depth);
+    stats.add(Constants.INPUT_FLOWLET_STATS, Constants.RECORD_QUEUE_PEAK_DEPTH_METRIC, StreamEngineStats.Kind.GAUGE,
+              now, peakDepth);
+  }
+
+  private void count(String counterName, long delta) {
+    long remaining = delta;
+    while (remaining > Integer.MAX_VALUE) {
+      metrics.count(counterName, Integer.MAX_VALUE);
+      remaining -= Integer.MAX_VALUE;
     }
+    metrics.count(counterName, (int) Math.max(remaining, Integer.MIN_VALUE));
   }
 }
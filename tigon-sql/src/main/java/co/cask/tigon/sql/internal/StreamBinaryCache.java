@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.InputSupplier;
+import com.google.common.io.OutputSupplier;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed cache of compiled Stream Engine binaries.
+ * The binaries directory is stored as a tar.gz archive named by the key, in each of a list of cache
+ * {@link org.apache.twill.filesystem.Location}s, for example on local disk followed by a location on HDFS that is
+ * shared by all containers. Lookups go through the locations in order, and an archive found in a later location is
+ * copied to the earlier ones. Archives are written to a temporary file first, hence concurrent writers of the same
+ * key do not corrupt it. Failures to access a location are logged and treated as cache misses.
+ */
+public class StreamBinaryCache {
+  private static final Logger LOG = LoggerFactory.getLogger(StreamBinaryCache.class);
+  private static final String ARCHIVE_SUFFIX = ".tar.gz";
+  private final List<Location> locations;
+
+  public StreamBinaryCache(List<Location> locations) {
+    this.locations = ImmutableList.copyOf(locations);
+  }
+
+  /**
+   * Restores the binaries of a key into a directory.
+   * @param key Cache key.
+   * @param dir Directory to restore the binaries into.
+   * @return true if the binaries of the key were found and restored.
+   */
+  public boolean restore(String key, File dir) {
+    for (int i = 0; i < locations.size(); i++) {
+      try {
+        Location archive = locations.get(i).append(key + ARCHIVE_SUFFIX);
+        if (!archive.exists()) {
+          continue;
+        }
+        extract(archive, dir);
+        for (int j = 0; j < i; j++) {
+          copy(archive, locations.get(j));
+        }
+        LOG.info("Restored Stream Engine binaries from {}", archive.toURI());
+        return true;
+      } catch (IOException e) {
+        LOG.warn("Failed to restore Stream Engine binaries {} from {}", key, locations.get(i).toURI(), e);
+        FileUtils.deleteQuietly(dir);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Stores the binaries of a key in all cache locations.
+   * @param key Cache key.
+   * @param dir Directory that contains the binaries.
+   */
+  public void store(String key, File dir) {
+    File archive = null;
+    try {
+      archive = File.createTempFile(key, ARCHIVE_SUFFIX);
+      archive(dir, archive);
+      for (Location location : locations) {
+        try {
+          location.mkdirs();
+          Location tmp = location.getTempFile(ARCHIVE_SUFFIX);
+          Files.copy(archive, newOutputSupplier(tmp));
+          rename(tmp, location.append(key + ARCHIVE_SUFFIX));
+          LOG.info("Stored Stream Engine binaries in {}", location.toURI());
+        } catch (IOException e) {
+          LOG.warn("Failed to store Stream Engine binaries {} in {}", key, location.toURI(), e);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to archive Stream Engine binaries {}", key, e);
+    } finally {
+      if (archive != null) {
+        archive.delete();
+      }
+    }
+  }
+
+  private void copy(Location archive, Location location) throws IOException {
+    location.mkdirs();
+    Location tmp = location.getTempFile(ARCHIVE_SUFFIX);
+    ByteStreams.copy(newInputSupplier(archive), newOutputSupplier(tmp));
+    rename(tmp, location.append(archive.getName()));
+  }
+
+  //Renaming fails if another writer stored the same key first, which has the same content.
+  private void rename(Location tmp, Location archive) throws IOException {
+    if (tmp.renameTo(archive) == null) {
+      tmp.delete();
+    }
+  }
+
+  private void archive(File dir, File archive) throws IOException {
+    TarArchiveOutputStream out = new TarArchiveOutputStream(new GZIPOutputStream(new FileOutputStream(archive)));
+    try {
+      addEntries(dir, "", out);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void addEntries(File dir, String prefix, TarArchiveOutputStream out) throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      throw new IOException("Failed to list " + dir);
+    }
+    for (File file : files) {
+      String name = prefix + file.getName();
+      if (file.isDirectory()) {
+        out.putArchiveEntry(new TarArchiveEntry(file, name + "/"));
+        out.closeArchiveEntry();
+        addEntries(file, name + "/", out);
+      } else {
+        TarArchiveEntry entry = new TarArchiveEntry(file, name);
+        entry.setMode(file.canExecute() ? 0755 : 0644);
+        out.putArchiveEntry(entry);
+        Files.copy(file, out);
+        out.closeArchiveEntry();
+      }
+    }
+  }
+
+  private void extract(Location archive, File dir) throws IOException {
+    TarArchiveInputStream in = new TarArchiveInputStream(new GZIPInputStream(archive.getInputStream()));
+    try {
+      TarArchiveEntry entry = in.getNextTarEntry();
+      while (entry != null) {
+        File file = new File(dir, entry.getName());
+        if (entry.isDirectory()) {
+          file.mkdirs();
+        } else {
+          file.getParentFile().mkdirs();
+          OutputStream out = Files.newOutputStreamSupplier(file).getOutput();
+          try {
+            ByteStreams.copy(in, out);
+          } finally {
+            out.close();
+          }
+          file.setExecutable((entry.getMode() & 0100) != 0, false);
+        }
+        entry = in.getNextTarEntry();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static InputSupplier<InputStream> newInputSupplier(final Location location) {
+    return new InputSupplier<InputStream>() {
+      @Override
+      public InputStream getInput() throws IOException {
+        return location.getInputStream();
+      }
+    };
+  }
+
+  private static OutputSupplier<OutputStream> newOutputSupplier(final Location location) {
+    return new OutputSupplier<OutputStream>() {
+      @Override
+      public OutputStream getOutput() throws IOException {
+        return location.getOutputStream();
+      }
+    };
+  }
+}
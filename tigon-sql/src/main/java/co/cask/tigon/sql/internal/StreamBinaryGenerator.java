@@ -22,9 +22,14 @@ import co.cask.tigon.sql.util.Platform;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
+import com.google.common.io.Resources;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
@@ -36,9 +41,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.Collection;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
 
 /**
  * Generate Stream Engine Binaries.
@@ -47,35 +54,56 @@ public class StreamBinaryGenerator {
   private static final Logger LOG = LoggerFactory.getLogger(StreamBinaryGenerator.class);
   private final File dir;
   private final InputFlowletSpecification spec;
+  private final StreamBinaryCache cache;
+  // SHA-1 of the Stream Engine library of this platform
+  private static HashCode libraryHash;
 
   public StreamBinaryGenerator(File dir, InputFlowletSpecification spec) {
+    this(dir, spec, null);
+  }
+
+  /**
+   * Constructor for StreamBinaryGenerator
+   * @param cache {@link StreamBinaryCache} for reusing the binaries that were compiled from the same configuration
+   *              files and library, null to always compile the binaries.
+   */
+  public StreamBinaryGenerator(File dir, InputFlowletSpecification spec, @Nullable StreamBinaryCache cache) {
     this.dir = dir;
     this.spec = spec;
+    this.cache = cache;
   }
 
   public File createStreamProcesses() {
     try {
-      File configDir = createStreamLibrary(dir);
-      CompileStreamBinaries compileBinaries = new CompileStreamBinaries(configDir);
       StreamConfigGenerator generator = new StreamConfigGenerator(spec);
-      File outputSpec = createFile(configDir, "output_spec.cfg");
-      File packetSchema = createFile(configDir, "packet_schema.txt");
-      File ifresXml = createFile(configDir, "ifres.xml");
       Map.Entry<String, String> ifqContent = generator.generateHostIfq();
-      String ifqFile = String.format("%s.ifq", ifqContent.getKey());
-      File hostIfq = createFile(configDir, ifqFile);
-
-      writeToLocation(outputSpec, generator.generateOutputSpec());
-      writeToLocation(packetSchema, generator.generatePacketSchema());
-      writeToLocation(ifresXml, generator.generateIfresXML());
-      writeToLocation(hostIfq, generator.generateHostIfq().getValue());
+      Collection<String> gsqlContent = generator.generateQueryFiles().values();
+      Map<String, String> configFiles = Maps.newLinkedHashMap();
+      configFiles.put("output_spec.cfg", generator.generateOutputSpec());
+      configFiles.put("packet_schema.txt", generator.generatePacketSchema());
+      configFiles.put("ifres.xml", generator.generateIfresXML());
+      configFiles.put(String.format("%s.ifq", ifqContent.getKey()), ifqContent.getValue());
+      configFiles.put(Constants.GSQL_FILE, Joiner.on(";\n").join(gsqlContent));
+
+      String cacheKey = null;
+      if (cache != null) {
+        cacheKey = getCacheKey(configFiles);
+        File queryDir = new File(new File(dir, "work"), "query");
+        if (cache.restore(cacheKey, queryDir)) {
+          return queryDir;
+        }
+      }
 
-      Map<String, String> gsqlFiles = generator.generateQueryFiles();
-      Collection<String> fileContent = gsqlFiles.values();
-      File file = createFile(configDir, Constants.GSQL_FILE);
-      writeToLocation(file, Joiner.on(";\n").join(fileContent));
+      File configDir = createStreamLibrary(dir);
+      CompileStreamBinaries compileBinaries = new CompileStreamBinaries(configDir);
+      for (Map.Entry<String, String> configFile : configFiles.entrySet()) {
+        writeToLocation(createFile(configDir, configFile.getKey()), configFile.getValue());
+      }
 
       compileBinaries.generateBinaries();
+      if (cache != null) {
+        cache.store(cacheKey, configDir);
+      }
       return configDir;
     } catch (Throwable t) {
       LOG.error(t.getMessage(), t);
@@ -84,6 +112,28 @@ public class StreamBinaryGenerator {
     }
   }
 
+  /**
+   * The binaries only depend on the configuration files and the library they are compiled with, hence the key is
+   * the hash of both.
+   */
+  private String getCacheKey(Map<String, String> configFiles) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putBytes(getLibraryHash().asBytes());
+    for (Map.Entry<String, String> configFile : configFiles.entrySet()) {
+      hasher.putInt(configFile.getKey().length()).putString(configFile.getKey(), Charsets.UTF_8);
+      hasher.putInt(configFile.getValue().length()).putString(configFile.getValue(), Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static synchronized HashCode getLibraryHash() throws IOException {
+    if (libraryHash == null) {
+      URL library = Resources.getResource(StreamBinaryGenerator.class, "/" + Platform.libraryResource());
+      libraryHash = ByteStreams.hash(Resources.newInputStreamSupplier(library), Hashing.sha1());
+    }
+    return libraryHash;
+  }
+
   private File createStreamLibrary(File dir) throws IOException, ArchiveException {
     if (!dir.exists()) {
       dir.mkdirs();
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.internal;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Statistics of the Stream Engine processes, which run one query (FTA) each, and of the InputFlowlet itself.
+ * Every statistic of a process is kept as a time series of the last samples, where a sample of a counter is the
+ * increment since the previous sample (as reported by the Stream Engine processes) and a sample of a gauge is the
+ * current value. The {@link Summary} of a series holds the rate per second of a counter over the series.
+ */
+public class StreamEngineStats {
+
+  /**
+   * Kind of a statistic.
+   */
+  public enum Kind {
+    COUNTER,
+    GAUGE
+  }
+
+  private final int seriesSize;
+  // Process Name -> Statistic Name -> Series
+  private final Map<String, Map<String, Series>> processStats = Maps.newTreeMap();
+
+  /**
+   * Constructor for StreamEngineStats
+   * @param seriesSize Number of samples kept for each statistic.
+   */
+  public StreamEngineStats(int seriesSize) {
+    Preconditions.checkArgument(seriesSize > 1, "Series size must be > 1.");
+    this.seriesSize = seriesSize;
+  }
+
+  /**
+   * Adds a sample of a statistic.
+   * @param processName Name of the process, or of the query it runs.
+   * @param statName Name of the statistic.
+   * @param kind Kind of the statistic.
+   * @param timestamp Time of the sample in milliseconds.
+   * @param value Value of the sample.
+   */
+  public synchronized void add(String processName, String statName, Kind kind, long timestamp, double value) {
+    Map<String, Series> stats = processStats.get(processName);
+    if (stats == null) {
+      stats = Maps.newTreeMap();
+      processStats.put(processName, stats);
+    }
+    Series series = stats.get(statName);
+    if (series == null) {
+      series = new Series(kind, seriesSize);
+      stats.put(statName, series);
+    }
+    series.add(timestamp, value);
+  }
+
+  /**
+   * @return Process Name -> Statistic Name -> {@link Summary} of all processes.
+   */
+  public synchronized Map<String, Map<String, Summary>> getStats() {
+    ImmutableMap.Builder<String, Map<String, Summary>> builder = ImmutableMap.builder();
+    for (String processName : processStats.keySet()) {
+      builder.put(processName, getStats(processName));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param processName Name of the process.
+   * @return Statistic Name -> {@link Summary} of a process, empty if there are no statistics of the process.
+   */
+  public synchronized Map<String, Summary> getStats(String processName) {
+    Map<String, Series> stats = processStats.get(processName);
+    if (stats == null) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<String, Summary> builder = ImmutableMap.builder();
+    for (Map.Entry<String, Series> stat : stats.entrySet()) {
+      builder.put(stat.getKey(), stat.getValue().summarize());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Summary of the time series of a statistic.
+   */
+  public static final class Summary {
+    private final Kind kind;
+    private final double last;
+    private final double max;
+    private final double total;
+    private final double rate;
+    private final long[] timestamps;
+    private final double[] values;
+
+    Summary(Kind kind, double last, double max, double total, double rate, long[] timestamps, double[] values) {
+      this.kind = kind;
+      this.last = last;
+      this.max = max;
+      this.total = total;
+      this.rate = rate;
+      this.timestamps = timestamps;
+      this.values = values;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * @return Value of the latest sample.
+     */
+    public double getLast() {
+      return last;
+    }
+
+    /**
+     * @return Largest value of the samples in the series.
+     */
+    public double getMax() {
+      return max;
+    }
+
+    /**
+     * @return Sum of all samples of a counter since the first sample, 0 for a gauge.
+     */
+    public double getTotal() {
+      return total;
+    }
+
+    /**
+     * @return Increments per second of a counter over the series, 0 for a gauge or if there is only one sample.
+     */
+    public double getRate() {
+      return rate;
+    }
+
+    /**
+     * @return Timestamps of the samples in the series, oldest first.
+     */
+    public long[] getTimestamps() {
+      return timestamps.clone();
+    }
+
+    /**
+     * @return Values of the samples in the series, oldest first.
+     */
+    public double[] getValues() {
+      return values.clone();
+    }
+  }
+
+  /**
+   * Ring buffer of the latest samples of a statistic.
+   */
+  private static final class Series {
+    private final Kind kind;
+    private final long[] timestamps;
+    private final double[] values;
+    private int start;
+    private int size;
+    private double total;
+
+    Series(Kind kind, int capacity) {
+      this.kind = kind;
+      this.timestamps = new long[capacity];
+      this.values = new double[capacity];
+    }
+
+    void add(long timestamp, double value) {
+      int index = (start + size) % timestamps.length;
+      if (size == timestamps.length) {
+        start = (start + 1) % timestamps.length;
+      } else {
+        size++;
+      }
+      timestamps[index] = timestamp;
+      values[index] = value;
+      if (kind == Kind.COUNTER) {
+        total += value;
+      }
+    }
+
+    Summary summarize() {
+      long[] sampleTimestamps = new long[size];
+      double[] sampleValues = new double[size];
+      double max = Double.NEGATIVE_INFINITY;
+      // The first sample covers the interval before it, hence it is not part of the rate
+      double increments = 0;
+      for (int i = 0; i < size; i++) {
+        int index = (start + i) % timestamps.length;
+        sampleTimestamps[i] = timestamps[index];
+        sampleValues[i] = values[index];
+        max = Math.max(max, values[index]);
+        if (i > 0) {
+          increments += values[index];
+        }
+      }
+      double rate = 0;
+      long elapsed = size > 1 ? sampleTimestamps[size - 1] - sampleTimestamps[0] : 0;
+      if (kind == Kind.COUNTER && elapsed > 0) {
+        rate = increments * 1000 / elapsed;
+      }
+      return new Summary(kind, sampleValues[size - 1], max, total, rate, sampleTimestamps, sampleValues);
+    }
+  }
+}
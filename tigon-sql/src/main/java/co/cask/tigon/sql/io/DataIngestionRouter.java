@@ -17,32 +17,51 @@
 package co.cask.tigon.sql.io;
 
 import co.cask.http.AbstractHttpHandler;
+import co.cask.http.BodyConsumer;
 import co.cask.http.HttpResponder;
 import co.cask.http.NettyHttpService;
+import co.cask.tigon.sql.conf.Constants;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.util.concurrent.AbstractIdleService;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.ServiceListenerAdapter;
 import org.apache.twill.common.Threads;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMessage;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.DefaultObjectSizeEstimator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 
 /**
  * Netty Http Service Endpoint for the Users to ingest data.
+ * Requests are handled on a thread pool that accounts for the bytes of each connection that are not yet handled,
+ * and stops reading from a connection while it has more than
+ * {@link Constants#ROUTER_MAX_BUFFERED_UPLOAD_BYTES} pending. Hence a chunked upload that waits for a busy stream
+ * is throttled by TCP flow control instead of being buffered in memory.
  */
 public class DataIngestionRouter extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(DataIngestionRouter.class);
   private final HttpRouterClientService clientService;
+  private final long writeTimeout;
   private int httpPort;
   private NettyHttpService httpService;
+  private ExecutionHandler executionHandler;
 
   public DataIngestionRouter(Map<String, InetSocketAddress> ingestionServerMap) {
     this(ingestionServerMap, 0);
@@ -50,16 +69,43 @@ public class DataIngestionRouter extends AbstractIdleService {
 
   public DataIngestionRouter(Map<String, InetSocketAddress> ingestionServerMap,
                              int httpPort) {
-    this.clientService = new HttpRouterClientService(ingestionServerMap);
+    this(ingestionServerMap, httpPort, Constants.DEFAULT_ROUTER_MAX_INFLIGHT_BYTES,
+         Constants.DEFAULT_ROUTER_WRITE_TIMEOUT);
+  }
+
+  /**
+   * Constructor for DataIngestionRouter
+   * @param ingestionServerMap Map of stream names to the addresses of their ingestion servers
+   * @param httpPort HTTP port, or 0 for a random port
+   * @param maxInFlightBytes Maximum number of bytes per stream that are forwarded but not yet flushed
+   * @param writeTimeout Time in milliseconds that a request waits for its stream before it is answered with 503
+   */
+  public DataIngestionRouter(Map<String, InetSocketAddress> ingestionServerMap,
+                             int httpPort, long maxInFlightBytes, long writeTimeout) {
+    this.clientService = new HttpRouterClientService(ingestionServerMap, maxInFlightBytes);
     this.httpPort = httpPort;
+    this.writeTimeout = writeTimeout;
   }
 
   @Override
   protected void startUp() throws Exception {
+    executionHandler = new ExecutionHandler(
+      new OrderedMemoryAwareThreadPoolExecutor(Constants.ROUTER_EXEC_THREADS,
+                                               Constants.ROUTER_MAX_BUFFERED_UPLOAD_BYTES, 0L,
+                                               60L, TimeUnit.SECONDS, new HttpContentSizeEstimator(),
+                                               Threads.createDaemonThreadFactory("ingestion-router-executor-%d")));
     httpService = NettyHttpService.builder()
-      .addHttpHandlers(ImmutableList.of(new ForwardingHandler(clientService)))
+      .addHttpHandlers(ImmutableList.of(new ForwardingHandler(clientService, writeTimeout)))
       .setHost("0.0.0.0")
       .setPort(httpPort)
+      .setExecThreadPoolSize(0)
+      .modifyChannelPipeline(new Function<ChannelPipeline, ChannelPipeline>() {
+        @Override
+        public ChannelPipeline apply(ChannelPipeline pipeline) {
+          pipeline.addBefore("dispatcher", "executor", executionHandler);
+          return pipeline;
+        }
+      })
       .build();
     httpService.addListener(new ServiceListenerAdapter() {
       private Cancellable cancellable;
@@ -93,6 +139,7 @@ public class DataIngestionRouter extends AbstractIdleService {
   @Override
   protected void shutDown() throws Exception {
     httpService.stopAndWait();
+    executionHandler.releaseExternalResources();
     clientService.stopAndWait();
   }
 
@@ -100,15 +147,39 @@ public class DataIngestionRouter extends AbstractIdleService {
     return httpService.getBindAddress();
   }
 
+  /**
+   * Estimates the size of HTTP requests and chunks by their content, which the default estimator does not see.
+   */
+  private static final class HttpContentSizeEstimator extends DefaultObjectSizeEstimator {
+    @Override
+    public int estimateSize(Object o) {
+      if (o instanceof HttpChunk) {
+        return ((HttpChunk) o).getContent().readableBytes();
+      }
+      if (o instanceof HttpMessage) {
+        return ((HttpMessage) o).getContent().readableBytes();
+      }
+      return super.estimateSize(o);
+    }
+  }
+
   /**
    * HTTP Endpoint handler method.
+   * Data is only forwarded while the stream is below its in-flight limit. Otherwise requests wait for the stream
+   * up to the write timeout, and are then answered with 503 Service Unavailable and a Retry-After header.
    */
   @Path("/v1/tigon")
   public static class ForwardingHandler extends AbstractHttpHandler {
     private final HttpRouterClientService clientService;
+    private final long writeTimeout;
 
     public ForwardingHandler(HttpRouterClientService clientService) {
+      this(clientService, Constants.DEFAULT_ROUTER_WRITE_TIMEOUT);
+    }
+
+    public ForwardingHandler(HttpRouterClientService clientService, long writeTimeout) {
       this.clientService = clientService;
+      this.writeTimeout = writeTimeout;
     }
 
     @Path("{streamname}")
@@ -116,11 +187,98 @@ public class DataIngestionRouter extends AbstractIdleService {
     public void ingestData(HttpRequest request, HttpResponder responder, @PathParam("streamname") String streamName) {
       //Forward the data to the correct TCP endpoint based on the stream name.
       //TODO: Check if the stream name is valid and return NOT_FOUND if stream name is not present
-      if (clientService.sendData(streamName, request.getContent())) {
+      HttpRouterClientService.StreamConnection connection = clientService.getConnection(streamName);
+      if (connection == null) {
+        responder.sendStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        return;
+      }
+      if (!awaitWritable(connection)) {
+        sendUnavailable(responder);
+        return;
+      }
+      if (connection.write(request.getContent())) {
         responder.sendStatus(HttpResponseStatus.OK);
         return;
       }
       responder.sendStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
     }
+
+    /**
+     * Streams a (chunked) upload of many records to a stream. The upload is forwarded chunk by chunk over a
+     * connection of its own, so the records need not be aligned with the chunks. While the stream is busy, the
+     * chunks are not consumed and the upload is throttled. If the stream stays busy for longer than the write
+     * timeout, the request is answered with 503 Service Unavailable and the rest of the upload is discarded.
+     */
+    @Path("{streamname}/bulk")
+    @POST
+    public BodyConsumer ingestBulkData(HttpRequest request, HttpResponder responder,
+                                       @PathParam("streamname") String streamName) {
+      return new BulkBodyConsumer(streamName, clientService.openConnection(streamName));
+    }
+
+    private boolean awaitWritable(HttpRouterClientService.StreamConnection connection) {
+      try {
+        return connection.awaitWritable(writeTimeout, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    private static void sendUnavailable(HttpResponder responder) {
+      responder.sendStatus(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                           ImmutableMultimap.of(HttpHeaders.Names.RETRY_AFTER,
+                                                Integer.toString(Constants.ROUTER_RETRY_AFTER)));
+    }
+
+    /**
+     * Forwards the chunks of an upload. Responds once the upload is finished or was rejected.
+     */
+    private final class BulkBodyConsumer extends BodyConsumer {
+      private final String streamName;
+      private final HttpRouterClientService.StreamConnection connection;
+      private HttpResponseStatus failure;
+
+      private BulkBodyConsumer(String streamName, HttpRouterClientService.StreamConnection connection) {
+        this.streamName = streamName;
+        this.connection = connection;
+        this.failure = connection == null ? HttpResponseStatus.INTERNAL_SERVER_ERROR : null;
+      }
+
+      @Override
+      public void chunk(ChannelBuffer request, HttpResponder responder) {
+        if (failure != null) {
+          return;
+        }
+        if (!awaitWritable(connection)) {
+          LOG.warn("Rejecting upload to stream {} since the stream is busy", streamName);
+          failure = HttpResponseStatus.SERVICE_UNAVAILABLE;
+          connection.close();
+          sendUnavailable(responder);
+        } else if (!connection.write(request)) {
+          failure = HttpResponseStatus.INTERNAL_SERVER_ERROR;
+        }
+      }
+
+      @Override
+      public void finished(HttpResponder responder) {
+        if (failure == HttpResponseStatus.SERVICE_UNAVAILABLE) {
+          // Already responded
+          return;
+        }
+        if (connection != null) {
+          connection.close();
+        }
+        responder.sendStatus(failure == null ? HttpResponseStatus.OK : failure);
+      }
+
+      @Override
+      public void handleError(Throwable cause) {
+        LOG.error("Upload to stream {} failed", streamName, cause);
+        if (connection != null) {
+          connection.close();
+        }
+      }
+    }
   }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.io;
+
+import co.cask.tigon.sql.flowlet.GDATField;
+import co.cask.tigon.sql.flowlet.GDATFieldType;
+import co.cask.tigon.sql.flowlet.GDATRecordBatch;
+import co.cask.tigon.sql.flowlet.StreamSchema;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GDATBatchDecoder
+ * {@link co.cask.tigon.sql.flowlet.GDATRecordBatch} over the {@link co.cask.tigon.sql.io.GDATDecoder}s of the
+ * records of one query output. The offset of each field within a record is computed from the schema once, since
+ * all fields have a fixed size and the string payloads follow after the fields.
+ */
+public class GDATBatchDecoder implements GDATRecordBatch {
+  private final Map<String, Integer> fieldIndexes;
+  private final GDATFieldType[] fieldTypes;
+  private final int[] fieldOffsets;
+  private final List<GDATDecoder> records;
+
+  /**
+   * Constructor for GDATBatchDecoder
+   * @param schema {@link co.cask.tigon.sql.flowlet.StreamSchema} of the query output
+   */
+  public GDATBatchDecoder(StreamSchema schema) {
+    List<GDATField> fields = schema.getFields();
+    ImmutableMap.Builder<String, Integer> indexes = ImmutableMap.builder();
+    fieldTypes = new GDATFieldType[fields.size()];
+    fieldOffsets = new int[fields.size()];
+    int offset = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      GDATField field = fields.get(i);
+      indexes.put(field.getName(), i);
+      fieldTypes[i] = field.getType();
+      fieldOffsets[i] = offset;
+      offset += field.getType().getSize();
+    }
+    fieldIndexes = indexes.build();
+    records = Lists.newArrayList();
+  }
+
+  /**
+   * Add a record to the end of the batch
+   * @param record {@link co.cask.tigon.sql.io.GDATDecoder} object of the record
+   */
+  public void add(GDATDecoder record) {
+    records.add(record);
+  }
+
+  /**
+   * Removes all records from the batch
+   */
+  public void clear() {
+    records.clear();
+  }
+
+  /**
+   * Checks if the batch is empty
+   * @return Boolean true if there are no records in the batch
+   */
+  public boolean isEmpty() {
+    return records.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return records.size();
+  }
+
+  @Override
+  public int getFieldIndex(String name) {
+    Integer index = fieldIndexes.get(name);
+    Preconditions.checkArgument(index != null, "No field with name %s.", name);
+    return index;
+  }
+
+  @Override
+  public GDATFieldType getFieldType(int field) {
+    return fieldTypes[field];
+  }
+
+  @Override
+  public int getInt(int record, int field) {
+    return records.get(record).getInt(getOffset(field, GDATFieldType.INT));
+  }
+
+  @Override
+  public long getLong(int record, int field) {
+    return records.get(record).getLong(getOffset(field, GDATFieldType.LONG));
+  }
+
+  @Override
+  public double getDouble(int record, int field) {
+    return records.get(record).getDouble(getOffset(field, GDATFieldType.DOUBLE));
+  }
+
+  @Override
+  public boolean getBool(int record, int field) {
+    return records.get(record).getInt(getOffset(field, GDATFieldType.BOOL)) != 0;
+  }
+
+  @Override
+  public String getString(int record, int field) {
+    return records.get(record).getString(getOffset(field, GDATFieldType.STRING));
+  }
+
+  private int getOffset(int field, GDATFieldType type) {
+    Preconditions.checkArgument(fieldTypes[field] == type, "Field %s is of type %s, not %s.",
+                                field, fieldTypes[field], type);
+    return fieldOffsets[field];
+  }
+}
@@ -56,6 +56,42 @@ public class GDATDecoder implements Decoder {
     return recordLength;
   }
 
+  /**
+   * Reads the int at the given offset of the data record, without changing the position.
+   */
+  public int getInt(int offset) {
+    return dataRecord.getInt(offset);
+  }
+
+  /**
+   * Reads the long at the given offset of the data record, without changing the position.
+   */
+  public long getLong(int offset) {
+    return dataRecord.getLong(offset);
+  }
+
+  /**
+   * Reads the double at the given offset of the data record, without changing the position.
+   */
+  public double getDouble(int offset) {
+    return dataRecord.getDouble(offset);
+  }
+
+  /**
+   * Reads the string with the given offset of its length and index fields, without changing the position.
+   */
+  public String getString(int offset) {
+    int length = dataRecord.getInt(offset);
+    int index = dataRecord.getInt(offset + Ints.BYTES);
+    if (dataRecord.hasArray()) {
+      return new String(dataRecord.array(), dataRecord.arrayOffset() + index, length, Charsets.UTF_8);
+    }
+    ByteBuffer payload = dataRecord.duplicate();
+    payload.position(index);
+    payload.limit(index + length);
+    return Charsets.UTF_8.decode(payload).toString();
+  }
+
   @Override
   public Object readNull() throws IOException {
     return null;
@@ -131,8 +131,15 @@ public class GDATEncoder implements Encoder {
 
   @Override
   public Encoder writeString(String s) throws IOException {
+    return writeUTF8String(s.getBytes(Charsets.UTF_8));
+  }
+
+  /**
+   * Writes a string that is already encoded in UTF-8. The byte array is kept until the record is written and must
+   * not be modified before that.
+   */
+  public Encoder writeUTF8String(byte[] stringBytes) throws IOException {
     // String data to be inserted at location -> buffer.size()
-    byte[] stringBytes = s.getBytes(Charsets.UTF_8);
     stringPayloadSize += stringBytes.length;
     stringOffsetLocations.add(Maps.immutableEntry(buffer.size(), stringBytes));
     return this;
@@ -182,7 +189,17 @@ public class GDATEncoder implements Encoder {
     for (Map.Entry<Integer, byte[]> entry : stringOffsetLocations) {
       outputStream.write(entry.getValue());
     }
+    reset();
+  }
+
+  /**
+   * Discards all the values written since the last record, so that the encoder can be reused for the next record.
+   * This is done by {@link #writeTo(OutputStream)} and {@link #writeEOFRecord(OutputStream)} already.
+   */
+  public void reset() {
     buffer.reset();
+    stringOffsetLocations.clear();
+    stringPayloadSize = 0;
   }
 
   /**
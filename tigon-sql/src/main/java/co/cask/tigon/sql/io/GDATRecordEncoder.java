@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.io;
+
+import co.cask.tigon.sql.flowlet.GDATField;
+import co.cask.tigon.sql.flowlet.GDATFieldType;
+import co.cask.tigon.sql.flowlet.GDATRecordType;
+import co.cask.tigon.sql.flowlet.StreamSchema;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes GDAT data records of one {@link co.cask.tigon.sql.flowlet.StreamSchema} straight into a
+ * {@link org.jboss.netty.buffer.ChannelBuffer}.
+ * Unlike {@link co.cask.tigon.sql.io.GDATEncoder}, the fields are set by index into a record buffer that is reused
+ * for every record, and strings are encoded to UTF-8 while the record is written, so that encoding a record does
+ * not allocate. The values are kept after a record is written, hence only the fields that change need to be set for
+ * the next record. Instances are not thread safe.
+ */
+public final class GDATRecordEncoder {
+  private final Map<String, Integer> fieldIndexes;
+  private final GDATFieldType[] fieldTypes;
+  private final int[] fieldOffsets;
+  private final int[] stringFields;
+  private final int[] stringLengths;
+  private final CharSequence[] strings;
+  // Fixed size part of the record, followed by the record marker
+  private final byte[] record;
+  private final ByteBuffer recordBuffer;
+
+  /**
+   * Constructor for GDATRecordEncoder
+   * @param schema {@link co.cask.tigon.sql.flowlet.StreamSchema} of the records
+   */
+  public GDATRecordEncoder(StreamSchema schema) {
+    List<GDATField> fields = schema.getFields();
+    ImmutableMap.Builder<String, Integer> indexes = ImmutableMap.builder();
+    fieldTypes = new GDATFieldType[fields.size()];
+    fieldOffsets = new int[fields.size()];
+    int stringCount = 0;
+    int offset = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      GDATField field = fields.get(i);
+      indexes.put(field.getName(), i);
+      fieldTypes[i] = field.getType();
+      fieldOffsets[i] = offset;
+      offset += field.getType().getSize();
+      if (field.getType() == GDATFieldType.STRING) {
+        stringCount++;
+      }
+    }
+    fieldIndexes = indexes.build();
+    stringFields = new int[stringCount];
+    stringLengths = new int[stringCount];
+    strings = new CharSequence[fields.size()];
+    for (int i = 0, j = 0; i < fields.size(); i++) {
+      if (fieldTypes[i] == GDATFieldType.STRING) {
+        stringFields[j++] = i;
+        strings[i] = "";
+      }
+    }
+    record = new byte[offset + 1];
+    record[offset] = GDATRecordType.DATA.getRecordMarker();
+    recordBuffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Get the index of a field, to be used with the setters.
+   * @param name Field Name.
+   * @return Field Index.
+   * @throws IllegalArgumentException if there is no field with the given name.
+   */
+  public int getFieldIndex(String name) {
+    Integer index = fieldIndexes.get(name);
+    Preconditions.checkArgument(index != null, "No field with name %s.", name);
+    return index;
+  }
+
+  /**
+   * Sets an {@link GDATFieldType#INT} field.
+   */
+  public GDATRecordEncoder setInt(int field, int value) {
+    recordBuffer.putInt(getOffset(field, GDATFieldType.INT), value);
+    return this;
+  }
+
+  /**
+   * Sets a {@link GDATFieldType#LONG} field.
+   */
+  public GDATRecordEncoder setLong(int field, long value) {
+    recordBuffer.putLong(getOffset(field, GDATFieldType.LONG), value);
+    return this;
+  }
+
+  /**
+   * Sets a {@link GDATFieldType#DOUBLE} field.
+   */
+  public GDATRecordEncoder setDouble(int field, double value) {
+    recordBuffer.putDouble(getOffset(field, GDATFieldType.DOUBLE), value);
+    return this;
+  }
+
+  /**
+   * Sets a {@link GDATFieldType#BOOL} field.
+   */
+  public GDATRecordEncoder setBool(int field, boolean value) {
+    recordBuffer.putInt(getOffset(field, GDATFieldType.BOOL), value ? 1 : 0);
+    return this;
+  }
+
+  /**
+   * Sets a {@link GDATFieldType#STRING} field. The characters are only read when the record is written, hence
+   * they must not change before that.
+   */
+  public GDATRecordEncoder setString(int field, CharSequence value) {
+    getOffset(field, GDATFieldType.STRING);
+    strings[field] = Preconditions.checkNotNull(value);
+    return this;
+  }
+
+  /**
+   * Appends a GDAT DATA record with the current values to a buffer.
+   * @param out Buffer to write to, it is expanded if it is dynamic.
+   * @return Number of bytes written.
+   */
+  public int writeTo(ChannelBuffer out) {
+    int stringOffset = record.length;
+    for (int i = 0; i < stringFields.length; i++) {
+      int field = stringFields[i];
+      int length = utf8Length(strings[field]);
+      stringLengths[i] = length;
+      // String fields hold the length and offset of the string payload, followed by 4 reserved bytes
+      recordBuffer.putInt(fieldOffsets[field], length);
+      recordBuffer.putInt(fieldOffsets[field] + Ints.BYTES, stringOffset);
+      recordBuffer.putInt(fieldOffsets[field] + 2 * Ints.BYTES, 0);
+      stringOffset += length;
+    }
+    out.ensureWritableBytes(Ints.BYTES + stringOffset);
+    //4 Bytes unsigned int in Big Endian Order to represent length of the data record.
+    out.writeByte(stringOffset >>> 24);
+    out.writeByte(stringOffset >>> 16);
+    out.writeByte(stringOffset >>> 8);
+    out.writeByte(stringOffset);
+    out.writeBytes(record);
+    for (int i = 0; i < stringFields.length; i++) {
+      writeUTF8(strings[stringFields[i]], stringLengths[i], out);
+    }
+    return Ints.BYTES + stringOffset;
+  }
+
+  private int getOffset(int field, GDATFieldType type) {
+    Preconditions.checkArgument(fieldTypes[field] == type, "Field %s is of type %s, not %s.",
+                                field, fieldTypes[field], type);
+    return fieldOffsets[field];
+  }
+
+  /**
+   * Number of bytes of the UTF-8 encoding of a string. Unpaired surrogates are encoded as '?', as
+   * {@link String#getBytes(java.nio.charset.Charset)} does.
+   */
+  private static int utf8Length(CharSequence s) {
+    int length = s.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x800) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+          // Surrogate pair, 4 bytes for two chars
+          bytes += 2;
+          i++;
+        } else if (!isSurrogate(c)) {
+          bytes += 2;
+        }
+      } else if (c >= 0x80) {
+        bytes++;
+      }
+    }
+    return bytes;
+  }
+
+  private static boolean isSurrogate(char c) {
+    return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+  }
+
+  private static void writeUTF8(CharSequence s, int utf8Length, ChannelBuffer out) {
+    int length = s.length();
+    if (utf8Length == length) {
+      // ASCII only
+      for (int i = 0; i < length; i++) {
+        out.writeByte(s.charAt(i));
+      }
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        out.writeByte(c);
+      } else if (c < 0x800) {
+        out.writeByte(0xC0 | (c >> 6));
+        out.writeByte(0x80 | (c & 0x3F));
+      } else if (!isSurrogate(c)) {
+        out.writeByte(0xE0 | (c >> 12));
+        out.writeByte(0x80 | ((c >> 6) & 0x3F));
+        out.writeByte(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        out.writeByte(0xF0 | (codePoint >> 18));
+        out.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+        out.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+        out.writeByte(0x80 | (codePoint & 0x3F));
+      } else {
+        out.writeByte('?');
+      }
+    }
+  }
+}
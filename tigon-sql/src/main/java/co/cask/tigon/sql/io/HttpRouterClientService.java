@@ -16,10 +16,13 @@
 
 package co.cask.tigon.sql.io;
 
+import co.cask.tigon.sql.conf.Constants;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractIdleService;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
@@ -31,24 +34,43 @@ import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HTTP Data Ingestion Router to TCP Server Routing via TCPClientService.
+ * The bytes written to the ingestion server of a stream, and not yet flushed to its socket, are counted per stream.
+ * A {@link StreamConnection} only accepts data while this count is below the in-flight limit and its channel is
+ * writable, so that a slow Stream Engine cannot make the router buffer data without bound.
  */
 //TODO: Remove this class. Wrap the DataSourceServer which exposes a write method and both the TCP Ingestion Server
 //and the DataIngestion Router NettyHTTP Service can write to it directly.
 public class HttpRouterClientService extends AbstractIdleService {
+  private static final Logger LOG = LoggerFactory.getLogger(HttpRouterClientService.class);
   private final Map<String, InetSocketAddress> serverMap;
+  private final Map<String, InFlightBytes> inFlightMap;
   private final ConcurrentMap<String, Channel> channelList = Maps.newConcurrentMap();
   private final ClientBootstrap clientBootstrap;
+  private final long maxInFlightBytes;
 
   public HttpRouterClientService(Map<String, InetSocketAddress> ingestionServerMap) {
+    this(ingestionServerMap, Constants.DEFAULT_ROUTER_MAX_INFLIGHT_BYTES);
+  }
+
+  public HttpRouterClientService(Map<String, InetSocketAddress> ingestionServerMap, long maxInFlightBytes) {
     this.serverMap = ingestionServerMap;
+    this.maxInFlightBytes = maxInFlightBytes;
+    ImmutableMap.Builder<String, InFlightBytes> inFlightBuilder = ImmutableMap.builder();
+    for (String streamName : ingestionServerMap.keySet()) {
+      inFlightBuilder.put(streamName, new InFlightBytes());
+    }
+    this.inFlightMap = inFlightBuilder.build();
     ChannelFactory factory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
                                                                Executors.newCachedThreadPool());
     this.clientBootstrap = new ClientBootstrap(factory);
@@ -75,12 +97,133 @@ public class HttpRouterClientService extends AbstractIdleService {
   }
 
   public boolean sendData(String channelName, ChannelBuffer data) {
+    StreamConnection connection = getConnection(channelName);
+    return connection != null && connection.write(data);
+  }
+
+  /**
+   * Returns the connection to the ingestion server of a stream that is shared by all the requests of the stream.
+   * @param channelName Name of the stream.
+   * @return {@link StreamConnection}, or null if the stream is unknown or its ingestion server is not connected.
+   */
+  public StreamConnection getConnection(String channelName) {
     Channel client = channelList.get(channelName);
     if (client != null && client.isConnected()) {
-      client.write(data);
+      return new StreamConnection(client, inFlightMap.get(channelName));
+    }
+    return null;
+  }
+
+  /**
+   * Opens a new connection to the ingestion server of a stream. Data written to a connection of its own is never
+   * interleaved with the data of other requests, hence long-lived uploads can be forwarded chunk by chunk.
+   * The in-flight limit is shared with all other connections of the stream. Blocks until connected.
+   * @param channelName Name of the stream.
+   * @return {@link StreamConnection} that needs to be closed by the caller, or null if the stream is unknown or
+   * the connection failed.
+   */
+  public StreamConnection openConnection(String channelName) {
+    InetSocketAddress address = serverMap.get(channelName);
+    if (address == null) {
+      return null;
+    }
+    ChannelFuture future = clientBootstrap.connect(address).awaitUninterruptibly();
+    if (!future.isSuccess()) {
+      LOG.warn("Failed to connect to ingestion server of stream {} at {}", channelName, address, future.getCause());
+      return null;
+    }
+    return new StreamConnection(future.getChannel(), inFlightMap.get(channelName));
+  }
+
+  /**
+   * Connection to the ingestion server of a stream.
+   */
+  public final class StreamConnection {
+    private final Channel channel;
+    private final InFlightBytes inFlight;
+
+    private StreamConnection(Channel channel, InFlightBytes inFlight) {
+      this.channel = channel;
+      this.inFlight = inFlight;
+    }
+
+    /**
+     * Checks if data can be written without exceeding the limits of the stream.
+     * @return Boolean true if the channel is writable and the in-flight bytes of the stream are below the limit.
+     */
+    public boolean isWritable() {
+      return channel.isWritable() && inFlight.get() < maxInFlightBytes;
+    }
+
+    /**
+     * Waits until data can be written, see {@link #isWritable()}.
+     * @return Boolean true if data can be written, false if timed out or the connection is closed.
+     */
+    public boolean awaitWritable(long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      synchronized (inFlight) {
+        while (!isWritable()) {
+          long remaining = deadline - System.nanoTime();
+          if (!channel.isConnected() || remaining <= 0) {
+            return false;
+          }
+          // Notified whenever a write of the stream completes, which is when the channel becomes writable again
+          TimeUnit.NANOSECONDS.timedWait(inFlight, remaining);
+        }
+      }
+      return channel.isConnected();
+    }
+
+    /**
+     * Writes data to the ingestion server. The data counts as in-flight until the write completes.
+     * @return Boolean false if the connection is closed.
+     */
+    public boolean write(ChannelBuffer data) {
+      if (!channel.isConnected()) {
+        return false;
+      }
+      final int size = data.readableBytes();
+      inFlight.add(size);
+      channel.write(data).addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+          inFlight.release(size);
+          if (!future.isSuccess()) {
+            LOG.error("Failed to forward {} bytes to ingestion server {}", size, channel.getRemoteAddress(),
+                      future.getCause());
+          }
+        }
+      });
       return true;
     }
-    return false;
+
+    /**
+     * Closes the connection once all data written to it is flushed. Must only be called for connections that
+     * were returned by {@link #openConnection(String)}.
+     */
+    public void close() {
+      channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
+  /**
+   * Number of bytes of a stream that are written but not yet flushed.
+   */
+  private static final class InFlightBytes {
+    private long bytes;
+
+    synchronized long get() {
+      return bytes;
+    }
+
+    synchronized void add(long size) {
+      bytes += size;
+    }
+
+    synchronized void release(long size) {
+      bytes -= size;
+      notifyAll();
+    }
   }
 
   private void setupClientPipeline() {
@@ -16,9 +16,11 @@
 
 package co.cask.tigon.sql.io;
 
+import co.cask.tigon.internal.io.DatumReaderFactory;
 import co.cask.tigon.internal.io.Schema;
 import co.cask.tigon.internal.io.UnsupportedTypeException;
 import co.cask.tigon.io.Decoder;
+import co.cask.tigon.sql.flowlet.GDATRecordBatch;
 import com.google.common.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +34,8 @@ import java.lang.reflect.Type;
  * MethodInvoker
  * This class is used for invoking the method of the callingObject. It uses
  * {@link co.cask.tigon.sql.io.POJOCreator} to decode the incoming data record and instantiate an object of the
- * method parameter type.
+ * method parameter type. Methods with a {@link co.cask.tigon.sql.flowlet.GDATRecordBatch} parameter are invoked
+ * with a batch of records instead.
  */
 
 public class MethodInvoker {
@@ -41,19 +44,22 @@ public class MethodInvoker {
   private final Method method;
   private final Class<?> methodParameterClass;
   private final POJOCreator pojoCreator;
+  private final boolean batchMethod;
 
   /**
    * Constructor for MethodInvoker
    * @param callingObject An instance of the Object to be used for invoking the method call
    * @param method The method object that is to be invoked by this class
    * @param inspectType {@link com.google.common.reflect.TypeToken} for the method
+   * @param schema {@link co.cask.tigon.internal.io.Schema} of the incoming data records
+   * @param datumReaderFactory {@link co.cask.tigon.internal.io.DatumReaderFactory} used to decode the data records
    * @throws UnsupportedTypeException if the {@link co.cask.tigon.sql.io.POJOCreator} cannot instantiate an
    * object of type outputClass
    * @throws java.lang.UnsupportedOperationException if the method parameter is defined through a parameterized object
    * instantiated at runtime
    */
-  public MethodInvoker(Object callingObject, Method method, TypeToken<?> inspectType, Schema schema)
-    throws UnsupportedTypeException {
+  public MethodInvoker(Object callingObject, Method method, TypeToken<?> inspectType, Schema schema,
+                       DatumReaderFactory datumReaderFactory) throws UnsupportedTypeException {
     this.method = method;
     this.callingObject = callingObject;
     Type param = inspectType.resolveType(method.getGenericParameterTypes()[0]).getType();
@@ -63,7 +69,15 @@ public class MethodInvoker {
       throw new UnsupportedOperationException("Cannot identify method parameter class of parameterized objects " +
                                                 "instantiated at runtime");
     }
-    this.pojoCreator = new POJOCreator(methodParameterClass, schema);
+    this.batchMethod = GDATRecordBatch.class.equals(methodParameterClass);
+    this.pojoCreator = batchMethod ? null : new POJOCreator(methodParameterClass, schema, datumReaderFactory);
+  }
+
+  /**
+   * @return Boolean true if the method takes a {@link co.cask.tigon.sql.flowlet.GDATRecordBatch}
+   */
+  public boolean isBatchMethod() {
+    return batchMethod;
   }
 
   /**
@@ -82,6 +96,16 @@ public class MethodInvoker {
     }
   }
 
+  /**
+   * This method invokes the associated method with a batch of data records.
+   * @param batch The {@link co.cask.tigon.sql.flowlet.GDATRecordBatch} of the incoming data records
+   * @throws InvocationTargetException thrown by {@link java.lang.reflect.Method}.invoke()
+   * @throws IllegalAccessException thrown by {@link java.lang.reflect.Method}.invoke()
+   */
+  public void invoke(GDATRecordBatch batch) throws InvocationTargetException, IllegalAccessException {
+    method.invoke(callingObject, batch);
+  }
+
   /**
    * @return Method name
    */
@@ -16,6 +16,7 @@
 
 package co.cask.tigon.sql.io;
 
+import co.cask.tigon.internal.io.DatumReaderFactory;
 import co.cask.tigon.internal.io.Schema;
 import co.cask.tigon.internal.io.UnsupportedTypeException;
 import co.cask.tigon.internal.lang.MethodVisitor;
@@ -26,6 +27,7 @@ import co.cask.tigon.sql.flowlet.StreamSchema;
 import co.cask.tigon.sql.flowlet.annotation.QueryOutput;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.reflect.TypeToken;
 
@@ -39,22 +41,31 @@ import java.util.Map;
  * This class is responsible for managing all the methods in the flowlet. It creates an instance of class
  * {@link co.cask.tigon.sql.io.MethodInvoker} for each method  annotated by
  * {@link co.cask.tigon.sql.flowlet.annotation.QueryOutput} in this flowlet class
- *
+ * Records of queries with batch methods are collected by {@link #invokeMethods} and passed to the batch methods by
+ * {@link #invokeBatchMethods()}, until they are discarded with {@link #clearBatches()}.
  */
 public class MethodsDriver {
   private final Multimap<String, MethodInvoker> methodListMap;
+  private final Multimap<String, MethodInvoker> batchMethodListMap;
+  private final Map<String, GDATBatchDecoder> batchMap;
   private final Map<String, StreamSchema> schemaMap;
   private final AbstractInputFlowlet flowlet;
+  private final DatumReaderFactory datumReaderFactory;
 
   /**
    * Constructor for MethodsDriver
    * @param flowlet An instance of the {@link co.cask.tigon.sql.flowlet.AbstractInputFlowlet} to be used for
    *                invoking the method calls
+   * @param datumReaderFactory {@link co.cask.tigon.internal.io.DatumReaderFactory} used to decode the output records
    */
-  public MethodsDriver(AbstractInputFlowlet flowlet, Map<String, StreamSchema> schemaMap) {
+  public MethodsDriver(AbstractInputFlowlet flowlet, Map<String, StreamSchema> schemaMap,
+                       DatumReaderFactory datumReaderFactory) {
     this.methodListMap = HashMultimap.create();
+    this.batchMethodListMap = HashMultimap.create();
+    this.batchMap = Maps.newHashMap();
     this.flowlet = flowlet;
     this.schemaMap = schemaMap;
+    this.datumReaderFactory = datumReaderFactory;
     populateMethodListMap();
   }
 
@@ -70,10 +81,18 @@ public class MethodsDriver {
                             return;
                           }
                           try {
-                            methodListMap.put(annotation.value(),
-                                              new MethodInvoker(o, method, inspectType
-                                                , getSchema(schemaMap.get(annotation.value())))
-                            );
+                            String queryName = annotation.value();
+                            MethodInvoker methodInvoker = new MethodInvoker(o, method, inspectType,
+                                                                            getSchema(schemaMap.get(queryName)),
+                                                                            datumReaderFactory);
+                            if (!methodInvoker.isBatchMethod()) {
+                              methodListMap.put(queryName, methodInvoker);
+                              return;
+                            }
+                            batchMethodListMap.put(queryName, methodInvoker);
+                            if (!batchMap.containsKey(queryName)) {
+                              batchMap.put(queryName, new GDATBatchDecoder(schemaMap.get(queryName)));
+                            }
                           } catch (UnsupportedTypeException e) {
                             throw new RuntimeException(e);
                           }
@@ -91,7 +110,8 @@ public class MethodsDriver {
   }
 
   /**
-   * This function invokes all the methods associated with the provided query name
+   * This function invokes all the methods associated with the provided query name, except for the batch methods,
+   * which get the record with the next call to {@link #invokeBatchMethods()}
    * @param queryName Name of query
    * @param decoder {@link co.cask.tigon.sql.io.GDATDecoder} object for the incoming GDAT format data record
    * @throws InvocationTargetException thrown by {@link java.lang.reflect.Method}.invoke()
@@ -104,5 +124,36 @@ public class MethodsDriver {
       decoder.reset();
       methodInvoker.invoke(decoder);
     }
+    GDATBatchDecoder batch = batchMap.get(queryName);
+    if (batch != null) {
+      batch.add(decoder);
+    }
+  }
+
+  /**
+   * This function invokes the batch methods of each query with the records passed to {@link #invokeMethods} since
+   * the last call to {@link #clearBatches()}
+   * @throws InvocationTargetException thrown by {@link java.lang.reflect.Method}.invoke()
+   * @throws IllegalAccessException thrown by {@link java.lang.reflect.Method}.invoke()
+   */
+  public void invokeBatchMethods() throws InvocationTargetException, IllegalAccessException {
+    for (Map.Entry<String, GDATBatchDecoder> entry : batchMap.entrySet()) {
+      GDATBatchDecoder batch = entry.getValue();
+      if (batch.isEmpty()) {
+        continue;
+      }
+      for (MethodInvoker methodInvoker : batchMethodListMap.get(entry.getKey())) {
+        methodInvoker.invoke(batch);
+      }
+    }
+  }
+
+  /**
+   * This function discards the records collected for the batch methods
+   */
+  public void clearBatches() {
+    for (GDATBatchDecoder batch : batchMap.values()) {
+      batch.clear();
+    }
   }
 }
@@ -17,7 +17,7 @@
 package co.cask.tigon.sql.io;
 
 import co.cask.tigon.internal.io.DatumReader;
-import co.cask.tigon.internal.io.ReflectionDatumReader;
+import co.cask.tigon.internal.io.DatumReaderFactory;
 import co.cask.tigon.internal.io.ReflectionSchemaGenerator;
 import co.cask.tigon.internal.io.Schema;
 import co.cask.tigon.internal.io.UnsupportedTypeException;
@@ -42,14 +42,17 @@ public class POJOCreator {
    * Constructor for the POJOCreator
    * @param outputClass Class type to be generated by this {@link co.cask.tigon.sql.io.POJOCreator} object
    * @param schema {@link co.cask.tigon.sql.flowlet.StreamSchema} of the incoming data record
-   * @throws UnsupportedTypeException if the {@link co.cask.tigon.internal.io.ReflectionDatumReader} cannot
+   * @param datumReaderFactory {@link co.cask.tigon.internal.io.DatumReaderFactory} that creates the
+   * {@link co.cask.tigon.internal.io.DatumReader} of the outputClass
+   * @throws UnsupportedTypeException if a {@link co.cask.tigon.internal.io.DatumReader} cannot
    * instantiate an object of type outputClass
    */
-  public POJOCreator(Class<?> outputClass, Schema schema) throws UnsupportedTypeException {
+  public POJOCreator(Class<?> outputClass, Schema schema, DatumReaderFactory datumReaderFactory)
+    throws UnsupportedTypeException {
     this.schema = schema;
     this.outputClass = outputClass;
-    this.outputGenerator = new ReflectionDatumReader(new ReflectionSchemaGenerator().generate(outputClass, false),
-                                                     TypeToken.of(outputClass));
+    this.outputGenerator = datumReaderFactory.create(TypeToken.of(outputClass),
+                                                     new ReflectionSchemaGenerator().generate(outputClass, false));
   }
 
   /**
@@ -57,7 +60,7 @@ public class POJOCreator {
    *
    * @param decoder The decoder that encapsulates the byte[] data record
    * @return Map of method and the input parameter objects
-   * @throws java.io.IOException if the {@link co.cask.tigon.internal.io.ReflectionDatumReader} cannot decode incoming
+   * @throws java.io.IOException if the {@link co.cask.tigon.internal.io.DatumReader} cannot decode incoming
    * data record
    */
   public Object decode(Decoder decoder) throws IOException {
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.ioserver;
+
+import co.cask.tigon.sql.flowlet.GDATField;
+import co.cask.tigon.sql.flowlet.GDATFieldType;
+import co.cask.tigon.sql.flowlet.StreamSchema;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Assigns GDAT records of one {@link co.cask.tigon.sql.flowlet.StreamSchema} to one of the instances of a partitioned
+ * InputFlowlet by the hash of the encoded value of the partition key field. The hash only depends on the bytes of the
+ * GDAT record, hence all instances assign a record to the same partition, whether it was ingested as JSON or GDAT.
+ */
+public final class GDATPartitioner {
+  private final GDATFieldType keyType;
+  private final int keyOffset;
+  private final int partitionId;
+  private final int partitionCount;
+
+  /**
+   * Constructor for GDATPartitioner
+   * @param schema {@link co.cask.tigon.sql.flowlet.StreamSchema} of the records
+   * @param keyField Name of the partition key field
+   * @param partitionId Partition of this instance
+   * @param partitionCount Number of instances
+   */
+  public GDATPartitioner(StreamSchema schema, String keyField, int partitionId, int partitionCount) {
+    Preconditions.checkArgument(partitionId >= 0 && partitionId < partitionCount, "Invalid partition %s of %s.",
+                                partitionId, partitionCount);
+    GDATFieldType type = null;
+    int offset = 0;
+    for (GDATField field : schema.getFields()) {
+      if (field.getName().equals(keyField)) {
+        type = field.getType();
+        break;
+      }
+      offset += field.getType().getSize();
+    }
+    Preconditions.checkArgument(type != null, "No field with name %s.", keyField);
+    this.keyType = type;
+    this.keyOffset = offset;
+    this.partitionId = partitionId;
+    this.partitionCount = partitionCount;
+  }
+
+  public int getPartitionId() {
+    return partitionId;
+  }
+
+  public int getPartitionCount() {
+    return partitionCount;
+  }
+
+  /**
+   * Get the partition of a record.
+   * @param buffer Buffer holding the record.
+   * @param index Index of the record, i.e. of its length.
+   * @return Partition of the record.
+   */
+  public int getPartition(ChannelBuffer buffer, int index) {
+    // Field offsets and string offsets are relative to the end of the length of the record
+    int recordStart = index + Ints.BYTES;
+    int hash;
+    if (keyType == GDATFieldType.STRING) {
+      int length = getLittleEndianInt(buffer, recordStart + keyOffset);
+      int stringOffset = getLittleEndianInt(buffer, recordStart + keyOffset + Ints.BYTES);
+      hash = hash(buffer, recordStart + stringOffset, length);
+    } else {
+      hash = hash(buffer, recordStart + keyOffset, keyType.getSize());
+    }
+    return (hash & Integer.MAX_VALUE) % partitionCount;
+  }
+
+  private static int hash(ChannelBuffer buffer, int index, int length) {
+    int hash = 1;
+    for (int i = index; i < index + length; i++) {
+      hash = 31 * hash + buffer.getByte(i);
+    }
+    // Murmur3 finalization mix, so that keys that only differ in the last bytes spread over all partitions
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+
+  //Fixed size fields are encoded in Little Endian Format, independent of the byte order of the buffer.
+  private static int getLittleEndianInt(ChannelBuffer buffer, int index) {
+    return Ints.fromBytes(buffer.getByte(index + 3), buffer.getByte(index + 2),
+                          buffer.getByte(index + 1), buffer.getByte(index));
+  }
+}
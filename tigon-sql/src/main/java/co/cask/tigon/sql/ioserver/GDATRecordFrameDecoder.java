@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.ioserver;
+
+import com.google.common.primitives.Ints;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+/**
+ * Passes on only complete GDAT records, so that the data of multiple ingestion connections can be relayed to the
+ * Stream Engine without interleaving partial records.
+ * All the complete records of a read are passed on as one slice of the read buffer, without copying. Only the part
+ * of a record that spans multiple reads is copied, until the record is complete.
+ */
+final class GDATRecordFrameDecoder extends SimpleChannelHandler {
+  //Beginning of a record that spans multiple reads.
+  private ChannelBuffer partialRecord;
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+    ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+    if (partialRecord != null) {
+      if (partialRecord.readableBytes() < Ints.BYTES) {
+        partialRecord.writeBytes(buffer, Math.min(Ints.BYTES - partialRecord.readableBytes(), buffer.readableBytes()));
+        if (partialRecord.readableBytes() < Ints.BYTES) {
+          return;
+        }
+      }
+      int recordLength = Ints.BYTES + getLength(partialRecord, partialRecord.readerIndex());
+      partialRecord.writeBytes(buffer, Math.min(recordLength - partialRecord.readableBytes(), buffer.readableBytes()));
+      if (partialRecord.readableBytes() < recordLength) {
+        return;
+      }
+      ChannelBuffer record = partialRecord;
+      partialRecord = null;
+      Channels.fireMessageReceived(ctx, record, e.getRemoteAddress());
+    }
+
+    int start = buffer.readerIndex();
+    int end = start;
+    while (buffer.writerIndex() - end >= Ints.BYTES) {
+      int recordLength = Ints.BYTES + getLength(buffer, end);
+      if (buffer.writerIndex() - end < recordLength) {
+        break;
+      }
+      end += recordLength;
+    }
+    if (end < buffer.writerIndex()) {
+      partialRecord = ChannelBuffers.dynamicBuffer(Math.max(Ints.BYTES, buffer.writerIndex() - end));
+      partialRecord.writeBytes(buffer, end, buffer.writerIndex() - end);
+    }
+    buffer.readerIndex(buffer.writerIndex());
+    if (end > start) {
+      Channels.fireMessageReceived(ctx, buffer.slice(start, end - start), e.getRemoteAddress());
+    }
+  }
+
+  //Length Data is encoded as an Integer in Big Endian Format, independent of the byte order of the buffer.
+  private int getLength(ChannelBuffer buffer, int index) {
+    return Ints.fromBytes(buffer.getByte(index), buffer.getByte(index + 1),
+                          buffer.getByte(index + 2), buffer.getByte(index + 3));
+  }
+}
@@ -20,6 +20,13 @@ import co.cask.tigon.sql.conf.Constants;
 import co.cask.tigon.sql.flowlet.StreamSchema;
 import co.cask.tigon.sql.internal.StreamInputHeader;
 import co.cask.tigon.sql.util.GDATFormatUtil;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.apache.twill.discovery.ServiceDiscovered;
+import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -36,6 +43,7 @@ import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,9 +51,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 /**
  * Server Socket for Input Stream to Stream Engine.
@@ -58,6 +69,9 @@ import java.util.concurrent.atomic.AtomicReference;
  *
  * RelayChannel - IngestionServer passes on the data it receives (potential after transforming it to GDAT format) to
  * the StreamEngine TCP client via the Relay Channel.
+ *
+ * PartitionServer - If the input is partitioned, the IngestionServer only relays the records of its own partition and
+ * forwards the others to the PartitionServers of the instances they belong to, which relay them as is.
  */
 public class InputServerSocket extends StreamSocketServer {
   private static final Logger LOG = LoggerFactory.getLogger(InputServerSocket.class);
@@ -67,17 +81,36 @@ public class InputServerSocket extends StreamSocketServer {
 
   private final ServerBootstrap ingestionServer;
   private final ServerBootstrap dataSourceServer;
+  private final ServerBootstrap partitionServer;
+  private final GDATPartitioner partitioner;
+  private final DiscoveryServiceClient discoveryClient;
+  private int partitionPort;
+  private ClientBootstrap partitionClient;
+  private PartitionForwarder[] forwarders;
 
   private final AtomicReference<Channel> channelAtomicReference;
 
-  public InputServerSocket(ChannelFactory factory, String name, StreamSchema inputSchema, int port) {
+  /**
+   * Constructor for a partitioned input.
+   * @param partitioner {@link GDATPartitioner} of the input, null if the input is not partitioned.
+   * @param discoveryClient Discovers the PartitionServers of the other instances.
+   */
+  public InputServerSocket(ChannelFactory factory, String name, StreamSchema inputSchema, int port,
+                           @Nullable GDATPartitioner partitioner, @Nullable DiscoveryServiceClient discoveryClient) {
     this.streamName = name;
     this.schema = inputSchema;
     this.port = port;
+    this.partitioner = partitioner;
+    this.discoveryClient = discoveryClient;
     this.channelAtomicReference = new AtomicReference<Channel>();
     this.channelAtomicReference.set(null);
     ingestionServer = new ServerBootstrap(factory);
     dataSourceServer = new ServerBootstrap(factory);
+    partitionServer = new ServerBootstrap(factory);
+  }
+
+  public InputServerSocket(ChannelFactory factory, String name, StreamSchema inputSchema, int port) {
+    this(factory, name, inputSchema, port, null, null);
   }
 
   public InputServerSocket(ChannelFactory factory, String name, StreamSchema inputSchema) {
@@ -88,6 +121,43 @@ public class InputServerSocket extends StreamSocketServer {
     return port;
   }
 
+  /**
+   * @return Port of the PartitionServer, 0 if the input is not partitioned.
+   */
+  public int getPartitionPort() {
+    return partitionPort;
+  }
+
+  /**
+   * Get the name under which the PartitionServer of an instance is announced.
+   * @param name Name of the input.
+   * @param instanceId Instance id.
+   * @return Name of the PartitionServer.
+   */
+  public static String getPartitionPortName(String name, int instanceId) {
+    return Constants.PARTITION_PORT_PREFIX + name + "." + instanceId;
+  }
+
+  /**
+   * Waits until the PartitionServers of all other instances are discovered, so that records of their partitions are
+   * not dropped when they are ingested through this instance.
+   * @param timeout Maximum time to wait.
+   * @param unit Unit of the timeout.
+   * @return true if all PartitionServers were discovered in time or the input is not partitioned, false otherwise.
+   */
+  public boolean awaitPartitionServers(long timeout, TimeUnit unit) throws InterruptedException {
+    if (forwarders == null) {
+      return true;
+    }
+    long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+    for (PartitionForwarder forwarder : forwarders) {
+      if (forwarder != null && !forwarder.awaitDiscovered(deadline)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public final void startUp() {
     LOG.info("Input Stream {} : Starting Server", streamName);
@@ -99,6 +169,21 @@ public class InputServerSocket extends StreamSocketServer {
     serverAddressMap.put(Constants.StreamIO.TCP_DATA_INGESTION, (InetSocketAddress) ch.getLocalAddress());
     ch = dataSourceServer.bind(new InetSocketAddress(0));
     serverAddressMap.put(Constants.StreamIO.DATASOURCE, (InetSocketAddress) ch.getLocalAddress());
+    if (partitioner != null) {
+      setPartitionPipeline();
+      ch = partitionServer.bind(new InetSocketAddress(0));
+      partitionPort = ((InetSocketAddress) ch.getLocalAddress()).getPort();
+      partitionClient = new ClientBootstrap(new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
+                                                                              Executors.newCachedThreadPool()));
+      partitionClient.setOption("tcpNoDelay", true);
+      partitionClient.setOption("keepAlive", true);
+      forwarders = new PartitionForwarder[partitioner.getPartitionCount()];
+      for (int i = 0; i < forwarders.length; i++) {
+        if (i != partitioner.getPartitionId()) {
+          forwarders[i] = new PartitionForwarder(getPartitionPortName(streamName, i));
+        }
+      }
+    }
   }
 
   @Override
@@ -114,6 +199,15 @@ public class InputServerSocket extends StreamSocketServer {
     LOG.info(String.format("Input Stream %s : Stopping Server", streamName));
     ingestionServer.shutdown();
     dataSourceServer.shutdown();
+    if (partitioner != null) {
+      for (PartitionForwarder forwarder : forwarders) {
+        if (forwarder != null) {
+          forwarder.close();
+        }
+      }
+      partitionServer.shutdown();
+      partitionClient.releaseExternalResources();
+    }
   }
 
   private void setIngestionPipeline() {
@@ -127,6 +221,12 @@ public class InputServerSocket extends StreamSocketServer {
           for (Map.Entry<String, ChannelHandler> handler : transformationHandlers.entrySet()) {
             pipeline.addLast(handler.getKey(), handler.getValue());
           }
+        } else {
+          //GDAT input is relayed as is, hence only relay complete records as multiple clients may be connected.
+          pipeline.addLast("recordFrame", new GDATRecordFrameDecoder());
+        }
+        if (partitioner != null) {
+          pipeline.addLast("partition", new PartitionHandler());
         }
         pipeline.addLast("relayData", new RelayDataHandler(streamName));
         return pipeline;
@@ -134,6 +234,20 @@ public class InputServerSocket extends StreamSocketServer {
     });
   }
 
+  private void setPartitionPipeline() {
+    setServerOptions(partitionServer);
+    partitionServer.setPipelineFactory(new ChannelPipelineFactory() {
+      @Override
+      public ChannelPipeline getPipeline() throws Exception {
+        //Records forwarded by the other instances belong to this partition, hence they are relayed as is.
+        ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("recordFrame", new GDATRecordFrameDecoder());
+        pipeline.addLast("relayData", new RelayDataHandler(streamName));
+        return pipeline;
+      }
+    });
+  }
+
   private void setDataSourcePipeline() {
     setServerOptions(dataSourceServer);
     dataSourceServer.setPipelineFactory(new ChannelPipelineFactory() {
@@ -173,6 +287,151 @@ public class InputServerSocket extends StreamSocketServer {
     }
   }
 
+  /**
+   * Passes on the records of this partition to the RelayDataHandler and forwards the others to the instances they
+   * belong to. Expects complete GDAT records. Consecutive records of the same partition are passed on as one slice.
+   */
+  private class PartitionHandler extends SimpleChannelHandler {
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+      ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+      List<List<ChannelBuffer>> partitions = Lists.newArrayListWithCapacity(forwarders.length);
+      for (int i = 0; i < forwarders.length; i++) {
+        partitions.add(null);
+      }
+      int runStart = buffer.readerIndex();
+      int runPartition = -1;
+      int index = runStart;
+      while (index < buffer.writerIndex()) {
+        int partition = partitioner.getPartition(buffer, index);
+        if (partition != runPartition) {
+          addRun(partitions, runPartition, buffer, runStart, index);
+          runStart = index;
+          runPartition = partition;
+        }
+        index += Ints.BYTES + getLength(buffer, index);
+      }
+      addRun(partitions, runPartition, buffer, runStart, index);
+      buffer.readerIndex(buffer.writerIndex());
+
+      for (int i = 0; i < forwarders.length; i++) {
+        List<ChannelBuffer> records = partitions.get(i);
+        if (records == null) {
+          continue;
+        }
+        ChannelBuffer partitionRecords = ChannelBuffers.wrappedBuffer(records.toArray(
+          new ChannelBuffer[records.size()]));
+        if (i == partitioner.getPartitionId()) {
+          Channels.fireMessageReceived(ctx, partitionRecords, e.getRemoteAddress());
+        } else {
+          forwarders[i].forward(partitionRecords);
+        }
+      }
+    }
+
+    private void addRun(List<List<ChannelBuffer>> partitions, int partition, ChannelBuffer buffer, int start, int end) {
+      if (end > start) {
+        if (partitions.get(partition) == null) {
+          partitions.set(partition, Lists.<ChannelBuffer>newArrayList());
+        }
+        partitions.get(partition).add(buffer.slice(start, end - start));
+      }
+    }
+
+    //Length Data is encoded as an Integer in Big Endian Format, independent of the byte order of the buffer.
+    private int getLength(ChannelBuffer buffer, int index) {
+      return Ints.fromBytes(buffer.getByte(index), buffer.getByte(index + 1),
+                            buffer.getByte(index + 2), buffer.getByte(index + 3));
+    }
+  }
+
+  /**
+   * Forwards records to the PartitionServer of another instance. Connects when records are forwarded while not
+   * connected, records forwarded while connecting are written once the connection is established.
+   */
+  private class PartitionForwarder {
+    private final Logger log = LoggerFactory.getLogger(PartitionForwarder.class);
+    private final String partitionPortName;
+    private final List<ChannelBuffer> pending = Lists.newArrayList();
+    private ServiceDiscovered discovered;
+    private Channel channel;
+    private boolean connecting;
+
+    public PartitionForwarder(String partitionPortName) {
+      this.partitionPortName = partitionPortName;
+    }
+
+    public synchronized void forward(ChannelBuffer records) {
+      if (channel != null && channel.isConnected()) {
+        channel.write(records);
+        return;
+      }
+      pending.add(records);
+      if (!connecting) {
+        connect();
+      }
+    }
+
+    public synchronized void close() {
+      if (channel != null) {
+        channel.close().awaitUninterruptibly();
+      }
+    }
+
+    /**
+     * Waits until the PartitionServer is discovered.
+     * @param deadline Time in milliseconds until which to wait.
+     * @return true if the PartitionServer is discovered, false if the deadline passed.
+     */
+    public boolean awaitDiscovered(long deadline) throws InterruptedException {
+      ServiceDiscovered serviceDiscovered = getDiscovered();
+      while (Iterables.isEmpty(serviceDiscovered)) {
+        if (System.currentTimeMillis() > deadline) {
+          return false;
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      return true;
+    }
+
+    private synchronized ServiceDiscovered getDiscovered() {
+      if (discovered == null) {
+        discovered = discoveryClient.discover(partitionPortName);
+      }
+      return discovered;
+    }
+
+    private void connect() {
+      Discoverable discoverable = Iterables.getFirst(getDiscovered(), null);
+      if (discoverable == null) {
+        //TODO: Do we want to print an error msg for every dropped packet?
+        log.error("Input Stream {} : {} not discovered! Dropping input data!", streamName, partitionPortName);
+        pending.clear();
+        return;
+      }
+      connecting = true;
+      partitionClient.connect(discoverable.getSocketAddress()).addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+          synchronized (PartitionForwarder.this) {
+            connecting = false;
+            if (future.isSuccess()) {
+              channel = future.getChannel();
+              for (ChannelBuffer records : pending) {
+                channel.write(records);
+              }
+            } else {
+              log.error("Input Stream {} : Failed to connect to {}! Dropping input data!", streamName,
+                        partitionPortName, future.getCause());
+            }
+            pending.clear();
+          }
+        }
+      });
+    }
+  }
+
   /**
    * Saves the StreamEngine client connection channel to channelAtomicReference when it connects.
    */
@@ -0,0 +1,482 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.ioserver;
+
+import co.cask.tigon.sql.flowlet.GDATField;
+import co.cask.tigon.sql.flowlet.GDATFieldType;
+import co.cask.tigon.sql.flowlet.StreamSchema;
+import co.cask.tigon.sql.io.GDATEncoder;
+import com.google.common.base.Charsets;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Converts JSON records to GDAT format while reading the bytes, without decoding them into strings first.
+ * A record is a JSON object of the form {"data" : [value, ...]} with one value for each field of the
+ * {@link StreamSchema}, given as a JSON string, number or boolean. Other keys of a record are ignored.
+ * A frame is either a record or a JSON array of records, which is converted into one buffer of GDAT records.
+ * Frames that are not valid are logged and dropped.
+ */
+final class JsonRecordDecoder extends FrameDecoder {
+  private static final Logger LOG = LoggerFactory.getLogger(JsonRecordDecoder.class);
+  private static final byte[] DATA_KEY = "data".getBytes(Charsets.UTF_8);
+  private static final byte[] TRUE = "true".getBytes(Charsets.UTF_8);
+
+  // Doubles with a mantissa up to 2^53 and up to 22 fraction digits are computed exactly by a single division.
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final String name;
+  private final GDATFieldType[] fieldTypes;
+  private final GDATEncoder encoder;
+  private final ByteArrayOutputStream stringBytes;
+
+  // State of scanning for the end of the current frame. The scanned length is relative to the reader index.
+  private int scanned;
+  private int depth;
+  private boolean inString;
+  private boolean escaped;
+
+  // Frame being converted and the start and end of the last value read from it.
+  private ChannelBuffer frame;
+  private int valueStart;
+  private int valueEnd;
+  private boolean valueEscaped;
+
+  JsonRecordDecoder(String name, StreamSchema schema) {
+    this.name = name;
+    List<GDATField> fields = schema.getFields();
+    this.fieldTypes = new GDATFieldType[fields.size()];
+    for (int i = 0; i < fields.size(); i++) {
+      fieldTypes[i] = fields.get(i).getType();
+    }
+    this.encoder = new GDATEncoder();
+    this.stringBytes = new ByteArrayOutputStream();
+  }
+
+  @Override
+  protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+    int frameLength = findFrame(buffer);
+    if (frameLength < 0) {
+      return null;
+    }
+    frame = buffer.readSlice(frameLength);
+    ChannelBuffer output = ChannelBuffers.dynamicBuffer(frameLength);
+    try {
+      convertFrame(new ChannelBufferOutputStream(output));
+    } catch (Exception e) {
+      LOG.warn("Input Stream {} : Dropping invalid JSON input: {}", name, e.getMessage());
+      encoder.reset();
+      return null;
+    } finally {
+      frame = null;
+    }
+    return output;
+  }
+
+  /**
+   * Scans the buffer for the end of a JSON object or array, keeping track of brackets within strings.
+   * @return The length of the frame from the reader index, or -1 if the frame is not complete.
+   */
+  private int findFrame(ChannelBuffer buffer) {
+    int start = buffer.readerIndex();
+    int end = buffer.writerIndex();
+    if (scanned == 0) {
+      // Skip separators and anything else before the start of a frame
+      while (start < end && buffer.getByte(start) != '{' && buffer.getByte(start) != '[') {
+        start++;
+      }
+      buffer.readerIndex(start);
+    }
+    for (int i = start + scanned; i < end; i++) {
+      byte b = buffer.getByte(i);
+      if (inString) {
+        if (escaped) {
+          escaped = false;
+        } else if (b == '\\') {
+          escaped = true;
+        } else if (b == '"') {
+          inString = false;
+        }
+      } else if (b == '"') {
+        inString = true;
+      } else if (b == '{' || b == '[') {
+        depth++;
+      } else if ((b == '}' || b == ']') && --depth == 0) {
+        scanned = 0;
+        return i + 1 - start;
+      }
+    }
+    scanned = end - start;
+    return -1;
+  }
+
+  private void convertFrame(ChannelBufferOutputStream output) throws IOException {
+    if (peekToken() != '[') {
+      convertRecord(output);
+      return;
+    }
+    frame.skipBytes(1);
+    if (peekToken() == ']') {
+      return;
+    }
+    do {
+      convertRecord(output);
+    } while (next() == ',');
+    check(current() == ']', "Expected ',' or ']' after a record");
+  }
+
+  private void convertRecord(ChannelBufferOutputStream output) throws IOException {
+    check(next() == '{', "Expected a JSON object");
+    boolean hasData = false;
+    if (peekToken() == '}') {
+      frame.skipBytes(1);
+    } else {
+      do {
+        check(next() == '"', "Expected a key");
+        readString();
+        boolean isData = !valueEscaped && equalsValue(DATA_KEY, false);
+        check(next() == ':', "Expected ':' after a key");
+        if (isData) {
+          convertData();
+          hasData = true;
+        } else {
+          skipValue();
+        }
+      } while (next() == ',');
+      check(current() == '}', "Expected ',' or '}' after a value");
+    }
+    check(hasData, "Missing data in record");
+    encoder.writeTo(output);
+  }
+
+  private void convertData() throws IOException {
+    check(next() == '[', "Expected data array");
+    for (int i = 0; i < fieldTypes.length; i++) {
+      if (i > 0) {
+        check(next() == ',', "Expected " + fieldTypes.length + " data values");
+      }
+      readValue();
+      writeValue(fieldTypes[i]);
+    }
+    check(next() == ']', "Expected " + fieldTypes.length + " data values");
+  }
+
+  private void writeValue(GDATFieldType type) throws IOException {
+    switch (type) {
+      case BOOL:
+        encoder.writeBool(equalsValue(TRUE, true));
+        break;
+      case INT:
+        long value = parseLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+          throw new NumberFormatException("Value out of range for int: " + valueToString());
+        }
+        encoder.writeInt((int) value);
+        break;
+      case LONG:
+        encoder.writeLong(parseLong());
+        break;
+      case DOUBLE:
+        encoder.writeDouble(parseDouble());
+        break;
+      case STRING:
+        encoder.writeUTF8String(valueBytes());
+        break;
+    }
+  }
+
+  /**
+   * Reads a string or a literal value and sets the value range to it, excluding the quotes of a string.
+   */
+  private void readValue() {
+    if (peekToken() == '"') {
+      frame.skipBytes(1);
+      readString();
+      return;
+    }
+    valueStart = frame.readerIndex();
+    valueEscaped = false;
+    while (frame.readable()) {
+      byte b = frame.getByte(frame.readerIndex());
+      if (b == ',' || b == ']' || b == '}' || isWhitespace(b)) {
+        break;
+      }
+      frame.skipBytes(1);
+    }
+    valueEnd = frame.readerIndex();
+    check(valueEnd > valueStart, "Expected a value");
+  }
+
+  /**
+   * Reads up to and including the closing quote of a string and sets the value range to its content.
+   */
+  private void readString() {
+    valueStart = frame.readerIndex();
+    valueEscaped = false;
+    while (true) {
+      check(frame.readable(), "Unterminated string");
+      byte b = frame.readByte();
+      if (b == '"') {
+        break;
+      }
+      if (b == '\\') {
+        valueEscaped = true;
+        check(frame.readable(), "Unterminated string");
+        frame.skipBytes(1);
+      }
+    }
+    valueEnd = frame.readerIndex() - 1;
+  }
+
+  /**
+   * Skips a value of any type, including nested objects and arrays.
+   */
+  private void skipValue() {
+    byte b = peekToken();
+    if (b != '{' && b != '[') {
+      readValue();
+      return;
+    }
+    int nesting = 0;
+    do {
+      check(frame.readable(), "Unterminated value");
+      b = frame.readByte();
+      if (b == '"') {
+        readString();
+      } else if (b == '{' || b == '[') {
+        nesting++;
+      } else if (b == '}' || b == ']') {
+        nesting--;
+      }
+    } while (nesting > 0);
+  }
+
+  /**
+   * Returns the UTF-8 bytes of the value, with escape sequences of strings resolved.
+   */
+  private byte[] valueBytes() {
+    if (!valueEscaped) {
+      byte[] bytes = new byte[valueEnd - valueStart];
+      frame.getBytes(valueStart, bytes);
+      return bytes;
+    }
+    stringBytes.reset();
+    int i = valueStart;
+    while (i < valueEnd) {
+      byte b = frame.getByte(i++);
+      if (b != '\\') {
+        stringBytes.write(b);
+        continue;
+      }
+      b = frame.getByte(i++);
+      switch (b) {
+        case 'b':
+          stringBytes.write('\b');
+          break;
+        case 'f':
+          stringBytes.write('\f');
+          break;
+        case 'n':
+          stringBytes.write('\n');
+          break;
+        case 'r':
+          stringBytes.write('\r');
+          break;
+        case 't':
+          stringBytes.write('\t');
+          break;
+        case 'u':
+          check(i + 4 <= valueEnd, "Invalid unicode escape");
+          int c = Integer.parseInt(frame.toString(i, 4, Charsets.US_ASCII), 16);
+          i += 4;
+          if (Character.isHighSurrogate((char) c) && i + 6 <= valueEnd
+            && frame.getByte(i) == '\\' && frame.getByte(i + 1) == 'u') {
+            int low = Integer.parseInt(frame.toString(i + 2, 4, Charsets.US_ASCII), 16);
+            if (Character.isLowSurrogate((char) low)) {
+              c = Character.toCodePoint((char) c, (char) low);
+              i += 6;
+            }
+          }
+          writeUTF8(c);
+          break;
+        default:
+          // Covers the escaped quote, backslash and slash
+          stringBytes.write(b);
+      }
+    }
+    return stringBytes.toByteArray();
+  }
+
+  private void writeUTF8(int codePoint) {
+    if (codePoint < 0x80) {
+      stringBytes.write(codePoint);
+    } else if (codePoint < 0x800) {
+      stringBytes.write(0xC0 | (codePoint >> 6));
+      stringBytes.write(0x80 | (codePoint & 0x3F));
+    } else if (codePoint < 0x10000) {
+      stringBytes.write(0xE0 | (codePoint >> 12));
+      stringBytes.write(0x80 | ((codePoint >> 6) & 0x3F));
+      stringBytes.write(0x80 | (codePoint & 0x3F));
+    } else {
+      stringBytes.write(0xF0 | (codePoint >> 18));
+      stringBytes.write(0x80 | ((codePoint >> 12) & 0x3F));
+      stringBytes.write(0x80 | ((codePoint >> 6) & 0x3F));
+      stringBytes.write(0x80 | (codePoint & 0x3F));
+    }
+  }
+
+  /**
+   * Parses the value as a decimal integer, the same as {@link Long#parseLong(String)}.
+   */
+  private long parseLong() {
+    int i = valueStart;
+    boolean negative = false;
+    if (i < valueEnd && (frame.getByte(i) == '-' || frame.getByte(i) == '+')) {
+      negative = frame.getByte(i) == '-';
+      i++;
+    }
+    if (valueEscaped || i == valueEnd) {
+      throw new NumberFormatException("Invalid number: " + valueToString());
+    }
+    // Accumulate negatively to cover Long.MIN_VALUE
+    long result = 0;
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    for (; i < valueEnd; i++) {
+      int digit = frame.getByte(i) - '0';
+      if (digit < 0 || digit > 9 || result < (limit + digit) / 10) {
+        throw new NumberFormatException("Invalid number: " + valueToString());
+      }
+      result = result * 10 - digit;
+    }
+    return negative ? result : -result;
+  }
+
+  /**
+   * Parses the value as a double. Plain decimals are computed without creating a string, anything else is parsed by
+   * {@link Double#parseDouble(String)}.
+   */
+  private double parseDouble() {
+    int i = valueStart;
+    boolean negative = false;
+    if (i < valueEnd && (frame.getByte(i) == '-' || frame.getByte(i) == '+')) {
+      negative = frame.getByte(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int fractionDigits = -1;
+    int digits = 0;
+    for (; i < valueEnd && !valueEscaped; i++) {
+      byte b = frame.getByte(i);
+      if (b == '.' && fractionDigits < 0) {
+        fractionDigits = 0;
+        continue;
+      }
+      if (b < '0' || b > '9') {
+        break;
+      }
+      mantissa = mantissa * 10 + (b - '0');
+      digits++;
+      if (fractionDigits >= 0) {
+        fractionDigits++;
+      }
+      if (mantissa > MAX_EXACT_MANTISSA) {
+        break;
+      }
+    }
+    if (i < valueEnd || valueEscaped || digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+      return Double.parseDouble(valueToString());
+    }
+    double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+    return negative ? -value : value;
+  }
+
+  private boolean equalsValue(byte[] bytes, boolean ignoreCase) {
+    if (valueEnd - valueStart != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      byte b = frame.getByte(valueStart + i);
+      if (ignoreCase && b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      if (b != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String valueToString() {
+    return valueEscaped ? new String(valueBytes(), Charsets.UTF_8)
+                        : frame.toString(valueStart, valueEnd - valueStart, Charsets.UTF_8);
+  }
+
+  /**
+   * Skips whitespace and returns the next byte without consuming it.
+   */
+  private byte peekToken() {
+    skipWhitespace();
+    check(frame.readable(), "Unexpected end of input");
+    return frame.getByte(frame.readerIndex());
+  }
+
+  /**
+   * Skips whitespace and consumes the next byte.
+   */
+  private byte next() {
+    skipWhitespace();
+    check(frame.readable(), "Unexpected end of input");
+    return frame.readByte();
+  }
+
+  /**
+   * Returns the last byte consumed.
+   */
+  private byte current() {
+    return frame.getByte(frame.readerIndex() - 1);
+  }
+
+  private void skipWhitespace() {
+    while (frame.readable() && isWhitespace(frame.getByte(frame.readerIndex()))) {
+      frame.skipBytes(1);
+    }
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new IllegalArgumentException(message);
+    }
+  }
+}
@@ -44,8 +44,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -101,7 +99,7 @@ public class OutputServerSocket extends StreamSocketServer {
         ChannelPipeline pipeline = Channels.pipeline();
         pipeline.addLast("headerDecoder", new SchemaHeaderDecoder());
         //Length Field forms the first 4 bytes of the data record - Keep the header intact.
-        pipeline.addLast("dataRecord", new LengthFieldLittleEndianFrameDecoder());
+        pipeline.addLast("dataRecord", new LengthFieldFrameDecoder());
         pipeline.addLast("dataRecordHandler", new GDATRecordHandler());
         return pipeline;
       }
@@ -110,36 +108,56 @@ public class OutputServerSocket extends StreamSocketServer {
 
   /**
    * GDAT Records are length prefixed - [length encoded in 4bytes in BigEndian ByteOrder][data record bytes].
-   * This handler waits until it gets [4 Bytes + length] bytes and passes it on to the UpstreamHandler.
+   * This handler passes each complete record, including the length bytes, on to the UpstreamHandler.
+   * Records that are contained in a received buffer are passed on as slices of that buffer, without copying. Netty
+   * allocates a new buffer for every read, hence a slice stays valid after this handler returns, and the buffer is
+   * freed once all records sliced from it are committed by the {@link GDATRecordQueue}. Only a record that spans
+   * multiple reads is copied, into a buffer of the record size.
    */
-  private class LengthFieldLittleEndianFrameDecoder extends SimpleChannelHandler {
-    private final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
-    private byte[] lengthBytes = new byte[Ints.BYTES];
+  private class LengthFieldFrameDecoder extends SimpleChannelHandler {
+    //Length bytes of the next record, if they span multiple reads.
+    private final ChannelBuffer lengthBuffer = ChannelBuffers.buffer(Ints.BYTES);
     //TODO: Length field is unsigned 4B in GDAT Format. Check!
-    private int dataRecordLength = -1;
+    //Record that spans multiple reads, sized to the full record length.
+    private ChannelBuffer partialRecord;
 
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-      buffer.writeBytes((ChannelBuffer) e.getMessage());
-      while (true) {
-        if (dataRecordLength != -1 && buffer.readableBytes() >= dataRecordLength) {
-          ChannelBuffer channelBuffer = buffer.readBytes(dataRecordLength);
-          dataRecordLength = -1;
-          super.messageReceived(ctx, new UpstreamMessageEvent(e.getChannel(), channelBuffer, e.getRemoteAddress()));
-        } else if (dataRecordLength == -1 && buffer.readableBytes() >= Ints.BYTES) {
-          //We want to pass both the length bytes and the data bytes and so using getBytes so that readerIndex
-          //is not changed.
-          buffer.getBytes(buffer.readerIndex(), lengthBytes, 0, Ints.BYTES);
-          //Length Data is encoded as an Integer in Big Endian Format.
-          //We want to wait until all bytes (ie, length integer plus data bytes arrive).
-          //Hence assign dataRecordLength to length integer size plus data bytes.
-          //TODO: Avoid another ByteBuffer creation if possible.
-          dataRecordLength = (Ints.BYTES + ByteBuffer.wrap(lengthBytes).order(ByteOrder.BIG_ENDIAN).getInt());
-        } else {
-          break;
+      ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+      while (buffer.readable()) {
+        if (partialRecord == null && !lengthBuffer.readable() && buffer.readableBytes() >= Ints.BYTES) {
+          int recordLength = Ints.BYTES + getLength(buffer, buffer.readerIndex());
+          if (buffer.readableBytes() >= recordLength) {
+            ChannelBuffer record = buffer.readSlice(recordLength);
+            super.messageReceived(ctx, new UpstreamMessageEvent(e.getChannel(), record, e.getRemoteAddress()));
+            continue;
+          }
+          partialRecord = ChannelBuffers.buffer(recordLength);
+        } else if (partialRecord == null) {
+          //Length bytes span multiple reads.
+          buffer.readBytes(lengthBuffer, Math.min(lengthBuffer.writableBytes(), buffer.readableBytes()));
+          if (lengthBuffer.writable()) {
+            break;
+          }
+          partialRecord = ChannelBuffers.buffer(Ints.BYTES + getLength(lengthBuffer, 0));
+          partialRecord.writeBytes(lengthBuffer);
+          lengthBuffer.clear();
+        }
+
+        buffer.readBytes(partialRecord, Math.min(partialRecord.writableBytes(), buffer.readableBytes()));
+        if (!partialRecord.writable()) {
+          ChannelBuffer record = partialRecord;
+          partialRecord = null;
+          super.messageReceived(ctx, new UpstreamMessageEvent(e.getChannel(), record, e.getRemoteAddress()));
         }
       }
     }
+
+    //Length Data is encoded as an Integer in Big Endian Format, independent of the byte order of the buffer.
+    private int getLength(ChannelBuffer buffer, int index) {
+      return Ints.fromBytes(buffer.getByte(index), buffer.getByte(index + 1),
+                            buffer.getByte(index + 2), buffer.getByte(index + 3));
+    }
   }
 
   /**
@@ -217,10 +235,22 @@ public class OutputServerSocket extends StreamSocketServer {
         log.info(String.format("Output Stream %s : Received EOF Record", outputName));
         //TODO: Let Health Manager know (and let it decide if it is an failure case)?
       } else {
+        //Decode the record in place, the ByteBuffer shares the content of the ChannelBuffer.
         GDATDecoder decoder = new GDATDecoder(buffer.toByteBuffer());
         //Add Decoder to queue
         recordQueue.add(Maps.immutableEntry(outputName, decoder));
         dataRecordsReceived++;
+        if (recordQueue.isFull() && e.getChannel().isReadable()) {
+          //Stop reading, so that TCP flow control pushes back to the Stream Engine until records are committed.
+          final Channel channel = e.getChannel();
+          channel.setReadable(false);
+          recordQueue.notifyOnCapacity(new Runnable() {
+            @Override
+            public void run() {
+              channel.setReadable(true);
+            }
+          });
+        }
         super.messageReceived(ctx, e);
       }
     }
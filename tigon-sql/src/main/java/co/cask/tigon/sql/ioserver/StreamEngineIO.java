@@ -25,6 +25,7 @@ import co.cask.tigon.sql.io.DataIngestionRouter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractIdleService;
+import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
@@ -33,6 +34,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Handle all I/O Socket Servers for StreamEngine I/O.
@@ -41,6 +44,7 @@ public class StreamEngineIO extends AbstractIdleService {
   private final InputFlowletSpecification spec;
   private final List<StreamSocketServer> inputServerSocketServices = Lists.newArrayList();
   private final List<StreamSocketServer> outputServerSocketServies = Lists.newArrayList();
+  private final List<InputServerSocket> partitionedInputServices = Lists.newArrayList();
   private final Map<String, Map<String, InetSocketAddress>> inputServerMap = Maps.newHashMap();
   private final Map<String, Map<String, InetSocketAddress>> outputServerMap = Maps.newHashMap();
   private final Map<String, InetSocketAddress> dataIngressServerMap = Maps.newHashMap();
@@ -49,13 +53,29 @@ public class StreamEngineIO extends AbstractIdleService {
   private final GDATRecordQueue recordQueue;
   private DataIngestionRouter router;
   private final Map<String, Integer> portMap;
+  private final int instanceId;
+  private final int instanceCount;
+  private final DiscoveryServiceClient discoveryClient;
 
   //TODO Remove GDATRecordQueue parameter from this constructor. Use Guice to inject it directly to OutputServerSocket
   //TODO Tracked by JIRA TIGON-4
   public StreamEngineIO(InputFlowletSpecification spec, GDATRecordQueue recordQueue, Map<String, Integer> portMap) {
+    this(spec, recordQueue, portMap, 0, 1, null);
+  }
+
+  /**
+   * Constructor for one of the instances of an InputFlowlet. If the inputs are partitioned, the ports of the
+   * PartitionServers are added to the portMap.
+   * @param discoveryClient Discovers the PartitionServers of the other instances, if the inputs are partitioned.
+   */
+  public StreamEngineIO(InputFlowletSpecification spec, GDATRecordQueue recordQueue, Map<String, Integer> portMap,
+                        int instanceId, int instanceCount, @Nullable DiscoveryServiceClient discoveryClient) {
     this.spec = spec;
     this.recordQueue = recordQueue;
     this.portMap = portMap;
+    this.instanceId = instanceId;
+    this.instanceCount = instanceCount;
+    this.discoveryClient = discoveryClient;
   }
 
   @Override
@@ -64,16 +84,24 @@ public class StreamEngineIO extends AbstractIdleService {
       Map.Entry<InputStreamFormat, StreamSchema> streamInfo = spec.getInputSchemas().get(inputName);
       ChannelFactory factory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
                                                                  Executors.newCachedThreadPool());
+      // A single instance receives all partitions
+      GDATPartitioner partitioner = null;
+      if (spec.getPartitionKeys().containsKey(inputName) && instanceCount > 1) {
+        partitioner = new GDATPartitioner(streamInfo.getValue(), spec.getPartitionKeys().get(inputName),
+                                          instanceId, instanceCount);
+      }
       InputServerSocket service;
       switch(streamInfo.getKey()) {
         case GDAT:
           service = new InputServerSocket(factory, inputName, streamInfo.getValue(),
-                                          portMap.get(Constants.TCP_INGESTION_PORT_PREFIX + inputName));
+                                          portMap.get(Constants.TCP_INGESTION_PORT_PREFIX + inputName),
+                                          partitioner, discoveryClient);
           break;
 
         case JSON:
           service = new JsonInputServerSocket(factory, inputName, streamInfo.getValue(),
-                                              portMap.get(Constants.TCP_INGESTION_PORT_PREFIX + inputName));
+                                              portMap.get(Constants.TCP_INGESTION_PORT_PREFIX + inputName),
+                                              partitioner, discoveryClient);
           break;
 
         default:
@@ -82,6 +110,10 @@ public class StreamEngineIO extends AbstractIdleService {
 
       service.startAndWait();
       portMap.put(Constants.TCP_INGESTION_PORT_PREFIX + inputName, service.getIngestionPort());
+      if (partitioner != null) {
+        portMap.put(InputServerSocket.getPartitionPortName(inputName, instanceId), service.getPartitionPort());
+        partitionedInputServices.add(service);
+      }
       inputServerMap.put(inputName, service.getSocketAddressMap());
       dataIngressServerMap.put(inputName, service.getSocketAddressMap().get(Constants.StreamIO.TCP_DATA_INGESTION));
       dataSourceServerMap.put(inputName, service.getSocketAddressMap().get(Constants.StreamIO.DATASOURCE));
@@ -131,6 +163,20 @@ public class StreamEngineIO extends AbstractIdleService {
     }
   }
 
+  /**
+   * Waits until the PartitionServers of the other instances are discovered for all partitioned inputs.
+   * @return true if all PartitionServers were discovered within the timeout, false otherwise.
+   */
+  public boolean awaitPartitionServers(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+    for (InputServerSocket service : partitionedInputServices) {
+      if (!service.awaitPartitionServers(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public int getDataPort(String key) {
     return portMap.get(key);
   }
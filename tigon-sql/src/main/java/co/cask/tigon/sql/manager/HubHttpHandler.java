@@ -21,6 +21,7 @@ import co.cask.http.HttpResponder;
 import co.cask.tigon.sql.internal.HealthInspector;
 import co.cask.tigon.sql.internal.MetricsRecorder;
 import co.cask.tigon.sql.internal.ProcessMonitor;
+import co.cask.tigon.sql.internal.StreamEngineStats;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
@@ -65,6 +66,8 @@ import javax.ws.rs.PathParam;
  * 9) /announce-fta-instance          from each FTA instance
  * 10) /log-metrics                    from each FTA instance
  *
+ * The statistics of the processes can be inspected through /stats and /stats/{process}.
+ *
  * Most of these processes poll on specific end points until  a 200 OK response is returned. If a request cannot be
  * served at a specific time because the state is not set or the specific information is not available then the response
  * is an error code like 400.
@@ -222,6 +225,23 @@ public class HubHttpHandler extends AbstractHttpHandler {
     responder.sendStatus(HttpResponseStatus.OK);
   }
 
+  @Path("/stats")
+  @GET
+  public void getStats(HttpRequest request, HttpResponder responder) {
+    responder.sendJson(HttpResponseStatus.OK, metricsRecorder.getStats().getStats());
+  }
+
+  @Path("/stats/{process}")
+  @GET
+  public void getProcessStats(HttpRequest request, HttpResponder responder, @PathParam("process") String process) {
+    Map<String, StreamEngineStats.Summary> stats = metricsRecorder.getStats().getStats(process);
+    if (stats.isEmpty()) {
+      responder.sendError(HttpResponseStatus.NOT_FOUND, "No statistics of process " + process);
+      return;
+    }
+    responder.sendJson(HttpResponseStatus.OK, stats);
+  }
+
   @Path("/discover-instance/{instance}")
   @GET
   public void discoverInstance(HttpRequest request, HttpResponder responder,
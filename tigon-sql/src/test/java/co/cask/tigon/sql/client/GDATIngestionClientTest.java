@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.client;
+
+import co.cask.tigon.sql.conf.Constants;
+import co.cask.tigon.sql.flowlet.GDATFieldType;
+import co.cask.tigon.sql.flowlet.GDATRecordQueue;
+import co.cask.tigon.sql.flowlet.StreamSchema;
+import co.cask.tigon.sql.internal.StreamEngineSimulator;
+import co.cask.tigon.sql.io.GDATDecoder;
+import co.cask.tigon.sql.io.GDATRecordEncoder;
+import co.cask.tigon.sql.ioserver.InputServerSocket;
+import co.cask.tigon.sql.ioserver.OutputServerSocket;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.discovery.Discoverable;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test GDAT Ingestion Client.
+ */
+public class GDATIngestionClientTest {
+  private static final String name = "ClientStream";
+  private static final StreamSchema schema = new StreamSchema.Builder()
+    .addField("id", GDATFieldType.INT)
+    .addField("value", GDATFieldType.LONG)
+    .addField("text", GDATFieldType.STRING)
+    .build();
+
+  private static final ChannelFactory factory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+                                                                                  Executors.newCachedThreadPool());
+
+  @Test
+  public void testIngestionClient() throws Exception {
+    GDATRecordQueue recordQueue = new GDATRecordQueue();
+    InputServerSocket inputSocketService = new InputServerSocket(factory, name, schema);
+    OutputServerSocket outputSocketService = new OutputServerSocket(factory, name, null, recordQueue);
+    StreamEngineSimulator simulator = null;
+    GDATIngestionClient client = null;
+    try {
+      inputSocketService.startAndWait();
+      outputSocketService.startAndWait();
+      simulator = new StreamEngineSimulator(
+        inputSocketService.getSocketAddressMap().get(Constants.StreamIO.DATASOURCE),
+        outputSocketService.getSocketAddressMap().get(Constants.StreamIO.DATASINK), null);
+      simulator.startAndWait();
+
+      final InetSocketAddress address = inputSocketService.getSocketAddressMap()
+        .get(Constants.StreamIO.TCP_DATA_INGESTION);
+      Discoverable discoverable = new Discoverable() {
+        @Override
+        public String getName() {
+          return Constants.TCP_INGESTION_PORT_PREFIX + name;
+        }
+
+        @Override
+        public InetSocketAddress getSocketAddress() {
+          return address;
+        }
+      };
+      // Small batches over multiple connections, such that the records of the connections are interleaved
+      client = new GDATIngestionClient(ImmutableList.of(discoverable), schema, 3, 100);
+      client.startAndWait();
+
+      GDATRecordEncoder encoder = client.createEncoder();
+      int id = encoder.getFieldIndex("id");
+      int value = encoder.getFieldIndex("value");
+      int text = encoder.getFieldIndex("text");
+      int count = 1000;
+      ListenableFuture<Void> lastFuture = null;
+      for (int i = 0; i < count; i++) {
+        encoder.setInt(id, i).setLong(value, i * 1000000000L).setString(text, "récord " + i);
+        if (i % 2 == 0) {
+          client.write(encoder);
+        } else {
+          lastFuture = client.writeAsync(encoder);
+        }
+      }
+      client.flush();
+      Assert.assertTrue(lastFuture.isDone());
+
+      for (int i = 0; i < 100 && recordQueue.getSize() < count; i++) {
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      Assert.assertEquals(count, recordQueue.getSize());
+
+      Set<Integer> ids = Sets.newHashSet();
+      Map.Entry<String, GDATDecoder> record;
+      while ((record = recordQueue.getNext()) != null) {
+        GDATDecoder decoder = record.getValue();
+        int recordId = decoder.readInt();
+        Assert.assertEquals(recordId * 1000000000L, decoder.readLong());
+        Assert.assertEquals("récord " + recordId, decoder.readString());
+        ids.add(recordId);
+      }
+      Assert.assertEquals(count, ids.size());
+    } finally {
+      if (client != null) {
+        client.stopAndWait();
+      }
+      inputSocketService.stopAndWait();
+      if (simulator != null) {
+        simulator.stopAndWait();
+      }
+      outputSocketService.stopAndWait();
+    }
+  }
+}
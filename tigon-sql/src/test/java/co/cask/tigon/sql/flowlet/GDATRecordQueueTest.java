@@ -26,6 +26,8 @@ import org.junit.Test;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * GDATRecordQueueTest
@@ -111,4 +113,79 @@ public class GDATRecordQueueTest {
     Assert.assertEquals(recordAddCount * threadCount, numberOfRecords);
     Assert.assertEquals((recordAddCount * (recordAddCount + 1)) * threadCount / 2, sumOfRecordValues);
   }
+
+  @Test
+  public void testBoundedQueue() {
+    GDATRecordQueue boundedQueue = new GDATRecordQueue(4, 0L);
+    final AtomicBoolean resumed = new AtomicBoolean();
+    for (int i = 0; i < 4; i++) {
+      Assert.assertFalse(boundedQueue.isFull());
+      boundedQueue.add(Maps.immutableEntry(i + "", (GDATDecoder) null));
+    }
+    Assert.assertTrue(boundedQueue.isFull());
+    boundedQueue.notifyOnCapacity(new Runnable() {
+      @Override
+      public void run() {
+        resumed.set(true);
+      }
+    });
+
+    // Records that are dequeued or rolled back are still counted until committed
+    boundedQueue.getNext();
+    boundedQueue.rollback();
+    Assert.assertTrue(boundedQueue.isFull());
+    boundedQueue.getNext();
+    boundedQueue.commit();
+    Assert.assertFalse(boundedQueue.isFull());
+    Assert.assertFalse(resumed.get());
+
+    // Resumes once drained to half of the limit
+    boundedQueue.getNext();
+    boundedQueue.commit();
+    Assert.assertTrue(resumed.get());
+    Assert.assertEquals(2, boundedQueue.getSize());
+    Assert.assertEquals(4, boundedQueue.getPeakSize());
+
+    // Callback is called immediately if there is capacity
+    resumed.set(false);
+    boundedQueue.notifyOnCapacity(new Runnable() {
+      @Override
+      public void run() {
+        resumed.set(true);
+      }
+    });
+    Assert.assertTrue(resumed.get());
+  }
+
+  @Test
+  public void testRecordsListener() {
+    GDATRecordQueue queue = new GDATRecordQueue();
+    final AtomicInteger notified = new AtomicInteger();
+    queue.notifyOnRecords(new Runnable() {
+      @Override
+      public void run() {
+        notified.incrementAndGet();
+      }
+    });
+
+    // Only notified when a record arrives in an empty queue
+    queue.add(Maps.immutableEntry("0", (GDATDecoder) null));
+    queue.add(Maps.immutableEntry("1", (GDATDecoder) null));
+    Assert.assertEquals(1, notified.get());
+    queue.getNext();
+    queue.add(Maps.immutableEntry("2", (GDATDecoder) null));
+    Assert.assertEquals(1, notified.get());
+    queue.getNext();
+    queue.getNext();
+    Assert.assertTrue(queue.isEmpty());
+    queue.add(Maps.immutableEntry("3", (GDATDecoder) null));
+    Assert.assertEquals(2, notified.get());
+
+    // Records rolled back into an empty queue notify as well
+    queue.getNext();
+    Assert.assertTrue(queue.isEmpty());
+    queue.rollback();
+    Assert.assertEquals(3, notified.get());
+    Assert.assertFalse(queue.isEmpty());
+  }
 }
@@ -57,6 +57,34 @@ public class InputFlowetSpecificationTest {
       Assert.assertEquals(testValue, 1);
     }
   }
-}
-
 
+  @Test
+  public void testPartitionKeys() {
+    StreamSchema schema = new StreamSchema.Builder()
+      .addField("id", GDATFieldType.INT)
+      .addField("key", GDATFieldType.STRING)
+      .build();
+    DefaultInputFlowletConfigurer configurer = new DefaultInputFlowletConfigurer(new AllFieldTypeFlowlet());
+    configurer.addGDATInput("first", schema);
+    configurer.addJSONInput("second", schema);
+    configurer.setPartitionKey("first", "key");
+    try {
+      configurer.createInputFlowletSpec();
+      Assert.fail("Expected failure since not all inputs are partitioned.");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    configurer.setPartitionKey("second", "value");
+    try {
+      configurer.createInputFlowletSpec();
+      Assert.fail("Expected failure since the partition key field does not exist.");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    configurer.setPartitionKey("second", "id");
+    InputFlowletSpecification spec = configurer.createInputFlowletSpec();
+    Assert.assertEquals(2, spec.getPartitionKeys().size());
+    Assert.assertEquals("key", spec.getPartitionKeys().get("first"));
+    Assert.assertEquals("id", spec.getPartitionKeys().get("second"));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * Tests the StreamBinaryCache.
+ */
+public class StreamBinaryCacheTest {
+
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void testRestore() throws Exception {
+    File binDir = tmpFolder.newFolder();
+    Files.write("config", new File(binDir, "output_spec.cfg"), Charsets.UTF_8);
+    File subDir = new File(binDir, "sub");
+    subDir.mkdirs();
+    File binary = new File(subDir, "rts");
+    Files.write("binary", binary, Charsets.UTF_8);
+    binary.setExecutable(true, false);
+
+    LocalLocationFactory locationFactory = new LocalLocationFactory();
+    Location localLocation = locationFactory.create(tmpFolder.newFolder().toURI());
+    Location sharedLocation = locationFactory.create(tmpFolder.newFolder().toURI());
+
+    // Binaries stored by another container are only in the shared location
+    new StreamBinaryCache(ImmutableList.of(sharedLocation)).store("key", binDir);
+    StreamBinaryCache cache = new StreamBinaryCache(ImmutableList.of(localLocation, sharedLocation));
+    Assert.assertFalse(cache.restore("otherKey", tmpFolder.newFolder()));
+    Assert.assertFalse(localLocation.append("key.tar.gz").exists());
+
+    File restoreDir = new File(tmpFolder.newFolder(), "query");
+    Assert.assertTrue(cache.restore("key", restoreDir));
+    Assert.assertEquals("config", Files.toString(new File(restoreDir, "output_spec.cfg"), Charsets.UTF_8));
+    File restoredBinary = new File(new File(restoreDir, "sub"), "rts");
+    Assert.assertEquals("binary", Files.toString(restoredBinary, Charsets.UTF_8));
+    Assert.assertTrue(restoredBinary.canExecute());
+    Assert.assertFalse(new File(restoreDir, "output_spec.cfg").canExecute());
+
+    // The binaries are copied to the local location on restore
+    Assert.assertTrue(localLocation.append("key.tar.gz").exists());
+  }
+}
@@ -41,8 +41,8 @@ import java.util.concurrent.Executors;
  */
 public class StreamEngineSimulator extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(StreamEngineSimulator.class);
-  private static Channel clientChannel;
-  private static Channel dataSinkChannel;
+  private Channel clientChannel;
+  private Channel dataSinkChannel;
   private final InetSocketAddress dataSourceServerSocket;
   private final InetSocketAddress ingestionServerSocket;
   private final InetSocketAddress outputServerSocket;
@@ -118,18 +118,18 @@ public class StreamEngineSimulator extends AbstractIdleService {
     });
   }
 
-  private static class RelaySourceToSinkHandler extends SimpleChannelHandler {
-    private static final Logger LOG = LoggerFactory.getLogger(RelaySourceToSinkHandler.class);
+  private class RelaySourceToSinkHandler extends SimpleChannelHandler {
+    private final Logger log = LoggerFactory.getLogger(RelaySourceToSinkHandler.class);
     private int relayedBytes = 0;
 
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
       if (dataSinkChannel != null && dataSinkChannel.isConnected()) {
         relayedBytes += ((ChannelBuffer) e.getMessage()).readableBytes();
-        LOG.info("Relayed Bytes " + relayedBytes);
+        log.info("Relayed Bytes " + relayedBytes);
         dataSinkChannel.write(e.getMessage());
       } else {
-        LOG.info("Relaying from Source to Sink Client didn't happen! Dropping Data");
+        log.info("Relaying from Source to Sink Client didn't happen! Dropping Data");
       }
     }
   }
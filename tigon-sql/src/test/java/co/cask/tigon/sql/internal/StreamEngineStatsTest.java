@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.internal;
+
+import co.cask.tigon.api.metrics.Metrics;
+import co.cask.tigon.sql.conf.Constants;
+import co.cask.tigon.sql.flowlet.GDATRecordQueue;
+import co.cask.tigon.sql.io.GDATDecoder;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests the StreamEngineStats and the statistics recorded by the MetricsRecorder.
+ */
+public class StreamEngineStatsTest {
+
+  @Test
+  public void testSeries() {
+    StreamEngineStats stats = new StreamEngineStats(3);
+    for (int i = 0; i < 5; i++) {
+      stats.add("query", "in_tuple_cnt", StreamEngineStats.Kind.COUNTER, 1000L * i, 10 * (i + 1));
+      stats.add("query", "sampling_rate", StreamEngineStats.Kind.GAUGE, 1000L * i, i);
+    }
+    Assert.assertTrue(stats.getStats("otherQuery").isEmpty());
+    Assert.assertEquals(1, stats.getStats().size());
+
+    // Only the last 3 samples are kept, the total covers all samples
+    StreamEngineStats.Summary counter = stats.getStats("query").get("in_tuple_cnt");
+    Assert.assertArrayEquals(new long[] {2000L, 3000L, 4000L}, counter.getTimestamps());
+    Assert.assertArrayEquals(new double[] {30, 40, 50}, counter.getValues(), 0);
+    Assert.assertEquals(50, counter.getLast(), 0);
+    Assert.assertEquals(50, counter.getMax(), 0);
+    Assert.assertEquals(150, counter.getTotal(), 0);
+    // 90 increments within the 2 seconds after the first sample
+    Assert.assertEquals(45, counter.getRate(), 0.001);
+
+    StreamEngineStats.Summary gauge = stats.getStats("query").get("sampling_rate");
+    Assert.assertEquals(StreamEngineStats.Kind.GAUGE, gauge.getKind());
+    Assert.assertEquals(4, gauge.getLast(), 0);
+    Assert.assertEquals(0, gauge.getTotal(), 0);
+    Assert.assertEquals(0, gauge.getRate(), 0);
+  }
+
+  @Test
+  public void testRecordMetrics() {
+    final Map<String, Long> counters = Maps.newHashMap();
+    MetricsRecorder recorder = new MetricsRecorder(new Metrics() {
+      @Override
+      public void count(String counterName, int delta) {
+        Long value = counters.get(counterName);
+        counters.put(counterName, (value == null ? 0 : value) + delta);
+      }
+    });
+    JsonObject metrics = new JsonObject();
+    metrics.addProperty("in_tuple_cnt", 100);
+    metrics.addProperty("accepted_tuple_cnt", 90);
+    metrics.addProperty("cycle_cnt", 5000000000L);
+    metrics.addProperty("sampling_rate", 0.5);
+    recorder.recordMetrics("query", metrics);
+
+    Assert.assertEquals(100L, (long) counters.get("query.in_tuple_cnt"));
+    Assert.assertEquals(10L, (long) counters.get("query." + Constants.DROPPED_TUPLE_METRIC));
+    Assert.assertEquals(5000000000L, (long) counters.get("query.cycle_cnt"));
+    Assert.assertFalse(counters.containsKey("query.sampling_rate"));
+
+    Map<String, StreamEngineStats.Summary> stats = recorder.getStats().getStats("query");
+    Assert.assertEquals(5000000000d, stats.get("cycle_cnt").getLast(), 0);
+    Assert.assertEquals(10, stats.get(Constants.DROPPED_TUPLE_METRIC).getTotal(), 0);
+    Assert.assertEquals(0.5, stats.get("sampling_rate").getLast(), 0);
+  }
+
+  @Test
+  public void testRecordQueueMetrics() {
+    final Map<String, Long> counters = Maps.newHashMap();
+    MetricsRecorder recorder = new MetricsRecorder(new Metrics() {
+      @Override
+      public void count(String counterName, int delta) {
+        Long value = counters.get(counterName);
+        counters.put(counterName, (value == null ? 0 : value) + delta);
+      }
+    });
+    GDATRecordQueue recordQueue = new GDATRecordQueue();
+    for (int i = 0; i < 3; i++) {
+      recordQueue.add(Maps.<String, GDATDecoder>immutableEntry("query", null));
+    }
+
+    // Reporting the same depth again doesn't change the counters
+    recorder.recordQueueMetrics(recordQueue);
+    recorder.recordQueueMetrics(recordQueue);
+    Assert.assertEquals(3L, (long) counters.get(Constants.RECORD_QUEUE_DEPTH_METRIC));
+    Assert.assertEquals(3L, (long) counters.get(Constants.RECORD_QUEUE_PEAK_DEPTH_METRIC));
+
+    // The counters follow the depth down
+    recordQueue.getNext();
+    recordQueue.getNext();
+    recordQueue.commit();
+    recorder.recordQueueMetrics(recordQueue);
+    Assert.assertEquals(1L, (long) counters.get(Constants.RECORD_QUEUE_DEPTH_METRIC));
+    Assert.assertEquals(3L, (long) counters.get(Constants.RECORD_QUEUE_PEAK_DEPTH_METRIC));
+
+    Map<String, StreamEngineStats.Summary> stats = recorder.getStats().getStats(Constants.INPUT_FLOWLET_STATS);
+    Assert.assertEquals(1, stats.get(Constants.RECORD_QUEUE_DEPTH_METRIC).getLast(), 0);
+    Assert.assertEquals(3, stats.get(Constants.RECORD_QUEUE_PEAK_DEPTH_METRIC).getLast(), 0);
+  }
+}
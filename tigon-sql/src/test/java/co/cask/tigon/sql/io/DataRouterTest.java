@@ -17,8 +17,10 @@
 package co.cask.tigon.sql.io;
 
 import co.cask.tigon.utils.Networks;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
@@ -31,6 +33,8 @@ import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.handler.codec.frame.LineBasedFrameDecoder;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.string.StringDecoder;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -38,7 +42,10 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
+import java.net.URL;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -56,10 +63,12 @@ public class DataRouterTest {
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
       String key = (String) e.getMessage();
-      if (!testMap.containsKey(key)) {
-        testMap.put(key, 1);
-      } else {
-        testMap.put(key, testMap.get(key) + 1);
+      synchronized (testMap) {
+        if (!testMap.containsKey(key)) {
+          testMap.put(key, 1);
+        } else {
+          testMap.put(key, testMap.get(key) + 1);
+        }
       }
     }
   }
@@ -83,6 +92,7 @@ public class DataRouterTest {
     serverMap.put("stream2", (InetSocketAddress) serverBootstrap.bind(new InetSocketAddress(0)).getLocalAddress());
     serverMap.put("stream3", (InetSocketAddress) serverBootstrap.bind(new InetSocketAddress(0)).getLocalAddress());
     serverMap.put("stream4", (InetSocketAddress) serverBootstrap.bind(new InetSocketAddress(0)).getLocalAddress());
+    serverMap.put("stream5", (InetSocketAddress) serverBootstrap.bind(new InetSocketAddress(0)).getLocalAddress());
   }
 
   @Test
@@ -100,6 +110,10 @@ public class DataRouterTest {
       doPost(routerHost, "stream3");
       doPost(routerHost, "stream2");
       doPost(routerHost, "stream2");
+      // Data is forwarded asynchronously
+      waitForCount("stream1", 2);
+      waitForCount("stream2", 3);
+      waitForCount("stream3", 1);
       Assert.assertEquals(2, testMap.get("stream1").intValue());
       Assert.assertEquals(3, testMap.get("stream2").intValue());
       Assert.assertEquals(1, testMap.get("stream3").intValue());
@@ -109,6 +123,66 @@ public class DataRouterTest {
     }
   }
 
+  @Test
+  public void testBulkIngestion() throws Exception {
+    int port = Networks.getRandomPort();
+    DataIngestionRouter router = new DataIngestionRouter(serverMap, port);
+    try {
+      router.startAndWait();
+      TimeUnit.SECONDS.sleep(1);
+      HttpURLConnection urlConn = (HttpURLConnection) new URL("http://127.0.0.1:" + port +
+                                                              "/v1/tigon/stream5/bulk").openConnection();
+      urlConn.setDoOutput(true);
+      urlConn.setRequestMethod("POST");
+      // Small chunks, such that records span chunks
+      urlConn.setChunkedStreamingMode(5);
+      OutputStream out = urlConn.getOutputStream();
+      try {
+        for (int i = 0; i < 10; i++) {
+          out.write("stream5\n".getBytes(Charsets.UTF_8));
+        }
+      } finally {
+        out.close();
+      }
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, urlConn.getResponseCode());
+      urlConn.disconnect();
+      waitForCount("stream5", 10);
+      Assert.assertEquals(10, testMap.get("stream5").intValue());
+    } finally {
+      router.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testBusyStream() throws Exception {
+    int port = Networks.getRandomPort();
+    // No bytes may be in flight, hence the streams are always busy
+    DataIngestionRouter router = new DataIngestionRouter(serverMap, port, 0L, 100L);
+    try {
+      router.startAndWait();
+      TimeUnit.SECONDS.sleep(1);
+      DefaultHttpClient httpClient = new DefaultHttpClient();
+      HttpPost httpPost = new HttpPost("/v1/tigon/stream4");
+      httpPost.setEntity(new StringEntity("stream4\n"));
+      HttpResponse response = httpClient.execute(new HttpHost("127.0.0.1", port), httpPost);
+      Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE.getCode(), response.getStatusLine().getStatusCode());
+      Assert.assertNotNull(response.getFirstHeader(HttpHeaders.Names.RETRY_AFTER));
+    } finally {
+      router.stopAndWait();
+    }
+  }
+
+  private void waitForCount(String key, int count) throws InterruptedException {
+    for (int i = 0; i < 50; i++) {
+      synchronized (testMap) {
+        if (testMap.containsKey(key) && testMap.get(key) >= count) {
+          return;
+        }
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+  }
+
   private void doPost(HttpHost host, String streamName) throws Exception {
     DefaultHttpClient httpClient = new DefaultHttpClient();
     HttpPost httpPost = new HttpPost("/v1/tigon/" + streamName);
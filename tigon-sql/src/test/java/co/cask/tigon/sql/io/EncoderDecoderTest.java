@@ -16,10 +16,13 @@
 
 package co.cask.tigon.sql.io;
 
+import co.cask.tigon.sql.flowlet.GDATFieldType;
+import co.cask.tigon.sql.flowlet.StreamSchema;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
@@ -72,4 +75,70 @@ public class EncoderDecoderTest {
     Assert.assertEquals("", decoder.readString());
     Assert.assertEquals(10L, decoder.readLong());
   }
+
+  @Test
+  public void testBatchDecoder() throws Exception {
+    StreamSchema schema = new StreamSchema.Builder()
+      .addField("intVar", GDATFieldType.INT)
+      .addField("stringVar", GDATFieldType.STRING)
+      .addField("longVar", GDATFieldType.LONG)
+      .addField("doubleVar", GDATFieldType.DOUBLE)
+      .addField("boolVar", GDATFieldType.BOOL)
+      .addField("otherStringVar", GDATFieldType.STRING)
+      .build();
+    GDATBatchDecoder batch = new GDATBatchDecoder(schema);
+    Assert.assertTrue(batch.isEmpty());
+    batch.add(new GDATDecoder(ByteBuffer.wrap(encodeRecord(1, "Hello", 10L, 1.5, true, "World"))));
+    // Strings are decoded without a backing array as well
+    byte[] bytes = encodeRecord(2, "", Long.MIN_VALUE, -3.4, false, "HelloHelloHelloHello");
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length);
+    directBuffer.put(bytes).flip();
+    batch.add(new GDATDecoder(directBuffer));
+
+    Assert.assertEquals(2, batch.size());
+    int intField = batch.getFieldIndex("intVar");
+    int stringField = batch.getFieldIndex("stringVar");
+    int longField = batch.getFieldIndex("longVar");
+    int doubleField = batch.getFieldIndex("doubleVar");
+    int boolField = batch.getFieldIndex("boolVar");
+    int otherStringField = batch.getFieldIndex("otherStringVar");
+    Assert.assertEquals(GDATFieldType.LONG, batch.getFieldType(longField));
+
+    Assert.assertEquals(1, batch.getInt(0, intField));
+    Assert.assertEquals("Hello", batch.getString(0, stringField));
+    Assert.assertEquals(10L, batch.getLong(0, longField));
+    Assert.assertTrue(Double.compare(1.5, batch.getDouble(0, doubleField)) == 0);
+    Assert.assertTrue(batch.getBool(0, boolField));
+    Assert.assertEquals("World", batch.getString(0, otherStringField));
+
+    Assert.assertEquals(2, batch.getInt(1, intField));
+    Assert.assertEquals("", batch.getString(1, stringField));
+    Assert.assertEquals(Long.MIN_VALUE, batch.getLong(1, longField));
+    Assert.assertTrue(Double.compare(-3.4, batch.getDouble(1, doubleField)) == 0);
+    Assert.assertFalse(batch.getBool(1, boolField));
+    Assert.assertEquals("HelloHelloHelloHello", batch.getString(1, otherStringField));
+
+    try {
+      batch.getInt(0, longField);
+      Assert.fail("Expected IllegalArgumentException for reading a field of another type.");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+    batch.clear();
+    Assert.assertTrue(batch.isEmpty());
+  }
+
+  private byte[] encodeRecord(int intVar, String stringVar, long longVar, double doubleVar, boolean boolVar,
+                              String otherStringVar) throws IOException {
+    GDATEncoder encoder = new GDATEncoder();
+    encoder.writeInt(intVar);
+    encoder.writeString(stringVar);
+    encoder.writeLong(longVar);
+    encoder.writeDouble(doubleVar);
+    encoder.writeBool(boolVar);
+    encoder.writeString(otherStringVar);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    encoder.writeTo(outputStream);
+    return outputStream.toByteArray();
+  }
 }
@@ -16,6 +16,7 @@
 
 package co.cask.tigon.sql.io;
 
+import co.cask.tigon.internal.io.ReflectionDatumReaderFactory;
 import co.cask.tigon.internal.io.Schema;
 import co.cask.tigon.internal.io.UnsupportedTypeException;
 import co.cask.tigon.internal.lang.MethodVisitor;
@@ -61,7 +62,7 @@ public class MethodInvocationTests {
       .build();
     Map<String, StreamSchema> schemaMap = Maps.newHashMap();
     schemaMap.put("sumOut", streamSchema);
-    driver = new MethodsDriver(flowlet, schemaMap);
+    driver = new MethodsDriver(flowlet, schemaMap, new ReflectionDatumReaderFactory());
     schema = driver.getSchema(streamSchema);
     GDATEncoder encoder = new GDATEncoder();
     encoder.writeInt(23);
@@ -95,7 +96,7 @@ public class MethodInvocationTests {
    */
   @Test
   public void testPOJOCreator() throws IOException, UnsupportedTypeException {
-    POJOCreator pojoCreator = new POJOCreator(Output1.class, schema);
+    POJOCreator pojoCreator = new POJOCreator(Output1.class, schema, new ReflectionDatumReaderFactory());
     Output1 obj = (Output1) pojoCreator.decode(new GDATDecoder(ByteBuffer.wrap(bytes)));
     Assert.assertEquals("\tTimeStamp: 23\tiStream: 456789\tString: I am your POJO!", obj.toString());
     Assert.assertEquals(Output1.class, obj.getClass());
@@ -107,7 +108,7 @@ public class MethodInvocationTests {
    */
   @Test(expected = IOException.class)
   public void testPOJOCreatorErrorRecord() throws IOException, UnsupportedTypeException {
-    POJOCreator pojoCreator = new POJOCreator(Output1.class, schema);
+    POJOCreator pojoCreator = new POJOCreator(Output1.class, schema, new ReflectionDatumReaderFactory());
     GDATEncoder encoder = new GDATEncoder();
     encoder.writeInt(23);
     encoder.writeString("I am your POJO!");
@@ -125,7 +126,7 @@ public class MethodInvocationTests {
    */
   @Test
   public void testPOJOCreatorBadVarName() throws IOException, UnsupportedTypeException {
-    POJOCreator pojoCreator = new POJOCreator(Output3.class, schema);
+    POJOCreator pojoCreator = new POJOCreator(Output3.class, schema, new ReflectionDatumReaderFactory());
     Output3 obj = (Output3) pojoCreator.decode(new GDATDecoder(ByteBuffer.wrap(bytes)));
     Assert.assertEquals(Output3.class, obj.getClass());
     Assert.assertEquals(null, obj.badDoubleVar);
@@ -138,7 +139,7 @@ public class MethodInvocationTests {
    */
   @Test (expected = IOException.class)
   public void testPOJOCreatorWrongDataType() throws IOException, UnsupportedTypeException {
-    POJOCreator pojoCreator = new POJOCreator(Output4.class, schema);
+    POJOCreator pojoCreator = new POJOCreator(Output4.class, schema, new ReflectionDatumReaderFactory());
     pojoCreator.decode(new GDATDecoder(ByteBuffer.wrap(bytes)));
   }
 
@@ -156,7 +157,8 @@ public class MethodInvocationTests {
                           if (annotation == null) {
                             return;
                           }
-                          MethodInvoker methodInvoker = new MethodInvoker(o, method, inspectType, schema);
+                          MethodInvoker methodInvoker = new MethodInvoker(o, method, inspectType, schema,
+                                                                          new ReflectionDatumReaderFactory());
                           methodInvoker.invoke(new GDATDecoder(ByteBuffer.wrap(bytes)));
                         }
                       }
@@ -21,6 +21,10 @@ import co.cask.tigon.sql.flowlet.GDATFieldType;
 import co.cask.tigon.sql.flowlet.GDATRecordQueue;
 import co.cask.tigon.sql.flowlet.StreamSchema;
 import co.cask.tigon.sql.internal.StreamEngineSimulator;
+import co.cask.tigon.sql.io.GDATDecoder;
+import com.google.common.base.Charsets;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.junit.Assert;
@@ -28,6 +32,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -82,4 +87,55 @@ public class JsonInputTest {
       outputSocketService.stopAndWait();
     }
   }
+
+  @Test
+  public void testJsonRecordDecoder() throws Exception {
+    StreamSchema typedSchema = new StreamSchema.Builder()
+      .addField("intVar", GDATFieldType.INT)
+      .addField("stringVar", GDATFieldType.STRING)
+      .addField("longVar", GDATFieldType.LONG)
+      .addField("doubleVar", GDATFieldType.DOUBLE)
+      .addField("boolVar", GDATFieldType.BOOL)
+      .build();
+    JsonRecordDecoder decoder = new JsonRecordDecoder(name, typedSchema);
+    ChannelBuffer input = ChannelBuffers.dynamicBuffer();
+
+    // A record split across reads, with brackets and escapes in a string value
+    input.writeBytes("{\"data\" : [\"12\", \"a}]\\\"b".getBytes(Charsets.UTF_8));
+    Assert.assertNull(decoder.decode(null, null, input));
+    input.writeBytes("\\u00e9\", \"-9223372036854775808\", \"34.5\", \"True\"]}".getBytes(Charsets.UTF_8));
+    ByteBuffer output = ((ChannelBuffer) decoder.decode(null, null, input)).toByteBuffer();
+    assertRecord(output, 12, "a}]\"b\u00e9", Long.MIN_VALUE, 34.5, true);
+    Assert.assertFalse(output.hasRemaining());
+
+    // An array of records with typed values and other keys
+    input.writeBytes(("\n[{\"data\": [1, \"x\", 2, -0.125, false]}, " +
+      "{\"ts\": {\"a\": [1, \"}\"]}, \"data\": [-3, \"\", 9007199254740993, 1e3, true]}]")
+                       .getBytes(Charsets.UTF_8));
+    output = ((ChannelBuffer) decoder.decode(null, null, input)).toByteBuffer();
+    assertRecord(output, 1, "x", 2L, -0.125, false);
+    assertRecord(output, -3, "", 9007199254740993L, 1000.0, true);
+    Assert.assertFalse(output.hasRemaining());
+
+    // Invalid records are dropped
+    input.writeBytes("{\"data\": [1, \"x\"]}{\"data\": [\"2147483648\", \"x\", 1, 1, true]}".getBytes(Charsets.UTF_8));
+    Assert.assertNull(decoder.decode(null, null, input));
+    Assert.assertNull(decoder.decode(null, null, input));
+    Assert.assertFalse(input.readable());
+
+    input.writeBytes("{\"data\": [7, \"y\", 8, 0.1, true]}".getBytes(Charsets.UTF_8));
+    output = ((ChannelBuffer) decoder.decode(null, null, input)).toByteBuffer();
+    assertRecord(output, 7, "y", 8L, 0.1, true);
+  }
+
+  private void assertRecord(ByteBuffer buffer, int intVar, String stringVar, long longVar, double doubleVar,
+                            boolean boolVar) throws Exception {
+    GDATDecoder decoder = new GDATDecoder(buffer);
+    Assert.assertEquals(intVar, decoder.readInt());
+    Assert.assertEquals(stringVar, decoder.readString());
+    Assert.assertEquals(longVar, decoder.readLong());
+    Assert.assertEquals(Double.doubleToLongBits(doubleVar), Double.doubleToLongBits(decoder.readDouble()));
+    Assert.assertEquals(boolVar, decoder.readBool());
+    buffer.position(buffer.position() + decoder.getRecordLength());
+  }
 }
@@ -22,6 +22,7 @@ import co.cask.tigon.sql.flowlet.GDATRecordQueue;
 import co.cask.tigon.sql.flowlet.GDATSlidingWindowAttribute;
 import co.cask.tigon.sql.flowlet.StreamSchema;
 import co.cask.tigon.sql.internal.StreamInputHeader;
+import co.cask.tigon.sql.io.GDATDecoder;
 import co.cask.tigon.sql.io.GDATEncoder;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Bytes;
@@ -134,4 +135,47 @@ public class OutputServerSocketTest {
     TimeUnit.SECONDS.sleep(2);
     Assert.assertEquals(1, outputServerSocket.getDataRecordsReceived());
   }
+
+  @Test
+  public void testRecordFraming() throws InterruptedException, IOException {
+    String outputName = "output";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < 4; i++) {
+      GDATEncoder encoder = new GDATEncoder();
+      encoder.writeLong(i);
+      encoder.writeString("item" + i);
+      encoder.writeTo(out);
+    }
+    byte[] dataBytes = out.toByteArray();
+    GDATRecordQueue recordQueue = new GDATRecordQueue();
+    OutputServerSocket outputServerSocket = new OutputServerSocket(serverFacotry, outputName, "SELECT foo FROM bar",
+                                                                   recordQueue);
+    outputServerSocket.startAndWait();
+    InetSocketAddress serverAddress = outputServerSocket.getSocketAddressMap().get(Constants.StreamIO.DATASINK);
+    setupClientPipeline();
+    ChannelFuture future = clientBootstrap.connect(serverAddress);
+    future.await(3, TimeUnit.SECONDS);
+    Channel channel = future.getChannel();
+    String gdatHeader = new StreamInputHeader(outputName, testSchema).getStreamHeader();
+    channel.write(ChannelBuffers.wrappedBuffer(gdatHeader.getBytes(Charsets.UTF_8))).await();
+    TimeUnit.MILLISECONDS.sleep(100);
+
+    //First write has two full records and the first two length bytes of the third record.
+    int recordSize = dataBytes.length / 4;
+    int[] splits = { 0, 2 * recordSize + 2, 3 * recordSize + 1, dataBytes.length };
+    for (int i = 0; i < splits.length - 1; i++) {
+      channel.write(ChannelBuffers.wrappedBuffer(dataBytes, splits[i], splits[i + 1] - splits[i])).await();
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+    TimeUnit.SECONDS.sleep(1);
+    Assert.assertEquals(4, outputServerSocket.getDataRecordsReceived());
+    for (int i = 0; i < 4; i++) {
+      GDATDecoder decoder = recordQueue.getNext().getValue();
+      Assert.assertEquals(i, decoder.readLong());
+      Assert.assertEquals("item" + i, decoder.readString());
+    }
+    recordQueue.commit();
+    channel.close().await();
+    outputServerSocket.stopAndWait();
+  }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.sql.ioserver;
+
+import co.cask.tigon.sql.client.GDATIngestionClient;
+import co.cask.tigon.sql.conf.Constants;
+import co.cask.tigon.sql.flowlet.GDATFieldType;
+import co.cask.tigon.sql.flowlet.GDATRecordQueue;
+import co.cask.tigon.sql.flowlet.StreamSchema;
+import co.cask.tigon.sql.internal.StreamEngineSimulator;
+import co.cask.tigon.sql.io.GDATDecoder;
+import co.cask.tigon.sql.io.GDATRecordEncoder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.InMemoryDiscoveryService;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test partitioning of an input among multiple instances.
+ */
+public class PartitionedInputTest {
+  private static final String name = "PartitionedStream";
+  private static final StreamSchema schema = new StreamSchema.Builder()
+    .addField("id", GDATFieldType.INT)
+    .addField("key", GDATFieldType.STRING)
+    .build();
+
+  private static final ChannelFactory factory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+                                                                                  Executors.newCachedThreadPool());
+
+  @Test
+  public void testPartitionedIngestion() throws Exception {
+    int instances = 2;
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    List<GDATRecordQueue> recordQueues = Lists.newArrayList();
+    List<InputServerSocket> inputServices = Lists.newArrayList();
+    List<OutputServerSocket> outputServices = Lists.newArrayList();
+    List<StreamEngineSimulator> simulators = Lists.newArrayList();
+    GDATIngestionClient client = null;
+    try {
+      for (int i = 0; i < instances; i++) {
+        GDATRecordQueue recordQueue = new GDATRecordQueue();
+        InputServerSocket inputService = new InputServerSocket(factory, name, schema, 0,
+                                                               new GDATPartitioner(schema, "key", i, instances),
+                                                               discoveryService);
+        OutputServerSocket outputService = new OutputServerSocket(factory, name, null, recordQueue);
+        inputService.startAndWait();
+        outputService.startAndWait();
+        StreamEngineSimulator simulator = new StreamEngineSimulator(
+          inputService.getSocketAddressMap().get(Constants.StreamIO.DATASOURCE),
+          outputService.getSocketAddressMap().get(Constants.StreamIO.DATASINK), null);
+        simulator.startAndWait();
+        discoveryService.register(createDiscoverable(InputServerSocket.getPartitionPortName(name, i),
+                                                     new InetSocketAddress(inputService.getPartitionPort())));
+        recordQueues.add(recordQueue);
+        inputServices.add(inputService);
+        outputServices.add(outputService);
+        simulators.add(simulator);
+      }
+
+      // All records are ingested through the first instance
+      client = new GDATIngestionClient(ImmutableList.of(createDiscoverable(
+        Constants.TCP_INGESTION_PORT_PREFIX + name,
+        inputServices.get(0).getSocketAddressMap().get(Constants.StreamIO.TCP_DATA_INGESTION))), schema, 2, 100);
+      client.startAndWait();
+      GDATRecordEncoder encoder = client.createEncoder();
+      int count = 500;
+      for (int i = 0; i < count; i++) {
+        encoder.setInt(encoder.getFieldIndex("id"), i).setString(encoder.getFieldIndex("key"), "key" + (i % 20));
+        client.write(encoder);
+      }
+      client.flush();
+
+      for (int i = 0; i < 100 && recordQueues.get(0).getSize() + recordQueues.get(1).getSize() < count; i++) {
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+
+      // Every key is received by exactly one instance, along with all of its records
+      Set<Integer> ids = Sets.newHashSet();
+      Set<String> allKeys = Sets.newHashSet();
+      for (GDATRecordQueue recordQueue : recordQueues) {
+        Set<String> keys = Sets.newHashSet();
+        Map.Entry<String, GDATDecoder> record;
+        while ((record = recordQueue.getNext()) != null) {
+          GDATDecoder decoder = record.getValue();
+          int id = decoder.readInt();
+          String key = decoder.readString();
+          Assert.assertEquals("key" + (id % 20), key);
+          ids.add(id);
+          keys.add(key);
+        }
+        Assert.assertFalse(keys.isEmpty());
+        Assert.assertTrue(Sets.intersection(keys, allKeys).isEmpty());
+        allKeys.addAll(keys);
+      }
+      Assert.assertEquals(count, ids.size());
+      Assert.assertEquals(20, allKeys.size());
+    } finally {
+      if (client != null) {
+        client.stopAndWait();
+      }
+      for (InputServerSocket inputService : inputServices) {
+        inputService.stopAndWait();
+      }
+      for (StreamEngineSimulator simulator : simulators) {
+        simulator.stopAndWait();
+      }
+      for (OutputServerSocket outputService : outputServices) {
+        outputService.stopAndWait();
+      }
+    }
+  }
+
+  @Test
+  public void testAwaitPartitionServers() throws Exception {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    // Stopping a server releases its ChannelFactory, hence the shared one can't be used again
+    ChannelFactory channelFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+                                                                      Executors.newCachedThreadPool());
+    InputServerSocket inputService = new InputServerSocket(channelFactory, name, schema, 0,
+                                                           new GDATPartitioner(schema, "key", 0, 2), discoveryService);
+    inputService.startAndWait();
+    try {
+      // The other instance is not announced yet
+      Assert.assertFalse(inputService.awaitPartitionServers(300, TimeUnit.MILLISECONDS));
+
+      discoveryService.register(createDiscoverable(InputServerSocket.getPartitionPortName(name, 1),
+                                                   new InetSocketAddress(inputService.getPartitionPort())));
+      Assert.assertTrue(inputService.awaitPartitionServers(5, TimeUnit.SECONDS));
+    } finally {
+      inputService.stopAndWait();
+    }
+  }
+
+  private static Discoverable createDiscoverable(final String name, final InetSocketAddress address) {
+    return new Discoverable() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public InetSocketAddress getSocketAddress() {
+        return address;
+      }
+    };
+  }
+}
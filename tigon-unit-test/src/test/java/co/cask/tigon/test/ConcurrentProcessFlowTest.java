@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.test;
+
+import co.cask.tephra.Transaction;
+import co.cask.tephra.TransactionAware;
+import co.cask.tigon.api.annotation.ConcurrentProcess;
+import co.cask.tigon.api.annotation.Output;
+import co.cask.tigon.api.annotation.ProcessInput;
+import co.cask.tigon.api.annotation.Tick;
+import co.cask.tigon.api.flow.Flow;
+import co.cask.tigon.api.flow.FlowSpecification;
+import co.cask.tigon.api.flow.flowlet.AbstractFlowlet;
+import co.cask.tigon.api.flow.flowlet.FlowletContext;
+import co.cask.tigon.api.flow.flowlet.OutputEmitter;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for flowlets annotated with {@link ConcurrentProcess}.
+ *
+ * Flowlets report to the test by creating files in the directory given by the "output.dir" runtime argument.
+ */
+public class ConcurrentProcessFlowTest extends TestBase {
+
+  private static final int EVENTS = 10;
+
+  @Test
+  public void testConcurrentProcessFlowlet() throws Exception {
+    File outputDir = tmpFolder.newFolder();
+    FlowManager flowManager = deployFlow(ConcurrentProcessFlow.class,
+                                         ImmutableMap.of("output.dir", outputDir.getAbsolutePath()));
+    try {
+      // Every event from both generator outputs is routed to the sink exactly once
+      waitForFiles(outputDir, 2 * EVENTS, 30);
+      for (int i = 1; i <= EVENTS; i++) {
+        Assert.assertTrue(new File(outputDir, "a" + i).isFile());
+        Assert.assertTrue(new File(outputDir, "b" + i).isFile());
+      }
+      TimeUnit.SECONDS.sleep(2);
+      Assert.assertFalse(new File(outputDir, "duplicate").exists());
+      Assert.assertEquals(2 * EVENTS, outputDir.list().length);
+    } finally {
+      flowManager.stop();
+    }
+  }
+
+  @Test
+  public void testRejectTransactionAware() throws Exception {
+    File outputDir = tmpFolder.newFolder();
+    FlowManager flowManager = deployFlow(TransactionAwareFlow.class,
+                                         ImmutableMap.of("output.dir", outputDir.getAbsolutePath()));
+    try {
+      waitForFiles(outputDir, 1, 30);
+      Assert.assertTrue(new File(outputDir, "rejected").isFile());
+    } finally {
+      flowManager.stop();
+    }
+  }
+
+  private void waitForFiles(File dir, int count, int timeoutSeconds) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+    while (dir.list().length < count && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+  }
+
+  private static void createFile(FlowletContext context, String name) throws IOException {
+    File outputDir = new File(context.getRuntimeArguments().get("output.dir"));
+    if (!new File(outputDir, name).createNewFile()) {
+      new File(outputDir, "duplicate").createNewFile();
+    }
+  }
+
+  public static final class ConcurrentProcessFlow implements Flow {
+
+    @Override
+    public FlowSpecification configure() {
+      return FlowSpecification.Builder.with()
+        .setName("ConcurrentProcessFlow")
+        .setDescription("")
+        .withFlowlets()
+        .add("generator", new GeneratorFlowlet(), 1)
+        .add("router", new RouterFlowlet(), 1)
+        .add("sink", new SinkFlowlet(), 1)
+        .connect()
+        .from("generator").to("router")
+        .from("router").to("sink")
+        .build();
+    }
+  }
+
+  public static final class TransactionAwareFlow implements Flow {
+
+    @Override
+    public FlowSpecification configure() {
+      return FlowSpecification.Builder.with()
+        .setName("TransactionAwareFlow")
+        .setDescription("")
+        .withFlowlets()
+        .add("flowlet", new TransactionAwareFlowlet(), 1)
+        .build();
+    }
+  }
+
+  /**
+   * Emits the same numbers to two outputs.
+   */
+  private static final class GeneratorFlowlet extends AbstractFlowlet {
+
+    @Output("a")
+    private OutputEmitter<Integer> aEmitter;
+    @Output("b")
+    private OutputEmitter<Integer> bEmitter;
+    private int i;
+
+    @Tick(delay = 100L, unit = TimeUnit.MILLISECONDS)
+    public void generate() {
+      if (i < EVENTS) {
+        i++;
+        aEmitter.emit(i);
+        bEmitter.emit(i);
+      }
+    }
+  }
+
+  /**
+   * Processes both outputs of the generator concurrently and emits them to one output.
+   */
+  @ConcurrentProcess
+  private static final class RouterFlowlet extends AbstractFlowlet {
+
+    private OutputEmitter<String> emitter;
+
+    @ProcessInput("a")
+    public void processA(Integer value) {
+      emitter.emit("a" + value);
+    }
+
+    @ProcessInput("b")
+    public void processB(Integer value) {
+      emitter.emit("b" + value);
+    }
+  }
+
+  private static final class SinkFlowlet extends AbstractFlowlet {
+
+    private FlowletContext context;
+
+    @Override
+    public void initialize(FlowletContext context) throws Exception {
+      super.initialize(context);
+      this.context = context;
+    }
+
+    @ProcessInput
+    public void process(String value) throws IOException {
+      createFile(context, value);
+    }
+  }
+
+  @ConcurrentProcess
+  private static final class TransactionAwareFlowlet extends AbstractFlowlet {
+
+    @Override
+    public void initialize(FlowletContext context) throws Exception {
+      super.initialize(context);
+      try {
+        context.addTransactionAware(new NoOpTransactionAware());
+      } catch (IllegalStateException e) {
+        createFile(context, "rejected");
+      }
+    }
+
+    @Tick(delay = 1L, unit = TimeUnit.SECONDS)
+    public void tick() {
+      // no-op
+    }
+  }
+
+  private static final class NoOpTransactionAware implements TransactionAware {
+
+    @Override
+    public void startTx(Transaction tx) {
+      // no-op
+    }
+
+    @Override
+    public Collection<byte[]> getTxChanges() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean commitTx() throws Exception {
+      return true;
+    }
+
+    @Override
+    public void postTxCommit() {
+      // no-op
+    }
+
+    @Override
+    public boolean rollbackTx() throws Exception {
+      return true;
+    }
+
+    @Override
+    public String getTransactionAwareName() {
+      return getClass().getSimpleName();
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.tigon.test;
+
+import co.cask.tigon.api.annotation.Tick;
+import co.cask.tigon.api.flow.Flow;
+import co.cask.tigon.api.flow.FlowSpecification;
+import co.cask.tigon.api.flow.flowlet.AbstractFlowlet;
+import co.cask.tigon.api.flow.flowlet.FlowletContext;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the calls of triggered {@link Tick} methods by the flowlet driver.
+ *
+ * The flowlet reports each tick call by creating a file in the directory given by the "output.dir" runtime argument.
+ * The test requests a trigger by creating the "trigger" file, which the flowlet turns into a call of
+ * {@link FlowletContext#triggerTick()} from its own thread.
+ */
+public class TickTriggerFlowTest extends TestBase {
+
+  private static final long PERIODIC_DELAY_MS = 2000L;
+
+  @Test
+  public void testTriggeredTick() throws Exception {
+    File outputDir = tmpFolder.newFolder();
+    long startTime = System.currentTimeMillis();
+    FlowManager flowManager = deployFlow(TickTriggerFlow.class,
+                                         ImmutableMap.of("output.dir", outputDir.getAbsolutePath()));
+    try {
+      // The periodic tick is called, but the triggered tick isn't without a trigger
+      Assert.assertTrue(waitForFiles(outputDir, "periodic", 2, TimeUnit.SECONDS.toMillis(30)));
+      Assert.assertEquals(0, countFiles(outputDir, "triggered"));
+
+      // Each trigger leads to one call, which wakes up the driver while the periodic tick waits for its delay
+      for (int i = 1; i <= 3; i++) {
+        Assert.assertTrue(new File(outputDir, "trigger").createNewFile());
+        Assert.assertTrue(waitForFiles(outputDir, "triggered", i, PERIODIC_DELAY_MS / 2));
+        TimeUnit.MILLISECONDS.sleep(PERIODIC_DELAY_MS / 4);
+        Assert.assertEquals(i, countFiles(outputDir, "triggered"));
+      }
+
+      // The triggers don't make the periodic tick called more often than its delay allows
+      long elapsed = System.currentTimeMillis() - startTime;
+      Assert.assertTrue(countFiles(outputDir, "periodic") <= elapsed / PERIODIC_DELAY_MS + 1);
+    } finally {
+      flowManager.stop();
+    }
+  }
+
+  private boolean waitForFiles(File dir, String prefix, int count, long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (countFiles(dir, prefix) < count && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    return countFiles(dir, prefix) >= count;
+  }
+
+  private static int countFiles(File dir, final String prefix) {
+    return dir.list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(prefix);
+      }
+    }).length;
+  }
+
+  public static final class TickTriggerFlow implements Flow {
+
+    @Override
+    public FlowSpecification configure() {
+      return FlowSpecification.Builder.with()
+        .setName("TickTriggerFlow")
+        .setDescription("")
+        .withFlowlets()
+        .add("flowlet", new TickTriggerFlowlet(), 1)
+        .build();
+    }
+  }
+
+  /**
+   * Has a periodic and a triggered tick, and triggers on request of the test.
+   */
+  private static final class TickTriggerFlowlet extends AbstractFlowlet {
+
+    private File outputDir;
+    private Thread triggerThread;
+    private int periodicCalls;
+    private int triggeredCalls;
+
+    @Override
+    public void initialize(final FlowletContext context) throws Exception {
+      super.initialize(context);
+      outputDir = new File(context.getRuntimeArguments().get("output.dir"));
+      triggerThread = new Thread() {
+        @Override
+        public void run() {
+          File triggerFile = new File(outputDir, "trigger");
+          while (!isInterrupted()) {
+            if (triggerFile.delete()) {
+              context.triggerTick();
+            }
+            try {
+              TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException e) {
+              break;
+            }
+          }
+        }
+      };
+      triggerThread.setDaemon(true);
+      triggerThread.start();
+    }
+
+    @Tick(delay = PERIODIC_DELAY_MS, unit = TimeUnit.MILLISECONDS)
+    public void periodic() throws IOException {
+      periodicCalls++;
+      new File(outputDir, "periodic" + periodicCalls).createNewFile();
+    }
+
+    @Tick(delay = 1L, unit = TimeUnit.MILLISECONDS, triggered = true)
+    public void triggered() throws IOException {
+      triggeredCalls++;
+      new File(outputDir, "triggered" + triggeredCalls).createNewFile();
+    }
+
+    @Override
+    public void destroy() {
+      triggerThread.interrupt();
+    }
+  }
+}
@@ -16,12 +16,12 @@
 
 package co.cask.tigon.guice;
 
+import co.cask.tigon.internal.io.ASMDatumReaderFactory;
 import co.cask.tigon.internal.io.ASMDatumWriterFactory;
 import co.cask.tigon.internal.io.ASMFieldAccessorFactory;
 import co.cask.tigon.internal.io.DatumReaderFactory;
 import co.cask.tigon.internal.io.DatumWriterFactory;
 import co.cask.tigon.internal.io.FieldAccessorFactory;
-import co.cask.tigon.internal.io.ReflectionDatumReaderFactory;
 import co.cask.tigon.internal.io.ReflectionSchemaGenerator;
 import co.cask.tigon.internal.io.SchemaGenerator;
 import com.google.inject.PrivateModule;
@@ -41,9 +41,7 @@ public class IOModule extends PrivateModule {
     bind(DatumWriterFactory.class).to(ASMDatumWriterFactory.class).in(Scopes.SINGLETON);
 
     expose(DatumWriterFactory.class);
-
-    // Note: Need to add the DatumReader counter parts when those are refactored to use ASM as well.
-    bind(DatumReaderFactory.class).to(ReflectionDatumReaderFactory.class).in(Scopes.SINGLETON);
+    bind(DatumReaderFactory.class).to(ASMDatumReaderFactory.class).in(Scopes.SINGLETON);
     expose(DatumReaderFactory.class);
   }
 }
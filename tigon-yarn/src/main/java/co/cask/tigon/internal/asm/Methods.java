@@ -28,20 +28,24 @@ import org.objectweb.asm.commons.Method;
 public final class Methods {
 
   public static Method getMethod(Class<?> returnType, String name, Class<?>...args) {
-    StringBuilder builder = new StringBuilder(returnType.getName())
+    StringBuilder builder = new StringBuilder(getClassName(returnType))
       .append(' ').append(name).append(" (");
     Joiner.on(',').appendTo(builder, Iterators.transform(Iterators.forArray(args), new Function<Class<?>, String>() {
       @Override
       public String apply(Class<?> input) {
-        if (input.isArray()) {
-          return Type.getType(input.getName()).getClassName();
-        }
-        return input.getName();
+        return getClassName(input);
       }
     }));
     builder.append(')');
     return Method.getMethod(builder.toString());
   }
 
+  private static String getClassName(Class<?> cls) {
+    if (cls.isArray()) {
+      return Type.getType(cls).getClassName();
+    }
+    return cls.getName();
+  }
+
   private Methods() {}
 }
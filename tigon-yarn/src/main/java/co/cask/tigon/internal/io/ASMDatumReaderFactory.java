@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.io;
+
+import co.cask.tigon.internal.asm.ByteCodeClassLoader;
+import co.cask.tigon.internal.asm.ClassDefinition;
+import co.cask.tigon.io.Decoder;
+import co.cask.tigon.lang.ClassLoaders;
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
+import com.google.common.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Inject;
+
+/**
+ * A factory class for creating {@link DatumReader} instance for different data type and schema.
+ * It serves as an in memory cache for generated {@link DatumReader} {@link Class} using ASM.
+ * Since a generated {@link DatumReader} is specialized for one source schema, the {@link DatumReader} returned
+ * from {@link #create(TypeToken, Schema)} dispatches to the generated {@link DatumReader} based on the source schema
+ * given in each {@link DatumReader#read(Decoder, Schema)} call.
+ */
+public final class ASMDatumReaderFactory implements DatumReaderFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ASMDatumReaderFactory.class);
+
+  private final LoadingCache<CacheKey, Class<DatumReader<?>>> datumReaderClasses;
+  private final FieldAccessorFactory fieldAccessorFactory;
+
+  @Inject
+  public ASMDatumReaderFactory(FieldAccessorFactory fieldAccessorFactory) {
+    this.fieldAccessorFactory = fieldAccessorFactory;
+    this.datumReaderClasses = CacheBuilder.newBuilder().build(new ASMCacheLoader());
+  }
+
+  /**
+   * Creates a {@link DatumReader} that is able to decode data into the given type with the given {@link Schema}.
+   * The instance created is thread safe and reusable.
+   *
+   * @param type Type information of the data type to be decoded.
+   * @param schema Schema of the data type.
+   * @param <T> Type of the data type.
+   * @return A {@link DatumReader} instance.
+   */
+  @Override
+  public <T> DatumReader<T> create(TypeToken<T> type, Schema schema) {
+    return new SourceSchemaDatumReader<T>(type, schema);
+  }
+
+  /**
+   * Creates a {@link DatumReader} that is able to decode data written with the given source {@link Schema}
+   * into the given type with the given {@link Schema}. The instance created is thread safe and reusable.
+   * If bytecode generation fails, a {@link ReflectionDatumReader} will be returned instead.
+   *
+   * @param type Type information of the data type to be decoded.
+   * @param schema Schema of the data type.
+   * @param sourceSchema Schema that the data was encoded with.
+   * @param <T> Type of the data type.
+   * @return A {@link DatumReader} instance.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> DatumReader<T> create(TypeToken<T> type, Schema schema, Schema sourceSchema) {
+    try {
+      Class<DatumReader<?>> readerClass = datumReaderClasses.getUnchecked(new CacheKey(schema, sourceSchema, type));
+      return (DatumReader<T>) readerClass.getConstructor(Schema.class, Schema.class, FieldAccessorFactory.class)
+                                        .newInstance(schema, sourceSchema, fieldAccessorFactory);
+    } catch (Exception e) {
+      LOG.warn("Failed to generate DatumReader for {}. Fallback to reflection based DatumReader.", type, e);
+      return new ReflectionDatumReader<T>(schema, type);
+    }
+  }
+
+  /**
+   * A {@link DatumReader} that delegates to the generated {@link DatumReader} of the source schema.
+   *
+   * @param <T> Type of the data type.
+   */
+  private final class SourceSchemaDatumReader<T> implements DatumReader<T> {
+
+    private final TypeToken<T> type;
+    private final Schema schema;
+    private final ConcurrentMap<SchemaHash, DatumReader<T>> readers;
+
+    private SourceSchemaDatumReader(TypeToken<T> type, Schema schema) {
+      this.type = type;
+      this.schema = schema;
+      this.readers = Maps.newConcurrentMap();
+    }
+
+    @Override
+    public T read(Decoder decoder, Schema sourceSchema) throws IOException {
+      DatumReader<T> reader = readers.get(sourceSchema.getSchemaHash());
+      if (reader == null) {
+        reader = create(type, schema, sourceSchema);
+        DatumReader<T> existing = readers.putIfAbsent(sourceSchema.getSchemaHash(), reader);
+        if (existing != null) {
+          reader = existing;
+        }
+      }
+      return reader.read(decoder, sourceSchema);
+    }
+  }
+
+  /**
+   * A private {@link com.google.common.cache.CacheLoader} for generating different {@link DatumReader} {@link Class}.
+   */
+  private static final class ASMCacheLoader extends CacheLoader<CacheKey, Class<DatumReader<?>>> {
+
+    private final Map<TypeToken<?>, ByteCodeClassLoader> classloaders = Maps.newIdentityHashMap();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Class<DatumReader<?>> load(CacheKey key) throws Exception {
+      ClassDefinition classDef = new DatumReaderGenerator().generate(key.getType(), key.getSchema(),
+                                                                     key.getSourceSchema());
+
+      // Readers are created lazily from the thread that decodes, which could have a program ClassLoader as the
+      // context ClassLoader. The generated class must resolve Tigon classes from the same ClassLoader as this factory.
+      ClassLoader typeClassloader;
+      Thread currentThread = Thread.currentThread();
+      ClassLoader contextClassLoader = currentThread.getContextClassLoader();
+      currentThread.setContextClassLoader(ASMDatumReaderFactory.class.getClassLoader());
+      try {
+        typeClassloader = ClassLoaders.getClassLoader(key.getType());
+      } finally {
+        currentThread.setContextClassLoader(contextClassLoader);
+      }
+      ByteCodeClassLoader classloader = classloaders.get(key.getType());
+      if (classloader == null) {
+        classloader = new ByteCodeClassLoader(typeClassloader);
+        classloaders.put(key.getType(), classloader);
+      }
+
+      return (Class<DatumReader<?>>) classloader.addClass(classDef, key.getType().getRawType())
+                                                .loadClass(classDef.getClassName());
+    }
+  }
+
+  private static final class CacheKey {
+    private final Schema schema;
+    private final Schema sourceSchema;
+    private final TypeToken<?> type;
+
+    private CacheKey(Schema schema, Schema sourceSchema, TypeToken<?> type) {
+      this.schema = schema;
+      this.sourceSchema = sourceSchema;
+      this.type = type;
+    }
+
+    public Schema getSchema() {
+      return schema;
+    }
+
+    public Schema getSourceSchema() {
+      return sourceSchema;
+    }
+
+    public TypeToken<?> getType() {
+      return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      CacheKey cacheKey = (CacheKey) o;
+      return schema.equals(cacheKey.schema) && sourceSchema.equals(cacheKey.sourceSchema)
+        && type.equals(cacheKey.type);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(schema, sourceSchema, type);
+    }
+  }
+}
@@ -0,0 +1,1342 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.internal.io;
+
+import co.cask.tigon.api.common.Bytes;
+import co.cask.tigon.internal.asm.ClassDefinition;
+import co.cask.tigon.internal.asm.Methods;
+import co.cask.tigon.internal.asm.Signatures;
+import co.cask.tigon.internal.lang.Fields;
+import co.cask.tigon.io.Decoder;
+import co.cask.tigon.lang.Instantiator;
+import co.cask.tigon.lang.InstantiatorFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.Primitives;
+import com.google.common.reflect.TypeParameter;
+import com.google.common.reflect.TypeToken;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Class for generating {@link DatumReader} bytecodes using ASM. Each generated class is specialized for one
+ * target type, one target schema and one source schema, hence all schema resolution (field projection, type
+ * promotion, enum and union resolution) happens at generation time rather than on every read.
+ * The class generated will have a skeleton looks like the following:
+ * <pre>
+ * {@code
+ *
+ *  public final class generatedClassName implements DatumReader<InputType> {
+ *    private static final String SCHEMA_HASH = "target_schema_hash_as_hex_string";
+ *    private static final String SOURCE_SCHEMA_HASH = "source_schema_hash_as_hex_string";
+ *
+ *    public generatedClassName(Schema schema, Schema sourceSchema, FieldAccessorFactory accessorFactory) {
+ *      if (!SCHEMA_HASH.equals(schema.getSchemaHash().toString())) {
+ *        throw new IllegalArgumentException("Schema not match.");
+ *      }
+ *      if (!SOURCE_SCHEMA_HASH.equals(sourceSchema.getSchemaHash().toString())) {
+ *        throw new IllegalArgumentException("Source schema not match.");
+ *      }
+ *      // Initialize FieldAccessor, Instantiator, array component classes and enum lookup tables fields.
+ *    }
+ *
+ *    @Override
+ *    public Object read(Decoder decoder, Schema sourceSchema) throws IOException {
+ *      try {
+ *        return generatedReadMethod(decoder);
+ *      } catch (RuntimeException e) {
+ *        throw new IOException(e);
+ *      }
+ *    }
+ *
+ *    private InputType generatedReadMethod(Decoder decoder) throws IOException {
+ *      // Do actual decoding by calling methods on decoder based on the source and target schema.
+ *    }
+ *
+ *    // Could have more generatedReadMethods and generatedSkipMethods...
+ *  }
+ * }
+ * </pre>
+ *
+ * For example, to decode a record {@code Record { int i; String s; }} written with an extra {@code long l} field,
+ * a generated {@link DatumReader} will looks like this after decompile.
+ * <pre>
+ * {@code
+ *
+ *   private Object readRecord0DB0A7B7...(Decoder paramDecoder) throws IOException {
+ *     Object localObject = this.instantiator$Record.create();
+ *     this.Record$i.setInt(localObject, readint9E688C58...(paramDecoder));
+ *     skip3F2E7A17...(paramDecoder);
+ *     this.Record$s.set(localObject, readjavalangString...(paramDecoder));
+ *     return localObject;
+ *   }
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+final class DatumReaderGenerator {
+
+  private static final Map<Schema.Type, List<Schema.Type>> PROMOTIONS =
+    ImmutableMap.<Schema.Type, List<Schema.Type>>builder()
+      .put(Schema.Type.BOOLEAN, ImmutableList.of(Schema.Type.BOOLEAN, Schema.Type.STRING))
+      .put(Schema.Type.INT, ImmutableList.of(Schema.Type.INT, Schema.Type.LONG, Schema.Type.FLOAT,
+                                             Schema.Type.DOUBLE, Schema.Type.STRING))
+      .put(Schema.Type.LONG, ImmutableList.of(Schema.Type.LONG, Schema.Type.FLOAT,
+                                              Schema.Type.DOUBLE, Schema.Type.STRING))
+      .put(Schema.Type.FLOAT, ImmutableList.of(Schema.Type.FLOAT, Schema.Type.DOUBLE, Schema.Type.STRING))
+      .put(Schema.Type.DOUBLE, ImmutableList.of(Schema.Type.DOUBLE, Schema.Type.STRING))
+      .put(Schema.Type.STRING, ImmutableList.of(Schema.Type.STRING))
+      .build();
+
+  private static final Map<Schema.Type, Class<?>> SIMPLE_TYPES =
+    ImmutableMap.<Schema.Type, Class<?>>builder()
+      .put(Schema.Type.BOOLEAN, boolean.class)
+      .put(Schema.Type.INT, int.class)
+      .put(Schema.Type.LONG, long.class)
+      .put(Schema.Type.FLOAT, float.class)
+      .put(Schema.Type.DOUBLE, double.class)
+      .put(Schema.Type.STRING, String.class)
+      .build();
+
+  private final Map<String, Method> readMethods = Maps.newHashMap();
+  private final Map<String, Method> skipMethods = Maps.newHashMap();
+  private final Multimap<TypeToken<?>, String> fieldAccessorRequests = HashMultimap.create();
+  private final Map<String, Class<?>> instantiatorRequests = Maps.newHashMap();
+  private final Map<String, Class<?>> componentClassRequests = Maps.newHashMap();
+  private final Map<String, EnumTable> enumTableRequests = Maps.newHashMap();
+  private ClassWriter classWriter;
+  private Type classType;
+
+  /**
+   * Generates a {@link DatumReader} class for decoding data written with the given source schema into
+   * the given input type with the given target schema.
+   *
+   * @param inputType Type information of the data type to decode to.
+   * @param schema Schema of the data type to decode to.
+   * @param sourceSchema Schema that the data was encoded with.
+   * @return A {@link co.cask.tigon.internal.asm.ClassDefinition} that contains generated class information.
+   */
+  ClassDefinition generate(TypeToken<?> inputType, Schema schema, Schema sourceSchema) {
+    classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+
+    TypeToken<?> interfaceType = getInterfaceType(inputType);
+
+    // Generate the class
+    String className = getClassName(interfaceType, schema, sourceSchema);
+    classType = Type.getObjectType(className);
+    classWriter.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL,
+                      className, Signatures.getClassSignature(interfaceType),
+                      Type.getInternalName(Object.class),
+                      new String[]{Type.getInternalName(interfaceType.getRawType())});
+
+    // Static schema hash fields, for verification
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL, "SCHEMA_HASH",
+                           Type.getDescriptor(String.class), null, schema.getSchemaHash().toString()).visitEnd();
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL, "SOURCE_SCHEMA_HASH",
+                           Type.getDescriptor(String.class), null, sourceSchema.getSchemaHash().toString()).visitEnd();
+
+    // Read method
+    generateRead(inputType, schema, sourceSchema);
+
+    // Constructor
+    generateConstructor();
+
+    ClassDefinition classDefinition = new ClassDefinition(classWriter.toByteArray(), className);
+    // DEBUG block. Uncomment for debug
+//    co.cask.tigon.internal.asm.Debugs.debugByteCode(classDefinition, new java.io.PrintWriter(System.out));
+    // End DEBUG block
+    return classDefinition;
+  }
+
+  /**
+   * Generates the constructor. The constructor generated has signature {@code (Schema, Schema, FieldAccessorFactory)}.
+   */
+  private void generateConstructor() {
+    Method constructor = getMethod(void.class, "<init>", Schema.class, Schema.class, FieldAccessorFactory.class);
+
+    // Constructor(Schema schema, Schema sourceSchema, FieldAccessorFactory accessorFactory)
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, classWriter);
+
+    // super(); // Calling Object constructor
+    mg.loadThis();
+    mg.invokeConstructor(Type.getType(Object.class), getMethod(void.class, "<init>"));
+
+    // if (!SCHEMA_HASH.equals(schema.getSchemaHash().toString())) { throw IllegalArgumentException }
+    verifySchemaHash(mg, "SCHEMA_HASH", 0, "Schema not match.");
+    verifySchemaHash(mg, "SOURCE_SCHEMA_HASH", 1, "Source schema not match.");
+
+    // For each record field that needs an accessor, get the accessor and store it in field.
+    for (Map.Entry<TypeToken<?>, String> entry : fieldAccessorRequests.entries()) {
+      String fieldAccessorName = getFieldAccessorName(entry.getKey(), entry.getValue());
+
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL,
+                             fieldAccessorName,
+                             Type.getDescriptor(FieldAccessor.class), null, null);
+      // this.fieldAccessorName
+      //  = accessorFactory.getFieldAccessor(TypeToken.of(Class.forName("className")), "fieldName");
+      mg.loadThis();
+      mg.loadArg(2);
+      loadClass(mg, entry.getKey().getRawType());
+      mg.invokeStatic(Type.getType(TypeToken.class), getMethod(TypeToken.class, "of", Class.class));
+      mg.push(entry.getValue());
+      mg.invokeInterface(Type.getType(FieldAccessorFactory.class),
+                         getMethod(FieldAccessor.class, "getFieldAccessor", TypeToken.class, String.class));
+      mg.putField(classType, fieldAccessorName, Type.getType(FieldAccessor.class));
+    }
+
+    // For each record, collection and map type that needs to be created, get an Instantiator.
+    if (!instantiatorRequests.isEmpty()) {
+      // InstantiatorFactory instantiatorFactory = new InstantiatorFactory(true);
+      Type factoryType = Type.getType(InstantiatorFactory.class);
+      int instantiatorFactory = mg.newLocal(factoryType);
+      mg.newInstance(factoryType);
+      mg.dup();
+      mg.push(true);
+      mg.invokeConstructor(factoryType, getMethod(void.class, "<init>", boolean.class));
+      mg.storeLocal(instantiatorFactory);
+
+      for (Map.Entry<String, Class<?>> entry : instantiatorRequests.entrySet()) {
+        classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getKey(),
+                               Type.getDescriptor(Instantiator.class), null, null);
+        // this.instantiatorName = instantiatorFactory.get(TypeToken.of(Class.forName("className")));
+        mg.loadThis();
+        mg.loadLocal(instantiatorFactory);
+        loadClass(mg, entry.getValue());
+        mg.invokeStatic(Type.getType(TypeToken.class), getMethod(TypeToken.class, "of", Class.class));
+        mg.invokeVirtual(factoryType, getMethod(Instantiator.class, "get", TypeToken.class));
+        mg.putField(classType, entry.getKey(), Type.getType(Instantiator.class));
+      }
+    }
+
+    // For each non-primitive java array, the component class is needed for creating the array.
+    for (Map.Entry<String, Class<?>> entry : componentClassRequests.entrySet()) {
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getKey(),
+                             Type.getDescriptor(Class.class), null, null);
+      // this.componentClassName = Class.forName("className");
+      mg.loadThis();
+      loadClass(mg, entry.getValue());
+      mg.putField(classType, entry.getKey(), Type.getType(Class.class));
+    }
+
+    // For each enum, creates a lookup table from source enum index to target enum value.
+    for (Map.Entry<String, EnumTable> entry : enumTableRequests.entrySet()) {
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getKey(),
+                             Type.getDescriptor(Object[].class), null, null);
+      generateEnumTable(mg, entry.getKey(), entry.getValue());
+    }
+
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates code for verifying the schema hash of the given constructor argument matches with the hash
+   * value stored in the given static field.
+   */
+  private void verifySchemaHash(GeneratorAdapter mg, String hashField, int schemaArg, String message) {
+    mg.getStatic(classType, hashField, Type.getType(String.class));
+    mg.loadArg(schemaArg);
+    mg.invokeVirtual(Type.getType(Schema.class), getMethod(SchemaHash.class, "getSchemaHash"));
+    mg.invokeVirtual(Type.getType(SchemaHash.class), getMethod(String.class, "toString"));
+    mg.invokeVirtual(Type.getType(String.class), getMethod(boolean.class, "equals", Object.class));
+    Label hashEquals = mg.newLabel();
+    mg.ifZCmp(GeneratorAdapter.NE, hashEquals);
+    mg.throwException(Type.getType(IllegalArgumentException.class), message);
+    mg.mark(hashEquals);
+  }
+
+  /**
+   * Generates code for creating the enum lookup table. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Class enumClass = Class.forName("enumClassName");
+   * Object[] table = new Object[sourceEnumValues.size()];
+   * table[0] = Enum.valueOf(enumClass, "VALUE1");
+   * table[2] = Enum.valueOf(enumClass, "VALUE3"); // If VALUE2 doesn't exist in target, leave it as null.
+   * this.enumTableName = table;
+   * }
+   * </pre>
+   */
+  private void generateEnumTable(GeneratorAdapter mg, String fieldName, EnumTable enumTable) {
+    int enumClass = mg.newLocal(Type.getType(Class.class));
+    loadClass(mg, enumTable.getEnumClass());
+    mg.storeLocal(enumClass);
+
+    mg.loadThis();
+    List<String> values = enumTable.getValues();
+    mg.push(values.size());
+    mg.newArray(Type.getType(Object.class));
+    for (int i = 0; i < values.size(); i++) {
+      String value = values.get(i);
+      if (value == null) {
+        continue;
+      }
+      mg.dup();
+      mg.push(i);
+      mg.loadLocal(enumClass);
+      mg.push(value);
+      mg.invokeStatic(Type.getType(Enum.class), getMethod(Enum.class, "valueOf", Class.class, String.class));
+      mg.arrayStore(Type.getType(Object.class));
+    }
+    mg.putField(classType, fieldName, Type.getType(Object[].class));
+  }
+
+  /**
+   * Generates the {@link DatumReader#read(co.cask.tigon.io.Decoder, Schema)} method.
+   *
+   * @param inputType Type information of the data type to decode to.
+   * @param schema Schema of the data type to decode to.
+   * @param sourceSchema Schema that the data was encoded with.
+   */
+  private void generateRead(TypeToken<?> inputType, Schema schema, Schema sourceSchema) {
+    Method readMethod = getMethod(Object.class, "read", Decoder.class, Schema.class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, readMethod, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+
+    // try { return readMethod(decoder); } catch (RuntimeException e) { throw new IOException(e); }
+    Label beginTry = mg.mark();
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.invokeVirtual(classType, getReadMethod(inputType, sourceSchema, schema));
+    Class<?> callType = getCallType(inputType, schema);
+    if (callType.isPrimitive()) {
+      mg.valueOf(Type.getType(callType));
+    }
+    mg.returnValue();
+    Label endTry = mg.mark();
+
+    mg.catchException(beginTry, endTry, Type.getType(RuntimeException.class));
+    int exception = mg.newLocal(Type.getType(RuntimeException.class));
+    mg.storeLocal(exception);
+    mg.newInstance(Type.getType(IOException.class));
+    mg.dup();
+    mg.loadLocal(exception);
+    mg.invokeConstructor(Type.getType(IOException.class), getMethod(void.class, "<init>", Throwable.class));
+    mg.throwException();
+    mg.endMethod();
+  }
+
+  /**
+   * Returns the read method for the given type, source and target schema. The same method will be returned if
+   * the same type and schemas has been passed to the method before.
+   *
+   * @param inputType Type information of the data type to decode to.
+   * @param sourceSchema Schema that the data was encoded with.
+   * @param schema Schema of the data type to decode to.
+   * @return A method for decoding the given type, which takes a {@link Decoder} as the only argument.
+   */
+  private Method getReadMethod(TypeToken<?> inputType, Schema sourceSchema, Schema schema) {
+    String key = String.format("%s%s%s", normalizeTypeName(inputType),
+                               sourceSchema.getSchemaHash(), schema.getSchemaHash());
+
+    Method method = readMethods.get(key);
+    if (method != null) {
+      return method;
+    }
+
+    // Generate the read method (decoder)
+    String methodName = String.format("read%s", key);
+    method = getMethod(getCallType(inputType, schema), methodName, Decoder.class);
+
+    // Put the method into map first before generating the body in order to support recursive data type.
+    readMethods.put(key, method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[]{Type.getType(IOException.class)}, classWriter);
+
+    generateReadBody(mg, inputType, sourceSchema, schema, 0);
+    mg.returnValue();
+    mg.endMethod();
+
+    return method;
+  }
+
+  /**
+   * Generates the read method body, which leaves the decoded value on the stack. The type of the value
+   * is determined by {@link #getCallType(TypeToken, Schema)}.
+   *
+   * @param mg Method generator for generating method code body
+   * @param inputType Type information of the data type to decode to.
+   * @param sourceSchema Schema that the data was encoded with.
+   * @param schema Schema of the data type to decode to.
+   * @param decoder Method argument index of the decoder
+   */
+  private void generateReadBody(GeneratorAdapter mg, TypeToken<?> inputType,
+                                Schema sourceSchema, Schema schema, int decoder) {
+    if (sourceSchema.getType() == Schema.Type.UNION) {
+      readUnion(mg, inputType, sourceSchema, schema, decoder);
+      return;
+    }
+    if (schema.getType() == Schema.Type.UNION) {
+      // Resolve to the first compatible target union schema.
+      Schema targetSchema = findResolvable(sourceSchema, schema.getUnionSchemas(), inputType);
+      if (targetSchema == null) {
+        throwResolveException(mg, sourceSchema, schema);
+        return;
+      }
+      mg.loadThis();
+      mg.loadArg(decoder);
+      mg.invokeVirtual(classType, getReadMethod(inputType, sourceSchema, targetSchema));
+      doBox(mg, getCallType(inputType, targetSchema), getCallType(inputType, schema));
+      return;
+    }
+    if (!isResolvable(sourceSchema, schema, inputType)) {
+      throwResolveException(mg, sourceSchema, schema);
+      return;
+    }
+
+    switch (sourceSchema.getType()) {
+      case NULL:
+        mg.loadArg(decoder);
+        mg.invokeInterface(Type.getType(Decoder.class), getMethod(Object.class, "readNull"));
+        doCast(mg, getCallType(inputType, schema));
+        break;
+      case BYTES:
+        readBytes(mg, inputType, decoder);
+        break;
+      case ENUM:
+        readEnum(mg, inputType, sourceSchema, schema, decoder);
+        break;
+      case ARRAY:
+        if (inputType.isArray()) {
+          readArray(mg, inputType, sourceSchema, schema, decoder);
+        } else {
+          readCollection(mg, inputType, sourceSchema, schema, decoder);
+        }
+        break;
+      case MAP:
+        readMap(mg, inputType, sourceSchema, schema, decoder);
+        break;
+      case RECORD:
+        readRecord(mg, inputType, sourceSchema, schema, decoder);
+        break;
+      default:
+        readSimple(mg, inputType, sourceSchema.getType(), schema.getType(), decoder);
+    }
+  }
+
+  /**
+   * Generates method body for decoding simple type, with type promotion if the source and target schema types
+   * are different. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * long value = (long) decoder.readInt();  // Promote from INT to LONG
+   * return Long.valueOf(value);             // Optionally box it if target type is not primitive
+   * }
+   * </pre>
+   */
+  private void readSimple(GeneratorAdapter mg, TypeToken<?> inputType,
+                          Schema.Type sourceType, Schema.Type targetType, int decoder) {
+    Class<?> sourceClass = SIMPLE_TYPES.get(sourceType);
+    Class<?> targetClass = SIMPLE_TYPES.get(targetType);
+    Class<?> rawType = inputType.getRawType();
+
+    // value = decoder.readXXX();
+    mg.loadArg(decoder);
+    String readMethod = "read" + (sourceType == Schema.Type.BOOLEAN ? "Bool"
+      : sourceType.name().charAt(0) + sourceType.name().substring(1).toLowerCase());
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(sourceClass, readMethod));
+
+    // Type promotion
+    if (targetType == Schema.Type.STRING) {
+      if (sourceType != Schema.Type.STRING) {
+        mg.invokeStatic(Type.getType(String.class), getMethod(String.class, "valueOf", sourceClass));
+      }
+      if (URI.class.equals(rawType)) {
+        mg.invokeStatic(Type.getType(URI.class), getMethod(URI.class, "create", String.class));
+      } else if (URL.class.equals(rawType)) {
+        int str = mg.newLocal(Type.getType(String.class));
+        mg.storeLocal(str);
+        mg.newInstance(Type.getType(URL.class));
+        mg.dup();
+        mg.loadLocal(str);
+        mg.invokeConstructor(Type.getType(URL.class), getMethod(void.class, "<init>", String.class));
+      }
+      return;
+    }
+    if (sourceType != targetType) {
+      mg.cast(Type.getType(sourceClass), Type.getType(targetClass));
+    }
+
+    // A special case since INT type represents (byte, char, short and int).
+    Class<?> valueClass = targetClass;
+    Class<?> primitiveType = Primitives.unwrap(rawType);
+    if (targetType == Schema.Type.INT && primitiveType.isPrimitive() && !int.class.equals(primitiveType)) {
+      valueClass = primitiveType;
+      mg.cast(Type.INT_TYPE, Type.getType(valueClass));
+    }
+
+    // Box it if the target type is not primitive
+    if (!rawType.isPrimitive()) {
+      mg.valueOf(Type.getType(valueClass));
+    }
+  }
+
+  /**
+   * Generates method body for decoding bytes. Based on the target type, the {@link ByteBuffer} returned
+   * from the decoder would be turned into {@code byte[]} or {@link UUID}.
+   */
+  private void readBytes(GeneratorAdapter mg, TypeToken<?> inputType, int decoder) {
+    Class<?> rawType = inputType.getRawType();
+    Type byteBufferType = Type.getType(ByteBuffer.class);
+
+    mg.loadArg(decoder);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(ByteBuffer.class, "readBytes"));
+
+    if (byte[].class.equals(rawType)) {
+      // Bytes.getBytes(buffer);
+      mg.invokeStatic(Type.getType(Bytes.class), getMethod(byte[].class, "getBytes", ByteBuffer.class));
+    } else if (UUID.class.equals(rawType)) {
+      // new UUID(buffer.getLong(), buffer.getLong());
+      Type uuidType = Type.getType(UUID.class);
+      int buffer = mg.newLocal(byteBufferType);
+      mg.storeLocal(buffer);
+      mg.newInstance(uuidType);
+      mg.dup();
+      mg.loadLocal(buffer);
+      mg.invokeVirtual(byteBufferType, getMethod(long.class, "getLong"));
+      mg.loadLocal(buffer);
+      mg.invokeVirtual(byteBufferType, getMethod(long.class, "getLong"));
+      mg.invokeConstructor(uuidType, getMethod(void.class, "<init>", long.class, long.class));
+    }
+  }
+
+  /**
+   * Generates method body for decoding enum value. The enum value is resolved by name through a lookup table
+   * computed at construction time.
+   *
+   * <pre>
+   * {@code
+   *
+   * Object value = this.enumTable[decoder.readInt()];
+   * if (value == null) {
+   *   throw new IOException("Enum value missing in target.");
+   * }
+   * return value;
+   * }
+   * </pre>
+   */
+  private void readEnum(GeneratorAdapter mg, TypeToken<?> inputType, Schema sourceSchema, Schema schema,
+                        int decoder) {
+    String tableName = getEnumTableName(inputType, sourceSchema);
+    if (!enumTableRequests.containsKey(tableName)) {
+      List<String> values = Lists.newArrayListWithCapacity(sourceSchema.getEnumValues().size());
+      for (int i = 0; i < sourceSchema.getEnumValues().size(); i++) {
+        String value = sourceSchema.getEnumValue(i);
+        values.add(schema.getEnumValues().contains(value) ? value : null);
+      }
+      enumTableRequests.put(tableName, new EnumTable(inputType.getRawType(), values));
+    }
+
+    mg.loadThis();
+    mg.getField(classType, tableName, Type.getType(Object[].class));
+    mg.loadArg(decoder);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+    mg.arrayLoad(Type.getType(Object.class));
+    mg.dup();
+    Label notNull = mg.newLabel();
+    mg.ifNonNull(notNull);
+    mg.throwException(Type.getType(IOException.class), "Enum value missing in target.");
+    mg.mark(notNull);
+  }
+
+  /**
+   * Generates method body for decoding java array value. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * int len = decoder.readInt();
+   * T[] array = (T[]) Array.newInstance(componentClass, len);  // or new T[len] for primitive component
+   * int size = 0;
+   * while (len != 0) {
+   *   if (size + len > array.length) {
+   *     array = Arrays.copyOf(array, size + len);
+   *   }
+   *   for (int i = 0; i < len; i++) {
+   *     array[size++] = readComponent(decoder);
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * return array;
+   * }
+   * </pre>
+   */
+  private void readArray(GeneratorAdapter mg, TypeToken<?> inputType, Schema sourceSchema, Schema schema,
+                         int decoder) {
+    TypeToken<?> componentType = inputType.getComponentType();
+    Class<?> componentCallType = getCallType(componentType, schema.getComponentSchema());
+    Type arrayType = Type.getType(getCallType(inputType, schema));
+    Type elementType = Type.getType(componentCallType);
+
+    int len = mg.newLocal(Type.INT_TYPE);
+    readInt(mg, decoder);
+    mg.storeLocal(len);
+
+    // Creates the array
+    if (componentType.getRawType().isPrimitive()) {
+      mg.loadLocal(len);
+      mg.newArray(elementType);
+    } else {
+      String componentClassName = getComponentClassName(componentType);
+      componentClassRequests.put(componentClassName, componentType.getRawType());
+      mg.loadThis();
+      mg.getField(classType, componentClassName, Type.getType(Class.class));
+      mg.loadLocal(len);
+      mg.invokeStatic(Type.getType(Array.class), getMethod(Object.class, "newInstance", Class.class, int.class));
+      mg.checkCast(arrayType);
+    }
+    int array = mg.newLocal(arrayType);
+    mg.storeLocal(array);
+
+    int size = mg.newLocal(Type.INT_TYPE);
+    mg.push(0);
+    mg.storeLocal(size);
+
+    // while (len != 0)
+    Label beginWhile = mg.mark();
+    Label endWhile = mg.newLabel();
+    mg.loadLocal(len);
+    mg.ifZCmp(GeneratorAdapter.EQ, endWhile);
+
+    // Grow the array if needed
+    Label noGrow = mg.newLabel();
+    mg.loadLocal(size);
+    mg.loadLocal(len);
+    mg.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+    mg.loadLocal(array);
+    mg.arrayLength();
+    mg.ifICmp(GeneratorAdapter.LE, noGrow);
+
+    Class<?> copyType = componentCallType.isPrimitive() ? getCallType(inputType, schema) : Object[].class;
+    mg.loadLocal(array);
+    mg.loadLocal(size);
+    mg.loadLocal(len);
+    mg.math(GeneratorAdapter.ADD, Type.INT_TYPE);
+    mg.invokeStatic(Type.getType(Arrays.class), getMethod(copyType, "copyOf", copyType, int.class));
+    if (!componentCallType.isPrimitive()) {
+      mg.checkCast(arrayType);
+    }
+    mg.storeLocal(array);
+    mg.mark(noGrow);
+
+    // for (int i = 0; i < len; i++)
+    int idx = mg.newLocal(Type.INT_TYPE);
+    mg.push(0);
+    mg.storeLocal(idx);
+    Label beginFor = mg.mark();
+    Label endFor = mg.newLabel();
+    mg.loadLocal(idx);
+    mg.loadLocal(len);
+    mg.ifICmp(GeneratorAdapter.GE, endFor);
+
+    // array[size] = readComponent(decoder);
+    mg.loadLocal(array);
+    mg.loadLocal(size);
+    mg.loadThis();
+    mg.loadArg(decoder);
+    mg.invokeVirtual(classType, getReadMethod(componentType, sourceSchema.getComponentSchema(),
+                                              schema.getComponentSchema()));
+    mg.arrayStore(elementType);
+
+    mg.iinc(size, 1);
+    mg.iinc(idx, 1);
+    mg.goTo(beginFor);
+    mg.mark(endFor);
+
+    readInt(mg, decoder);
+    mg.storeLocal(len);
+    mg.goTo(beginWhile);
+    mg.mark(endWhile);
+
+    mg.loadLocal(array);
+  }
+
+  /**
+   * Generates method body for decoding {@link Collection} value. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Collection collection = (Collection) this.instantiator.create();
+   * int len = decoder.readInt();
+   * while (len != 0) {
+   *   for (int i = 0; i < len; i++) {
+   *     collection.add(readComponent(decoder));
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * return collection;
+   * }
+   * </pre>
+   */
+  private void readCollection(GeneratorAdapter mg, TypeToken<?> inputType, Schema sourceSchema, Schema schema,
+                              int decoder) {
+    TypeToken<?> componentType = inputType.resolveType(
+      ((ParameterizedType) inputType.getType()).getActualTypeArguments()[0]);
+    final Type collectionType = Type.getType(Collection.class);
+
+    final int collection = mg.newLocal(collectionType);
+    createInstance(mg, inputType);
+    mg.checkCast(collectionType);
+    mg.storeLocal(collection);
+
+    readBlocks(mg, decoder, new BlockElementReader(componentType, sourceSchema.getComponentSchema(),
+                                                   schema.getComponentSchema()) {
+      @Override
+      void read(GeneratorAdapter mg, int decoder) {
+        // collection.add(readComponent(decoder));
+        mg.loadLocal(collection);
+        readElement(mg, decoder, getType(), getSourceSchema(), getSchema());
+        mg.invokeInterface(collectionType, getMethod(boolean.class, "add", Object.class));
+        mg.pop();
+      }
+    });
+
+    mg.loadLocal(collection);
+    doCast(mg, getCallType(inputType, schema));
+  }
+
+  /**
+   * Generates method body for decoding {@link Map} value. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * Map map = (Map) this.instantiator.create();
+   * int len = decoder.readInt();
+   * while (len != 0) {
+   *   for (int i = 0; i < len; i++) {
+   *     map.put(readKey(decoder), readValue(decoder));
+   *   }
+   *   len = decoder.readInt();
+   * }
+   * return map;
+   * }
+   * </pre>
+   */
+  private void readMap(GeneratorAdapter mg, TypeToken<?> inputType, Schema sourceSchema, Schema schema,
+                       int decoder) {
+    java.lang.reflect.Type[] mapArgs = ((ParameterizedType) inputType.getType()).getActualTypeArguments();
+    final TypeToken<?> keyType = inputType.resolveType(mapArgs[0]);
+    final Map.Entry<Schema, Schema> sourceMapSchema = sourceSchema.getMapSchema();
+    final Map.Entry<Schema, Schema> mapSchema = schema.getMapSchema();
+    final Type mapType = Type.getType(Map.class);
+
+    final int map = mg.newLocal(mapType);
+    createInstance(mg, inputType);
+    mg.checkCast(mapType);
+    mg.storeLocal(map);
+
+    readBlocks(mg, decoder, new BlockElementReader(inputType.resolveType(mapArgs[1]), sourceMapSchema.getValue(),
+                                                   mapSchema.getValue()) {
+      @Override
+      void read(GeneratorAdapter mg, int decoder) {
+        // map.put(readKey(decoder), readValue(decoder));
+        mg.loadLocal(map);
+        readElement(mg, decoder, keyType, sourceMapSchema.getKey(), mapSchema.getKey());
+        readElement(mg, decoder, getType(), getSourceSchema(), getSchema());
+        mg.invokeInterface(mapType, getMethod(Object.class, "put", Object.class, Object.class));
+        mg.pop();
+      }
+    });
+
+    mg.loadLocal(map);
+    doCast(mg, getCallType(inputType, schema));
+  }
+
+  /**
+   * Generates method body for decoding record. Fields that are in the source schema but not in the target
+   * schema are skipped. Fields that are in the target schema but not in the source schema are left untouched.
+   *
+   * <pre>
+   * {@code
+   *
+   * Object record = this.instantiator.create();
+   * this.fieldAccessor1.setInt(record, readField1(decoder));
+   * skipField2(decoder);
+   * this.fieldAccessor3.set(record, readField3(decoder));
+   * return record;
+   * }
+   * </pre>
+   */
+  private void readRecord(GeneratorAdapter mg, TypeToken<?> inputType, Schema sourceSchema, Schema schema,
+                          int decoder) {
+    try {
+      Preconditions.checkArgument(!inputType.getRawType().isInterface(),
+                                  "Cannot decode record to interface type %s", inputType);
+
+      int record = mg.newLocal(Type.getType(Object.class));
+      createInstance(mg, inputType);
+      mg.storeLocal(record);
+
+      for (Schema.Field sourceField : sourceSchema.getFields()) {
+        Schema.Field targetField = schema.getField(sourceField.getName());
+        if (targetField == null) {
+          mg.loadThis();
+          mg.loadArg(decoder);
+          mg.invokeVirtual(classType, getSkipMethod(sourceField.getSchema()));
+          continue;
+        }
+
+        TypeToken<?> fieldType = inputType.resolveType(Fields.findField(inputType,
+                                                                        sourceField.getName()).getGenericType());
+        fieldAccessorRequests.put(inputType, sourceField.getName());
+
+        // this.fieldAccessor.setXXX(record, readField(decoder));
+        mg.loadThis();
+        mg.getField(classType, getFieldAccessorName(inputType, sourceField.getName()),
+                    Type.getType(FieldAccessor.class));
+        mg.loadLocal(record);
+        mg.loadThis();
+        mg.loadArg(decoder);
+        mg.invokeVirtual(classType, getReadMethod(fieldType, sourceField.getSchema(), targetField.getSchema()));
+        mg.invokeInterface(Type.getType(FieldAccessor.class), getAccessorMethod(fieldType));
+      }
+
+      mg.loadLocal(record);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Generates method body for decoding a value written with a union schema. The union index is read from the
+   * decoder and each possible index is resolved against the target schema. The logic is like this:
+   *
+   * <pre>
+   * {@code
+   *
+   * int idx = decoder.readInt();
+   * if (idx == 0) {
+   *   return readUnionValue0(decoder);
+   * }
+   * if (idx == 1) {
+   *   return readUnionValue1(decoder);
+   * }
+   * throw new IOException("Invalid union index.");
+   * }
+   * </pre>
+   */
+  private void readUnion(GeneratorAdapter mg, TypeToken<?> inputType, Schema sourceSchema, Schema schema,
+                         int decoder) {
+    Class<?> callType = getCallType(inputType, schema);
+
+    int idx = mg.newLocal(Type.INT_TYPE);
+    readInt(mg, decoder);
+    mg.storeLocal(idx);
+
+    List<Schema> unionSchemas = sourceSchema.getUnionSchemas();
+    for (int i = 0; i < unionSchemas.size(); i++) {
+      Schema sourceValueSchema = unionSchemas.get(i);
+      Label nextIdx = mg.newLabel();
+      mg.loadLocal(idx);
+      mg.push(i);
+      mg.ifICmp(GeneratorAdapter.NE, nextIdx);
+
+      Schema targetValueSchema = schema;
+      if (schema.getType() == Schema.Type.UNION) {
+        // A simple optimization to try resolve to the same index before resorting to search the target union.
+        targetValueSchema = schema.getUnionSchema(i);
+        if (targetValueSchema == null || targetValueSchema.getType() != sourceValueSchema.getType()
+          || !isResolvable(sourceValueSchema, targetValueSchema, inputType)) {
+          targetValueSchema = findResolvable(sourceValueSchema, schema.getUnionSchemas(), inputType);
+        }
+      } else if (!isResolvable(sourceValueSchema, schema, inputType)) {
+        targetValueSchema = null;
+      }
+
+      if (targetValueSchema == null) {
+        throwResolveException(mg, sourceValueSchema, schema);
+      } else {
+        mg.loadThis();
+        mg.loadArg(decoder);
+        mg.invokeVirtual(classType, getReadMethod(inputType, sourceValueSchema, targetValueSchema));
+        doBox(mg, getCallType(inputType, targetValueSchema), callType);
+        mg.returnValue();
+      }
+      mg.mark(nextIdx);
+    }
+    mg.throwException(Type.getType(IOException.class), "Invalid union index.");
+  }
+
+  /**
+   * Generates the while-for loop for reading blocks of array or map elements as written by the encoder.
+   */
+  private void readBlocks(GeneratorAdapter mg, int decoder, BlockElementReader elementReader) {
+    int len = mg.newLocal(Type.INT_TYPE);
+    readInt(mg, decoder);
+    mg.storeLocal(len);
+
+    // while (len != 0)
+    Label beginWhile = mg.mark();
+    Label endWhile = mg.newLabel();
+    mg.loadLocal(len);
+    mg.ifZCmp(GeneratorAdapter.EQ, endWhile);
+
+    // for (int i = 0; i < len; i++)
+    int idx = mg.newLocal(Type.INT_TYPE);
+    mg.push(0);
+    mg.storeLocal(idx);
+    Label beginFor = mg.mark();
+    Label endFor = mg.newLabel();
+    mg.loadLocal(idx);
+    mg.loadLocal(len);
+    mg.ifICmp(GeneratorAdapter.GE, endFor);
+
+    elementReader.read(mg, decoder);
+
+    mg.iinc(idx, 1);
+    mg.goTo(beginFor);
+    mg.mark(endFor);
+
+    readInt(mg, decoder);
+    mg.storeLocal(len);
+    mg.goTo(beginWhile);
+    mg.mark(endWhile);
+  }
+
+  /**
+   * Generates code for reading an element to be stored in a collection or map, boxing it if necessary.
+   */
+  private void readElement(GeneratorAdapter mg, int decoder, TypeToken<?> type, Schema sourceSchema, Schema schema) {
+    mg.loadThis();
+    mg.loadArg(decoder);
+    mg.invokeVirtual(classType, getReadMethod(type, sourceSchema, schema));
+    Class<?> callType = getCallType(type, schema);
+    if (callType.isPrimitive()) {
+      mg.valueOf(Type.getType(callType));
+    }
+  }
+
+  /**
+   * Returns the skip method for the given schema. The same method will be returned if the same
+   * schema has been passed to the method before.
+   *
+   * @param schema Schema of the data to skip.
+   * @return A method for skipping data of the given schema, which takes a {@link Decoder} as the only argument.
+   */
+  private Method getSkipMethod(Schema schema) {
+    String key = schema.getSchemaHash().toString();
+    Method method = skipMethods.get(key);
+    if (method != null) {
+      return method;
+    }
+
+    method = getMethod(void.class, String.format("skip%s", key), Decoder.class);
+
+    // Put the method into map first before generating the body in order to support recursive data type.
+    skipMethods.put(key, method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[]{Type.getType(IOException.class)}, classWriter);
+    generateSkipBody(mg, schema, 0);
+    mg.returnValue();
+    mg.endMethod();
+
+    return method;
+  }
+
+  /**
+   * Generates the skip method body.
+   */
+  private void generateSkipBody(GeneratorAdapter mg, final Schema schema, int decoder) {
+    Type decoderType = Type.getType(Decoder.class);
+
+    switch (schema.getType()) {
+      case NULL:
+        break;
+      case BOOLEAN:
+        mg.loadArg(decoder);
+        mg.invokeInterface(decoderType, getMethod(boolean.class, "readBool"));
+        mg.pop();
+        break;
+      case INT:
+      case ENUM:
+        readInt(mg, decoder);
+        mg.pop();
+        break;
+      case LONG:
+        mg.loadArg(decoder);
+        mg.invokeInterface(decoderType, getMethod(long.class, "readLong"));
+        mg.pop2();
+        break;
+      case FLOAT:
+      case DOUBLE:
+      case BYTES:
+      case STRING:
+        mg.loadArg(decoder);
+        mg.invokeInterface(decoderType, getMethod(void.class, "skip" + schema.getType().name().charAt(0)
+                                                            + schema.getType().name().substring(1).toLowerCase()));
+        break;
+      case ARRAY:
+        readBlocks(mg, decoder, new BlockElementReader(null, schema, schema) {
+          @Override
+          void read(GeneratorAdapter mg, int decoder) {
+            skip(mg, decoder, schema.getComponentSchema());
+          }
+        });
+        break;
+      case MAP:
+        readBlocks(mg, decoder, new BlockElementReader(null, schema, schema) {
+          @Override
+          void read(GeneratorAdapter mg, int decoder) {
+            skip(mg, decoder, schema.getMapSchema().getKey());
+            skip(mg, decoder, schema.getMapSchema().getValue());
+          }
+        });
+        break;
+      case RECORD:
+        for (Schema.Field field : schema.getFields()) {
+          skip(mg, decoder, field.getSchema());
+        }
+        break;
+      case UNION:
+        int idx = mg.newLocal(Type.INT_TYPE);
+        readInt(mg, decoder);
+        mg.storeLocal(idx);
+        Label endUnion = mg.newLabel();
+        List<Schema> unionSchemas = schema.getUnionSchemas();
+        for (int i = 0; i < unionSchemas.size(); i++) {
+          Label nextIdx = mg.newLabel();
+          mg.loadLocal(idx);
+          mg.push(i);
+          mg.ifICmp(GeneratorAdapter.NE, nextIdx);
+          skip(mg, decoder, unionSchemas.get(i));
+          mg.goTo(endUnion);
+          mg.mark(nextIdx);
+        }
+        mg.throwException(Type.getType(IOException.class), "Invalid union index.");
+        mg.mark(endUnion);
+        break;
+    }
+  }
+
+  private void skip(GeneratorAdapter mg, int decoder, Schema schema) {
+    mg.loadThis();
+    mg.loadArg(decoder);
+    mg.invokeVirtual(classType, getSkipMethod(schema));
+  }
+
+  /**
+   * Generates code to create a new instance of the given type through the {@link Instantiator} field.
+   */
+  private void createInstance(GeneratorAdapter mg, TypeToken<?> type) {
+    String instantiatorName = getInstantiatorName(type);
+    instantiatorRequests.put(instantiatorName, type.getRawType());
+
+    // this.instantiator.create();
+    mg.loadThis();
+    mg.getField(classType, instantiatorName, Type.getType(Instantiator.class));
+    mg.invokeInterface(Type.getType(Instantiator.class), getMethod(Object.class, "create"));
+  }
+
+  private void readInt(GeneratorAdapter mg, int decoder) {
+    mg.loadArg(decoder);
+    mg.invokeInterface(Type.getType(Decoder.class), getMethod(int.class, "readInt"));
+  }
+
+  /**
+   * Generates code that loads the {@link Class} of the given type through {@link Class#forName(String)}.
+   */
+  private void loadClass(GeneratorAdapter mg, Class<?> cls) {
+    mg.push(cls.getName());
+    mg.invokeStatic(Type.getType(Class.class), getMethod(Class.class, "forName", String.class));
+  }
+
+  private void throwResolveException(GeneratorAdapter mg, Schema sourceSchema, Schema schema) {
+    mg.throwException(Type.getType(IOException.class),
+                      String.format("Fail to resolve %s to %s", sourceSchema, schema));
+  }
+
+  /**
+   * Finds the first schema in the given list that the source schema can be resolved to.
+   *
+   * @return The resolvable schema or {@code null} if none is found.
+   */
+  @Nullable
+  private Schema findResolvable(Schema sourceSchema, Iterable<Schema> schemas, TypeToken<?> type) {
+    for (Schema schema : schemas) {
+      if (isResolvable(sourceSchema, schema, type)) {
+        return schema;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks if data of the source schema can be decoded with the target schema into the given type.
+   */
+  private boolean isResolvable(Schema sourceSchema, Schema schema, TypeToken<?> type) {
+    Schema.Type sourceType = sourceSchema.getType();
+    Schema.Type targetType = schema.getType();
+    Class<?> rawType = type.getRawType();
+
+    if (sourceType == Schema.Type.UNION) {
+      for (Schema sourceValueSchema : sourceSchema.getUnionSchemas()) {
+        if (isResolvable(sourceValueSchema, schema, type)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (targetType == Schema.Type.UNION) {
+      return findResolvable(sourceSchema, schema.getUnionSchemas(), type) != null;
+    }
+    if (PROMOTIONS.containsKey(sourceType)) {
+      return PROMOTIONS.get(sourceType).contains(targetType);
+    }
+    if (sourceType != targetType) {
+      return false;
+    }
+
+    switch (sourceType) {
+      case NULL:
+        return !rawType.isPrimitive();
+      case ENUM:
+        return rawType.isEnum();
+      case ARRAY:
+        TypeToken<?> componentType;
+        if (type.isArray()) {
+          componentType = type.getComponentType();
+        } else if (Collection.class.isAssignableFrom(rawType) && type.getType() instanceof ParameterizedType) {
+          componentType = type.resolveType(((ParameterizedType) type.getType()).getActualTypeArguments()[0]);
+        } else {
+          return false;
+        }
+        return isResolvable(sourceSchema.getComponentSchema(), schema.getComponentSchema(), componentType);
+      case MAP:
+        if (!Map.class.isAssignableFrom(rawType) || !(type.getType() instanceof ParameterizedType)) {
+          return false;
+        }
+        java.lang.reflect.Type[] mapArgs = ((ParameterizedType) type.getType()).getActualTypeArguments();
+        return isResolvable(sourceSchema.getMapSchema().getKey(), schema.getMapSchema().getKey(),
+                            type.resolveType(mapArgs[0]))
+          && isResolvable(sourceSchema.getMapSchema().getValue(), schema.getMapSchema().getValue(),
+                          type.resolveType(mapArgs[1]));
+      case RECORD:
+        return !rawType.isPrimitive() && !rawType.isArray();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the java type to be used as the return type of the read method. This is needed to work with private
+   * classes that the generated DatumReader doesn't have access to.
+   *
+   * @param inputType Type information of the data type to decode to.
+   * @param schema Schema of the data type to decode to.
+   * @return The class to be used as the return type of the read method.
+   */
+  private Class<?> getCallType(TypeToken<?> inputType, Schema schema) {
+    Class<?> rawType = inputType.getRawType();
+    if (rawType.isPrimitive()) {
+      return rawType;
+    }
+
+    Schema.Type schemaType = schema.getType();
+    if (schemaType == Schema.Type.RECORD || schemaType == Schema.Type.UNION || schemaType == Schema.Type.ENUM) {
+      return Object.class;
+    }
+    if (schemaType == Schema.Type.ARRAY && inputType.isArray()) {
+      return Array.newInstance(getCallType(inputType.getComponentType(), schema.getComponentSchema()), 0).getClass();
+    }
+    return Modifier.isPublic(rawType.getModifiers()) ? rawType : Object.class;
+  }
+
+  /**
+   * Optionally generates a type cast instruction from {@link Object} to the given type.
+   */
+  private void doCast(GeneratorAdapter mg, Class<?> callType) {
+    if (!Object.class.equals(callType)) {
+      mg.checkCast(Type.getType(callType));
+    }
+  }
+
+  /**
+   * Optionally generates a boxing instruction when the value on the stack is primitive while the
+   * expected type is not.
+   */
+  private void doBox(GeneratorAdapter mg, Class<?> valueType, Class<?> callType) {
+    if (valueType.isPrimitive() && !callType.isPrimitive()) {
+      mg.valueOf(Type.getType(valueType));
+    }
+  }
+
+  private <T> TypeToken<DatumReader<T>> getInterfaceType(TypeToken<T> type) {
+    return new TypeToken<DatumReader<T>>() {
+    }.where(new TypeParameter<T>() {
+    }, type);
+  }
+
+  private String getClassName(TypeToken<?> interfaceType, Schema schema, Schema sourceSchema) {
+    return String.format("%s/%s%s%s%s",
+                         interfaceType.getRawType().getPackage().getName().replace('.', '/'),
+                         normalizeTypeName(TypeToken.of(((ParameterizedType) interfaceType.getType())
+                                                          .getActualTypeArguments()[0])),
+                         interfaceType.getRawType().getSimpleName(),
+                         schema.getSchemaHash(), sourceSchema.getSchemaHash());
+  }
+
+  private String normalizeTypeName(TypeToken<?> type) {
+    String typeName = type.toString();
+    int dimension = 0;
+    while (type.isArray()) {
+      type = type.getComponentType();
+      typeName = type.toString();
+      dimension++;
+    }
+
+    typeName = typeName.replace(".", "")
+                        .replace("<", "Of")
+                        .replace(">", "")
+                        .replace(",", "To")
+                        .replace(" ", "")
+                        .replace("$", "");
+    if (dimension > 0) {
+      typeName = "Array" + dimension + typeName;
+    }
+    return typeName;
+  }
+
+  private Method getMethod(Class<?> returnType, String name, Class<?>...args) {
+    return Methods.getMethod(returnType, name, args);
+  }
+
+  /**
+   * Returns the method for calling {@link FieldAccessor} setter based on the data type.
+   * @param type Data type.
+   * @return A {@link org.objectweb.asm.commons.Method} for calling {@link FieldAccessor}.
+   */
+  private Method getAccessorMethod(TypeToken<?> type) {
+    Class<?> rawType = type.getRawType();
+    if (rawType.isPrimitive()) {
+      return getMethod(void.class,
+                       String.format("set%c%s",
+                                     Character.toUpperCase(rawType.getName().charAt(0)),
+                                     rawType.getName().substring(1)),
+                       Object.class, rawType);
+    } else {
+      return getMethod(void.class, "set", Object.class, Object.class);
+    }
+  }
+
+  /**
+   * Generates the name of the class field for storing {@link FieldAccessor} for the given record field.
+   * @param recordType Type of the record.
+   * @param fieldName name of the field.
+   * @return name of the class field.
+   */
+  private String getFieldAccessorName(TypeToken<?> recordType, String fieldName) {
+    return String.format("%s$%s", normalizeTypeName(recordType), fieldName);
+  }
+
+  private String getInstantiatorName(TypeToken<?> type) {
+    return String.format("instantiator$%s", normalizeTypeName(TypeToken.of(type.getRawType())));
+  }
+
+  private String getComponentClassName(TypeToken<?> componentType) {
+    return String.format("componentClass$%s", normalizeTypeName(TypeToken.of(componentType.getRawType())));
+  }
+
+  private String getEnumTableName(TypeToken<?> enumType, Schema sourceSchema) {
+    return String.format("enumTable$%s%s", normalizeTypeName(enumType), sourceSchema.getSchemaHash());
+  }
+
+  /**
+   * Generates the body of the inner loop when reading blocks of array or map elements.
+   */
+  private abstract static class BlockElementReader {
+    private final TypeToken<?> type;
+    private final Schema sourceSchema;
+    private final Schema schema;
+
+    BlockElementReader(TypeToken<?> type, Schema sourceSchema, Schema schema) {
+      this.type = type;
+      this.sourceSchema = sourceSchema;
+      this.schema = schema;
+    }
+
+    TypeToken<?> getType() {
+      return type;
+    }
+
+    Schema getSourceSchema() {
+      return sourceSchema;
+    }
+
+    Schema getSchema() {
+      return schema;
+    }
+
+    abstract void read(GeneratorAdapter mg, int decoder);
+  }
+
+  /**
+   * Information for generating the lookup table from source enum index to target enum value.
+   */
+  private static final class EnumTable {
+    private final Class<?> enumClass;
+    private final List<String> values;
+
+    EnumTable(Class<?> enumClass, List<String> values) {
+      this.enumClass = enumClass;
+      this.values = values;
+    }
+
+    Class<?> getEnumClass() {
+      return enumClass;
+    }
+
+    /**
+     * @return List of enum values names indexed by the source enum index. Value is {@code null} if the
+     *         source enum value doesn't exist in the target.
+     */
+    List<String> getValues() {
+      return values;
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright © 2014 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.tigon.io;
+
+import co.cask.tigon.internal.io.ASMDatumReaderFactory;
+import co.cask.tigon.internal.io.ASMDatumWriterFactory;
+import co.cask.tigon.internal.io.ASMFieldAccessorFactory;
+import co.cask.tigon.internal.io.DatumReader;
+import co.cask.tigon.internal.io.ReflectionSchemaGenerator;
+import co.cask.tigon.internal.io.Schema;
+import co.cask.tigon.internal.io.UnsupportedTypeException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Tests for the ASM generated {@link DatumReader}.
+ */
+public class ASMDatumReaderTest {
+
+  private static final ASMFieldAccessorFactory FIELD_ACCESSOR_FACTORY = new ASMFieldAccessorFactory();
+  private static final ASMDatumWriterFactory DATUM_WRITER_FACTORY = new ASMDatumWriterFactory(FIELD_ACCESSOR_FACTORY);
+  private static final ASMDatumReaderFactory DATUM_READER_FACTORY = new ASMDatumReaderFactory(FIELD_ACCESSOR_FACTORY);
+
+  /**
+   *
+   */
+  public static enum TestEnum {
+    VALUE1, VALUE2, VALUE3, VALUE4
+  }
+
+  /**
+   *
+   */
+  public static enum ReducedEnum {
+    VALUE4, VALUE2
+  }
+
+  @Test
+  public void testSimple() throws UnsupportedTypeException, IOException {
+    Assert.assertEquals((short) 3000, (short) decode(new TypeToken<Short>() { }, (short) 3000));
+    Assert.assertEquals(12234234, (int) decode(new TypeToken<Integer>() { }, 12234234));
+    Assert.assertEquals(Long.MAX_VALUE, (long) decode(new TypeToken<Long>() { }, Long.MAX_VALUE));
+    Assert.assertEquals(3.14d, decode(new TypeToken<Double>() { }, 3.14d), 0.000001d);
+    Assert.assertTrue(decode(new TypeToken<Boolean>() { }, true));
+    Assert.assertEquals("Testing message", decode(new TypeToken<String>() { }, "Testing message"));
+
+    UUID uuid = UUID.randomUUID();
+    Assert.assertEquals(uuid, decode(new TypeToken<UUID>() { }, uuid));
+
+    URI uri = URI.create("http://www.google.com");
+    Assert.assertEquals(uri, decode(new TypeToken<URI>() { }, uri));
+  }
+
+  @Test
+  public void testPromotion() throws UnsupportedTypeException, IOException {
+    Assert.assertEquals(1234L, (long) decode(new TypeToken<Integer>() { }, 1234, new TypeToken<Long>() { }));
+    Assert.assertEquals(1234d, decode(new TypeToken<Integer>() { }, 1234, new TypeToken<Double>() { }), 0.000001d);
+    Assert.assertEquals(3.5d, decode(new TypeToken<Float>() { }, 3.5f, new TypeToken<Double>() { }), 0.000001d);
+    Assert.assertEquals("1234", decode(new TypeToken<Long>() { }, 1234L, new TypeToken<String>() { }));
+    Assert.assertEquals("true", decode(new TypeToken<Boolean>() { }, true, new TypeToken<String>() { }));
+  }
+
+  @Test
+  public void testEnum() throws UnsupportedTypeException, IOException {
+    Assert.assertEquals(TestEnum.VALUE3, decode(new TypeToken<TestEnum>() { }, TestEnum.VALUE3));
+    Assert.assertEquals(ReducedEnum.VALUE4, decode(new TypeToken<TestEnum>() { }, TestEnum.VALUE4,
+                                                   new TypeToken<ReducedEnum>() { }));
+    try {
+      decode(new TypeToken<TestEnum>() { }, TestEnum.VALUE1, new TypeToken<ReducedEnum>() { });
+      Assert.fail("Expected IOException for missing enum value.");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testArray() throws UnsupportedTypeException, IOException {
+    int[] intArray = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    Assert.assertArrayEquals(intArray, decode(new TypeToken<int[]>() { }, intArray));
+
+    String[] strArray = {"1", "2", null, "4"};
+    Assert.assertArrayEquals(strArray, decode(new TypeToken<String[]>() { }, strArray));
+
+    long[][] longArray = {{1L, 2L}, {}, {3L}};
+    long[][] decoded = decode(new TypeToken<long[][]>() { }, longArray);
+    Assert.assertEquals(longArray.length, decoded.length);
+    for (int i = 0; i < longArray.length; i++) {
+      Assert.assertArrayEquals(longArray[i], decoded[i]);
+    }
+
+    byte[] bytes = {1, 2, 3};
+    Assert.assertArrayEquals(bytes, decode(new TypeToken<byte[]>() { }, bytes));
+  }
+
+  @Test
+  public void testCollection() throws UnsupportedTypeException, IOException {
+    List<String> list = ImmutableList.of("1", "2", "3", "2");
+    Assert.assertEquals(list, decode(new TypeToken<List<String>>() { }, list));
+    Assert.assertEquals(ImmutableSet.copyOf(list),
+                        decode(new TypeToken<List<String>>() { }, list, new TypeToken<Set<String>>() { }));
+    Assert.assertArrayEquals(list.toArray(),
+                             decode(new TypeToken<List<String>>() { }, list, new TypeToken<String[]>() { }));
+
+    Map<String, List<Integer>> map = ImmutableMap.<String, List<Integer>>of("k1", ImmutableList.of(1, 2),
+                                                                            "k2", ImmutableList.of(3));
+    Assert.assertEquals(map, decode(new TypeToken<Map<String, List<Integer>>>() { }, map));
+  }
+
+  @Test
+  public void testRecordProjection() throws UnsupportedTypeException, IOException {
+    MoreFields moreFields = new MoreFields();
+    moreFields.i = 10;
+    moreFields.d = 20.2d;
+    moreFields.k = "kkk";
+    moreFields.list = ImmutableList.of("a", "b");
+    moreFields.map = ImmutableMap.of("x", 1L);
+    moreFields.inner = new MoreFields.Inner();
+    moreFields.inner.b = "bbb";
+    moreFields.inner.c = 3;
+
+    LessFields lessFields = decode(new TypeToken<MoreFields>() { }, moreFields, new TypeToken<LessFields>() { });
+    Assert.assertEquals(10L, lessFields.i);
+    Assert.assertEquals("kkk", lessFields.k);
+    Assert.assertEquals("bbb", lessFields.inner.b);
+  }
+
+  @Test
+  public void testTree() throws UnsupportedTypeException, IOException {
+    Node root = new Node(1, new Node(2, null, new Node(3, null, null)),
+                         new Node(4, new Node(5, null, null), null));
+    Node decoded = decode(new TypeToken<Node>() { }, root);
+    Assert.assertEquals(root, decoded);
+  }
+
+  @Test
+  public void testDispatchBySourceSchema() throws UnsupportedTypeException, IOException {
+    TypeToken<Long> type = new TypeToken<Long>() { };
+    DatumReader<Long> reader = DATUM_READER_FACTORY.create(type, getSchema(type));
+
+    Assert.assertEquals(5L, (long) reader.read(encode(new TypeToken<Integer>() { }, 5),
+                                               getSchema(new TypeToken<Integer>() { })));
+    Assert.assertEquals(6L, (long) reader.read(encode(type, 6L), getSchema(type)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTypeMismatch() throws UnsupportedTypeException, IOException {
+    decode(new TypeToken<String>() { }, "Testing message", new TypeToken<Integer>() { });
+  }
+
+  private <T> Schema getSchema(TypeToken<T> type) throws UnsupportedTypeException {
+    return new ReflectionSchemaGenerator().generate(type.getType());
+  }
+
+  private <T> Decoder encode(TypeToken<T> type, T value) throws UnsupportedTypeException, IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    DATUM_WRITER_FACTORY.create(type, getSchema(type)).encode(value, new BinaryEncoder(os));
+    return new BinaryDecoder(new ByteArrayInputStream(os.toByteArray()));
+  }
+
+  private <T> T decode(TypeToken<T> type, T value) throws UnsupportedTypeException, IOException {
+    return decode(type, value, type);
+  }
+
+  private <S, T> T decode(TypeToken<S> sourceType, S value,
+                          TypeToken<T> targetType) throws UnsupportedTypeException, IOException {
+    Decoder decoder = encode(sourceType, value);
+    DatumReader<T> reader = DATUM_READER_FACTORY.create(targetType, getSchema(targetType), getSchema(sourceType));
+    return reader.read(decoder, getSchema(sourceType));
+  }
+
+  /**
+   *
+   */
+  public static final class MoreFields {
+
+    /**
+     *
+     */
+    public static final class Inner {
+      private Map<String, String> map = ImmutableMap.of("a", "b");
+      private String b;
+      private int c;
+    }
+
+    private int i;
+    private double d;
+    private String k;
+    private List<String> list;
+    private Map<String, Long> map;
+    private Inner inner;
+  }
+
+  /**
+   *
+   */
+  public static final class LessFields {
+
+    /**
+     *
+     */
+    public static final class Inner {
+      private String b;
+    }
+
+    private long i;
+    private String k;
+    private Inner inner;
+  }
+
+  /**
+   *
+   */
+  public static final class Node {
+    private int data;
+    private Node left;
+    private Node right;
+
+    public Node() {
+    }
+
+    public Node(int data, Node left, Node right) {
+      this.data = data;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Node other = (Node) o;
+      return data == other.data
+        && (left == null ? other.left == null : left.equals(other.left))
+        && (right == null ? other.right == null : right.equals(other.right));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = data;
+      result = 31 * result + (left != null ? left.hashCode() : 0);
+      result = 31 * result + (right != null ? right.hashCode() : 0);
+      return result;
+    }
+  }
+}